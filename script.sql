@@ -11,13 +11,17 @@ CREATE TABLE `USERS` (
 CREATE TABLE `RENTALS` (
   `id` integer PRIMARY KEY AUTO_INCREMENT,
   `name` varchar(255),
-  `surface` numeric,
-  `price` numeric,
+  `surface` numeric NOT NULL,
+  `price` numeric NOT NULL,
   `picture` varchar(255),
   `description` varchar(2000),
+  `price_per_m2` decimal(12,2) NOT NULL,
+  `media_status` varchar(20),
+  `media_error` varchar(255),
   `owner_id` integer NOT NULL,
   `created_at` timestamp,
-  `updated_at` timestamp
+  `updated_at` timestamp,
+  `version` bigint NOT NULL DEFAULT 0
 );
 
 CREATE TABLE `MESSAGES` (
@@ -29,14 +33,60 @@ CREATE TABLE `MESSAGES` (
   `updated_at` timestamp
 );
 
+CREATE TABLE `RENTAL_PICTURES` (
+  `id` integer PRIMARY KEY AUTO_INCREMENT,
+  `rental_id` integer NOT NULL,
+  `url` varchar(255) NOT NULL,
+  `position` integer NOT NULL,
+  `created_at` timestamp NOT NULL
+);
+
+CREATE TABLE `PICTURES` (
+  `file_name` varchar(80) PRIMARY KEY,
+  `ref_count` integer NOT NULL,
+  `created_at` timestamp NOT NULL
+);
+
+CREATE TABLE `RENTAL_TOMBSTONES` (
+  `rental_id` integer PRIMARY KEY,
+  `deleted_at` timestamp NOT NULL
+);
+
+CREATE TABLE `RENTAL_LIST_VERSION` (
+  `id` integer PRIMARY KEY,
+  `version` bigint NOT NULL
+);
+
+INSERT INTO `RENTAL_LIST_VERSION` (`id`, `version`) VALUES (1, 0);
+
 CREATE UNIQUE INDEX `USERS_index` ON `USERS` (`email`);
 
+CREATE INDEX `RENTALS_created_at_index` ON `RENTALS` (`created_at`, `id`);
+
+CREATE INDEX `RENTALS_price_index` ON `RENTALS` (`price`, `id`);
+
+CREATE INDEX `RENTALS_surface_index` ON `RENTALS` (`surface`, `id`);
+
+CREATE INDEX `RENTALS_price_per_m2_index` ON `RENTALS` (`price_per_m2`, `id`);
+
+CREATE INDEX `RENTALS_updated_at_index` ON `RENTALS` (`updated_at`, `id`);
+
+CREATE INDEX `PICTURES_ref_count_created_at_index` ON `PICTURES` (`ref_count`, `created_at`);
+
+CREATE INDEX `RENTAL_TOMBSTONES_deleted_at_index` ON `RENTAL_TOMBSTONES` (`deleted_at`, `rental_id`);
+
+CREATE INDEX `RENTAL_PICTURES_rental_id_position_index` ON `RENTAL_PICTURES` (`rental_id`, `position`);
+
+CREATE INDEX `MESSAGES_rental_id_created_at_index` ON `MESSAGES` (`rental_id`, `created_at`, `id`);
+
 ALTER TABLE `RENTALS` ADD FOREIGN KEY (`owner_id`) REFERENCES `USERS` (`id`);
 
 ALTER TABLE `MESSAGES` ADD FOREIGN KEY (`user_id`) REFERENCES `USERS` (`id`);
 
 ALTER TABLE `MESSAGES` ADD FOREIGN KEY (`rental_id`) REFERENCES `RENTALS` (`id`);
 
+ALTER TABLE `RENTAL_PICTURES` ADD FOREIGN KEY (`rental_id`) REFERENCES `RENTALS` (`id`);
+
 
 INSERT INTO `USERS` (`email`, `name`, `password`, `created_at`, `updated_at`, `role`)
 VALUES 
@@ -44,11 +94,15 @@ VALUES
   ('test@test.com', 'Test TEST', '$2a$10$ZVzzAxdDMFyDYNZOc1enX.Jk/D2KEvvOdRTsH46ZezJydPYVIsJsK', CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, 'ROLE_USER');
 
 
-INSERT INTO `RENTALS` (`name`, `surface`, `price`, `picture`, `description`, `owner_id`, `created_at`, `updated_at`)
+INSERT INTO `RENTALS` (`name`, `surface`, `price`, `price_per_m2`, `picture`, `description`, `owner_id`, `created_at`, `updated_at`)
 VALUES 
-  ('dream house', 432, 300, 'http://localhost:3001/images/rental_01.jpg', 'Lorem ipsum dolor sit amet, consectetur adipiscing elit.', 2, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP),
-  ('test house 1', 154, 200, 'http://localhost:3001/images/rental_02.jpg', 'Lorem ipsum dolor sit amet, consectetur adipiscing elit.', 1, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP),
-  ('test house 2', 324, 100, 'http://localhost:3001/images/rental_03.jpg', 'Lorem ipsum dolor sit amet, consectetur adipiscing elit.', 1, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP);
+  ('dream house', 432, 300, 0.69, 'http://localhost:3001/images/rental_01.jpg', 'Lorem ipsum dolor sit amet, consectetur adipiscing elit.', 2, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP),
+  ('test house 1', 154, 200, 1.30, 'http://localhost:3001/images/rental_02.jpg', 'Lorem ipsum dolor sit amet, consectetur adipiscing elit.', 1, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP),
+  ('test house 2', 324, 100, 0.31, 'http://localhost:3001/images/rental_03.jpg', 'Lorem ipsum dolor sit amet, consectetur adipiscing elit.', 1, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP);
+
+-- Bases existantes : les clés de tri ne doivent jamais être NULL (curseurs)
+-- UPDATE `RENTALS` SET `price_per_m2` = ROUND(`price` / `surface`, 2) WHERE `price_per_m2` IS NULL AND `surface` > 0;
+-- ALTER TABLE `RENTALS` MODIFY `surface` numeric NOT NULL, MODIFY `price` numeric NOT NULL, MODIFY `price_per_m2` decimal(12,2) NOT NULL;
 
 INSERT INTO `MESSAGES` (`rental_id`, `user_id`, `message`, `created_at`, `updated_at`)
 VALUES 
@@ -0,0 +1,81 @@
+package com.chatop.config;
+
+import java.nio.file.Paths;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.chatop.storage.ImageStore;
+import com.chatop.storage.LocalShardedImageStore;
+import com.chatop.storage.S3ImageStore;
+
+/**
+ * Selects the storage backend of the images with image.storage.type :
+ * local (default) or s3.
+ */
+@Configuration
+public class ImageStoreConfig {
+
+  /**
+   * Local filesystem storage, sharded in two directory levels.
+   *
+   * @param storageDirectory The root directory of the images.
+   * @return The local image store.
+   */
+  @Bean
+  @ConditionalOnProperty(
+    name = "image.storage.type",
+    havingValue = "local",
+    matchIfMissing = true
+  )
+  public LocalShardedImageStore localImageStore(
+    @Value(
+      "${image.storage.directory:src/main/resources/static/pictures/}"
+    ) String storageDirectory
+  ) {
+    return new LocalShardedImageStore(Paths.get(storageDirectory));
+  }
+
+  /**
+   * Moves the images of the former flat directory into the shards at
+   * startup, when image.storage.migrate-flat-files is true.
+   *
+   * @param localImageStore The local image store.
+   * @return The migration runner.
+   */
+  @Bean
+  @ConditionalOnProperty(
+    name = "image.storage.migrate-flat-files",
+    havingValue = "true"
+  )
+  public ApplicationRunner flatFilesMigration(
+    LocalShardedImageStore localImageStore
+  ) {
+    return args -> localImageStore.migrateFlatFiles();
+  }
+
+  /**
+   * S3-compatible object storage.
+   *
+   * @param endpoint  The endpoint URL.
+   * @param bucket    The bucket name.
+   * @param region    The signing region.
+   * @param accessKey The access key id.
+   * @param secretKey The secret access key.
+   * @return The S3 image store.
+   */
+  @Bean
+  @ConditionalOnProperty(name = "image.storage.type", havingValue = "s3")
+  public ImageStore s3ImageStore(
+    @Value("${image.storage.s3.endpoint}") String endpoint,
+    @Value("${image.storage.s3.bucket}") String bucket,
+    @Value("${image.storage.s3.region:us-east-1}") String region,
+    @Value("${image.storage.s3.access-key}") String accessKey,
+    @Value("${image.storage.s3.secret-key}") String secretKey
+  ) {
+    return new S3ImageStore(endpoint, bucket, region, accessKey, secretKey);
+  }
+}
@@ -14,6 +14,8 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 import com.chatop.filter.JwtAuthenticationFilter;
 import com.chatop.util.JwtUtil;
 
+import jakarta.servlet.DispatcherType;
+
 /**
  * Configuration for Spring Security, including JWT-based authentication.
  */
@@ -46,14 +48,20 @@ public class SecurityConfig {
       .csrf(csrf -> csrf.disable())
       .authorizeHttpRequests(auth -> {
         auth
+          // Streamed responses (export) end with an async dispatch of a request already authorized
+          .dispatcherTypeMatchers(DispatcherType.ASYNC)
+          .permitAll()
           // Public endpoints
           .requestMatchers(
             "/api/auth/**", // Login and registration
             "/public/**", // Public resources
             "/images/**",
+            "/api/uploads/**", // Signed upload URLs, authorized by their token
             "/v3/api-docs/**",
             "/swagger-ui/**",
-            "/swagger-ui.html" // API documentation
+            "/swagger-ui.html", // API documentation
+            "/actuator/health",
+            "/actuator/health/**" // Health probes, status only
           )
           .permitAll()
           .requestMatchers(
@@ -62,6 +70,11 @@ public class SecurityConfig {
             "/api/user/**"
           )
           .hasAnyRole("ADMIN", "USER")
+          .requestMatchers(
+            "/actuator/**", // Metrics
+            "/api/admin/**" // Orphan image collector
+          )
+          .hasRole("ADMIN")
           .anyRequest()
           .authenticated();
       })
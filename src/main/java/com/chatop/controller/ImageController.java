@@ -1,23 +1,55 @@
 package com.chatop.controller;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
 
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import com.chatop.exception.ResourceNotFoundException;
+import com.chatop.service.ImageCacheService;
+import com.chatop.service.ImageCacheService.CachedImage;
+import com.chatop.service.ThumbnailService;
+import com.chatop.storage.ImageStore;
+import com.chatop.storage.StoredImage;
 
 import io.swagger.v3.oas.annotations.Hidden;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
 /**
- * Controller for serving image files with authentication.
+ * Controller for serving image files.
+ * <p>
+ * Small images are served from an off-heap cache (see ImageCacheService).
+ * Other files of a local store are sent without copying them through the
+ * heap : with Tomcat's sendfile support, the connector sends the file itself,
+ * otherwise {@link FileChannel#transferTo} is used. Other stores are
+ * streamed. Conditional requests
+ * (If-None-Match, If-Modified-Since) are answered with 304 and single byte
+ * ranges with 206. Uploads are named by their content digest (or a random
+ * UUID for older ones) and never rewritten, so they are cached by browsers
+ * for a year without revalidation.
+ * With {@code ?w=<width>}, a resized variant is served (see ThumbnailService).
+ * When the original is served instead, it is revalidated : the variant may
+ * be served at the same URL later.
  */
 @RestController
 /*@Tag(
@@ -28,22 +60,62 @@ import io.swagger.v3.oas.annotations.Hidden;
 @RequestMapping("/images")
 public class ImageController {
 
-  private static final String IMAGE_DIRECTORY =
-    "src/main/resources/static/pictures/";
+  // Tomcat request attributes of the sendfile support (NIO connector)
+  private static final String SENDFILE_SUPPORT =
+    "org.apache.tomcat.sendfile.support";
+  private static final String SENDFILE_FILENAME =
+    "org.apache.tomcat.sendfile.filename";
+  private static final String SENDFILE_START =
+    "org.apache.tomcat.sendfile.start";
+  private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+  // Uploads named by their SHA-256 digest, or by a random UUID (older uploads)
+  private static final Pattern IMMUTABLE_FILENAME = Pattern.compile(
+    "([0-9a-f]{64}|[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12})" +
+    "\\.[A-Za-z0-9]+"
+  );
+  private static final String IMMUTABLE_CACHE =
+    "public, max-age=31536000, immutable";
+  private static final String REVALIDATE_CACHE = "public, no-cache";
+
+  private final ImageStore imageStore;
+  private final ThumbnailService thumbnailService;
+  private final ImageCacheService imageCacheService;
 
   /**
-   * Serves an image file based on the authenticated user's request.
+   * Constructs the ImageController.
    *
-   * @param filename       The name of the image file to retrieve.
-   * @param authentication The current authenticated user.
-   * @return A ResponseEntity containing the requested image or an appropriate error response.
+   * @param imageStore        The storage of the images.
+   * @param thumbnailService  The service providing the resized variants.
+   * @param imageCacheService The in-memory cache of the small images.
+   */
+  public ImageController(
+    ImageStore imageStore,
+    ThumbnailService thumbnailService,
+    ImageCacheService imageCacheService
+  ) {
+    this.imageStore = imageStore;
+    this.thumbnailService = thumbnailService;
+    this.imageCacheService = imageCacheService;
+  }
+
+  /**
+   * Serves an image file, in whole or in part.
+   *
+   * @param filename The name of the image file to retrieve.
+   * @param width    The width of the variant to serve (null for the original).
+   * @param request  The HTTP request (conditional and Range headers).
+   * @param response The HTTP response the file is written to.
+   * @throws ResourceNotFoundException If the image does not exist.
+   * @throws IllegalArgumentException  If the file name or the width is invalid.
+   * @throws IOException               If the file cannot be sent.
    */
   /*@Operation(
     security={},
     summary = "Get an image file",
     description = """
             📸Retrieve an image file based on its filename.
-            
+
             """
   )
   @ApiResponses(
@@ -53,6 +125,15 @@ public class ImageController {
         description = "📷 Image served successfully",
         content = @Content(mediaType = "application/octet-stream")
       ),
+      @ApiResponse(
+        responseCode = "206",
+        description = "📷 Image range served successfully",
+        content = @Content(mediaType = "application/octet-stream")
+      ),
+      @ApiResponse(
+        responseCode = "304",
+        description = "📦 Not modified, use the cached image"
+      ),
       @ApiResponse(
         responseCode = "400",
         description = "❌Bad Request",
@@ -63,6 +144,10 @@ public class ImageController {
         description = "🔎Image not found",
         content = @Content(mediaType = "text/plain")
       ),
+      @ApiResponse(
+        responseCode = "416",
+        description = "❌Range not satisfiable"
+      ),
       @ApiResponse(
         responseCode = "500",
         description = "🔧Internal server error",
@@ -71,31 +156,188 @@ public class ImageController {
     }
   )*/
   @GetMapping("/{filename}")
-  public ResponseEntity<Resource> getImage(
-    @PathVariable String filename
-    //Authentication authentication
-  ) {
-    try {
-      //String userEmail = authentication.getName();
+  public void getImage(
+    @PathVariable String filename,
+    @RequestParam(name = "w", required = false) Integer width,
+    HttpServletRequest request,
+    HttpServletResponse response
+  ) throws IOException {
+    if (width != null && !thumbnailService.isSupportedWidth(width)) {
+      throw new IllegalArgumentException("Unsupported image width: " + width);
+    }
+    if (filename.contains("/")) {
+      throw new IllegalArgumentException("Invalid filename: " + filename);
+    }
+    String key = ImageStore.checkKey(filename);
+    String original = key;
+    // The hot set is answered from memory, without reaching the store
+    CachedImage cached = imageCacheService
+      .get(width == null ? key : ThumbnailService.variantKey(key, width))
+      .orElse(null);
+    StoredImage image;
+    if (cached != null) {
+      key = width == null ? key : ThumbnailService.variantKey(key, width);
+      image = cached.getImage();
+    } else {
+      image =
+        imageStore
+          .stat(key)
+          .orElseThrow(() ->
+            new ResourceNotFoundException("Image not found: " + filename)
+          );
+      if (width != null) {
+        String variant = thumbnailService.getVariant(key, width);
+        if (!variant.equals(key)) {
+          key = variant;
+          image = imageStore.stat(key).orElse(image);
+        }
+      }
+    }
+    long length = image.getLength();
+    long lastModified = image.getLastModified();
+    String etag =
+      "\"" +
+      Long.toHexString(length) +
+      "-" +
+      Long.toHexString(lastModified) +
+      "\"";
+
+    // The original served for a width is not final : it is replaced by the
+    // variant once generated
+    boolean immutable =
+      IMMUTABLE_FILENAME.matcher(filename).matches() &&
+      (width == null || !key.equals(original));
+    response.setHeader(
+      HttpHeaders.CACHE_CONTROL,
+      immutable ? IMMUTABLE_CACHE : REVALIDATE_CACHE
+    );
+    response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+    // Sets ETag and Last-Modified, and answers 304 if the client copy is current
+    if (
+      new ServletWebRequest(request, response)
+        .checkNotModified(etag, lastModified)
+    ) {
+      return;
+    }
 
-      Path filePath = Paths.get(IMAGE_DIRECTORY).resolve(filename);
-      Resource resource = new UrlResource(filePath.toUri());
+    MediaType mediaType = MediaTypeFactory
+      .getMediaType(filename)
+      .orElse(MediaType.APPLICATION_OCTET_STREAM);
+    response.setContentType(mediaType.toString());
+    response.setHeader("X-Content-Type-Options", "nosniff");
+    response.setHeader(
+      HttpHeaders.CONTENT_DISPOSITION,
+      "inline; filename=\"" + filename + "\""
+    );
 
-      if (!resource.exists() || !resource.isReadable()) {
-        throw new ResourceNotFoundException("Image not found: " + filename);
+    long start = 0;
+    long end = length - 1;
+    HttpRange range = requestedRange(request, etag, lastModified);
+    if (range != null) {
+      if (range.getRangeStart(length) >= length) {
+        response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+        response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+        return;
       }
+      start = range.getRangeStart(length);
+      end = range.getRangeEnd(length);
+      response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+      response.setHeader(
+        HttpHeaders.CONTENT_RANGE,
+        "bytes " + start + "-" + end + "/" + length
+      );
+    }
+    long count = end - start + 1;
+    response.setContentLengthLong(count);
+
+    if ("HEAD".equals(request.getMethod()) || count == 0) {
+      return;
+    }
+    if (cached == null && imageCacheService.isCacheable(image)) {
+      cached = imageCacheService.load(key, image);
+    }
+    if (cached != null) {
+      WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+      ByteBuffer content = cached.slice(start, count);
+      while (content.hasRemaining()) {
+        out.write(content);
+      }
+      return;
+    }
+    send(key, start, count, request, response);
+  }
 
-      return ResponseEntity
-        .ok()
-        .header(
-          HttpHeaders.CONTENT_DISPOSITION,
-          "inline; filename=\"" + filename + "\""
-        )
-        .body(resource);
+  /**
+   * Gets the single byte range to serve, or null to serve the whole file.
+   * Multiple or malformed ranges are answered with the whole file, as allowed
+   * by RFC 9110, and so is a Range whose If-Range validator no longer matches.
+   */
+  private HttpRange requestedRange(
+    HttpServletRequest request,
+    String etag,
+    long lastModified
+  ) {
+    String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+    if (rangeHeader == null) {
+      return null;
+    }
+    String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+    if (ifRange != null && !ifRange.equals(etag)) {
+      long ifRangeDate = request.getDateHeader(HttpHeaders.IF_RANGE);
+      if (ifRangeDate == -1 || lastModified / 1000 > ifRangeDate / 1000) {
+        return null;
+      }
+    }
+    try {
+      List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+      return ranges.size() == 1 ? ranges.get(0) : null;
     } catch (IllegalArgumentException e) {
-      throw new IllegalArgumentException("Invalid filename: " + filename, e);
-    } catch (Exception e) {
-      throw new RuntimeException("Error retrieving image: " + filename, e);
+      return null;
+    }
+  }
+
+  /**
+   * Sends a part of the image : a local file with sendfile when the
+   * connector supports it, or transferTo, other stores by streaming.
+   */
+  private void send(
+    String key,
+    long start,
+    long count,
+    HttpServletRequest request,
+    HttpServletResponse response
+  ) throws IOException {
+    Optional<Path> localPath = imageStore.localPath(key);
+    if (localPath.isEmpty()) {
+      try (InputStream input = imageStore.open(key, start, count)) {
+        input.transferTo(response.getOutputStream());
+      }
+      return;
+    }
+
+    Path filePath = localPath.get();
+    if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+      request.setAttribute(SENDFILE_FILENAME, filePath.toString());
+      request.setAttribute(SENDFILE_START, start);
+      request.setAttribute(SENDFILE_END, start + count);
+      return;
+    }
+
+    try (
+      FileChannel file = FileChannel.open(filePath, StandardOpenOption.READ)
+    ) {
+      WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+      long position = start;
+      long remaining = count;
+      while (remaining > 0) {
+        long sent = file.transferTo(position, remaining, out);
+        if (sent <= 0) {
+          break;
+        }
+        position += sent;
+        remaining -= sent;
+      }
     }
   }
 }
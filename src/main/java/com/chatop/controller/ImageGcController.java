@@ -0,0 +1,137 @@
+package com.chatop.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.chatop.dto.ImageGcReportDTO;
+import com.chatop.exception.ResourceNotFoundException;
+import com.chatop.service.ImageGarbageCollectorService;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+/**
+ * Controller of the orphan image collector (administrators only).
+ */
+@RestController
+@Tag(
+  name = "5. Admin Controller",
+  description = "Run the orphan image collector and read its report"
+)
+@RequestMapping("/api/admin/images/gc")
+public class ImageGcController {
+
+  private final ImageGarbageCollectorService imageGarbageCollectorService;
+
+  /**
+   * Constructs the ImageGcController.
+   *
+   * @param imageGarbageCollectorService The orphan image collector.
+   */
+  public ImageGcController(
+    ImageGarbageCollectorService imageGarbageCollectorService
+  ) {
+    this.imageGarbageCollectorService = imageGarbageCollectorService;
+  }
+
+  /**
+   * Gets the report of the running collection, or of the last one.
+   *
+   * @return A ResponseEntity containing the report.
+   * @throws ResourceNotFoundException If no collection has run yet.
+   */
+  @Operation(
+    security = @SecurityRequirement(name = "bearerAuth"),
+    summary = "Get the orphan image collection report",
+    description = "🧹Progress of the running collection, or result of the last one."
+  )
+  @ApiResponses(
+    value = {
+      @ApiResponse(
+        responseCode = "200",
+        description = "👍Report found",
+        content = @Content(
+          mediaType = "application/json",
+          schema = @Schema(implementation = ImageGcReportDTO.class)
+        )
+      ),
+      @ApiResponse(
+        responseCode = "403",
+        description = "🧙‍♂️forbidden (ADMIN role required)",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "404",
+        description = "🤔No collection has run yet",
+        content = @Content(mediaType = "application/json")
+      ),
+    }
+  )
+  @GetMapping
+  public ResponseEntity<ImageGcReportDTO> getReport() {
+    return ResponseEntity.ok(
+      imageGarbageCollectorService
+        .getReport()
+        .orElseThrow(() ->
+          new ResourceNotFoundException("No orphan image collection has run")
+        )
+    );
+  }
+
+  /**
+   * Starts a collection in the background.
+   *
+   * @param dryRun true to only report the orphans (default : image.gc.dry-run).
+   * @return A ResponseEntity containing the report of the started collection.
+   */
+  @Operation(
+    security = @SecurityRequirement(name = "bearerAuth"),
+    summary = "Start an orphan image collection",
+    description = """
+        🧹Deletes the images no rental references, older than the grace period.
+        \nFollow its progress with GET on the same route."""
+  )
+  @ApiResponses(
+    value = {
+      @ApiResponse(
+        responseCode = "202",
+        description = "👍Collection started",
+        content = @Content(
+          mediaType = "application/json",
+          schema = @Schema(implementation = ImageGcReportDTO.class)
+        )
+      ),
+      @ApiResponse(
+        responseCode = "403",
+        description = "🧙‍♂️forbidden (ADMIN role required)",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "429",
+        description = "⏳A collection is already running",
+        content = @Content(mediaType = "application/json")
+      ),
+    }
+  )
+  @PostMapping
+  public ResponseEntity<ImageGcReportDTO> start(
+    @Parameter(
+      description = "Only report the orphans"
+    ) @RequestParam(name = "dry_run", required = false) Boolean dryRun
+  ) {
+    return ResponseEntity
+      .status(HttpStatus.ACCEPTED)
+      .body(imageGarbageCollectorService.start(dryRun));
+  }
+}
@@ -2,18 +2,25 @@ package com.chatop.controller;
 
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.chatop.dto.MessageRequestDTO;
 import com.chatop.dto.MessageResponseDTO;
+import com.chatop.dto.MessagesResponseDTO;
 import com.chatop.service.MessageService;
+import com.chatop.util.JwtPrincipal;
 
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
+import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
@@ -24,7 +31,10 @@ import jakarta.validation.Valid;
  * Controller for managing messages.
  */
 @RestController
-@Tag(name = "3. Message Controller", description = "Create message")
+@Tag(
+  name = "3. Message Controller",
+  description = "Create message, read owner inbox"
+)
 @RequestMapping("/api/messages")
 public class MessageController {
 
@@ -121,4 +131,67 @@ public class MessageController {
       new MessageResponseDTO("Message sent successfully")
     );
   }
+
+  /**
+   * Reads one page of the inbox of the authenticated user : the messages
+   * received on all of their rentals, newest first.
+   *
+   * @param limit     The page size (null for default).
+   * @param cursor    The opaque cursor of the previous page (null for the first page).
+   * @param principal The authenticated user.
+   * @return A ResponseEntity containing a MessagesResponseDTO with the page and the next cursor.
+   */
+  @Operation(
+    security = @SecurityRequirement(name = "bearerAuth"),
+    summary = "Get the owner inbox",
+    description = """
+            📥 Retrieve one page of the messages received on your rentals, newest first.
+            \nPass the returned *next_cursor* as *cursor* to get the next page (null on the last page)."""
+  )
+  @ApiResponses(
+    value = {
+      @ApiResponse(
+        responseCode = "200",
+        description = "👍 Inbox retrieved successfully",
+        content = @Content(
+          mediaType = "application/json",
+          schema = @Schema(implementation = MessagesResponseDTO.class)
+        )
+      ),
+      @ApiResponse(
+        responseCode = "400",
+        description = "❌ Bad Request (invalid limit or cursor)",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "401",
+        description = "🧙‍♂️ Unauthorized (no token)",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "403",
+        description = "🧙‍♂️ Forbidden (no role)",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "500",
+        description = "🔧 Internal server error",
+        content = @Content(mediaType = "application/json")
+      ),
+    }
+  )
+  @GetMapping
+  public ResponseEntity<MessagesResponseDTO> getInbox(
+    @Parameter(description = "Page size") @RequestParam(
+      required = false
+    ) Integer limit,
+    @Parameter(description = "Opaque cursor of the next page") @RequestParam(
+      required = false
+    ) String cursor,
+    @AuthenticationPrincipal JwtPrincipal principal
+  ) {
+    return ResponseEntity.ok(
+      messageService.readInboxAsDTO(principal.getUserId(), limit, cursor)
+    );
+  }
 }
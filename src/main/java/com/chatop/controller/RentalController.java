@@ -1,36 +1,71 @@
 package com.chatop.controller;
 
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.BindException;
+import org.springframework.validation.DataBinder;
+import org.springframework.validation.beanvalidation.SpringValidatorAdapter;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.chatop.dto.RentalChangesDTO;
 import com.chatop.dto.RentalDTO;
 import com.chatop.dto.RentalRequestDTO;
+import com.chatop.dto.RentalStatusDTO;
 import com.chatop.dto.RentalsResponseDTO;
-import com.chatop.dto.UserDTO;
+import com.chatop.exception.FileTooLargeException;
+import com.chatop.exception.PreconditionFailedException;
 import com.chatop.exception.ResourceNotFoundException;
+import com.chatop.model.Rental;
+import com.chatop.service.ImageStorageService;
+import com.chatop.service.RentalMediaService;
+import com.chatop.service.RentalPictureService;
+import com.chatop.service.RentalListSnapshotService;
+import com.chatop.service.RentalListSnapshotService.RenderedPage;
 import com.chatop.service.RentalService;
-import com.chatop.service.UserService;
+import com.chatop.util.JwtPrincipal;
+import com.chatop.util.MultipartReader;
+import com.chatop.util.UploadTokenUtil;
 
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
 
 /**
  * Controller for managing rental-related operations such as retrieval, creation, and updates.
@@ -43,33 +78,72 @@ import jakarta.validation.Valid;
 @RequestMapping("/api")
 public class RentalController {
 
+  // Total size of the text fields of the creation form, in bytes
+  private static final int MAX_FORM_FIELDS_LENGTH = 64 * 1024;
+
   private final RentalService rentalService;
-  private final UserService userService;
+  private final RentalPictureService rentalPictureService;
+  private final RentalMediaService rentalMediaService;
+  private final RentalListSnapshotService rentalListSnapshotService;
+  private final ImageStorageService imageStorageService;
+  private final UploadTokenUtil uploadTokenUtil;
+  private final SpringValidatorAdapter validator;
 
   /**
    * Constructs the RentalController.
    *
-   * @param rentalService The service for managing rentals.
-   * @param userService The service for managing user.
+   * @param rentalService             The service for managing rentals.
+   * @param rentalPictureService      The service managing the rental galleries.
+   * @param rentalMediaService        The service finishing the asynchronous creations.
+   * @param rentalListSnapshotService The pre-rendered pages of the rentals list.
+   * @param imageStorageService       The service storing the rental pictures.
+   * @param uploadTokenUtil           The signer of the upload URLs and picture keys.
+   * @param validator                 The validator of the request DTOs.
    */
   public RentalController(
     RentalService rentalService,
-    UserService userService
+    RentalPictureService rentalPictureService,
+    RentalMediaService rentalMediaService,
+    RentalListSnapshotService rentalListSnapshotService,
+    ImageStorageService imageStorageService,
+    UploadTokenUtil uploadTokenUtil,
+    Validator validator
   ) {
     this.rentalService = rentalService;
-    this.userService = userService;
+    this.rentalPictureService = rentalPictureService;
+    this.rentalMediaService = rentalMediaService;
+    this.rentalListSnapshotService = rentalListSnapshotService;
+    this.imageStorageService = imageStorageService;
+    this.uploadTokenUtil = uploadTokenUtil;
+    this.validator = new SpringValidatorAdapter(validator);
   }
 
   /**
-   * Retrieves a list of all rentals as DTOs.
+   * Retrieves one page of rentals as DTOs (keyset pagination).
+   * <p>
+   * In snapshot mode, the page is written from the bytes pre-rendered by
+   * RentalListSnapshotService, gzipped if the client accepts it, with a
+   * strong ETag : a matching If-None-Match is answered with 304.
+   * Otherwise the weak ETag is derived from the versions of the rentals,
+   * read by one aggregate query before the page is queried : a matching
+   * If-None-Match is answered with 304 without loading any rental.
    *
+   * @param limit          The maximum number of rentals in the page.
+   * @param cursor         The next_cursor value of the previous page.
+   * @param sort           The sort key.
+   * @param order          The sort direction.
    * @param authentication The Authentication object containing the user's details.
-   * @return A ResponseEntity containing a list of RentalDTOs.
+   * @param request        The HTTP request (Accept-Encoding and If-None-Match headers).
+   * @param response       The HTTP response, for the 304 answer.
+   * @return A ResponseEntity containing a page of RentalDTOs and the next cursor.
    */
   @Operation(
     security = @SecurityRequirement(name = "bearerAuth"),
     summary = "Get list of rentals",
-    description = "📚Retrieve list of rentals from database."
+    description = """
+        📚Retrieve one page of rentals from database.
+        \nPass the returned *next_cursor* as *cursor* to get the next page (null on the last page).
+        \nsort : created_at, price, surface or price_per_m2 / order : asc or desc."""
   )
   @ApiResponses(
     value = {
@@ -81,6 +155,10 @@ public class RentalController {
           schema = @Schema(implementation = RentalsResponseDTO.class)
         )
       ),
+      @ApiResponse(
+        responseCode = "304",
+        description = "👌Not modified (If-None-Match)"
+      ),
       @ApiResponse(
         responseCode = "400",
         description = "❌Bad Request",
@@ -104,21 +182,267 @@ public class RentalController {
     }
   )
   @GetMapping("/rentals")
-  public ResponseEntity<RentalsResponseDTO> getAllRentals(
-    Authentication authentication
+  public ResponseEntity<Object> getAllRentals(
+    @Parameter(description = "Page size") @RequestParam(
+      required = false
+    ) Integer limit,
+    @Parameter(description = "Opaque cursor of the next page") @RequestParam(
+      required = false
+    ) String cursor,
+    @RequestParam(defaultValue = "created_at") String sort,
+    @RequestParam(defaultValue = "desc") String order,
+    Authentication authentication,
+    HttpServletRequest request,
+    HttpServletResponse response
   ) {
     String userEmail = authentication.getName();
 
-    List<RentalDTO> rentalDTOs = rentalService.readAllRentalsAsDTO();
+    if (rentalListSnapshotService.isEnabled()) {
+      // Normalized, so that the same page is rendered once
+      int pageSize = rentalService.pageSize(limit);
+      RenderedPage snapshot = rentalListSnapshotService.getPage(
+        String.join(
+          "|",
+          String.valueOf(pageSize),
+          cursor == null ? "" : cursor.trim(),
+          sort,
+          order
+        ),
+        () ->
+          rentalService.readRentalsPageAsDTO(pageSize, cursor, sort, order)
+      );
+      boolean gzip = acceptsGzip(
+        request.getHeader(HttpHeaders.ACCEPT_ENCODING)
+      );
+      String etag = snapshot.getETag(gzip);
+      response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+      if (new ServletWebRequest(request, response).checkNotModified(etag)) {
+        return null;
+      }
+      byte[] bytes = snapshot.getBytes(gzip);
+      ResponseEntity.BodyBuilder builder = ResponseEntity
+        .ok()
+        .contentType(MediaType.APPLICATION_JSON)
+        .contentLength(bytes.length)
+        .eTag(etag);
+      if (gzip) {
+        builder.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+      }
+      return builder.body(bytes);
+    }
 
-    return ResponseEntity.ok(new RentalsResponseDTO(rentalDTOs));
+    // Checked before the page is queried and serialized
+    String etag = "W/\"" + rentalService.readRentalsVersion() + "\"";
+    if (new ServletWebRequest(request, response).checkNotModified(etag)) {
+      return null;
+    }
+    RentalsResponseDTO page = rentalService.readRentalsPageAsDTO(
+      limit,
+      cursor,
+      sort,
+      order
+    );
+
+    return ResponseEntity.ok().eTag(etag).body(page);
+  }
+
+  /**
+   * Exports the whole rental catalog as a stream, one rental per line.
+   *
+   * @param format         The export format, ndjson (default) or csv.
+   * @param authentication The Authentication object containing the user's details.
+   * @return A ResponseEntity streaming the catalog.
+   */
+  @Operation(
+    security = @SecurityRequirement(name = "bearerAuth"),
+    summary = "Export the rentals catalog",
+    description = """
+        📦Stream the whole rentals catalog, one rental per line.
+        \nformat : ndjson (one JSON RentalDTO per line) or csv."""
+  )
+  @ApiResponses(
+    value = {
+      @ApiResponse(
+        responseCode = "200",
+        description = "👍Catalog streamed successfully",
+        content = {
+          @Content(mediaType = "application/x-ndjson"),
+          @Content(mediaType = "text/csv"),
+        }
+      ),
+      @ApiResponse(
+        responseCode = "400",
+        description = "❌Unknown format",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "401",
+        description = "🧙‍♂️unauthorized (no token)",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "403",
+        description = "🧙‍♂️forbidden (no role)",
+        content = @Content(mediaType = "application/json")
+      ),
+    }
+  )
+  @GetMapping("/rentals/export")
+  public ResponseEntity<StreamingResponseBody> exportRentals(
+    @RequestParam(defaultValue = "ndjson") String format,
+    Authentication authentication
+  ) {
+    boolean csv;
+    if ("csv".equalsIgnoreCase(format)) {
+      csv = true;
+    } else if ("ndjson".equalsIgnoreCase(format)) {
+      csv = false;
+    } else {
+      throw new IllegalArgumentException("Invalid export format: " + format);
+    }
+
+    StreamingResponseBody body = out -> rentalService.exportRentals(csv, out);
+
+    return ResponseEntity
+      .ok()
+      .contentType(
+        csv
+          ? MediaType.parseMediaType("text/csv;charset=UTF-8")
+          : MediaType.APPLICATION_NDJSON
+      )
+      .header(
+        HttpHeaders.CONTENT_DISPOSITION,
+        "attachment; filename=\"rentals." + (csv ? "csv" : "ndjson") + "\""
+      )
+      .body(body);
+  }
+
+  /**
+   * Retrieves the rentals changed since a watermark (delta sync).
+   *
+   * @param since          The watermark returned by the previous call, or
+   *                       null for the whole catalog.
+   * @param limit          The maximum number of rentals in the response.
+   * @param authentication The Authentication object containing the user's details.
+   * @return A ResponseEntity containing the changes and the next watermark.
+   */
+  @Operation(
+    security = @SecurityRequirement(name = "bearerAuth"),
+    summary = "Get the rentals changed since a watermark",
+    description = """
+        🔄Rentals created or updated since *since*, and the IDs of the deleted ones.
+        \nPass the returned *watermark* as *since* on the next poll (none for the first one).
+        \nWhile *has_more* is true, call again right away."""
+  )
+  @ApiResponses(
+    value = {
+      @ApiResponse(
+        responseCode = "200",
+        description = "👍Changes retrieved successfully",
+        content = @Content(
+          mediaType = "application/json",
+          schema = @Schema(implementation = RentalChangesDTO.class)
+        )
+      ),
+      @ApiResponse(
+        responseCode = "400",
+        description = "❌Invalid watermark or limit",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "401",
+        description = "🧙‍♂️unauthorized (no token)",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "403",
+        description = "🧙‍♂️forbidden (no role)",
+        content = @Content(mediaType = "application/json")
+      ),
+    }
+  )
+  @GetMapping("/rentals/changes")
+  public ResponseEntity<RentalChangesDTO> getRentalChanges(
+    @Parameter(description = "Watermark of the previous call") @RequestParam(
+      required = false
+    ) String since,
+    @Parameter(description = "Maximum number of rentals") @RequestParam(
+      required = false
+    ) Integer limit,
+    Authentication authentication
+  ) {
+    return ResponseEntity.ok(rentalService.readRentalChanges(since, limit));
+  }
+
+  /**
+   * Searches the rentals by the words of their name or description.
+   *
+   * @param q              The words to search for.
+   * @param limit          The maximum number of rentals in the page.
+   * @param cursor         The next_cursor value of the previous page.
+   * @param authentication The Authentication object containing the user's details.
+   * @return A ResponseEntity containing a page of RentalDTOs, best match first.
+   */
+  @Operation(
+    security = @SecurityRequirement(name = "bearerAuth"),
+    summary = "Search rentals",
+    description = """
+        🔍Rentals whose name or description contains the words of *q*, best match first.
+        \nCase and accents are ignored. Pass the returned *next_cursor* as *cursor* to get the next page."""
+  )
+  @ApiResponses(
+    value = {
+      @ApiResponse(
+        responseCode = "200",
+        description = "👍Search results retrieved successfully",
+        content = @Content(
+          mediaType = "application/json",
+          schema = @Schema(implementation = RentalsResponseDTO.class)
+        )
+      ),
+      @ApiResponse(
+        responseCode = "400",
+        description = "❌Missing query, invalid limit or cursor, or cursor past the results window",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "401",
+        description = "🧙‍♂️unauthorized (no token)",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "403",
+        description = "🧙‍♂️forbidden (no role)",
+        content = @Content(mediaType = "application/json")
+      ),
+    }
+  )
+  @GetMapping("/rentals/search")
+  public ResponseEntity<RentalsResponseDTO> searchRentals(
+    @Parameter(description = "Words to search for") @RequestParam(
+      required = false
+    ) String q,
+    @Parameter(description = "Page size") @RequestParam(
+      required = false
+    ) Integer limit,
+    @Parameter(description = "Opaque cursor of the next page") @RequestParam(
+      required = false
+    ) String cursor,
+    Authentication authentication
+  ) {
+    return ResponseEntity.ok(rentalService.searchRentals(q, limit, cursor));
   }
 
   /**
    * Retrieves the details of a specific rental by its ID.
+   * <p>
+   * The ETag is derived from the version of the rental : with If-None-Match,
+   * only the version is queried, and a match is answered with 304.
    *
    * @param id             The ID of the rental to retrieve.
    * @param authentication The Authentication object containing the user's details.
+   * @param request        The HTTP request (If-None-Match header).
+   * @param response       The HTTP response, for the 304 answer.
    * @return A ResponseEntity containing the RentalDTO of the specified rental.
    */
   @Operation(
@@ -136,6 +460,10 @@ public class RentalController {
           schema = @Schema(implementation = RentalsResponseDTO.class)
         )
       ),
+      @ApiResponse(
+        responseCode = "304",
+        description = "👌Not modified (If-None-Match)"
+      ),
       @ApiResponse(
         responseCode = "400",
         description = "❌Bad Request",
@@ -166,25 +494,99 @@ public class RentalController {
   @GetMapping("/rentals/{id}")
   public ResponseEntity<RentalDTO> getRentalById(
     @PathVariable Integer id,
-    Authentication authentication
+    Authentication authentication,
+    HttpServletRequest request,
+    HttpServletResponse response
   ) {
     String userEmail = authentication.getName();
 
+    if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+      String etag = rentalETag(id, rentalService.readRentalVersion(id));
+      if (new ServletWebRequest(request, response).checkNotModified(etag)) {
+        return null;
+      }
+    }
     RentalDTO rentalDTO = rentalService.readRentalAsDTO(id);
     if (rentalDTO == null) {
       throw new ResourceNotFoundException(
         "Rental with ID " + id + " not found"
       );
     }
-    return ResponseEntity.ok(rentalDTO);
+    return ResponseEntity
+      .ok()
+      .eTag(rentalETag(id, rentalDTO.getVersion()))
+      .body(rentalDTO);
+  }
+
+  /**
+   * Retrieves the processing state of a rental created asynchronously.
+   *
+   * @param id The ID of the rental.
+   * @return A ResponseEntity containing the RentalStatusDTO of the rental.
+   */
+  @Operation(
+    security = @SecurityRequirement(name = "bearerAuth"),
+    summary = "Get the status of {id}",
+    description = """
+        ⏳Processing state of rental #id : READY, PENDING_MEDIA or FAILED.
+        \nA FAILED rental is retried by uploading a picture to *retry_url*."""
+  )
+  @ApiResponses(
+    value = {
+      @ApiResponse(
+        responseCode = "200",
+        description = "👍Status retrieved successfully",
+        content = @Content(
+          mediaType = "application/json",
+          schema = @Schema(implementation = RentalStatusDTO.class)
+        )
+      ),
+      @ApiResponse(
+        responseCode = "401",
+        description = "🧙‍♂️unauthorized (no token)",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "403",
+        description = "🧙‍♂️forbidden (no role)",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "404",
+        description = "🤔Data not found",
+        content = @Content(mediaType = "application/json")
+      ),
+    }
+  )
+  @GetMapping("/rentals/{id}/status")
+  public ResponseEntity<RentalStatusDTO> getRentalStatus(
+    @PathVariable Integer id
+  ) {
+    return ResponseEntity.ok(rentalService.readRentalStatus(id));
   }
 
   /**
    * Handles the creation of a new rental.
+   * <p>
+   * The multipart body is read as it arrives rather than through the
+   * container's multipart support, which would first copy the picture to a
+   * temporary file : the picture part is streamed to ImageStorageService,
+   * which checks and stores it in the same pass.
+   * <p>
+   * With {@code Prefer: respond-async}, the picture is only copied : the
+   * rental is saved as PENDING_MEDIA and 202 is returned with its status
+   * URL, while RentalMediaService stores the picture in the background.
+   * <p>
+   * Instead of a picture part, a {@code picture_key} field may reference a
+   * picture already sent to a signed upload URL (see createUploadUrl).
    *
-   * @param rentalRequestDTO The rental data from the request.
-   * @param authentication   The Authentication object containing the user's details.
+   * @param request   The request whose multipart body holds the rental data.
+   * @param prefer    The Prefer header, respond-async for asynchronous creation.
+   * @param principal The authenticated user, read from the JWT token.
    * @return A ResponseEntity indicating success or failure.
+   * @throws BindException         If a field is missing or invalid.
+   * @throws FileTooLargeException If the request or the picture is too large.
+   * @throws IOException           If the body cannot be read.
    */
   @Operation(
     security = @SecurityRequirement(name = "bearerAuth"),
@@ -192,7 +594,9 @@ public class RentalController {
     description = """
         🆕Registers a new rental (name, email, password).
         \nid will be auto incremented before saving data in database. 
-        \nform-data required fields must be empty.""",
+        \nform-data required fields must be empty.
+        \nWith *Prefer: respond-async*, returns 202 once the rental is saved : follow *status_url* until the picture is READY.
+        \nInstead of a *picture* part, a *picture_key* field may reference a picture sent to a signed upload URL.""",
     requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(
       description = "Register request with name, surface, price, picture url and description",
       required = true,
@@ -212,6 +616,11 @@ public class RentalController {
           schema = @Schema(implementation = RentalsResponseDTO.class)
         )
       ),
+      @ApiResponse(
+        responseCode = "202",
+        description = "⏳Rental saved, picture being stored (Prefer: respond-async)",
+        content = @Content(mediaType = "application/json")
+      ),
       @ApiResponse(
         responseCode = "400",
         description = "❌Field missing",
@@ -227,6 +636,16 @@ public class RentalController {
         description = "🧙‍♂️forbidden (no role)",
         content = @Content(mediaType = "application/json")
       ),
+      @ApiResponse(
+        responseCode = "413",
+        description = "📦Picture too large",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "429",
+        description = "⏳Too many rentals being created (Prefer: respond-async)",
+        content = @Content(mediaType = "application/json")
+      ),
       @ApiResponse(
         responseCode = "500",
         description = "🔧Internal server error",
@@ -239,29 +658,295 @@ public class RentalController {
     consumes = MediaType.MULTIPART_FORM_DATA_VALUE
   )
   public ResponseEntity<Object> createRental(
-    @Valid @ModelAttribute RentalRequestDTO rentalRequestDTO,
-    Authentication authentication
-  ) {
-    String ownerEmail = authentication.getName();
-    rentalService.createRental(rentalRequestDTO, ownerEmail);
+    HttpServletRequest request,
+    @Parameter(description = "respond-async to create the rental asynchronously") @RequestHeader(
+      name = "Prefer",
+      required = false
+    ) String prefer,
+    @AuthenticationPrincipal JwtPrincipal principal
+  ) throws IOException, BindException {
+    boolean async = prefer != null && prefer.contains("respond-async");
+    DataSize maxUploadSize = imageStorageService.getMaxUploadSize();
+    if (
+      request.getContentLengthLong() >
+      maxUploadSize.toBytes() + MAX_FORM_FIELDS_LENGTH
+    ) {
+      // Rejected before reading the body
+      throw new FileTooLargeException(
+        "The picture exceeds the maximum size of " + maxUploadSize
+      );
+    }
+    MultipartReader reader = new MultipartReader(
+      request.getInputStream(),
+      MultipartReader.boundary(request.getContentType())
+    );
+
+    Map<String, String> fields = new HashMap<>();
+    int fieldsLength = 0;
+    String pictureUrl = null;
+    Path spooledPicture = null;
+    try {
+      MultipartReader.Part part;
+      while ((part = reader.nextPart()) != null) {
+        if (part.getFilename() == null) {
+          String value = part.readString(
+            MAX_FORM_FIELDS_LENGTH - fieldsLength
+          );
+          // The limit is in bytes, and a character may take up to four
+          fieldsLength += value.getBytes(StandardCharsets.UTF_8).length;
+          fields.put(part.getName(), value);
+        } else if (
+          "picture".equals(part.getName()) &&
+          !part.getFilename().isEmpty() &&
+          pictureUrl == null &&
+          spooledPicture == null
+        ) {
+          if (async) {
+            spooledPicture =
+              imageStorageService.spoolImage(part.getInputStream());
+          } else {
+            pictureUrl = imageStorageService.saveImage(part.getInputStream());
+          }
+        }
+      }
+      String pictureKey = fields.remove("picture_key");
+      RentalRequestDTO rentalRequestDTO = bindRentalRequest(fields);
+      if (
+        pictureKey != null &&
+        !pictureKey.isEmpty() &&
+        pictureUrl == null &&
+        spooledPicture == null
+      ) {
+        // Already stored : referenced now, nothing left for the background
+        pictureUrl =
+          imageStorageService.attachUpload(
+            uploadTokenUtil.verifyPictureKey(pictureKey, principal.getUserId())
+          );
+      }
+      if (async && pictureUrl == null) {
+        // The spooled picture now belongs to RentalMediaService
+        Path picture = spooledPicture;
+        spooledPicture = null;
+        Rental rental = rentalMediaService.createRental(
+          rentalRequestDTO,
+          picture,
+          principal.getUserId()
+        );
+        return accepted(rental);
+      }
+      rentalService.createRental(
+        rentalRequestDTO,
+        pictureUrl,
+        principal.getUserId()
+      );
+    } catch (IOException | BindException | RuntimeException e) {
+      // The picture is already stored : its reference is given back
+      imageStorageService.releaseImage(pictureUrl);
+      throw e;
+    } finally {
+      if (spooledPicture != null) {
+        Files.deleteIfExists(spooledPicture);
+      }
+    }
 
     return ResponseEntity
       .status(HttpStatus.CREATED)
       .body(Collections.singletonMap("message", "Rental created!"));
   }
 
+  /**
+   * Answers an asynchronous creation with the status URL of the rental.
+   */
+  private ResponseEntity<Object> accepted(Rental rental) {
+    String statusUrl = "/api/rentals/" + rental.getId() + "/status";
+    Map<String, Object> body = new HashMap<>();
+    body.put("message", "Rental accepted!");
+    body.put("id", rental.getId());
+    body.put("status", rental.getMediaStatus());
+    body.put("status_url", statusUrl);
+    return ResponseEntity
+      .status(HttpStatus.ACCEPTED)
+      .location(URI.create(statusUrl))
+      .header("Preference-Applied", "respond-async")
+      .body(body);
+  }
+
+  /**
+   * Binds and validates the text fields of the creation form, like
+   * {@code @Valid @ModelAttribute} does for a parsed multipart request.
+   */
+  private RentalRequestDTO bindRentalRequest(Map<String, String> fields)
+    throws BindException {
+    DataBinder binder = new DataBinder(null, "rentalRequestDTO");
+    binder.setTargetType(ResolvableType.forClass(RentalRequestDTO.class));
+    binder.setValidator(validator);
+    binder.construct(
+      new DataBinder.ValueResolver() {
+        @Override
+        public Object resolveValue(String name, Class<?> type) {
+          return fields.get(name);
+        }
+
+        @Override
+        public Set<String> getNames() {
+          return fields.keySet();
+        }
+      }
+    );
+    if (!binder.getBindingResult().hasErrors()) {
+      binder.validate();
+    }
+    if (binder.getBindingResult().hasErrors()) {
+      throw new BindException(binder.getBindingResult());
+    }
+    return (RentalRequestDTO) binder.getTarget();
+  }
+
+  /**
+   * Hands out a short-lived URL to upload one picture to, without a form
+   * nor a JWT : the picture is then sent as the raw body of a PUT request
+   * (see UploadController), and the returned picture key is given to the
+   * creation or the update of a rental.
+   *
+   * @param principal The authenticated user, read from the JWT token.
+   * @return A ResponseEntity containing the upload URL and its expiry.
+   */
+  @Operation(
+    security = @SecurityRequirement(name = "bearerAuth"),
+    summary = "Get a picture upload URL",
+    description = """
+        🔗Returns a signed, short-lived *upload_url* : PUT the picture to it as the raw body.
+        \nThe *picture_key* returned by the upload is then passed to the rental creation or update."""
+  )
+  @ApiResponses(
+    value = {
+      @ApiResponse(
+        responseCode = "201",
+        description = "👍Upload URL created successfully",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "401",
+        description = "🧙‍♂️unauthorized (no token)",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "403",
+        description = "🧙‍♂️forbidden (no role)",
+        content = @Content(mediaType = "application/json")
+      ),
+    }
+  )
+  @PostMapping("/rentals/uploads")
+  public ResponseEntity<Object> createUploadUrl(
+    @AuthenticationPrincipal JwtPrincipal principal
+  ) {
+    Map<String, Object> body = new HashMap<>();
+    body.put(
+      "upload_url",
+      "/api/uploads/" + uploadTokenUtil.issueUploadToken(principal.getUserId())
+    );
+    body.put("expires_at", uploadTokenUtil.uploadExpiry());
+    body.put("max_size", imageStorageService.getMaxUploadSize().toBytes());
+    return ResponseEntity.status(HttpStatus.CREATED).body(body);
+  }
+
+  /**
+   * Adds pictures to the gallery of a rental, processed in parallel.
+   *
+   * @param id        The ID of the rental.
+   * @param pictures  The uploaded pictures, in gallery order.
+   * @param principal The authenticated user, read from the JWT token.
+   * @return A ResponseEntity containing the URLs of the added pictures.
+   */
+  @Operation(
+    security = @SecurityRequirement(name = "bearerAuth"),
+    summary = "Add pictures to rental {id}",
+    description = """
+        🖼️Adds pictures to the gallery of rental #id (several *pictures* parts).
+        \nIf the rental has no picture yet, the first one becomes its cover."""
+  )
+  @ApiResponses(
+    value = {
+      @ApiResponse(
+        responseCode = "201",
+        description = "👍Pictures added successfully",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "400",
+        description = "❌No picture, too many pictures or invalid file",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "401",
+        description = "🧙‍♂️unauthorized (no token)",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "403",
+        description = "🧙‍♂️forbidden (no role)",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "404",
+        description = "🤔Rental not found",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "413",
+        description = "📦Picture too large",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "429",
+        description = "⏳Too many uploads in progress",
+        content = @Content(mediaType = "application/json")
+      ),
+    }
+  )
+  @PostMapping(
+    value = "/rentals/{id}/pictures",
+    consumes = MediaType.MULTIPART_FORM_DATA_VALUE
+  )
+  public ResponseEntity<Object> addPictures(
+    @PathVariable Integer id,
+    @RequestParam("pictures") List<MultipartFile> pictures,
+    @AuthenticationPrincipal JwtPrincipal principal
+  ) {
+    List<String> urls = rentalPictureService.addPictures(
+      id,
+      pictures,
+      principal.getUserId()
+    );
+
+    Map<String, Object> body = new HashMap<>();
+    body.put("message", "Pictures added!");
+    body.put("pictures", urls);
+    return ResponseEntity.status(HttpStatus.CREATED).body(body);
+  }
+
   /**
    * Updates an existing rental by its ID.
    *
    * @param id               The ID of the rental to update.
    * @param rentalRequestDTO The DTO containing the updated details.
-   * @param authentication   The Authentication object containing the user's details.
+   * @param pictureKey       The key of a picture sent to a signed upload URL,
+   *                         replacing the cover picture (null to keep it).
+   * @param ifMatch          The ETag of the rental as last read, or null to
+   *                         update whatever its version.
+   * @param principal        The authenticated user, read from the JWT token.
    * @return A ResponseEntity indicating success or failure.
+   * @throws PreconditionFailedException If the rental was modified since the
+   *                                     If-Match ETag was read.
    */
   @Operation(
     security = @SecurityRequirement(name = "bearerAuth"),
     summary = "Updating rental {id}",
-    description = "📝Updates rental #id in database.",
+    description = """
+        📝Updates rental #id in database.
+        \nA *picture_key* returned by a signed upload replaces the cover picture.
+        \nWith *If-Match* (ETag of GET /rentals/{id}), a rental modified since is not overwritten (412).""",
     requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(
       description = "Update request with name, surface, price, picture url and description",
       required = true,
@@ -296,6 +981,16 @@ public class RentalController {
         description = "🧙‍♂️forbidden (no role)",
         content = @Content(mediaType = "application/json")
       ),
+      @ApiResponse(
+        responseCode = "409",
+        description = "💥Modified concurrently (without If-Match)",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "412",
+        description = "💥Modified since If-Match was read",
+        content = @Content(mediaType = "application/json")
+      ),
       @ApiResponse(
         responseCode = "500",
         description = "🔧Internal server error",
@@ -310,15 +1005,113 @@ public class RentalController {
   public ResponseEntity<Object> updateRental(
     @PathVariable Integer id,
     @Valid @ModelAttribute RentalRequestDTO rentalRequestDTO,
-    Authentication authentication
+    @Parameter(description = "Key of a picture sent to a signed upload URL") @RequestParam(
+      name = "picture_key",
+      required = false
+    ) String pictureKey,
+    @Parameter(description = "ETag of the rental as last read") @RequestHeader(
+      name = HttpHeaders.IF_MATCH,
+      required = false
+    ) String ifMatch,
+    @AuthenticationPrincipal JwtPrincipal principal
   ) {
-    String ownerEmail = authentication.getName();
-    UserDTO userDTO = userService.readUserByEmailAsDTO(ownerEmail);
+    Long expectedVersion = expectedVersion(id, ifMatch);
+    String pictureUrl = null;
+    if (pictureKey != null && !pictureKey.isEmpty()) {
+      pictureUrl =
+        imageStorageService.attachUpload(
+          uploadTokenUtil.verifyPictureKey(pictureKey, principal.getUserId())
+        );
+    }
+    Rental rental;
+    try {
+      rental =
+        rentalService.updateRental(
+          id,
+          rentalRequestDTO,
+          pictureUrl,
+          expectedVersion,
+          principal.getUserId()
+        );
+    } catch (RuntimeException e) {
+      imageStorageService.releaseImage(pictureUrl);
+      throw e;
+    }
+
+    return ResponseEntity
+      .ok()
+      .eTag(rentalETag(id, rental.getVersion()))
+      .body(Collections.singletonMap("message", "Rental updated!"));
+  }
+
+  /**
+   * Checks whether an Accept-Encoding header accepts gzip : listed, or
+   * covered by *, with a non-zero q-value (gzip;q=0 refuses it).
+   */
+  private static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    Double gzip = null;
+    Double any = null;
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.split(";");
+      String name = parts[0].trim();
+      double quality = 1;
+      for (int i = 1; i < parts.length; i++) {
+        String parameter = parts[i].trim();
+        if (parameter.regionMatches(true, 0, "q=", 0, 2)) {
+          try {
+            quality = Double.parseDouble(parameter.substring(2).trim());
+          } catch (NumberFormatException e) {
+            // Invalid weight : the coding is not accepted
+            quality = 0;
+          }
+        }
+      }
+      if (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip")) {
+        gzip = quality;
+      } else if (name.equals("*")) {
+        any = quality;
+      }
+    }
+    Double weight = gzip != null ? gzip : any;
+    return weight != null && weight > 0;
+  }
 
-    rentalService.updateRental(id, rentalRequestDTO, userDTO.getId());
+  /**
+   * Builds the strong ETag of a rental from its version.
+   */
+  private static String rentalETag(Integer id, Long version) {
+    return "\"" + id + "-" + version + "\"";
+  }
 
-    return ResponseEntity.ok(
-      Collections.singletonMap("message", "Rental updated!")
+  /**
+   * Reads the version expected by an If-Match header.
+   *
+   * @return The version, or null without If-Match or with If-Match: *.
+   * @throws PreconditionFailedException If no ETag of the header is one of
+   *                                     the rental (weak ones never match).
+   */
+  private static Long expectedVersion(Integer id, String ifMatch) {
+    if (ifMatch == null || ifMatch.trim().equals("*")) {
+      return null;
+    }
+    String prefix = "\"" + id + "-";
+    for (String etag : ifMatch.split(",")) {
+      etag = etag.trim();
+      if (etag.startsWith(prefix) && etag.endsWith("\"")) {
+        try {
+          return Long.valueOf(
+            etag.substring(prefix.length(), etag.length() - 1)
+          );
+        } catch (NumberFormatException e) {
+          // Not an ETag of a rental : the next one is tried
+        }
+      }
+    }
+    throw new PreconditionFailedException(
+      "If-Match does not match the rental with ID " + id
     );
   }
 }
@@ -0,0 +1,128 @@
+package com.chatop.controller;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.chatop.exception.FileTooLargeException;
+import com.chatop.service.ImageStorageService;
+import com.chatop.util.UploadTokenUtil;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Controller receiving the pictures sent to the signed upload URLs.
+ * <p>
+ * The URL is handed out by RentalController and authorizes the upload by
+ * itself : no JWT is parsed, no multipart body and no form is read, the
+ * request body is the image and is streamed straight to
+ * ImageStorageService. The returned picture key is then given to the
+ * creation or the update of a rental.
+ */
+@RestController
+@Tag(
+  name = "2. Rental Controller",
+  description = "Create or modify a rental item, get one particular item or whole list"
+)
+@RequestMapping("/api/uploads")
+public class UploadController {
+
+  private final ImageStorageService imageStorageService;
+  private final UploadTokenUtil uploadTokenUtil;
+
+  /**
+   * Constructs the UploadController.
+   *
+   * @param imageStorageService The service storing the pictures.
+   * @param uploadTokenUtil     The signer of the upload URLs.
+   */
+  public UploadController(
+    ImageStorageService imageStorageService,
+    UploadTokenUtil uploadTokenUtil
+  ) {
+    this.imageStorageService = imageStorageService;
+    this.uploadTokenUtil = uploadTokenUtil;
+  }
+
+  /**
+   * Stores the picture sent as the body of the request.
+   *
+   * @param token   The signed token of the upload URL.
+   * @param request The request whose body is the picture.
+   * @return A ResponseEntity containing the key of the stored picture.
+   * @throws AccessDeniedException If the token is invalid or expired.
+   * @throws FileTooLargeException If the picture is too large.
+   * @throws IOException           If the body cannot be read.
+   */
+  @Operation(
+    security = {},
+    summary = "Upload a picture to a signed URL",
+    description = """
+        ⬆️Stores the picture sent as the raw request body (no form, no token header).
+        \nThe URL comes from *POST /api/rentals/uploads* ; pass the returned *picture_key* to the rental creation or update."""
+  )
+  @ApiResponses(
+    value = {
+      @ApiResponse(
+        responseCode = "201",
+        description = "👍Picture stored successfully",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "400",
+        description = "❌Invalid file",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "403",
+        description = "🧙‍♂️forbidden (invalid or expired URL)",
+        content = @Content(mediaType = "application/json")
+      ),
+      @ApiResponse(
+        responseCode = "413",
+        description = "📦Picture too large",
+        content = @Content(mediaType = "application/json")
+      ),
+    }
+  )
+  @PutMapping("/{token}")
+  public ResponseEntity<Object> upload(
+    @PathVariable String token,
+    HttpServletRequest request
+  ) throws IOException {
+    Integer userId;
+    try {
+      userId = uploadTokenUtil.verifyUploadToken(token);
+    } catch (IllegalArgumentException e) {
+      throw new AccessDeniedException(e.getMessage());
+    }
+    DataSize maxUploadSize = imageStorageService.getMaxUploadSize();
+    if (request.getContentLengthLong() > maxUploadSize.toBytes()) {
+      // Rejected before reading the body
+      throw new FileTooLargeException(
+        "The picture exceeds the maximum size of " + maxUploadSize
+      );
+    }
+
+    String fileName = imageStorageService.saveUpload(request.getInputStream());
+
+    Map<String, Object> body = new HashMap<>();
+    body.put("message", "Picture uploaded!");
+    body.put("picture_key", uploadTokenUtil.issuePictureKey(userId, fileName));
+    return ResponseEntity.status(HttpStatus.CREATED).body(body);
+  }
+}
@@ -94,6 +94,11 @@ public class UserController {
         description = "❌User name, email & password required",
         content = @Content(mediaType = "application/json")
       ),
+      @ApiResponse(
+        responseCode = "429",
+        description = "⏳Too many requests, retry after the Retry-After delay",
+        content = @Content(mediaType = "application/json")
+      ),
       @ApiResponse(
         responseCode = "500",
         description = "🔧Internal server error",
@@ -105,14 +110,7 @@ public class UserController {
   public ResponseEntity<LoginResponseDTO> registerUser(
     @Valid @RequestBody UserRequestDTO userRequestDTO
   ) {
-    User createdUser = userService.createUser(userRequestDTO);
-    if (createdUser == null) {
-      throw new RuntimeException("User creation failed.");
-    }
-    LoginRequestDTO loginRequestDTO = new LoginRequestDTO();
-    loginRequestDTO.setEmail(createdUser.getEmail());
-    loginRequestDTO.setPassword(userRequestDTO.getPassword());
-    String token = userService.authenticateUser(loginRequestDTO);
+    String token = userService.registerUser(userRequestDTO);
     return ResponseEntity.ok(new LoginResponseDTO(token));
   }
 
@@ -164,6 +162,11 @@ public class UserController {
         description = "🕵🏻User not found in database",
         content = @Content(mediaType = "application/json")
       ),
+      @ApiResponse(
+        responseCode = "429",
+        description = "⏳Too many requests, retry after the Retry-After delay",
+        content = @Content(mediaType = "application/json")
+      ),
       @ApiResponse(
         responseCode = "500",
         description = "🔧Internal server error",
@@ -0,0 +1,125 @@
+package com.chatop.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * DTO reporting the progress or the result of an orphan image collection.
+ */
+public class ImageGcReportDTO {
+
+  /** running, completed or failed. */
+  private String status;
+
+  @JsonProperty("dry_run")
+  private boolean dryRun;
+
+  @JsonProperty("started_at")
+  private LocalDateTime startedAt;
+
+  @JsonProperty("finished_at")
+  private LocalDateTime finishedAt;
+
+  /** Number of stored images found referenced by RENTALS or PICTURES. */
+  private long referenced;
+
+  /** Number of stored images walked (originals and variants). */
+  private long scanned;
+
+  /** Number of unreferenced images older than the grace period. */
+  private long orphans;
+
+  /** Number of orphans deleted (0 in dry-run mode). */
+  private long deleted;
+
+  /** Number of orphans referenced again before their deletion, kept. */
+  private long rereferenced;
+
+  /** Size of the orphans, in bytes (deleted, or to delete in dry-run mode). */
+  @JsonProperty("orphan_bytes")
+  private long orphanBytes;
+
+  /** First orphan keys found, to review a dry run. */
+  @JsonProperty("orphan_sample")
+  private List<String> orphanSample;
+
+  private String error;
+
+  public ImageGcReportDTO(
+    String status,
+    boolean dryRun,
+    LocalDateTime startedAt,
+    LocalDateTime finishedAt,
+    long referenced,
+    long scanned,
+    long orphans,
+    long deleted,
+    long rereferenced,
+    long orphanBytes,
+    List<String> orphanSample,
+    String error
+  ) {
+    this.status = status;
+    this.dryRun = dryRun;
+    this.startedAt = startedAt;
+    this.finishedAt = finishedAt;
+    this.referenced = referenced;
+    this.scanned = scanned;
+    this.orphans = orphans;
+    this.deleted = deleted;
+    this.rereferenced = rereferenced;
+    this.orphanBytes = orphanBytes;
+    this.orphanSample = orphanSample;
+    this.error = error;
+  }
+
+  public String getStatus() {
+    return status;
+  }
+
+  public boolean isDryRun() {
+    return dryRun;
+  }
+
+  public LocalDateTime getStartedAt() {
+    return startedAt;
+  }
+
+  public LocalDateTime getFinishedAt() {
+    return finishedAt;
+  }
+
+  public long getReferenced() {
+    return referenced;
+  }
+
+  public long getScanned() {
+    return scanned;
+  }
+
+  public long getOrphans() {
+    return orphans;
+  }
+
+  public long getDeleted() {
+    return deleted;
+  }
+
+  public long getRereferenced() {
+    return rereferenced;
+  }
+
+  public long getOrphanBytes() {
+    return orphanBytes;
+  }
+
+  public List<String> getOrphanSample() {
+    return orphanSample;
+  }
+
+  public String getError() {
+    return error;
+  }
+}
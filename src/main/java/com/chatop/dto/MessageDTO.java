@@ -0,0 +1,87 @@
+package com.chatop.dto;
+
+import java.time.LocalDateTime;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Data Transfer Object (DTO) for transferring message data.
+ */
+public class MessageDTO {
+
+  private Integer id;
+
+  @JsonProperty("rental_id")
+  private Integer rentalId;
+
+  @JsonProperty("user_id")
+  private Integer userId;
+
+  private String message;
+
+  @JsonProperty("created_at")
+  private LocalDateTime createdAt;
+
+  /**
+   * Constructs a MessageDTO with all fields.
+   *
+   * @param id The message ID.
+   * @param rentalId The ID of the rental the message is about.
+   * @param userId The ID of the user who sent the message.
+   * @param message The content of the message.
+   * @param createdAt The creation timestamp of the message.
+   */
+  public MessageDTO(
+    Integer id,
+    Integer rentalId,
+    Integer userId,
+    String message,
+    LocalDateTime createdAt
+  ) {
+    this.id = id;
+    this.rentalId = rentalId;
+    this.userId = userId;
+    this.message = message;
+    this.createdAt = createdAt;
+  }
+
+  public Integer getId() {
+    return id;
+  }
+
+  public void setId(Integer id) {
+    this.id = id;
+  }
+
+  public Integer getRentalId() {
+    return rentalId;
+  }
+
+  public void setRentalId(Integer rentalId) {
+    this.rentalId = rentalId;
+  }
+
+  public Integer getUserId() {
+    return userId;
+  }
+
+  public void setUserId(Integer userId) {
+    this.userId = userId;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public void setMessage(String message) {
+    this.message = message;
+  }
+
+  public LocalDateTime getCreatedAt() {
+    return createdAt;
+  }
+
+  public void setCreatedAt(LocalDateTime createdAt) {
+    this.createdAt = createdAt;
+  }
+}
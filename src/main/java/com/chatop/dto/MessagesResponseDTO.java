@@ -0,0 +1,38 @@
+package com.chatop.dto;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Wrapper class for encapsulating a page of messages in a response object.
+ */
+public class MessagesResponseDTO {
+
+  private List<MessageDTO> messages;
+
+  /** Opaque cursor of the next page, null when the last page is reached. */
+  @JsonProperty("next_cursor")
+  private String nextCursor;
+
+  public MessagesResponseDTO(List<MessageDTO> messages, String nextCursor) {
+    this.messages = messages;
+    this.nextCursor = nextCursor;
+  }
+
+  public List<MessageDTO> getMessages() {
+    return messages;
+  }
+
+  public void setMessages(List<MessageDTO> messages) {
+    this.messages = messages;
+  }
+
+  public String getNextCursor() {
+    return nextCursor;
+  }
+
+  public void setNextCursor(String nextCursor) {
+    this.nextCursor = nextCursor;
+  }
+}
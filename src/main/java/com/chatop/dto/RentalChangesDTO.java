@@ -0,0 +1,68 @@
+package com.chatop.dto;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The rentals changed since a watermark, for the delta sync of the clients.
+ */
+public class RentalChangesDTO {
+
+  /** Rentals created or updated since the watermark, oldest change first. */
+  private List<RentalDTO> rentals;
+
+  /** IDs of the rentals deleted since the watermark. */
+  private List<Integer> deleted;
+
+  /** Opaque watermark to send as since with the next request. */
+  private String watermark;
+
+  /** true when more changes are waiting : request again right away. */
+  @JsonProperty("has_more")
+  private boolean hasMore;
+
+  public RentalChangesDTO(
+    List<RentalDTO> rentals,
+    List<Integer> deleted,
+    String watermark,
+    boolean hasMore
+  ) {
+    this.rentals = rentals;
+    this.deleted = deleted;
+    this.watermark = watermark;
+    this.hasMore = hasMore;
+  }
+
+  public List<RentalDTO> getRentals() {
+    return rentals;
+  }
+
+  public void setRentals(List<RentalDTO> rentals) {
+    this.rentals = rentals;
+  }
+
+  public List<Integer> getDeleted() {
+    return deleted;
+  }
+
+  public void setDeleted(List<Integer> deleted) {
+    this.deleted = deleted;
+  }
+
+  public String getWatermark() {
+    return watermark;
+  }
+
+  public void setWatermark(String watermark) {
+    this.watermark = watermark;
+  }
+
+  public boolean isHasMore() {
+    return hasMore;
+  }
+
+  public void setHasMore(boolean hasMore) {
+    this.hasMore = hasMore;
+  }
+}
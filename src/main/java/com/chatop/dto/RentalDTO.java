@@ -1,7 +1,10 @@
 package com.chatop.dto;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
@@ -24,6 +27,14 @@ public class RentalDTO {
   @JsonProperty("updated_at")
   private LocalDateTime updatedAt;
 
+  // Gallery, only read for a single rental : the list carries the cover only
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private List<String> pictures;
+
+  // Sent as the ETag header, not in the body
+  @JsonIgnore
+  private Long version;
+
   /**
    * Constructs a RentalDTO with all fields.
    *
@@ -59,6 +70,46 @@ public class RentalDTO {
     this.updatedAt = updatedAt;
   }
 
+  /**
+   * Constructs a RentalDTO with all fields and the version of the rental.
+   *
+   * @param id The rental ID.
+   * @param name The rental name.
+   * @param surface The surface of the rental in square meters.
+   * @param price The rental price.
+   * @param picture The URL of the rental's picture.
+   * @param description The description of the rental.
+   * @param ownerId The owner's ID.
+   * @param createdAt The creation timestamp of the rental.
+   * @param updatedAt The last updated timestamp of the rental.
+   * @param version The version of the rental, incremented by each update.
+   */
+  public RentalDTO(
+    Integer id,
+    String name,
+    Integer surface,
+    Integer price,
+    String picture,
+    String description,
+    Integer ownerId,
+    LocalDateTime createdAt,
+    LocalDateTime updatedAt,
+    Long version
+  ) {
+    this(
+      id,
+      name,
+      surface,
+      price,
+      picture,
+      description,
+      ownerId,
+      createdAt,
+      updatedAt
+    );
+    this.version = version;
+  }
+
   /**
    * Converts a Rental entity to a RentalDTO.
    *
@@ -84,7 +135,8 @@ public class RentalDTO {
       rental.getDescription(),
       rental.getOwner().getId(),
       rental.getCreatedAt(),
-      rental.getUpdatedAt()
+      rental.getUpdatedAt(),
+      rental.getVersion()
     );
   }
 
@@ -160,4 +212,20 @@ public class RentalDTO {
   public void setUpdatedAt(LocalDateTime updatedAt) {
     this.updatedAt = updatedAt;
   }
+
+  public List<String> getPictures() {
+    return pictures;
+  }
+
+  public void setPictures(List<String> pictures) {
+    this.pictures = pictures;
+  }
+
+  public Long getVersion() {
+    return version;
+  }
+
+  public void setVersion(Long version) {
+    this.version = version;
+  }
 }
@@ -0,0 +1,54 @@
+package com.chatop.dto;
+
+/**
+ * Sort keys accepted by the paginated rentals list.
+ * Each key is backed by a composite (column, id) index in script.sql.
+ */
+public enum RentalSort {
+  CREATED_AT("created_at", "createdAt"),
+  PRICE("price", "price"),
+  SURFACE("surface", "surface"),
+  PRICE_PER_M2("price_per_m2", "pricePerM2");
+
+  private final String param;
+  private final String property;
+
+  RentalSort(String param, String property) {
+    this.param = param;
+    this.property = property;
+  }
+
+  /**
+   * Gets the name of the sort key as exposed in the API.
+   *
+   * @return The request parameter value.
+   */
+  public String getParam() {
+    return param;
+  }
+
+  /**
+   * Gets the Rental entity property the sort key is bound to.
+   *
+   * @return The entity property name.
+   */
+  public String getProperty() {
+    return property;
+  }
+
+  /**
+   * Resolves a sort key from its request parameter value.
+   *
+   * @param param The request parameter value (e.g. "price_per_m2").
+   * @return The matching RentalSort.
+   * @throws IllegalArgumentException If the value is not a known sort key.
+   */
+  public static RentalSort fromParam(String param) {
+    for (RentalSort sort : values()) {
+      if (sort.param.equalsIgnoreCase(param)) {
+        return sort;
+      }
+    }
+    throw new IllegalArgumentException("Invalid sort key: " + param);
+  }
+}
@@ -0,0 +1,61 @@
+package com.chatop.dto;
+
+import com.chatop.model.MediaStatus;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * DTO reporting the processing state of a rental created asynchronously.
+ */
+public class RentalStatusDTO {
+
+  private Integer id;
+
+  /** READY, PENDING_MEDIA or FAILED. */
+  private MediaStatus status;
+
+  /** Why the picture could not be stored, when FAILED. */
+  private String error;
+
+  /** The URL of the picture, once READY. */
+  private String picture;
+
+  /** Where to retry with a new picture, when FAILED. */
+  @JsonProperty("retry_url")
+  private String retryUrl;
+
+  public RentalStatusDTO(
+    Integer id,
+    MediaStatus status,
+    String error,
+    String picture
+  ) {
+    this.id = id;
+    this.status = status == null ? MediaStatus.READY : status;
+    this.error = error;
+    this.picture = picture;
+    this.retryUrl =
+      this.status == MediaStatus.FAILED
+        ? "/api/rentals/" + id + "/pictures"
+        : null;
+  }
+
+  public Integer getId() {
+    return id;
+  }
+
+  public MediaStatus getStatus() {
+    return status;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  public String getPicture() {
+    return picture;
+  }
+
+  public String getRetryUrl() {
+    return retryUrl;
+  }
+}
@@ -2,6 +2,8 @@ package com.chatop.dto;
 
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 /**
  * Wrapper class for encapsulating a list of rentals in a response object.
  */
@@ -9,8 +11,17 @@ public class RentalsResponseDTO {
 
   private List<RentalDTO> rentals;
 
+  /** Opaque cursor of the next page, null when the last page is reached. */
+  @JsonProperty("next_cursor")
+  private String nextCursor;
+
   public RentalsResponseDTO(List<RentalDTO> rentals) {
+    this(rentals, null);
+  }
+
+  public RentalsResponseDTO(List<RentalDTO> rentals, String nextCursor) {
     this.rentals = rentals;
+    this.nextCursor = nextCursor;
   }
 
   public List<RentalDTO> getRentals() {
@@ -20,4 +31,12 @@ public class RentalsResponseDTO {
   public void setRentals(List<RentalDTO> rentals) {
     this.rentals = rentals;
   }
+
+  public String getNextCursor() {
+    return nextCursor;
+  }
+
+  public void setNextCursor(String nextCursor) {
+    this.nextCursor = nextCursor;
+  }
 }
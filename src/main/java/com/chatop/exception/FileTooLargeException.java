@@ -0,0 +1,10 @@
+package com.chatop.exception;
+
+/**
+ * Exception thrown when an uploaded file exceeds the maximum size.
+ */
+public class FileTooLargeException extends FileValidationException {
+    public FileTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -4,15 +4,18 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.authentication.AuthenticationCredentialsNotFoundException;
+import org.springframework.validation.BindException;
 import org.springframework.validation.FieldError;
-import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 
 import io.jsonwebtoken.JwtException;
 
@@ -23,6 +26,21 @@ import io.jsonwebtoken.JwtException;
 @ControllerAdvice
 public class GlobalHandlerException {
 
+  /**
+   * Handles concurrent updates of the same row, without If-Match.
+   */
+  @ExceptionHandler(OptimisticLockingFailureException.class)
+  @ResponseStatus(HttpStatus.CONFLICT)
+  public ResponseEntity<Map<String, Object>> handleOptimisticLockingException(
+    OptimisticLockingFailureException ex
+  ) {
+    return buildErrorResponse(
+      "409 - CONFLICT",
+      "The resource was modified concurrently. Please read it and try again.",
+      HttpStatus.CONFLICT
+    );
+  }
+
   /**
    * Handles database access errors.
    */
@@ -70,11 +88,12 @@ public class GlobalHandlerException {
 
   /**
    * Handles validation errors for DTOs.
+   * MethodArgumentNotValidException (@Valid) is a BindException.
    */
-  @ExceptionHandler(MethodArgumentNotValidException.class)
+  @ExceptionHandler(BindException.class)
   @ResponseStatus(HttpStatus.BAD_REQUEST)
   public ResponseEntity<Map<String, Object>> handleValidationErrors(
-    MethodArgumentNotValidException ex
+    BindException ex
   ) {
     Map<String, String> fieldErrors = new HashMap<>();
     for (FieldError error : ex.getBindingResult().getFieldErrors()) {
@@ -90,6 +109,38 @@ public class GlobalHandlerException {
     return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
   }
 
+  /**
+   * Handles uploads exceeding the maximum size.
+   */
+  @ExceptionHandler(
+    { FileTooLargeException.class, MaxUploadSizeExceededException.class }
+  )
+  @ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+  public ResponseEntity<Map<String, Object>> handleFileTooLargeException(
+    Exception ex
+  ) {
+    return buildErrorResponse(
+      "413 - PAYLOAD_TOO_LARGE",
+      ex.getMessage(),
+      HttpStatus.PAYLOAD_TOO_LARGE
+    );
+  }
+
+  /**
+   * Handles uploaded files that are not accepted images.
+   */
+  @ExceptionHandler(FileValidationException.class)
+  @ResponseStatus(HttpStatus.BAD_REQUEST)
+  public ResponseEntity<Map<String, Object>> handleFileValidationException(
+    FileValidationException ex
+  ) {
+    return buildErrorResponse(
+      "400 - INVALID_FILE",
+      ex.getMessage(),
+      HttpStatus.BAD_REQUEST
+    );
+  }
+
   /**
    * Handles authentication errors.
    */
@@ -150,6 +201,43 @@ public class GlobalHandlerException {
     );
   }
 
+  /**
+   * Handles failed If-Match preconditions.
+   */
+  @ExceptionHandler(PreconditionFailedException.class)
+  @ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+  public ResponseEntity<Map<String, Object>> handlePreconditionFailedException(
+    PreconditionFailedException ex
+  ) {
+    return buildErrorResponse(
+      "412 - PRECONDITION_FAILED",
+      ex.getMessage(),
+      HttpStatus.PRECONDITION_FAILED
+    );
+  }
+
+  /**
+   * Handles saturation errors, telling the client when to retry.
+   */
+  @ExceptionHandler(TooManyRequestsException.class)
+  @ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+  public ResponseEntity<Map<String, Object>> handleTooManyRequestsException(
+    TooManyRequestsException ex
+  ) {
+    ResponseEntity<Map<String, Object>> response = buildErrorResponse(
+      "429 - TOO_MANY_REQUESTS",
+      ex.getMessage(),
+      HttpStatus.TOO_MANY_REQUESTS
+    );
+    return ResponseEntity
+      .status(response.getStatusCode())
+      .header(
+        HttpHeaders.RETRY_AFTER,
+        String.valueOf(ex.getRetryAfterSeconds())
+      )
+      .body(response.getBody());
+  }
+
   /**
    * Handles general exceptions.
    */
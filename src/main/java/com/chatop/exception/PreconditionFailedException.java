@@ -0,0 +1,16 @@
+package com.chatop.exception;
+
+/**
+ * Exception thrown when the If-Match precondition of a request is not met.
+ */
+public class PreconditionFailedException extends RuntimeException {
+
+    /**
+     * Constructs a new PreconditionFailedException with the specified detail message.
+     *
+     * @param message The detail message.
+     */
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,24 @@
+package com.chatop.exception;
+
+/**
+ * Exception thrown when a bounded resource is saturated and the request must be retried later.
+ */
+public class TooManyRequestsException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    /**
+     * Constructs a new TooManyRequestsException.
+     *
+     * @param message           The detail message.
+     * @param retryAfterSeconds The delay the client should wait before retrying, in seconds.
+     */
+    public TooManyRequestsException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -1,5 +1,6 @@
 package com.chatop.filter;
 
+import com.chatop.util.JwtPrincipal;
 import com.chatop.util.JwtUtil;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -18,6 +19,8 @@ import org.springframework.web.filter.OncePerRequestFilter;
  */
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
+  private static final String DEFAULT_ROLE = "ROLE_USER";
+
   private final JwtUtil jwtUtil;
 
   /**
@@ -42,18 +45,19 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
       authorizationHeader != null && authorizationHeader.startsWith("Bearer ")
     ) {
       String token = authorizationHeader.substring(7); // Remove "Bearer " prefix
-      if (jwtUtil.validateToken(token)) {
-        // Extract user email (or other unique identifier) from the token
-        String email = jwtUtil.extractEmail(token);
-
-        // Create an Authentication object and set it in the security context
-        Authentication auth = new UsernamePasswordAuthenticationToken(
-          email,
-          null,
-          Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")) // Example role
-        );
-        SecurityContextHolder.getContext().setAuthentication(auth);
-      }
+      // Verify the token once : user id, email and role are read from its claims
+      JwtPrincipal principal = jwtUtil.verify(token);
+      String role = principal.getRole() != null
+        ? principal.getRole()
+        : DEFAULT_ROLE;
+
+      // Create an Authentication object and set it in the security context
+      Authentication auth = new UsernamePasswordAuthenticationToken(
+        principal,
+        null,
+        Collections.singletonList(new SimpleGrantedAuthority(role))
+      );
+      SecurityContextHolder.getContext().setAuthentication(auth);
     }
 
     // Continue the filter chain
@@ -0,0 +1,13 @@
+package com.chatop.model;
+
+/**
+ * State of the picture of a rental created asynchronously.
+ */
+public enum MediaStatus {
+  /** The picture, if any, is stored (rentals created synchronously). */
+  READY,
+  /** The rental is saved, its picture is still being stored. */
+  PENDING_MEDIA,
+  /** The picture could not be stored : see the media error of the rental. */
+  FAILED,
+}
@@ -7,12 +7,21 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
 
 @Entity
-@Table(name = "MESSAGES")
+@Table(
+  name = "MESSAGES",
+  indexes = {
+    @Index(
+      name = "MESSAGES_rental_id_created_at_index",
+      columnList = "rental_id, created_at, id"
+    ),
+  }
+)
 public class Message {
 
   @Id
@@ -0,0 +1,61 @@
+package com.chatop.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * A stored picture file, named by the SHA-256 digest of its content,
+ * with the number of rentals using it (0 for a signed upload not attached
+ * yet).
+ */
+@Entity
+@Table(
+  name = "PICTURES",
+  indexes = {
+    @Index(
+      name = "PICTURES_ref_count_created_at_index",
+      columnList = "ref_count, created_at"
+    ),
+  }
+)
+public class Picture {
+
+  @Id
+  @Column(name = "file_name", length = 80)
+  private String fileName;
+
+  @Column(name = "ref_count", nullable = false)
+  private int refCount;
+
+  @Column(name = "created_at", nullable = false)
+  private LocalDateTime createdAt;
+
+  public String getFileName() {
+    return fileName;
+  }
+
+  public void setFileName(String fileName) {
+    this.fileName = fileName;
+  }
+
+  public int getRefCount() {
+    return refCount;
+  }
+
+  public void setRefCount(int refCount) {
+    this.refCount = refCount;
+  }
+
+  public LocalDateTime getCreatedAt() {
+    return createdAt;
+  }
+
+  public void setCreatedAt(LocalDateTime createdAt) {
+    this.createdAt = createdAt;
+  }
+}
@@ -1,18 +1,36 @@
 package com.chatop.model;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDateTime;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 
 @Entity
-@Table(name = "RENTALS")
+@Table(
+  name = "RENTALS",
+  indexes = {
+    @Index(name = "RENTALS_created_at_index", columnList = "created_at, id"),
+    @Index(name = "RENTALS_price_index", columnList = "price, id"),
+    @Index(name = "RENTALS_surface_index", columnList = "surface, id"),
+    @Index(name = "RENTALS_price_per_m2_index", columnList = "price_per_m2, id"),
+    @Index(name = "RENTALS_updated_at_index", columnList = "updated_at, id"),
+  }
+)
 public class Rental {
 
   @Id
@@ -20,23 +38,46 @@ public class Rental {
   private Integer id;
 
   private String name;
+
+  // Sort keys of the rentals list : never null, or the cursors would skip rows
+  @Column(nullable = false)
   private Integer surface;
+
+  @Column(nullable = false)
   private Integer price;
+  // Cover picture, the gallery is in RENTAL_PICTURES
   private String picture;
 
   @Column(length = 2000)
   private String description;
 
-  @ManyToOne // Relation avec User
+  // Denormalized price / surface, stored so that it can be indexed for sorting
+  @Column(name = "price_per_m2", precision = 12, scale = 2, nullable = false)
+  private BigDecimal pricePerM2;
+
+  @ManyToOne(fetch = FetchType.LAZY) // Relation avec User, only the id is needed for reads
   @JoinColumn(name = "owner_id", nullable = false)
   private User owner;
 
+  // null for the rentals saved before asynchronous creation : READY
+  @Enumerated(EnumType.STRING)
+  @Column(name = "media_status", length = 20)
+  private MediaStatus mediaStatus;
+
+  @Column(name = "media_error")
+  private String mediaError;
+
   @Column(name = "created_at", nullable = false)
   private LocalDateTime createdAt;
 
   @Column(name = "updated_at")
   private LocalDateTime updatedAt;
 
+  // Incremented by each update : ETag of the rental, checked by If-Match
+  @Version
+  @Column(name = "version", nullable = false)
+  private Long version;
+
   public Integer getId() {
     return id;
   }
@@ -73,10 +114,14 @@ public class Rental {
     return picture;
   }
 
-  public void setPicture(String picture) { //TO DO <List> ?
+  public void setPicture(String picture) {
     this.picture = picture;
   }
 
+  public BigDecimal getPricePerM2() {
+    return pricePerM2;
+  }
+
   public String getDescription() {
     return description;
   }
@@ -93,6 +138,22 @@ public class Rental {
     this.owner = owner;
   }
 
+  public MediaStatus getMediaStatus() {
+    return mediaStatus == null ? MediaStatus.READY : mediaStatus;
+  }
+
+  public void setMediaStatus(MediaStatus mediaStatus) {
+    this.mediaStatus = mediaStatus;
+  }
+
+  public String getMediaError() {
+    return mediaError;
+  }
+
+  public void setMediaError(String mediaError) {
+    this.mediaError = mediaError;
+  }
+
   public LocalDateTime getCreatedAt() {
     return createdAt;
   }
@@ -108,4 +169,34 @@ public class Rental {
   public void setUpdatedAt(LocalDateTime updatedAt) {
     this.updatedAt = updatedAt;
   }
+
+  public Long getVersion() {
+    return version;
+  }
+
+  public void setVersion(Long version) {
+    this.version = version;
+  }
+
+  @PrePersist
+  @PreUpdate
+  private void updatePricePerM2() {
+    pricePerM2 = computePricePerM2(price, surface);
+  }
+
+  /**
+   * Computes the price per square meter as stored in the price_per_m2 column.
+   *
+   * @param price   The rental price.
+   * @param surface The rental surface.
+   * @return The price per m², rounded to 2 decimals, or null if it cannot be computed.
+   */
+  public static BigDecimal computePricePerM2(Integer price, Integer surface) {
+    if (price == null || surface == null || surface == 0) {
+      return null;
+    }
+    return BigDecimal
+      .valueOf(price)
+      .divide(BigDecimal.valueOf(surface), 2, RoundingMode.HALF_UP);
+  }
 }
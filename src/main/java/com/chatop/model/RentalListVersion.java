@@ -0,0 +1,41 @@
+package com.chatop.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * The version of the rentals list, a single row incremented in the
+ * transaction of every rental write : the list ETag, shared by all the
+ * instances.
+ */
+@Entity
+@Table(name = "RENTAL_LIST_VERSION")
+public class RentalListVersion {
+
+  // The id of the single row
+  public static final Integer ID = 1;
+
+  @Id
+  private Integer id;
+
+  @Column(name = "version", nullable = false)
+  private Long version;
+
+  public Integer getId() {
+    return id;
+  }
+
+  public void setId(Integer id) {
+    this.id = id;
+  }
+
+  public Long getVersion() {
+    return version;
+  }
+
+  public void setVersion(Long version) {
+    this.version = version;
+  }
+}
@@ -0,0 +1,85 @@
+package com.chatop.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+
+/**
+ * A picture of the gallery of a rental. The cover stays in RENTALS.picture,
+ * so that the rental list does not read this table.
+ */
+@Entity
+@Table(
+  name = "RENTAL_PICTURES",
+  indexes = {
+    @Index(
+      name = "RENTAL_PICTURES_rental_id_position_index",
+      columnList = "rental_id, position"
+    ),
+  }
+)
+public class RentalPicture {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Integer id;
+
+  @ManyToOne(fetch = FetchType.LAZY) // Relation avec Rental, only the id is needed
+  @JoinColumn(name = "rental_id", nullable = false)
+  private Rental rental;
+
+  @Column(nullable = false)
+  private String url;
+
+  // Order of the picture in the gallery
+  @Column(nullable = false)
+  private int position;
+
+  @Column(name = "created_at", nullable = false)
+  private LocalDateTime createdAt;
+
+  public Integer getId() {
+    return id;
+  }
+
+  public Rental getRental() {
+    return rental;
+  }
+
+  public void setRental(Rental rental) {
+    this.rental = rental;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public void setUrl(String url) {
+    this.url = url;
+  }
+
+  public int getPosition() {
+    return position;
+  }
+
+  public void setPosition(int position) {
+    this.position = position;
+  }
+
+  public LocalDateTime getCreatedAt() {
+    return createdAt;
+  }
+
+  public void setCreatedAt(LocalDateTime createdAt) {
+    this.createdAt = createdAt;
+  }
+}
@@ -0,0 +1,49 @@
+package com.chatop.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * A deleted rental, kept so that the delta sync (GET /api/rentals/changes)
+ * can tell clients to drop it : a rental deletion must insert its tombstone.
+ */
+@Entity
+@Table(
+  name = "RENTAL_TOMBSTONES",
+  indexes = {
+    @Index(
+      name = "RENTAL_TOMBSTONES_deleted_at_index",
+      columnList = "deleted_at, rental_id"
+    ),
+  }
+)
+public class RentalTombstone {
+
+  @Id
+  @Column(name = "rental_id")
+  private Integer rentalId;
+
+  @Column(name = "deleted_at", nullable = false)
+  private LocalDateTime deletedAt;
+
+  public Integer getRentalId() {
+    return rentalId;
+  }
+
+  public void setRentalId(Integer rentalId) {
+    this.rentalId = rentalId;
+  }
+
+  public LocalDateTime getDeletedAt() {
+    return deletedAt;
+  }
+
+  public void setDeletedAt(LocalDateTime deletedAt) {
+    this.deletedAt = deletedAt;
+  }
+}
@@ -6,17 +6,24 @@ import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "USERS")
+@Table(
+  name = "USERS",
+  uniqueConstraints = @UniqueConstraint(
+    name = "USERS_index",
+    columnNames = "email"
+  )
+)
 public class User {
 
   @Id
   @GeneratedValue(strategy = GenerationType.IDENTITY)
   private Integer id;
 
-  @Column(unique = true, nullable = false)
+  @Column(nullable = false)
   private String email;
 
   private String name;
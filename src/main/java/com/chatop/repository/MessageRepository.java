@@ -1,9 +1,14 @@
 package com.chatop.repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import com.chatop.dto.MessageDTO;
 import com.chatop.model.Message;
 
 public interface MessageRepository extends JpaRepository<Message, Integer> {
@@ -11,7 +16,31 @@ public interface MessageRepository extends JpaRepository<Message, Integer> {
   //save() is JPA native method create/update
   //deleteById(ID id) is JPA native method
 
-  List<Message> findByRentalId(Integer rentalId);
+  // Read queries project straight into MessageDTO : m.rental.id and m.user.id
+  // are read from the foreign key columns, no Rental or User entity is loaded.
+  String SELECT_MESSAGE_DTO =
+    "SELECT new com.chatop.dto.MessageDTO(m.id, m.rental.id, m.user.id, " +
+    "m.message, m.createdAt) FROM Message m";
 
-  List<Message> findByUserId(Integer userId);
+  // Keyset pagination on (rental_id, created_at, id) : the order is given by
+  // the Pageable sort, the queries only read one range of the index.
+
+  @Query(SELECT_MESSAGE_DTO + " WHERE m.rental.id = :rentalId")
+  List<MessageDTO> findLatestByRentalId(
+    @Param("rentalId") Integer rentalId,
+    Pageable pageable
+  );
+
+  @Query(
+    SELECT_MESSAGE_DTO +
+    " WHERE m.rental.id = :rentalId " +
+    "AND (m.createdAt < :createdAt " +
+    "OR (m.createdAt = :createdAt AND m.id < :id))"
+  )
+  List<MessageDTO> findByRentalIdBefore(
+    @Param("rentalId") Integer rentalId,
+    @Param("createdAt") LocalDateTime createdAt,
+    @Param("id") Integer id,
+    Pageable pageable
+  );
 }
@@ -0,0 +1,69 @@
+package com.chatop.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.chatop.model.Picture;
+
+import jakarta.persistence.LockModeType;
+
+public interface PictureRepository extends JpaRepository<Picture, String> {
+  //findById(ID id) is JPA native method
+  //deleteById(ID id) is JPA native method
+
+  // Creates the row or increments its count in one statement, so that two
+  // uploads of the same file cannot both insert it. The row stays locked
+  // until the end of the transaction.
+  @Modifying
+  @Query(
+    value = "INSERT INTO PICTURES (file_name, ref_count, created_at) " +
+    "VALUES (:fileName, 1, CURRENT_TIMESTAMP) " +
+    "ON DUPLICATE KEY UPDATE ref_count = ref_count + 1",
+    nativeQuery = true
+  )
+  int acquire(@Param("fileName") String fileName);
+
+  // Records a signed upload waiting for its rental : a row counting 0
+  // rentals, whose age restarts when the same bytes are uploaded again
+  // before being attached. The row stays locked, like acquire.
+  @Modifying
+  @Query(
+    value = "INSERT INTO PICTURES (file_name, ref_count, created_at) " +
+    "VALUES (:fileName, 0, :now) " +
+    "ON DUPLICATE KEY UPDATE created_at = " +
+    "CASE WHEN ref_count = 0 THEN :now ELSE created_at END",
+    nativeQuery = true
+  )
+  int registerPending(
+    @Param("fileName") String fileName,
+    @Param("now") LocalDateTime now
+  );
+
+  // Signed uploads never attached, on the (ref_count, created_at) index
+  @Query(
+    "SELECT p.fileName FROM Picture p " +
+    "WHERE p.refCount = 0 AND p.createdAt < :createdBefore"
+  )
+  List<String> findPendingCreatedBefore(
+    @Param("createdBefore") LocalDateTime createdBefore
+  );
+
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("SELECT p FROM Picture p WHERE p.fileName = :fileName")
+  Optional<Picture> findForUpdate(@Param("fileName") String fileName);
+
+  // The files of a batch that PICTURES references, for the orphan image
+  // collector : primary key lookups
+  @Query("SELECT p.fileName FROM Picture p WHERE p.fileName IN :fileNames")
+  List<String> findFileNamesIn(
+    @Param("fileNames") Collection<String> fileNames
+  );
+}
@@ -0,0 +1,29 @@
+package com.chatop.repository;
+
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.chatop.model.RentalListVersion;
+
+public interface RentalListVersionRepository
+  extends JpaRepository<RentalListVersion, Integer> {
+  //save() is JPA native method create/update
+
+  @Query("SELECT v.version FROM RentalListVersion v WHERE v.id = :id")
+  Optional<Long> findVersionById(@Param("id") Integer id);
+
+  // Only in the transaction of the rental write it accounts for
+  @Transactional(propagation = Propagation.MANDATORY)
+  @Modifying
+  @Query(
+    "UPDATE RentalListVersion v SET v.version = v.version + 1 " +
+    "WHERE v.id = :id"
+  )
+  int increment(@Param("id") Integer id);
+}
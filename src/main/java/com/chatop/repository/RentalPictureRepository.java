@@ -0,0 +1,42 @@
+package com.chatop.repository;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import com.chatop.model.RentalPicture;
+
+import jakarta.persistence.QueryHint;
+
+public interface RentalPictureRepository
+  extends JpaRepository<RentalPicture, Integer> {
+  //save() is JPA native method create/update
+
+  // Gallery of a rental, read from the (rental_id, position) index
+  @Query(
+    "SELECT p.url FROM RentalPicture p WHERE p.rental.id = :rentalId " +
+    "ORDER BY p.position"
+  )
+  List<String> findUrlsByRentalId(@Param("rentalId") Integer rentalId);
+
+  @Query(
+    "SELECT COALESCE(MAX(p.position) + 1, 0) FROM RentalPicture p " +
+    "WHERE p.rental.id = :rentalId"
+  )
+  int nextPosition(@Param("rentalId") Integer rentalId);
+
+  // Picture URLs of every gallery, for the orphan image collector
+  @QueryHints(
+    @QueryHint(
+      name = HibernateHints.HINT_FETCH_SIZE,
+      value = "" + Integer.MIN_VALUE
+    )
+  )
+  @Query("SELECT p.url FROM RentalPicture p")
+  Stream<String> streamUrls();
+}
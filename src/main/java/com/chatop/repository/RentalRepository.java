@@ -1,11 +1,29 @@
 package com.chatop.repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.chatop.dto.RentalDTO;
+import com.chatop.dto.RentalStatusDTO;
+import com.chatop.model.MediaStatus;
 import com.chatop.model.Rental;
 
+import jakarta.persistence.QueryHint;
+
 public interface RentalRepository extends JpaRepository<Rental, Integer> {
   //findById(ID id) is JPA native method
   //findAll() is JPA native method
@@ -14,6 +32,9 @@ public interface RentalRepository extends JpaRepository<Rental, Integer> {
 
   List<Rental> findByOwnerId(Integer ownerId);
 
+  @Query("SELECT r.id FROM Rental r WHERE r.owner.id = :ownerId")
+  List<Integer> findIdsByOwnerId(@Param("ownerId") Integer ownerId);
+
   List<Rental> findByName(String name);
 
   List<Rental> findByNameContaining(String keyword);
@@ -21,5 +42,214 @@ public interface RentalRepository extends JpaRepository<Rental, Integer> {
   List<Rental> findBySurfaceGreaterThanEqual(Integer surface);
 
   List<Rental> findByPriceBetween(Integer minPrice, Integer maxPrice);
+
   //TO DO Find Rental by...
+
+  // Read queries project straight into RentalDTO : r.owner.id is read from the
+  // owner_id column, no User entity is loaded.
+  String SELECT_RENTAL_DTO =
+    "SELECT new com.chatop.dto.RentalDTO(r.id, r.name, r.surface, r.price, " +
+    "r.picture, r.description, r.owner.id, r.createdAt, r.updatedAt, " +
+    "r.version) " +
+    "FROM Rental r";
+
+  @Query(SELECT_RENTAL_DTO + " WHERE r.id = :id")
+  Optional<RentalDTO> findDTOById(@Param("id") Integer id);
+
+  // Conditional GET : compared with If-None-Match before the rental is read
+  @Query("SELECT r.version FROM Rental r WHERE r.id = :id")
+  Optional<Long> findVersionById(@Param("id") Integer id);
+
+  // Keyset pagination : the order (column, id) is given by the Pageable sort,
+  // the queries below only seek past the last row of the previous page.
+
+  @Query(SELECT_RENTAL_DTO)
+  Slice<RentalDTO> findFirstPage(Pageable pageable);
+
+  @Query(
+    SELECT_RENTAL_DTO +
+    " WHERE r.createdAt > :createdAt " +
+    "OR (r.createdAt = :createdAt AND r.id > :id)"
+  )
+  Slice<RentalDTO> findCreatedAtAfter(
+    @Param("createdAt") LocalDateTime createdAt,
+    @Param("id") Integer id,
+    Pageable pageable
+  );
+
+  @Query(
+    SELECT_RENTAL_DTO +
+    " WHERE r.createdAt < :createdAt " +
+    "OR (r.createdAt = :createdAt AND r.id < :id)"
+  )
+  Slice<RentalDTO> findCreatedAtBefore(
+    @Param("createdAt") LocalDateTime createdAt,
+    @Param("id") Integer id,
+    Pageable pageable
+  );
+
+  @Query(
+    SELECT_RENTAL_DTO +
+    " WHERE r.price > :price " +
+    "OR (r.price = :price AND r.id > :id)"
+  )
+  Slice<RentalDTO> findPriceAfter(
+    @Param("price") Integer price,
+    @Param("id") Integer id,
+    Pageable pageable
+  );
+
+  @Query(
+    SELECT_RENTAL_DTO +
+    " WHERE r.price < :price " +
+    "OR (r.price = :price AND r.id < :id)"
+  )
+  Slice<RentalDTO> findPriceBefore(
+    @Param("price") Integer price,
+    @Param("id") Integer id,
+    Pageable pageable
+  );
+
+  @Query(
+    SELECT_RENTAL_DTO +
+    " WHERE r.surface > :surface " +
+    "OR (r.surface = :surface AND r.id > :id)"
+  )
+  Slice<RentalDTO> findSurfaceAfter(
+    @Param("surface") Integer surface,
+    @Param("id") Integer id,
+    Pageable pageable
+  );
+
+  @Query(
+    SELECT_RENTAL_DTO +
+    " WHERE r.surface < :surface " +
+    "OR (r.surface = :surface AND r.id < :id)"
+  )
+  Slice<RentalDTO> findSurfaceBefore(
+    @Param("surface") Integer surface,
+    @Param("id") Integer id,
+    Pageable pageable
+  );
+
+  @Query(
+    SELECT_RENTAL_DTO +
+    " WHERE r.pricePerM2 > :pricePerM2 " +
+    "OR (r.pricePerM2 = :pricePerM2 AND r.id > :id)"
+  )
+  Slice<RentalDTO> findPricePerM2After(
+    @Param("pricePerM2") BigDecimal pricePerM2,
+    @Param("id") Integer id,
+    Pageable pageable
+  );
+
+  @Query(
+    SELECT_RENTAL_DTO +
+    " WHERE r.pricePerM2 < :pricePerM2 " +
+    "OR (r.pricePerM2 = :pricePerM2 AND r.id < :id)"
+  )
+  Slice<RentalDTO> findPricePerM2Before(
+    @Param("pricePerM2") BigDecimal pricePerM2,
+    @Param("id") Integer id,
+    Pageable pageable
+  );
+
+  // Delta sync : keyset over (updated_at, id) in ascending order, up to the
+  // horizon of the changes that may still be committing
+  @Query(
+    SELECT_RENTAL_DTO +
+    " WHERE (r.updatedAt > :updatedAt " +
+    "OR (r.updatedAt = :updatedAt AND r.id > :id)) " +
+    "AND r.updatedAt < :horizon"
+  )
+  Slice<RentalDTO> findUpdatedAfter(
+    @Param("updatedAt") LocalDateTime updatedAt,
+    @Param("id") Integer id,
+    @Param("horizon") LocalDateTime horizon,
+    Pageable pageable
+  );
+
+  // Search index build : the whole table in batches, ordered by id
+  @Query(SELECT_RENTAL_DTO + " WHERE r.id > :id")
+  Slice<RentalDTO> findIdAfter(@Param("id") Integer id, Pageable pageable);
+
+  // Rentals of a search page, in any order
+  @Query(SELECT_RENTAL_DTO + " WHERE r.id IN :ids")
+  List<RentalDTO> findDTOsByIds(@Param("ids") Collection<Integer> ids);
+
+  // Full catalog export : MySQL Connector/J only streams rows one by one
+  // (instead of buffering the whole result set) with fetch size Integer.MIN_VALUE.
+  // The owner stays a lazy proxy : no other query can run on the connection
+  // while the result set is open, and only its id is exported.
+  @QueryHints(
+    @QueryHint(
+      name = HibernateHints.HINT_FETCH_SIZE,
+      value = "" + Integer.MIN_VALUE
+    )
+  )
+  @Query("SELECT r FROM Rental r ORDER BY r.id")
+  Stream<Rental> streamAll();
+
+  // Picture URLs of every rental, for the orphan image collector
+  @QueryHints(
+    @QueryHint(
+      name = HibernateHints.HINT_FETCH_SIZE,
+      value = "" + Integer.MIN_VALUE
+    )
+  )
+  @Query("SELECT r.picture FROM Rental r WHERE r.picture IS NOT NULL")
+  Stream<String> streamPictures();
+
+  @Query(
+    "SELECT new com.chatop.dto.RentalStatusDTO(r.id, r.mediaStatus, " +
+    "r.mediaError, r.picture) FROM Rental r WHERE r.id = :id"
+  )
+  Optional<RentalStatusDTO> findStatusById(@Param("id") Integer id);
+
+  // Asynchronous creation : the state only moves from PENDING_MEDIA, so that
+  // a late worker cannot overwrite a rental already failed or fixed
+  @Transactional
+  @Modifying
+  @Query(
+    "UPDATE Rental r SET r.picture = :picture, r.mediaStatus = :ready, " +
+    "r.mediaError = NULL, r.updatedAt = :now, r.version = r.version + 1 " +
+    "WHERE r.id = :id AND r.mediaStatus = :pending"
+  )
+  int completeMedia(
+    @Param("id") Integer id,
+    @Param("picture") String picture,
+    @Param("now") LocalDateTime now,
+    @Param("ready") MediaStatus ready,
+    @Param("pending") MediaStatus pending
+  );
+
+  @Transactional
+  @Modifying
+  @Query(
+    "UPDATE Rental r SET r.mediaStatus = :failed, r.mediaError = :error, " +
+    "r.updatedAt = :now, r.version = r.version + 1 " +
+    "WHERE r.id = :id AND r.mediaStatus = :pending"
+  )
+  int failMedia(
+    @Param("id") Integer id,
+    @Param("error") String error,
+    @Param("now") LocalDateTime now,
+    @Param("failed") MediaStatus failed,
+    @Param("pending") MediaStatus pending
+  );
+
+  @Transactional
+  @Modifying
+  @Query(
+    "UPDATE Rental r SET r.mediaStatus = :failed, r.mediaError = :error, " +
+    "r.updatedAt = :now, r.version = r.version + 1 " +
+    "WHERE r.mediaStatus = :pending AND r.createdAt < :createdBefore"
+  )
+  int failMediaCreatedBefore(
+    @Param("createdBefore") LocalDateTime createdBefore,
+    @Param("error") String error,
+    @Param("now") LocalDateTime now,
+    @Param("failed") MediaStatus failed,
+    @Param("pending") MediaStatus pending
+  );
 }
@@ -0,0 +1,26 @@
+package com.chatop.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.chatop.model.RentalTombstone;
+
+public interface RentalTombstoneRepository
+  extends JpaRepository<RentalTombstone, Integer> {
+  //save() is JPA native method create/update
+
+  // Delta sync : the window [from, to) of a watermark, on the deleted_at index
+  @Query(
+    "SELECT t.rentalId FROM RentalTombstone t " +
+    "WHERE t.deletedAt >= :from AND t.deletedAt < :to " +
+    "ORDER BY t.deletedAt, t.rentalId"
+  )
+  List<Integer> findRentalIdsDeletedBetween(
+    @Param("from") LocalDateTime from,
+    @Param("to") LocalDateTime to
+  );
+}
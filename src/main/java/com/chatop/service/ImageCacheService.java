@@ -0,0 +1,229 @@
+package com.chatop.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import com.chatop.storage.ImageStore;
+import com.chatop.storage.StoredImage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * In-memory cache of the most requested small images and variants.
+ * <p>
+ * The bytes are held in direct buffers, outside of the heap : a hot set of
+ * several hundred megabytes adds nothing to the work of the garbage collector.
+ * Entries are evicted in least recently used order when the total size
+ * would exceed the budget, and only files up to a maximum size are admitted,
+ * so that a few large originals cannot flush the many small thumbnails.
+ * ImageStorageService invalidates an image (and its variants) when it writes
+ * or deletes it.
+ */
+@Service
+public class ImageCacheService {
+
+  private final ImageStore imageStore;
+  private final long maxBytes;
+  private final long maxEntryBytes;
+
+  // Access-ordered : iteration starts with the least recently used entry
+  private final LinkedHashMap<String, CachedImage> entries =
+    new LinkedHashMap<>(16, 0.75f, true);
+  private long totalBytes;
+  // Incremented by each invalidation, so that a file read before it is not
+  // cached after it
+  private final AtomicLong generation = new AtomicLong();
+
+  private final Counter hitCounter;
+  private final Counter missCounter;
+  private final Counter evictionCounter;
+
+  /**
+   * Constructs the ImageCacheService.
+   *
+   * @param imageStore    The storage of the images.
+   * @param maxSize       The total size of the cached images (0 to disable).
+   * @param maxEntrySize  The size of the largest image admitted in the cache.
+   * @param meterRegistry The registry of the cache metrics.
+   */
+  public ImageCacheService(
+    ImageStore imageStore,
+    @Value("${image.cache.max-size:64MB}") DataSize maxSize,
+    @Value("${image.cache.max-entry-size:512KB}") DataSize maxEntrySize,
+    MeterRegistry meterRegistry
+  ) {
+    this.imageStore = imageStore;
+    this.maxBytes = maxSize.toBytes();
+    this.maxEntryBytes =
+      Math.min(Math.min(maxEntrySize.toBytes(), maxBytes), Integer.MAX_VALUE);
+
+    this.hitCounter =
+      Counter
+        .builder("image.cache.requests")
+        .tag("result", "hit")
+        .register(meterRegistry);
+    this.missCounter =
+      Counter
+        .builder("image.cache.requests")
+        .tag("result", "miss")
+        .register(meterRegistry);
+    this.evictionCounter =
+      Counter
+        .builder("image.cache.evictions")
+        .description("Images evicted to stay within the memory budget")
+        .register(meterRegistry);
+    meterRegistry.gauge("image.cache.size", this, ImageCacheService::size);
+    meterRegistry.gauge(
+      "image.cache.entries",
+      this,
+      ImageCacheService::entryCount
+    );
+  }
+
+  /**
+   * Gets a cached image.
+   *
+   * @param key The key of the image.
+   * @return The cached image, or empty on a miss.
+   */
+  public Optional<CachedImage> get(String key) {
+    CachedImage cached;
+    synchronized (entries) {
+      cached = entries.get(key);
+    }
+    (cached != null ? hitCounter : missCounter).increment();
+    return Optional.ofNullable(cached);
+  }
+
+  /**
+   * Checks whether an image is small enough to be cached.
+   *
+   * @param image The stored image.
+   * @return true if load may cache it.
+   */
+  public boolean isCacheable(StoredImage image) {
+    return image.getLength() > 0 && image.getLength() <= maxEntryBytes;
+  }
+
+  /**
+   * Reads a small image into the cache.
+   *
+   * @param key   The key of the image.
+   * @param image The stored image, as returned by the store.
+   * @return The cached image.
+   * @throws IOException If the image cannot be read.
+   */
+  public CachedImage load(String key, StoredImage image) throws IOException {
+    long loadedGeneration = generation.get();
+    ByteBuffer buffer = ByteBuffer.allocateDirect((int) image.getLength());
+    try (
+      InputStream input = imageStore.open(key);
+      ReadableByteChannel channel = Channels.newChannel(input)
+    ) {
+      while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+        // Read until full
+      }
+    }
+    if (buffer.hasRemaining()) {
+      throw new IOException("Image changed while being cached: " + key);
+    }
+    buffer.flip();
+    CachedImage cached = new CachedImage(image, buffer.asReadOnlyBuffer());
+
+    synchronized (entries) {
+      if (generation.get() != loadedGeneration) {
+        return cached;
+      }
+      CachedImage previous = entries.put(key, cached);
+      if (previous != null) {
+        totalBytes -= previous.getImage().getLength();
+      }
+      totalBytes += image.getLength();
+      Iterator<CachedImage> eldest = entries.values().iterator();
+      while (totalBytes > maxBytes && eldest.hasNext()) {
+        CachedImage evicted = eldest.next();
+        eldest.remove();
+        totalBytes -= evicted.getImage().getLength();
+        evictionCounter.increment();
+      }
+    }
+    return cached;
+  }
+
+  /**
+   * Removes an image and its resized variants ({@code w<width>/<key>}).
+   *
+   * @param key The key of the original image.
+   */
+  public void invalidate(String key) {
+    generation.incrementAndGet();
+    synchronized (entries) {
+      Iterator<Map.Entry<String, CachedImage>> iterator = entries
+        .entrySet()
+        .iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<String, CachedImage> entry = iterator.next();
+        if (
+          entry.getKey().equals(key) || entry.getKey().endsWith("/" + key)
+        ) {
+          totalBytes -= entry.getValue().getImage().getLength();
+          iterator.remove();
+        }
+      }
+    }
+  }
+
+  private long size() {
+    synchronized (entries) {
+      return totalBytes;
+    }
+  }
+
+  private int entryCount() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  /**
+   * An image held in memory : its metadata and a read-only direct buffer.
+   */
+  public static final class CachedImage {
+
+    private final StoredImage image;
+    private final ByteBuffer content;
+
+    private CachedImage(StoredImage image, ByteBuffer content) {
+      this.image = image;
+      this.content = content;
+    }
+
+    public StoredImage getImage() {
+      return image;
+    }
+
+    /**
+     * Gets a view of a part of the content, with its own position.
+     *
+     * @param start The offset of the first byte.
+     * @param count The number of bytes.
+     * @return A read-only buffer of the bytes.
+     */
+    public ByteBuffer slice(long start, long count) {
+      return content.slice((int) start, (int) count);
+    }
+  }
+}
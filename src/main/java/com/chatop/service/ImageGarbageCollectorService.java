@@ -0,0 +1,376 @@
+package com.chatop.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.chatop.dto.ImageGcReportDTO;
+import com.chatop.exception.TooManyRequestsException;
+import com.chatop.repository.PictureRepository;
+import com.chatop.repository.RentalPictureRepository;
+import com.chatop.repository.RentalRepository;
+import com.chatop.storage.ImageStore;
+import com.chatop.storage.StoredImage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Background collector of the orphaned images : files that no rental
+ * references anymore (replaced pictures, failed creations...).
+ * <p>
+ * A run walks the storage as a stream and checks the walked keys against
+ * the database by batches, so that neither side is loaded at once : a batch
+ * is first looked up in PICTURES by primary key, then the keys it does not
+ * reference (legacy files, orphans) are gathered into batches checked
+ * against the covers and galleries, with one read of RENTALS and
+ * RENTAL_PICTURES per batch. An image is an orphan when neither it nor,
+ * for a variant, its original is referenced, and when it is older than the
+ * grace period, which protects the uploads in progress. Deletions go
+ * through ImageStorageService, which checks PICTURES again under lock, and
+ * are paced so that a large collection does not compete with the image
+ * traffic. In dry-run mode, the orphans are only counted and reported.
+ */
+@Service
+public class ImageGarbageCollectorService {
+
+  private static final Logger logger = LoggerFactory.getLogger(
+    ImageGarbageCollectorService.class
+  );
+
+  private static final int ORPHAN_SAMPLE_SIZE = 100;
+  // Keys checked against the database at once
+  private static final int CHECK_BATCH_SIZE = 500;
+  private static final long RETRY_AFTER_SECONDS = 60;
+
+  private final ImageStore imageStore;
+  private final ImageStorageService imageStorageService;
+  private final RentalRepository rentalRepository;
+  private final RentalPictureRepository rentalPictureRepository;
+  private final PictureRepository pictureRepository;
+  private final TransactionTemplate readOnlyTransaction;
+  private final Duration gracePeriod;
+  private final boolean defaultDryRun;
+  private final long pauseNanos;
+  private final Counter deletedCounter;
+  private final ExecutorService executor;
+
+  // Report of the current run, or of the last one
+  private volatile Run current;
+
+  /**
+   * Constructs the ImageGarbageCollectorService.
+   *
+   * @param imageStore              The storage of the images.
+   * @param imageStorageService     The service deleting the images.
+   * @param rentalRepository        The repository of the rentals.
+   * @param rentalPictureRepository The repository of the rental galleries.
+   * @param pictureRepository       The repository of the picture references.
+   * @param transactionManager      The transaction manager of the read streams.
+   * @param gracePeriod             The minimum age of a deleted orphan.
+   * @param defaultDryRun           Whether scheduled runs only report the orphans.
+   * @param maxDeletesPerSecond     The maximum number of orphans handled per second.
+   * @param meterRegistry           The registry of the collector metrics.
+   */
+  public ImageGarbageCollectorService(
+    ImageStore imageStore,
+    ImageStorageService imageStorageService,
+    RentalRepository rentalRepository,
+    RentalPictureRepository rentalPictureRepository,
+    PictureRepository pictureRepository,
+    PlatformTransactionManager transactionManager,
+    @Value("${image.gc.grace-period:24h}") Duration gracePeriod,
+    @Value("${image.gc.dry-run:true}") boolean defaultDryRun,
+    @Value("${image.gc.max-deletes-per-second:20}") int maxDeletesPerSecond,
+    MeterRegistry meterRegistry
+  ) {
+    this.imageStore = imageStore;
+    this.imageStorageService = imageStorageService;
+    this.rentalRepository = rentalRepository;
+    this.rentalPictureRepository = rentalPictureRepository;
+    this.pictureRepository = pictureRepository;
+    this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+    this.readOnlyTransaction.setReadOnly(true);
+    this.gracePeriod = gracePeriod;
+    this.defaultDryRun = defaultDryRun;
+    this.pauseNanos =
+      TimeUnit.SECONDS.toNanos(1) / Math.max(1, maxDeletesPerSecond);
+    this.deletedCounter =
+      Counter
+        .builder("image.gc.deleted")
+        .description("Orphaned images deleted by the collector")
+        .register(meterRegistry);
+    this.executor =
+      Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "image-gc");
+        thread.setDaemon(true);
+        return thread;
+      });
+  }
+
+  /**
+   * Starts a scheduled collection, in the mode set by image.gc.dry-run.
+   * Skipped if a collection is still running.
+   */
+  @Scheduled(cron = "${image.gc.cron:-}")
+  public void scheduledCollect() {
+    try {
+      start(defaultDryRun);
+    } catch (TooManyRequestsException e) {
+      logger.info("Orphan image collection still running, run skipped");
+    }
+  }
+
+  /**
+   * Starts a collection in the background.
+   *
+   * @param dryRun true to only report the orphans, null for the default mode.
+   * @return The report of the started collection.
+   * @throws TooManyRequestsException If a collection is already running.
+   */
+  public synchronized ImageGcReportDTO start(Boolean dryRun) {
+    if (current != null && current.finishedAt == null) {
+      throw new TooManyRequestsException(
+        "An orphan image collection is already running",
+        RETRY_AFTER_SECONDS
+      );
+    }
+    Run run = new Run(dryRun != null ? dryRun : defaultDryRun);
+    current = run;
+    executor.execute(() -> collect(run));
+    return run.toDTO();
+  }
+
+  /**
+   * Gets the report of the running collection, or of the last one.
+   *
+   * @return The report, or empty if no collection has run yet.
+   */
+  public Optional<ImageGcReportDTO> getReport() {
+    Run run = current;
+    return Optional.ofNullable(run == null ? null : run.toDTO());
+  }
+
+  private void collect(Run run) {
+    try {
+      long olderThan = System.currentTimeMillis() - gracePeriod.toMillis();
+      List<String> batch = new ArrayList<>(CHECK_BATCH_SIZE);
+      // Keys not referenced by PICTURES, left to check against the rentals
+      List<String> candidates = new ArrayList<>(CHECK_BATCH_SIZE);
+
+      try (Stream<String> keys = imageStore.list()) {
+        Iterator<String> iterator = keys.iterator();
+        while (iterator.hasNext()) {
+          batch.add(iterator.next());
+          run.scanned++;
+          boolean last = !iterator.hasNext();
+          if (batch.size() == CHECK_BATCH_SIZE || last) {
+            candidates.addAll(notInPictures(run, batch));
+            batch.clear();
+          }
+          if (
+            candidates.size() >= CHECK_BATCH_SIZE ||
+            (last && !candidates.isEmpty())
+          ) {
+            for (String key : notInRentals(run, candidates)) {
+              collectOrphan(run, key, olderThan);
+            }
+            candidates.clear();
+          }
+        }
+      }
+      run.status = "completed";
+      logger.info(
+        "Orphan image collection{}: {} scanned, {} orphans, {} deleted, " +
+        "{} referenced again",
+        run.dryRun ? " (dry run)" : "",
+        run.scanned,
+        run.orphans,
+        run.deleted,
+        run.rereferenced
+      );
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      run.status = "failed";
+      run.error = "Interrupted";
+    } catch (IOException | RuntimeException e) {
+      logger.error("Orphan image collection failed", e);
+      run.status = "failed";
+      run.error = e.getMessage();
+    } finally {
+      run.finishedAt = LocalDateTime.now();
+    }
+  }
+
+  /**
+   * Filters out the keys whose original PICTURES references (uploads not
+   * yet attached included), with primary key lookups.
+   */
+  private List<String> notInPictures(Run run, List<String> keys) {
+    Set<String> originals = new HashSet<>();
+    keys.forEach(key -> originals.add(originalOf(key)));
+    Set<String> referenced = new HashSet<>(
+      readOnlyTransaction.execute(status ->
+        pictureRepository.findFileNamesIn(originals)
+      )
+    );
+    return unreferenced(run, keys, referenced);
+  }
+
+  /**
+   * Filters out the keys whose original a rental cover or gallery
+   * references (last segment of the picture URL, whatever its host), in
+   * one read of RENTALS and RENTAL_PICTURES.
+   */
+  private List<String> notInRentals(Run run, List<String> keys) {
+    Set<String> originals = new HashSet<>();
+    keys.forEach(key -> originals.add(originalOf(key)));
+    Set<String> referenced = new HashSet<>();
+    Consumer<String> check = url -> {
+      String fileName = fileNameOf(url);
+      if (originals.contains(fileName)) {
+        referenced.add(fileName);
+      }
+    };
+    readOnlyTransaction.executeWithoutResult(status -> {
+      try (Stream<String> pictures = rentalRepository.streamPictures()) {
+        pictures.forEach(check);
+      }
+      try (Stream<String> gallery = rentalPictureRepository.streamUrls()) {
+        gallery.forEach(check);
+      }
+    });
+    return unreferenced(run, keys, referenced);
+  }
+
+  private static List<String> unreferenced(
+    Run run,
+    List<String> keys,
+    Set<String> referenced
+  ) {
+    List<String> unreferenced = new ArrayList<>();
+    for (String key : keys) {
+      if (referenced.contains(originalOf(key))) {
+        run.referenced++;
+      } else {
+        unreferenced.add(key);
+      }
+    }
+    return unreferenced;
+  }
+
+  /**
+   * Reports an unreferenced image older than the grace period, and deletes
+   * it unless in dry-run mode. An image referenced again since it was
+   * checked is not deleted, and counted apart.
+   */
+  private void collectOrphan(Run run, String key, long olderThan)
+    throws IOException, InterruptedException {
+    // Paced : each orphan candidate costs a stat and a delete
+    run.nextSlot = Math.max(run.nextSlot, System.nanoTime()) + pauseNanos;
+    TimeUnit.NANOSECONDS.sleep(run.nextSlot - System.nanoTime());
+
+    Optional<StoredImage> image = imageStore.stat(key);
+    if (image.isEmpty() || image.get().getLastModified() > olderThan) {
+      return;
+    }
+    if (!run.dryRun && !imageStorageService.deleteUnreferenced(key)) {
+      // Taken by an upload in the meantime, or already deleted
+      run.rereferenced++;
+      return;
+    }
+    run.orphans++;
+    run.orphanBytes += image.get().getLength();
+    synchronized (run.orphanSample) {
+      if (run.orphanSample.size() < ORPHAN_SAMPLE_SIZE) {
+        run.orphanSample.add(key);
+      }
+    }
+    if (!run.dryRun) {
+      run.deleted++;
+      deletedCounter.increment();
+    }
+  }
+
+  // The original of a variant key (w320/<name>), or the key itself
+  private static String originalOf(String key) {
+    return key.substring(key.indexOf('/') + 1);
+  }
+
+  private static String fileNameOf(String url) {
+    int query = url.indexOf('?');
+    String path = query < 0 ? url : url.substring(0, query);
+    return path.substring(path.lastIndexOf('/') + 1);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Progress of a collection, written by the collector thread only.
+   */
+  private static final class Run {
+
+    private final boolean dryRun;
+    private final LocalDateTime startedAt = LocalDateTime.now();
+    private final List<String> orphanSample = new ArrayList<>();
+    private volatile String status = "running";
+    private volatile LocalDateTime finishedAt;
+    private volatile long referenced;
+    private volatile long scanned;
+    private volatile long orphans;
+    private volatile long deleted;
+    private volatile long rereferenced;
+    private volatile long orphanBytes;
+    private volatile String error;
+    // Pacing of the orphan candidates
+    private long nextSlot = System.nanoTime();
+
+    private Run(boolean dryRun) {
+      this.dryRun = dryRun;
+    }
+
+    private ImageGcReportDTO toDTO() {
+      List<String> sample;
+      synchronized (orphanSample) {
+        sample = List.copyOf(orphanSample);
+      }
+      return new ImageGcReportDTO(
+        status,
+        dryRun,
+        startedAt,
+        finishedAt,
+        referenced,
+        scanned,
+        orphans,
+        deleted,
+        rereferenced,
+        orphanBytes,
+        sample,
+        error
+      );
+    }
+  }
+}
@@ -1,87 +1,475 @@
 package com.chatop.service;
 
 import com.chatop.exception.FileStorageException;
+import com.chatop.exception.FileTooLargeException;
 import com.chatop.exception.FileValidationException;
+import com.chatop.model.Picture;
+import com.chatop.repository.PictureRepository;
+import com.chatop.storage.ImageStore;
+import com.chatop.storage.ImageType;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.util.UUID;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
 /**
  * Service for handling the storage of image files.
+ * <p>
+ * Files are content-addressed : each one is named by the SHA-256 digest of
+ * its bytes, computed while the upload streams to disk, and typed by its
+ * first bytes rather than by the Content-Type sent by the client. A file uploaded
+ * again (the same photo for several listings) is not stored twice, and the
+ * PICTURES table counts the rentals using it, so that a shared file is only
+ * deleted when its last user releases it. A signed upload waits for its
+ * rental with a count of 0, and is deleted once its picture key expired.
  */
 @Service
 public class ImageStorageService {
 
-  @Value("${image.storage.directory:src/main/resources/static/pictures/}")
-  private String storageDirectory;
+  private static final Logger logger = LoggerFactory.getLogger(
+    ImageStorageService.class
+  );
+
+  private static final Pattern DIGEST_FILENAME = Pattern.compile(
+    "[0-9a-f]{64}\\.[a-z0-9]+"
+  );
+
+  private static final int BUFFER_SIZE = 64 * 1024;
 
   @Value("${image.base.url:http://localhost:8080/images/}")
   private String baseUrl;
 
+  @Value("${image.upload.max-size:10MB}")
+  private DataSize maxUploadSize;
+
+  // The lifetime of a picture key : a signed upload is attached before it ends
+  @Value("${image.upload.key-ttl:1h}")
+  private Duration pendingUploadTtl;
+
+  private final ImageStore imageStore;
+  private final ThumbnailService thumbnailService;
+  private final ImageCacheService imageCacheService;
+  private final PictureRepository pictureRepository;
+  private final TransactionTemplate transactionTemplate;
+
+  public ImageStorageService(
+    ImageStore imageStore,
+    ThumbnailService thumbnailService,
+    ImageCacheService imageCacheService,
+    PictureRepository pictureRepository,
+    PlatformTransactionManager transactionManager
+  ) {
+    this.imageStore = imageStore;
+    this.thumbnailService = thumbnailService;
+    this.imageCacheService = imageCacheService;
+    this.pictureRepository = pictureRepository;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+  }
+
   /**
-   * Saves an image file to the configured storage directory and generates its URL.
+   * Saves an uploaded image file (see saveImage(InputStream)).
    *
    * @param file The image file to save.
    * @return The public URL of the saved image.
-   * @throws FileValidationException If the file is invalid.
+   * @throws FileValidationException If the file is not a supported image.
    * @throws FileStorageException    If an error occurs while saving the file.
    */
   public String saveImage(MultipartFile file) {
     if (file.isEmpty()) {
       throw new FileValidationException("File is empty");
     }
-    String contentType = file.getContentType();
-    if (contentType == null || !contentType.startsWith("image/")) {
-      throw new FileValidationException(
-        "The file must be an image. Detected type: " + contentType
-      );
+    try (InputStream input = file.getInputStream()) {
+      return saveImage(input);
+    } catch (IOException e) {
+      throw new FileStorageException("Failed to read the file", e);
     }
+  }
+
+  /**
+   * Saves an image read from a stream and generates its URL, in a single
+   * pass : the format is recognized from the first bytes, and the bytes are
+   * hashed and counted while they are written next to their final location,
+   * so that an oversized or invalid upload is rejected without reading it
+   * to the end. The file is named by its digest and takes one reference on
+   * it ; its resized variants are then generated in the background.
+   *
+   * @param input The content of the image, read to the end on success.
+   * @return The public URL of the saved image.
+   * @throws FileValidationException If the content is not a supported image.
+   * @throws FileTooLargeException   If the content exceeds the maximum size.
+   * @throws FileStorageException    If an error occurs while saving the file.
+   */
+  public String saveImage(InputStream input) {
+    Path tmpPath = null;
+    try {
+      tmpPath = imageStore.createTempFile();
+      String fileName = receive(input, tmpPath);
 
-    String extension = getFileExtension(file.getOriginalFilename());
-    String uniqueFileName = UUID.randomUUID() + "." + extension;
+      // Stored in a short transaction once the upload is complete, so that
+      // no database connection is held while a slow client sends the file
+      Path file = tmpPath;
+      return transactionTemplate.execute(status -> store(fileName, file));
+    } catch (IOException e) {
+      throw new FileStorageException("Failed to save the file", e);
+    } finally {
+      deleteQuietly(tmpPath);
+    }
+  }
 
-    Path directoryPath = Paths.get(storageDirectory);
+  /**
+   * Saves an image sent to a signed upload URL, checked and hashed like
+   * saveImage(InputStream), but without taking a reference on it : the file
+   * is recorded as pending (a PICTURES row counting 0 rentals) and only
+   * referenced once a rental is created or updated with it (see
+   * attachUpload). A pending upload never attached is deleted by
+   * expirePendingUploads once its picture key has expired.
+   *
+   * @param input The content of the image, read to the end on success.
+   * @return The name of the stored file.
+   * @throws FileValidationException If the content is not a supported image.
+   * @throws FileTooLargeException   If the content exceeds the maximum size.
+   * @throws FileStorageException    If an error occurs while saving the file.
+   */
+  public String saveUpload(InputStream input) {
+    Path tmpPath = null;
     try {
-      if (!Files.exists(directoryPath)) {
-        Files.createDirectories(directoryPath);
+      tmpPath = imageStore.createTempFile();
+      String fileName = receive(input, tmpPath);
+
+      Path file = tmpPath;
+      return transactionTemplate.execute(status -> storePending(fileName, file));
+    } catch (IOException e) {
+      throw new FileStorageException("Failed to save the file", e);
+    } finally {
+      deleteQuietly(tmpPath);
+    }
+  }
+
+  /**
+   * Takes one reference on an image stored by saveUpload, for the rental
+   * now using it.
+   *
+   * @param fileName The name returned by saveUpload.
+   * @return The public URL of the image.
+   * @throws FileValidationException If the image is no longer stored.
+   */
+  @Transactional
+  public String attachUpload(String fileName) {
+    if (!DIGEST_FILENAME.matcher(fileName).matches()) {
+      throw new FileValidationException("Invalid upload: " + fileName);
+    }
+    // Locked first, so that a concurrent release cannot delete the file
+    // after the check
+    pictureRepository.acquire(fileName);
+    try {
+      if (imageStore.stat(fileName).isEmpty()) {
+        // Released by its last rental or collected in the meantime
+        throw new FileValidationException(
+          "The uploaded picture has expired, please upload it again"
+        );
       }
     } catch (IOException e) {
-      throw new FileStorageException(
-        "Failed to create storage directory: " + directoryPath,
-        e
+      throw new FileStorageException("Failed to read the file", e);
+    }
+    return baseUrl + fileName;
+  }
+
+  /**
+   * Checks an upload and copies it to a temporary file, in a single pass :
+   * the format is recognized from the first bytes, and the bytes are hashed
+   * and counted while they are written.
+   *
+   * @return The content-addressed name of the file.
+   */
+  private String receive(InputStream input, Path tmpPath) throws IOException {
+    byte[] header = input.readNBytes(ImageType.HEADER_LENGTH);
+    if (header.length == 0) {
+      throw new FileValidationException("File is empty");
+    }
+    ImageType type = ImageType
+      .sniff(header, header.length)
+      .orElseThrow(() ->
+        new FileValidationException(
+          "The file must be a JPEG, PNG, GIF or WebP image"
+        )
       );
+
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+    try (OutputStream output = Files.newOutputStream(tmpPath)) {
+      digest.update(header);
+      output.write(header);
+      long size = header.length;
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int read;
+      while ((read = input.read(buffer)) != -1) {
+        size += read;
+        if (size > maxUploadSize.toBytes()) {
+          throw new FileTooLargeException(
+            "The file exceeds the maximum size of " + maxUploadSize
+          );
+        }
+        digest.update(buffer, 0, read);
+        output.write(buffer, 0, read);
+      }
     }
+    return HexFormat.of().formatHex(digest.digest()) + "." + type.getExtension();
+  }
+
+  /**
+   * Copies an upload to a temporary file, to be saved later by
+   * saveImage(InputStream) once the request has been answered. Only the
+   * format and the size are checked : the upload is neither hashed nor
+   * stored, and no database connection is used.
+   *
+   * @param input The content of the image, read to the end on success.
+   * @return The temporary file, to be deleted by the caller.
+   * @throws FileValidationException If the content is not a supported image.
+   * @throws FileTooLargeException   If the content exceeds the maximum size.
+   * @throws FileStorageException    If an error occurs while copying the file.
+   */
+  public Path spoolImage(InputStream input) {
+    Path tmpPath = null;
+    try {
+      byte[] header = input.readNBytes(ImageType.HEADER_LENGTH);
+      if (header.length == 0) {
+        throw new FileValidationException("File is empty");
+      }
+      if (ImageType.sniff(header, header.length).isEmpty()) {
+        throw new FileValidationException(
+          "The file must be a JPEG, PNG, GIF or WebP image"
+        );
+      }
 
-    Path filePath = directoryPath.resolve(uniqueFileName);
-    try (InputStream inputStream = file.getInputStream()) {
-      Files.copy(inputStream, filePath, StandardCopyOption.REPLACE_EXISTING);
+      tmpPath = imageStore.createTempFile();
+      try (OutputStream output = Files.newOutputStream(tmpPath)) {
+        output.write(header);
+        long size = header.length;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+          size += read;
+          if (size > maxUploadSize.toBytes()) {
+            throw new FileTooLargeException(
+              "The file exceeds the maximum size of " + maxUploadSize
+            );
+          }
+          output.write(buffer, 0, read);
+        }
+      }
+      Path spooled = tmpPath;
+      tmpPath = null;
+      return spooled;
     } catch (IOException e) {
-      throw new FileStorageException(
-        "Failed to save the file: " + filePath.toAbsolutePath(),
-        e
-      );
+      throw new FileStorageException("Failed to save the file", e);
+    } finally {
+      deleteQuietly(tmpPath);
+    }
+  }
+
+  /**
+   * Takes one reference on a file and stores it if it is new.
+   */
+  private String store(String fileName, Path file) {
+    // Locks the PICTURES row : a concurrent release cannot delete the file
+    // between the existence check and the end of the transaction
+    pictureRepository.acquire(fileName);
+    try {
+      if (imageStore.stat(fileName).isEmpty()) {
+        imageStore.put(fileName, file);
+        imageCacheService.invalidate(fileName);
+        thumbnailService.generateAsync(fileName);
+      }
+    } catch (IOException e) {
+      throw new FileStorageException("Failed to save the file", e);
+    }
+    return baseUrl + fileName;
+  }
+
+  /**
+   * Records a pending upload and stores its file if it is new.
+   */
+  private String storePending(String fileName, Path file) {
+    // Locks the PICTURES row, like store
+    pictureRepository.registerPending(fileName, LocalDateTime.now());
+    try {
+      if (imageStore.stat(fileName).isEmpty()) {
+        imageStore.put(fileName, file);
+        imageCacheService.invalidate(fileName);
+        thumbnailService.generateAsync(fileName);
+      }
+    } catch (IOException e) {
+      throw new FileStorageException("Failed to save the file", e);
     }
-    return baseUrl + uniqueFileName;
+    return fileName;
   }
 
   /**
-   * Extracts the file extension from a file name.
+   * Deletes the signed uploads never attached to a rental before their
+   * picture key expired. Independent of the orphan collector and its
+   * dry-run mode : pending uploads are recorded in PICTURES, so the
+   * collector never sees them as orphans.
+   */
+  @Scheduled(fixedDelayString = "${image.upload.sweep-interval:600000}")
+  public void expirePendingUploads() {
+    List<String> fileNames = pictureRepository.findPendingCreatedBefore(
+      LocalDateTime.now().minus(pendingUploadTtl)
+    );
+    int expired = 0;
+    for (String fileName : fileNames) {
+      try {
+        if (
+          Boolean.TRUE.equals(
+            transactionTemplate.execute(status -> expireUpload(fileName))
+          )
+        ) {
+          expired++;
+        }
+      } catch (RuntimeException e) {
+        // Left for the next sweep
+        logger.warn("Pending upload {} could not be deleted", fileName, e);
+      }
+    }
+    if (expired > 0) {
+      logger.info("{} unattached uploads expired", expired);
+    }
+  }
+
+  private boolean expireUpload(String fileName) {
+    Optional<Picture> picture = pictureRepository.findForUpdate(fileName);
+    if (picture.isEmpty() || picture.get().getRefCount() > 0) {
+      // Attached in the meantime
+      return false;
+    }
+    pictureRepository.delete(picture.get());
+    pictureRepository.flush();
+    // Deleted while the row is still locked, like releaseImage
+    deleteFile(fileName);
+    return true;
+  }
+
+  /**
+   * Deletes an image found without any reference by the orphan collector.
+   * A content-addressed file is only deleted if no upload has taken a
+   * reference on it in the meantime : the PICTURES row is created and
+   * locked first, so that a concurrent upload of the same bytes waits and
+   * then writes the file again. Variants are deleted with their original.
    *
-   * @param fileName The file name.
-   * @return The file extension (e.g., "jpg").
-   * @throws FileValidationException If the file name is invalid.
+   * @param key The key of the image (original or variant).
+   * @return true if the image was deleted.
+   * @throws IOException If the image cannot be deleted.
    */
-  private String getFileExtension(String fileName) {
-    if (fileName == null || !fileName.contains(".")) {
-      throw new FileValidationException("Invalid file name: " + fileName);
+  @Transactional
+  public boolean deleteUnreferenced(String key) throws IOException {
+    if (key.contains("/")) {
+      // A variant of a deleted original, generated again if ever needed
+      boolean deleted = imageStore.delete(key);
+      imageCacheService.invalidate(key);
+      return deleted;
+    }
+    if (DIGEST_FILENAME.matcher(key).matches()) {
+      pictureRepository.acquire(key);
+      Picture picture = pictureRepository.findForUpdate(key).orElseThrow();
+      if (picture.getRefCount() > 1) {
+        picture.setRefCount(picture.getRefCount() - 1);
+        return false;
+      }
+      pictureRepository.delete(picture);
+      pictureRepository.flush();
+    }
+    boolean deleted = imageStore.delete(key);
+    thumbnailService.deleteVariants(key);
+    imageCacheService.invalidate(key);
+    return deleted;
+  }
+
+  /**
+   * Gets the maximum size of an uploaded image.
+   *
+   * @return The maximum size.
+   */
+  public DataSize getMaxUploadSize() {
+    return maxUploadSize;
+  }
+
+  /**
+   * Releases one reference on an image saved by saveImage. When no rental
+   * uses it anymore, the file and its resized variants are deleted.
+   * URLs that are not content-addressed files of this store are ignored.
+   *
+   * @param url The public URL returned by saveImage.
+   * @throws FileStorageException If the file cannot be deleted.
+   */
+  @Transactional
+  public void releaseImage(String url) {
+    if (url == null || !url.startsWith(baseUrl)) {
+      return;
+    }
+    String fileName = url.substring(baseUrl.length());
+    if (!DIGEST_FILENAME.matcher(fileName).matches()) {
+      return;
+    }
+
+    Optional<Picture> picture = pictureRepository.findForUpdate(fileName);
+    if (picture.isEmpty()) {
+      return;
+    }
+    if (picture.get().getRefCount() > 1) {
+      picture.get().setRefCount(picture.get().getRefCount() - 1);
+      return;
+    }
+
+    pictureRepository.delete(picture.get());
+    pictureRepository.flush();
+    // Deleted while the row is still locked, so that a concurrent upload of
+    // the same file waits and then writes it again
+    deleteFile(fileName);
+  }
+
+  private void deleteFile(String fileName) {
+    try {
+      imageStore.delete(fileName);
+      thumbnailService.deleteVariants(fileName);
+      imageCacheService.invalidate(fileName);
+    } catch (IOException e) {
+      throw new FileStorageException(
+        "Failed to delete the file: " + fileName,
+        e
+      );
+    }
+  }
+
+  private static void deleteQuietly(Path path) {
+    if (path == null) {
+      return;
+    }
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      // Leftover temporary file, harmless
     }
-    return fileName.substring(fileName.lastIndexOf(".") + 1);
   }
 }
@@ -1,17 +1,32 @@
 package com.chatop.service;
 
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
+import com.chatop.dto.MessageDTO;
+import com.chatop.dto.MessagesResponseDTO;
+
 import com.chatop.exception.InvalidInputException;
 import com.chatop.exception.ResourceNotFoundException;
+import com.chatop.exception.TooManyRequestsException;
 import com.chatop.model.Message;
 import com.chatop.model.Rental;
 import com.chatop.model.User;
 import com.chatop.repository.MessageRepository;
 import com.chatop.repository.RentalRepository;
 import com.chatop.repository.UserRepository;
+import com.chatop.util.CursorUtil;
 
 /**
  * Service for managing messages.
@@ -22,28 +37,46 @@ public class MessageService {
   private final MessageRepository messageRepository;
   private final UserRepository userRepository;
   private final RentalRepository rentalRepository;
+  private final Optional<MessageWriteBehindService> messageWriteBehindService;
+
+  // Newest first, the id breaks ties between messages sent at the same time
+  private static final Comparator<MessageDTO> NEWEST_FIRST = Comparator
+    .comparing(MessageDTO::getCreatedAt)
+    .thenComparing(MessageDTO::getId)
+    .reversed();
+
+  @Value("${message.page.default-limit:20}")
+  private int defaultLimit;
+
+  @Value("${message.page.max-limit:100}")
+  private int maxLimit;
 
   public MessageService(
     MessageRepository messageRepository,
     UserRepository userRepository,
-    RentalRepository rentalRepository
+    RentalRepository rentalRepository,
+    Optional<MessageWriteBehindService> messageWriteBehindService
   ) {
     this.messageRepository = messageRepository;
     this.userRepository = userRepository;
     this.rentalRepository = rentalRepository;
+    this.messageWriteBehindService = messageWriteBehindService;
   }
 
   /**
    * Creates a new message.
+   * In write-behind mode, the message is queued and written asynchronously :
+   * an unknown user or rental is then dropped by the writer instead of
+   * being reported to the caller.
    *
    * @param messageContent The content of the message.
    * @param userId The ID of the user sending the message.
    * @param rentalId The ID of the rental associated with the message.
-   * @return The created message.
    * @throws InvalidInputException If the message content is null or empty.
    * @throws ResourceNotFoundException If the user or rental is not found.
+   * @throws TooManyRequestsException If the write-behind queue is full.
    */
-  public Message createMessage(
+  public void createMessage(
     String messageContent,
     Integer userId,
     Integer rentalId
@@ -54,6 +87,11 @@ public class MessageService {
       );
     }
 
+    if (messageWriteBehindService.isPresent()) {
+      messageWriteBehindService.get().enqueue(messageContent, userId, rentalId);
+      return;
+    }
+
     User user = userRepository
       .findById(userId)
       .orElseThrow(() ->
@@ -73,8 +111,102 @@ public class MessageService {
     message.setCreatedAt(LocalDateTime.now());
     message.setUpdatedAt(LocalDateTime.now());
 
-    return messageRepository.save(message);
+    messageRepository.save(message);
   }
 
-  
+  /**
+   * Reads one page of the inbox of a rental owner : the messages received on
+   * all of their rentals, newest first, using keyset pagination.
+   * Each rental is read with a bounded range scan of its (rental_id,
+   * created_at, id) index (at most limit + 1 rows past the cursor) and the
+   * scans are merged, so the cost of a page does not depend on the number
+   * of messages already received.
+   *
+   * @param ownerId The ID of the rental owner.
+   * @param limit   The maximum number of messages to return (null for default).
+   * @param cursor  The opaque cursor of the previous page (null for the first page).
+   * @return A MessagesResponseDTO holding the page and the next cursor.
+   * @throws IllegalArgumentException If the limit or the cursor is invalid.
+   */
+  public MessagesResponseDTO readInboxAsDTO(
+    Integer ownerId,
+    Integer limit,
+    String cursor
+  ) {
+    int size = limit == null ? defaultLimit : limit;
+    if (size < 1 || size > maxLimit) {
+      throw new IllegalArgumentException(
+        "Limit must be between 1 and " + maxLimit
+      );
+    }
+
+    LocalDateTime createdAt = null;
+    Integer id = null;
+    if (cursor != null && !cursor.isBlank()) {
+      String[] parts = CursorUtil.decode(cursor, 2);
+      try {
+        createdAt = LocalDateTime.parse(parts[0]);
+        id = Integer.valueOf(parts[1]);
+      } catch (DateTimeParseException | NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid cursor: " + cursor);
+      }
+    }
+
+    // One more row than requested tells whether there is a next page
+    Pageable pageable = PageRequest.of(
+      0,
+      size + 1,
+      Sort.by(Sort.Direction.DESC, "createdAt", "id")
+    );
+
+    List<List<MessageDTO>> pages = new ArrayList<>();
+    for (Integer rentalId : rentalRepository.findIdsByOwnerId(ownerId)) {
+      List<MessageDTO> page = createdAt == null
+        ? messageRepository.findLatestByRentalId(rentalId, pageable)
+        : messageRepository.findByRentalIdBefore(
+          rentalId,
+          createdAt,
+          id,
+          pageable
+        );
+      if (!page.isEmpty()) {
+        pages.add(page);
+      }
+    }
+
+    // k-way merge of the pages, each already newest first : the heap holds
+    // the index of each page whose next message is not taken yet
+    int[] positions = new int[pages.size()];
+    PriorityQueue<Integer> heads = new PriorityQueue<>(
+      Math.max(1, pages.size()),
+      (a, b) ->
+        NEWEST_FIRST.compare(
+          pages.get(a).get(positions[a]),
+          pages.get(b).get(positions[b])
+        )
+    );
+    for (int i = 0; i < pages.size(); i++) {
+      heads.add(i);
+    }
+    List<MessageDTO> messages = new ArrayList<>(size + 1);
+    while (messages.size() <= size && !heads.isEmpty()) {
+      int page = heads.poll();
+      messages.add(pages.get(page).get(positions[page]++));
+      if (positions[page] < pages.get(page).size()) {
+        heads.add(page);
+      }
+    }
+
+    String nextCursor = null;
+    if (messages.size() > size) {
+      messages = messages.subList(0, size);
+      MessageDTO last = messages.get(size - 1);
+      nextCursor =
+        CursorUtil.encode(
+          last.getCreatedAt().toString(),
+          String.valueOf(last.getId())
+        );
+    }
+    return new MessagesResponseDTO(messages, nextCursor);
+  }
 }
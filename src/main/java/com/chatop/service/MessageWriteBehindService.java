@@ -0,0 +1,304 @@
+package com.chatop.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.chatop.exception.TooManyRequestsException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Write-behind pipeline for messages (enabled by message.write-behind.enabled).
+ * Messages are queued in memory and inserted by a single writer thread with
+ * JDBC batch inserts, writing the user and rental ids directly (no SELECT).
+ * Each batch runs in a transaction : a refused batch leaves no row behind,
+ * so that replaying it never duplicates a message.
+ * The queue is bounded : when full, new messages are refused with 429.
+ * Only the messages refused by a constraint (unknown user or rental) are
+ * dropped : when the database fails otherwise, the batch is kept and retried
+ * with an exponential backoff, the queue filling up meanwhile.
+ * Queued messages are flushed on graceful shutdown.
+ */
+@Service
+@ConditionalOnProperty(
+  name = "message.write-behind.enabled",
+  havingValue = "true"
+)
+public class MessageWriteBehindService {
+
+  private static final Logger logger = LoggerFactory.getLogger(
+    MessageWriteBehindService.class
+  );
+
+  private static final String INSERT_MESSAGE =
+    "INSERT INTO MESSAGES (rental_id, user_id, message, created_at, updated_at) " +
+    "VALUES (?, ?, ?, ?, ?)";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final BlockingQueue<PendingMessage> queue;
+  private final int batchSize;
+  private final long retryDelay;
+  private final long maxRetryDelay;
+  private final long retryAfterSeconds;
+  private final ScheduledExecutorService writer;
+  private volatile boolean accepting = true;
+
+  // Messages not written yet by the last flush (writer thread only)
+  private final List<PendingMessage> batch = new ArrayList<>();
+  // Current backoff in ms, 0 when the last flush succeeded
+  private long backoff;
+  private long nextAttempt;
+
+  private final Timer flushTimer;
+  private final Counter writtenCounter;
+  private final Counter droppedCounter;
+  private final Counter retriedCounter;
+
+  /**
+   * Constructs the MessageWriteBehindService and starts the writer.
+   *
+   * @param jdbcTemplate       The JDBC template used for batch inserts.
+   * @param transactionManager The transaction manager of the batches.
+   * @param meterRegistry      The registry of the pipeline metrics.
+   * @param queueCapacity      The maximum number of messages waiting to be written.
+   * @param batchSize          The maximum number of messages per batch insert.
+   * @param flushInterval      The delay between two flushes, in ms.
+   * @param retryDelay         The delay before retrying a failed batch, in ms.
+   * @param maxRetryDelay      The maximum delay, doubled at each failure, in ms.
+   * @param retryAfterSeconds  The Retry-After delay sent when the queue is full, in seconds.
+   */
+  public MessageWriteBehindService(
+    JdbcTemplate jdbcTemplate,
+    PlatformTransactionManager transactionManager,
+    MeterRegistry meterRegistry,
+    @Value("${message.write-behind.queue-capacity:10000}") int queueCapacity,
+    @Value("${message.write-behind.batch-size:500}") int batchSize,
+    @Value("${message.write-behind.flush-interval:200}") long flushInterval,
+    @Value("${message.write-behind.retry-delay:500}") long retryDelay,
+    @Value("${message.write-behind.max-retry-delay:30000}") long maxRetryDelay,
+    @Value("${message.write-behind.retry-after:1}") long retryAfterSeconds
+  ) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.batchSize = batchSize;
+    this.retryDelay = retryDelay;
+    this.maxRetryDelay = maxRetryDelay;
+    this.retryAfterSeconds = retryAfterSeconds;
+
+    this.flushTimer =
+      Timer
+        .builder("messages.write_behind.flush")
+        .description("Time to write one batch of messages")
+        .register(meterRegistry);
+    this.writtenCounter =
+      Counter.builder("messages.write_behind.written").register(meterRegistry);
+    this.droppedCounter =
+      Counter
+        .builder("messages.write_behind.dropped")
+        .description("Messages refused by the database (unknown user or rental)")
+        .register(meterRegistry);
+    this.retriedCounter =
+      Counter
+        .builder("messages.write_behind.retried")
+        .description("Messages kept for a retry after a database failure")
+        .register(meterRegistry);
+    meterRegistry.gauge(
+      "messages.write_behind.queue.size",
+      queue,
+      BlockingQueue::size
+    );
+
+    this.writer =
+      Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "message-writer");
+        thread.setDaemon(true);
+        return thread;
+      });
+    this.writer.scheduleWithFixedDelay(
+      this::flush,
+      flushInterval,
+      flushInterval,
+      TimeUnit.MILLISECONDS
+    );
+  }
+
+  /**
+   * Queues a message to be written by the next flush.
+   *
+   * @param messageContent The content of the message.
+   * @param userId         The ID of the user sending the message.
+   * @param rentalId       The ID of the rental associated with the message.
+   * @throws TooManyRequestsException If the queue is full or shutting down.
+   */
+  public void enqueue(String messageContent, Integer userId, Integer rentalId) {
+    PendingMessage message = new PendingMessage(
+      messageContent,
+      userId,
+      rentalId,
+      LocalDateTime.now()
+    );
+    if (!accepting || !queue.offer(message)) {
+      throw new TooManyRequestsException(
+        "Too many messages, please retry later.",
+        retryAfterSeconds
+      );
+    }
+  }
+
+  /**
+   * Writes the messages kept by a failed flush, then every queued message,
+   * by batches of batchSize. Skipped until the backoff of a failure ends.
+   */
+  private void flush() {
+    if (backoff > 0 && System.nanoTime() - nextAttempt < 0) {
+      return;
+    }
+    try {
+      while (!batch.isEmpty() || queue.drainTo(batch, batchSize) > 0) {
+        flushTimer.record(() -> write(batch));
+      }
+      backoff = 0;
+    } catch (RuntimeException e) {
+      // Keeps the batch and the scheduled writer alive
+      retriedCounter.increment(batch.size());
+      backoff =
+        backoff == 0 ? retryDelay : Math.min(backoff * 2, maxRetryDelay);
+      nextAttempt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff);
+      logger.error(
+        "Message flush failed, {} messages retried in {} ms",
+        batch.size(),
+        backoff,
+        e
+      );
+    }
+  }
+
+  /**
+   * Inserts a batch in one transaction, and empties it once committed. If
+   * the batch is refused by a constraint (e.g. a foreign key violation), it
+   * is rolled back and its messages are inserted one by one, the invalid
+   * ones being dropped. Other failures are thrown, with the messages not
+   * written yet left in the batch.
+   */
+  private void write(List<PendingMessage> batch) {
+    try {
+      transactionTemplate.executeWithoutResult(status -> insert(batch));
+      writtenCounter.increment(batch.size());
+      batch.clear();
+    } catch (DataIntegrityViolationException e) {
+      Iterator<PendingMessage> messages = batch.iterator();
+      while (messages.hasNext()) {
+        writeOne(messages.next());
+        messages.remove();
+      }
+    }
+  }
+
+  private void insert(List<PendingMessage> batch) {
+    jdbcTemplate.batchUpdate(
+      INSERT_MESSAGE,
+      batch,
+      batch.size(),
+      (statement, message) -> {
+        Timestamp createdAt = Timestamp.valueOf(message.createdAt);
+        statement.setInt(1, message.rentalId);
+        statement.setInt(2, message.userId);
+        statement.setString(3, message.content);
+        statement.setTimestamp(4, createdAt);
+        statement.setTimestamp(5, createdAt);
+      }
+    );
+  }
+
+  private void writeOne(PendingMessage message) {
+    Timestamp createdAt = Timestamp.valueOf(message.createdAt);
+    try {
+      jdbcTemplate.update(
+        INSERT_MESSAGE,
+        message.rentalId,
+        message.userId,
+        message.content,
+        createdAt,
+        createdAt
+      );
+      writtenCounter.increment();
+    } catch (DataIntegrityViolationException e) {
+      droppedCounter.increment();
+      logger.warn(
+        "Message dropped (user {}, rental {}): {}",
+        message.userId,
+        message.rentalId,
+        e.getMessage()
+      );
+    }
+  }
+
+  /**
+   * Stops accepting messages and writes the queued ones before shutdown.
+   */
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    accepting = false;
+    writer.shutdown();
+    if (!writer.awaitTermination(30, TimeUnit.SECONDS)) {
+      // Still flushing : the writer thread owns the batch, left to it
+      logger.error(
+        "Message writer did not stop, {} queued messages not written",
+        queue.size()
+      );
+      return;
+    }
+    // One last attempt, without waiting for the backoff
+    backoff = 0;
+    flush();
+    if (!batch.isEmpty()) {
+      logger.error("{} messages lost on shutdown", batch.size() + queue.size());
+    }
+  }
+
+  /**
+   * A validated message waiting to be written.
+   */
+  private static final class PendingMessage {
+
+    private final String content;
+    private final Integer userId;
+    private final Integer rentalId;
+    private final LocalDateTime createdAt;
+
+    private PendingMessage(
+      String content,
+      Integer userId,
+      Integer rentalId,
+      LocalDateTime createdAt
+    ) {
+      this.content = content;
+      this.userId = userId;
+      this.rentalId = rentalId;
+      this.createdAt = createdAt;
+    }
+  }
+}
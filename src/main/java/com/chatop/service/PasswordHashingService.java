@@ -0,0 +1,176 @@
+package com.chatop.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import com.chatop.exception.TooManyRequestsException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Service running the BCrypt password work on a dedicated, bounded executor.
+ * Hashing is CPU bound (tens of ms each) : a fixed number of threads and a
+ * bounded queue cap the CPU and request threads a login burst can take.
+ * When the queue is full, the request fails fast with 429 and Retry-After.
+ */
+@Service
+public class PasswordHashingService {
+
+  private final PasswordEncoder passwordEncoder;
+  private final ThreadPoolExecutor executor;
+  private final long retryAfterSeconds;
+
+  private final Timer queueWaitTimer;
+  private final Timer encodeTimer;
+  private final Timer matchesTimer;
+  private final Counter rejectedCounter;
+
+  /**
+   * Constructs the PasswordHashingService.
+   *
+   * @param passwordEncoder   The encoder doing the hashing work.
+   * @param meterRegistry     The registry of the hashing metrics.
+   * @param threads           The number of hashing threads (0 for the number of CPUs).
+   * @param queueCapacity     The number of hashing tasks allowed to wait for a thread.
+   * @param retryAfterSeconds The Retry-After delay sent when saturated, in seconds.
+   */
+  public PasswordHashingService(
+    PasswordEncoder passwordEncoder,
+    MeterRegistry meterRegistry,
+    @Value("${security.password.threads:0}") int threads,
+    @Value("${security.password.queue-capacity:64}") int queueCapacity,
+    @Value("${security.password.retry-after:1}") long retryAfterSeconds
+  ) {
+    this.passwordEncoder = passwordEncoder;
+    this.retryAfterSeconds = retryAfterSeconds;
+
+    int poolSize = threads > 0
+      ? threads
+      : Runtime.getRuntime().availableProcessors();
+    AtomicInteger threadCount = new AtomicInteger();
+    this.executor =
+      new ThreadPoolExecutor(
+        poolSize,
+        poolSize,
+        0,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity),
+        runnable -> {
+          Thread thread = new Thread(
+            runnable,
+            "password-hashing-" + threadCount.incrementAndGet()
+          );
+          thread.setDaemon(true);
+          return thread;
+        },
+        new ThreadPoolExecutor.AbortPolicy()
+      );
+
+    this.queueWaitTimer =
+      Timer
+        .builder("password.hashing.queue.wait")
+        .description("Time spent by hashing tasks waiting for a thread")
+        .register(meterRegistry);
+    this.encodeTimer =
+      Timer
+        .builder("password.hashing.time")
+        .tag("operation", "encode")
+        .register(meterRegistry);
+    this.matchesTimer =
+      Timer
+        .builder("password.hashing.time")
+        .tag("operation", "matches")
+        .register(meterRegistry);
+    this.rejectedCounter =
+      Counter
+        .builder("password.hashing.rejected")
+        .description("Hashing tasks rejected because the queue was full")
+        .register(meterRegistry);
+    meterRegistry.gauge(
+      "password.hashing.queue.size",
+      executor,
+      pool -> pool.getQueue().size()
+    );
+  }
+
+  /**
+   * Hashes a raw password.
+   *
+   * @param rawPassword The password to hash.
+   * @return The BCrypt hash.
+   * @throws TooManyRequestsException If the hashing queue is full.
+   */
+  public String encode(CharSequence rawPassword) {
+    return run(encodeTimer, () -> passwordEncoder.encode(rawPassword));
+  }
+
+  /**
+   * Checks a raw password against a stored hash.
+   *
+   * @param rawPassword     The password to check.
+   * @param encodedPassword The stored BCrypt hash.
+   * @return true if the password matches.
+   * @throws TooManyRequestsException If the hashing queue is full.
+   */
+  public boolean matches(CharSequence rawPassword, String encodedPassword) {
+    return run(
+      matchesTimer,
+      () -> passwordEncoder.matches(rawPassword, encodedPassword)
+    );
+  }
+
+  /**
+   * Runs a hashing task on the executor and waits for its result.
+   */
+  private <T> T run(Timer timer, Callable<T> task) {
+    long submittedAt = System.nanoTime();
+    Future<T> future;
+    try {
+      future =
+        executor.submit(() -> {
+          queueWaitTimer.record(
+            System.nanoTime() - submittedAt,
+            TimeUnit.NANOSECONDS
+          );
+          return timer.recordCallable(task);
+        });
+    } catch (RejectedExecutionException e) {
+      rejectedCounter.increment();
+      throw new TooManyRequestsException(
+        "Too many authentication requests, please retry later.",
+        retryAfterSeconds
+      );
+    }
+
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      future.cancel(true);
+      throw new IllegalStateException("Password hashing interrupted", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      throw new IllegalStateException("Password hashing failed", e.getCause());
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+  }
+}
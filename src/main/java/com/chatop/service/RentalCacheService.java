@@ -0,0 +1,292 @@
+package com.chatop.service;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import com.chatop.dto.RentalDTO;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * In-memory cache of the rentals read one by one (GET /api/rentals/{id}).
+ * <p>
+ * Entries expire after a time to live and are evicted in least recently
+ * used order when their estimated size would exceed the budget. Concurrent
+ * misses of the same rental are coalesced : one request reads the database
+ * and the others wait for its result, so that a listing read by many clients
+ * at once costs a single query. The services writing rentals invalidate
+ * them once their change is committed, and a rental read before an
+ * invalidation is not cached after it.
+ * <p>
+ * The cached RentalDTOs are shared between requests and must not be
+ * modified.
+ */
+@Service
+public class RentalCacheService {
+
+  // Estimated heap size of a RentalDTO without its strings, in bytes
+  private static final int ENTRY_OVERHEAD = 256;
+
+  private final long maxBytes;
+  private final long ttlNanos;
+
+  // Access-ordered : iteration starts with the least recently used entry
+  private final LinkedHashMap<Integer, CachedRental> entries =
+    new LinkedHashMap<>(16, 0.75f, true);
+  private long totalBytes;
+  // Incremented by each invalidation, so that a rental read before it is not
+  // cached after it
+  private final AtomicLong generation = new AtomicLong();
+  private final ConcurrentHashMap<Integer, CompletableFuture<RentalDTO>> loads =
+    new ConcurrentHashMap<>();
+
+  private final Counter hitCounter;
+  private final Counter missCounter;
+  private final Counter coalescedCounter;
+  private final Counter sizeEvictionCounter;
+  private final Counter expiredEvictionCounter;
+  private final Timer loadTimer;
+
+  /**
+   * Constructs the RentalCacheService.
+   *
+   * @param maxSize       The estimated total size of the cached rentals (0 to disable).
+   * @param ttl           The time a rental is served from the cache.
+   * @param meterRegistry The registry of the cache metrics.
+   */
+  public RentalCacheService(
+    @Value("${rental.cache.max-size:16MB}") DataSize maxSize,
+    @Value("${rental.cache.ttl:5m}") Duration ttl,
+    MeterRegistry meterRegistry
+  ) {
+    this.maxBytes = maxSize.toBytes();
+    this.ttlNanos = ttl.toNanos();
+
+    this.hitCounter =
+      Counter
+        .builder("rental.cache.requests")
+        .tag("result", "hit")
+        .register(meterRegistry);
+    this.missCounter =
+      Counter
+        .builder("rental.cache.requests")
+        .tag("result", "miss")
+        .register(meterRegistry);
+    this.coalescedCounter =
+      Counter
+        .builder("rental.cache.coalesced")
+        .description("Misses served by the database read of a concurrent request")
+        .register(meterRegistry);
+    this.sizeEvictionCounter =
+      Counter
+        .builder("rental.cache.evictions")
+        .tag("cause", "size")
+        .register(meterRegistry);
+    this.expiredEvictionCounter =
+      Counter
+        .builder("rental.cache.evictions")
+        .tag("cause", "expired")
+        .register(meterRegistry);
+    this.loadTimer =
+      Timer
+        .builder("rental.cache.load")
+        .description("Time to read a rental missing from the cache")
+        .register(meterRegistry);
+    meterRegistry.gauge("rental.cache.size", this, RentalCacheService::size);
+    meterRegistry.gauge(
+      "rental.cache.entries",
+      this,
+      RentalCacheService::entryCount
+    );
+    meterRegistry.gauge(
+      "rental.cache.hit.ratio",
+      this,
+      RentalCacheService::hitRatio
+    );
+  }
+
+  /**
+   * Gets a rental from the cache, or reads it on a miss.
+   *
+   * @param id     The ID of the rental.
+   * @param loader Reads the rental from the database.
+   * @return The rental, shared : it must not be modified.
+   */
+  public RentalDTO get(Integer id, Supplier<RentalDTO> loader) {
+    if (maxBytes == 0) {
+      return loader.get();
+    }
+    CachedRental cached;
+    synchronized (entries) {
+      cached = entries.get(id);
+      if (cached != null && System.nanoTime() - cached.expiresAt >= 0) {
+        entries.remove(id);
+        totalBytes -= cached.weight;
+        expiredEvictionCounter.increment();
+        cached = null;
+      }
+    }
+    if (cached != null) {
+      hitCounter.increment();
+      return cached.rental;
+    }
+    missCounter.increment();
+
+    CompletableFuture<RentalDTO> load = new CompletableFuture<>();
+    CompletableFuture<RentalDTO> inFlight = loads.putIfAbsent(id, load);
+    if (inFlight != null) {
+      coalescedCounter.increment();
+      return join(inFlight);
+    }
+    long loadedGeneration = generation.get();
+    try {
+      RentalDTO rental = loadTimer.record(loader);
+      put(id, rental, loadedGeneration);
+      load.complete(rental);
+      return rental;
+    } catch (RuntimeException e) {
+      // Not found included : the waiting requests fail the same way
+      load.completeExceptionally(e);
+      throw e;
+    } finally {
+      loads.remove(id, load);
+    }
+  }
+
+  /**
+   * Removes a rental, once its change is committed.
+   *
+   * @param id The ID of the rental.
+   */
+  public void invalidate(Integer id) {
+    generation.incrementAndGet();
+    // Later misses read the database again rather than wait for an older read
+    loads.remove(id);
+    synchronized (entries) {
+      CachedRental removed = entries.remove(id);
+      if (removed != null) {
+        totalBytes -= removed.weight;
+      }
+    }
+  }
+
+  /**
+   * Removes every rental, after a change of several rentals at once.
+   */
+  public void invalidateAll() {
+    generation.incrementAndGet();
+    loads.clear();
+    synchronized (entries) {
+      entries.clear();
+      totalBytes = 0;
+    }
+  }
+
+  private void put(Integer id, RentalDTO rental, long loadedGeneration) {
+    long weight = weight(rental);
+    synchronized (entries) {
+      if (generation.get() != loadedGeneration || weight > maxBytes) {
+        return;
+      }
+      CachedRental previous = entries.put(
+        id,
+        new CachedRental(rental, weight, System.nanoTime() + ttlNanos)
+      );
+      if (previous != null) {
+        totalBytes -= previous.weight;
+      }
+      totalBytes += weight;
+      Iterator<CachedRental> eldest = entries.values().iterator();
+      while (totalBytes > maxBytes && eldest.hasNext()) {
+        CachedRental evicted = eldest.next();
+        eldest.remove();
+        totalBytes -= evicted.weight;
+        sizeEvictionCounter.increment();
+      }
+    }
+  }
+
+  /**
+   * Estimates the heap size of a rental : its strings take two bytes per
+   * character at most.
+   */
+  private static long weight(RentalDTO rental) {
+    long weight =
+      ENTRY_OVERHEAD +
+      2L *
+      (
+        length(rental.getName()) +
+        length(rental.getPicture()) +
+        length(rental.getDescription())
+      );
+    List<String> pictures = rental.getPictures();
+    if (pictures != null) {
+      for (String picture : pictures) {
+        weight += 2L * length(picture) + 48;
+      }
+    }
+    return weight;
+  }
+
+  private static int length(String value) {
+    return value == null ? 0 : value.length();
+  }
+
+  private static RentalDTO join(CompletableFuture<RentalDTO> load) {
+    try {
+      return load.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      throw e;
+    }
+  }
+
+  private long size() {
+    synchronized (entries) {
+      return totalBytes;
+    }
+  }
+
+  private int entryCount() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  private double hitRatio() {
+    double hits = hitCounter.count();
+    double requests = hits + missCounter.count();
+    return requests == 0 ? 0 : hits / requests;
+  }
+
+  /**
+   * A cached rental, with its estimated size and its expiry.
+   */
+  private static final class CachedRental {
+
+    private final RentalDTO rental;
+    private final long weight;
+    private final long expiresAt;
+
+    private CachedRental(RentalDTO rental, long weight, long expiresAt) {
+      this.rental = rental;
+      this.weight = weight;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
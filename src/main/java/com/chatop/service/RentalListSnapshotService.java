@@ -0,0 +1,360 @@
+package com.chatop.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import com.chatop.model.RentalListVersion;
+import com.chatop.repository.RentalListVersionRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Snapshot of the pages of the rentals list, served as pre-rendered bytes.
+ * <p>
+ * A page is queried and serialized once, on its first request : its JSON,
+ * a gzip copy and a strong ETag are kept in an immutable snapshot and later
+ * requests write the bytes as they are. After a write, the pages of the
+ * snapshot are rendered again on a background thread into a new snapshot,
+ * which then replaces the current one : requests never wait for a rebuild,
+ * and serve the previous snapshot until the new one is ready. Writes made
+ * during a rebuild are covered by a single following rebuild. A snapshot
+ * records the list version it was built for : the writes of the other
+ * instances are detected by comparing it with the persisted version, at
+ * most once per check interval.
+ * <p>
+ * Whether the snapshot is enabled or not, the list gets its ETag from the
+ * RENTAL_LIST_VERSION row, incremented in the transaction of every rental
+ * write : the same on every instance, and read by primary key.
+ */
+@Service
+public class RentalListSnapshotService {
+
+  private static final Logger logger = LoggerFactory.getLogger(
+    RentalListSnapshotService.class
+  );
+
+  private final RentalListVersionRepository rentalListVersionRepository;
+  private final ObjectMapper objectMapper;
+  private final boolean enabled;
+  private final int maxPages;
+
+  // Built for no version : rebuilt on the first check
+  private volatile Snapshot current = new Snapshot(null);
+  private final long checkIntervalNanos;
+  // When the persisted version is next compared with the snapshot one
+  private final AtomicLong nextCheck = new AtomicLong(System.nanoTime());
+  private final ThreadPoolExecutor rebuilder;
+
+  private final Counter hitCounter;
+  private final Counter missCounter;
+  private final Timer rebuildTimer;
+
+  /**
+   * Constructs the RentalListSnapshotService.
+   *
+   * @param rentalListVersionRepository The repository of the list version.
+   * @param objectMapper                The serializer of the pages.
+   * @param meterRegistry               The registry of the snapshot metrics.
+   * @param enabled                     Whether the list is served from the snapshot.
+   * @param maxPages                    The maximum number of pages kept in a snapshot.
+   * @param checkInterval               The delay between two checks of the persisted version.
+   */
+  public RentalListSnapshotService(
+    RentalListVersionRepository rentalListVersionRepository,
+    ObjectMapper objectMapper,
+    MeterRegistry meterRegistry,
+    @Value("${rental.list.snapshot.enabled:false}") boolean enabled,
+    @Value("${rental.list.snapshot.max-pages:256}") int maxPages,
+    @Value("${rental.list.snapshot.check-interval:1s}") Duration checkInterval
+  ) {
+    this.rentalListVersionRepository = rentalListVersionRepository;
+    this.objectMapper = objectMapper;
+    this.enabled = enabled;
+    this.maxPages = maxPages;
+    this.checkIntervalNanos = checkInterval.toNanos();
+
+    // One rebuild running and at most one waiting : the waiting one covers
+    // every write made in the meantime
+    this.rebuilder =
+      new ThreadPoolExecutor(
+        1,
+        1,
+        0,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(1),
+        runnable -> {
+          Thread thread = new Thread(runnable, "rental-list-snapshot");
+          thread.setDaemon(true);
+          return thread;
+        },
+        new ThreadPoolExecutor.DiscardPolicy()
+      );
+
+    this.hitCounter =
+      Counter
+        .builder("rental.list.snapshot.requests")
+        .tag("result", "hit")
+        .register(meterRegistry);
+    this.missCounter =
+      Counter
+        .builder("rental.list.snapshot.requests")
+        .tag("result", "miss")
+        .register(meterRegistry);
+    this.rebuildTimer =
+      Timer
+        .builder("rental.list.snapshot.rebuild")
+        .description("Time to render the pages of a new snapshot")
+        .register(meterRegistry);
+    meterRegistry.gauge(
+      "rental.list.snapshot.pages",
+      this,
+      service -> service.current.pages.size()
+    );
+  }
+
+  /**
+   * Creates the list version row if the database has none yet.
+   */
+  @PostConstruct
+  public void createListVersion() {
+    if (rentalListVersionRepository.existsById(RentalListVersion.ID)) {
+      return;
+    }
+    RentalListVersion listVersion = new RentalListVersion();
+    listVersion.setId(RentalListVersion.ID);
+    listVersion.setVersion(0L);
+    try {
+      rentalListVersionRepository.save(listVersion);
+    } catch (DataIntegrityViolationException e) {
+      // Created by another instance starting meanwhile
+    }
+  }
+
+  /**
+   * Checks whether the rentals list is served from the snapshot.
+   *
+   * @return true if the snapshot mode is enabled.
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Gets a page of the current snapshot, rendering it on its first request.
+   *
+   * @param key      The key of the page (its request parameters).
+   * @param renderer Queries the page, here and in the later rebuilds.
+   * @return The rendered page.
+   * @throws IllegalArgumentException If the renderer rejects the parameters.
+   */
+  public RenderedPage getPage(String key, Supplier<Object> renderer) {
+    Snapshot snapshot = current;
+    checkListVersion(snapshot);
+    Page page = snapshot.pages.get(key);
+    if (page != null) {
+      hitCounter.increment();
+      return page.rendered;
+    }
+    missCounter.increment();
+    RenderedPage rendered = render(renderer.get());
+    if (snapshot.pages.size() < maxPages) {
+      snapshot.pages.putIfAbsent(key, new Page(renderer, rendered));
+    }
+    return rendered;
+  }
+
+  /**
+   * Gets the version of the rentals list, changed by every rental write.
+   * Read it before querying the list : a write committed in between then
+   * changes it again.
+   *
+   * @return The version, the same on every instance.
+   */
+  public String getListVersion() {
+    return String.valueOf(
+      rentalListVersionRepository
+        .findVersionById(RentalListVersion.ID)
+        .orElse(0L)
+    );
+  }
+
+  /**
+   * Changes the list version. Called in the transaction of a rental write,
+   * so that the version changes if and only if the write is committed.
+   *
+   * @throws org.springframework.transaction.IllegalTransactionStateException If no transaction is active.
+   */
+  public void incrementListVersion() {
+    rentalListVersionRepository.increment(RentalListVersion.ID);
+  }
+
+  /**
+   * Schedules a rebuild of the snapshot, once a write is committed.
+   */
+  public void markStale() {
+    if (!enabled) {
+      return;
+    }
+    rebuilder.execute(this::rebuild);
+  }
+
+  /**
+   * Schedules a rebuild if the list was written since the snapshot was
+   * built, by this instance or another one. Checked by one request per
+   * check interval.
+   */
+  private void checkListVersion(Snapshot snapshot) {
+    long now = System.nanoTime();
+    long next = nextCheck.get();
+    if (
+      now - next < 0 ||
+      !nextCheck.compareAndSet(next, now + checkIntervalNanos)
+    ) {
+      return;
+    }
+    if (!getListVersion().equals(snapshot.listVersion)) {
+      rebuilder.execute(this::rebuild);
+    }
+  }
+
+  /**
+   * Renders the pages of the current snapshot again, then swaps it.
+   */
+  private void rebuild() {
+    Snapshot previous = current;
+    // Read before the pages : a write committed meanwhile is rebuilt again
+    String building = getListVersion();
+    if (building.equals(previous.listVersion)) {
+      // Already covered by the rebuild that ran before this one
+      return;
+    }
+    long start = System.nanoTime();
+    Snapshot next = new Snapshot(building);
+    for (Map.Entry<String, Page> entry : previous.pages.entrySet()) {
+      Supplier<Object> renderer = entry.getValue().renderer;
+      try {
+        next.pages.put(
+          entry.getKey(),
+          new Page(renderer, render(renderer.get()))
+        );
+      } catch (RuntimeException e) {
+        // Dropped : rendered again on its next request
+        logger.warn("Rentals page {} could not be rendered", entry.getKey(), e);
+      }
+    }
+    current = next;
+    rebuildTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+  }
+
+  private RenderedPage render(Object body) {
+    try {
+      byte[] json = objectMapper.writeValueAsBytes(body);
+      ByteArrayOutputStream gzip = new ByteArrayOutputStream(json.length / 4);
+      try (GZIPOutputStream output = new GZIPOutputStream(gzip)) {
+        output.write(json);
+      }
+      String digest = HexFormat
+        .of()
+        .formatHex(MessageDigest.getInstance("SHA-256").digest(json), 0, 16);
+      return new RenderedPage(json, gzip.toByteArray(), digest);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Failed to serialize the rentals", e);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to compress the rentals", e);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    rebuilder.shutdownNow();
+  }
+
+  /**
+   * The pages rendered for one version of the rentals.
+   */
+  private static final class Snapshot {
+
+    private final String listVersion;
+    private final Map<String, Page> pages = new ConcurrentHashMap<>();
+
+    private Snapshot(String listVersion) {
+      this.listVersion = listVersion;
+    }
+  }
+
+  /**
+   * A page of a snapshot, with the renderer of its next version.
+   */
+  private static final class Page {
+
+    private final Supplier<Object> renderer;
+    private final RenderedPage rendered;
+
+    private Page(Supplier<Object> renderer, RenderedPage rendered) {
+      this.renderer = renderer;
+      this.rendered = rendered;
+    }
+  }
+
+  /**
+   * A page serialized once : its JSON and gzip bytes, never modified.
+   */
+  public static final class RenderedPage {
+
+    private final byte[] json;
+    private final byte[] gzip;
+    private final String digest;
+
+    private RenderedPage(byte[] json, byte[] gzip, String digest) {
+      this.json = json;
+      this.gzip = gzip;
+      this.digest = digest;
+    }
+
+    /**
+     * Gets the bytes of the page, shared : they must not be modified.
+     *
+     * @param gzipped true for the gzip copy.
+     * @return The bytes.
+     */
+    public byte[] getBytes(boolean gzipped) {
+      return gzipped ? gzip : json;
+    }
+
+    /**
+     * Gets the strong ETag of the page, distinct for the gzip copy.
+     *
+     * @param gzipped true for the gzip copy.
+     * @return The quoted ETag.
+     */
+    public String getETag(boolean gzipped) {
+      return "\"" + digest + (gzipped ? "-gzip" : "") + "\"";
+    }
+  }
+}
@@ -0,0 +1,297 @@
+package com.chatop.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.chatop.dto.RentalRequestDTO;
+import com.chatop.exception.TooManyRequestsException;
+import com.chatop.model.MediaStatus;
+import com.chatop.model.Rental;
+import com.chatop.repository.RentalRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Service finishing the rentals created asynchronously.
+ * <p>
+ * The request only copies the picture to a temporary file and saves the
+ * rental in the PENDING_MEDIA state ; hashing, storage and the PICTURES
+ * reference are then done on a dedicated, bounded executor, which moves the
+ * rental to READY or, with the reason, to FAILED. A rental whose picture
+ * was lost (restart, crash) is failed after a timeout. A failed rental keeps
+ * its data : the client retries by uploading a picture to its gallery,
+ * which becomes the cover. When the queue is full, the request fails fast
+ * with 429 and Retry-After and nothing is saved.
+ */
+@Service
+public class RentalMediaService {
+
+  private static final Logger logger = LoggerFactory.getLogger(
+    RentalMediaService.class
+  );
+
+  private static final int MAX_ERROR_LENGTH = 255;
+
+  private final RentalService rentalService;
+  private final RentalRepository rentalRepository;
+  private final ImageStorageService imageStorageService;
+  private final RentalCacheService rentalCacheService;
+  private final RentalListSnapshotService rentalListSnapshotService;
+  private final TransactionTemplate transactionTemplate;
+  private final ThreadPoolExecutor executor;
+  private final long retryAfterSeconds;
+  private final Duration pendingTimeout;
+
+  private final Timer processingTimer;
+  private final Counter failedCounter;
+  private final Counter rejectedCounter;
+
+  /**
+   * Constructs the RentalMediaService.
+   *
+   * @param rentalService             The service creating the rentals.
+   * @param rentalRepository          The repository of the rentals.
+   * @param imageStorageService       The service storing the pictures.
+   * @param rentalCacheService        The cache of the rentals read one by one.
+   * @param rentalListSnapshotService The snapshot of the rentals list.
+   * @param transactionManager        The transaction manager of the rental writes.
+   * @param meterRegistry             The registry of the processing metrics.
+   * @param threads                   The number of processing threads.
+   * @param queueCapacity             The number of pictures allowed to wait for a thread.
+   * @param retryAfterSeconds         The Retry-After delay sent when saturated, in seconds.
+   * @param pendingTimeout            The time after which a pending rental is failed.
+   */
+  public RentalMediaService(
+    RentalService rentalService,
+    RentalRepository rentalRepository,
+    ImageStorageService imageStorageService,
+    RentalCacheService rentalCacheService,
+    RentalListSnapshotService rentalListSnapshotService,
+    PlatformTransactionManager transactionManager,
+    MeterRegistry meterRegistry,
+    @Value("${rental.media.threads:2}") int threads,
+    @Value("${rental.media.queue-capacity:100}") int queueCapacity,
+    @Value("${rental.media.retry-after:1}") long retryAfterSeconds,
+    @Value("${rental.media.pending-timeout:10m}") Duration pendingTimeout
+  ) {
+    this.rentalService = rentalService;
+    this.rentalRepository = rentalRepository;
+    this.imageStorageService = imageStorageService;
+    this.rentalCacheService = rentalCacheService;
+    this.rentalListSnapshotService = rentalListSnapshotService;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.retryAfterSeconds = retryAfterSeconds;
+    this.pendingTimeout = pendingTimeout;
+
+    AtomicInteger threadCount = new AtomicInteger();
+    this.executor =
+      new ThreadPoolExecutor(
+        threads,
+        threads,
+        0,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity),
+        runnable -> {
+          Thread thread = new Thread(
+            runnable,
+            "rental-media-" + threadCount.incrementAndGet()
+          );
+          thread.setDaemon(true);
+          return thread;
+        },
+        new ThreadPoolExecutor.AbortPolicy()
+      );
+
+    this.processingTimer =
+      Timer
+        .builder("rental.media.processing")
+        .description("Time to store the picture of a rental created asynchronously")
+        .register(meterRegistry);
+    this.failedCounter =
+      Counter
+        .builder("rental.media.failed")
+        .description("Asynchronous rental pictures that could not be stored")
+        .register(meterRegistry);
+    this.rejectedCounter =
+      Counter
+        .builder("rental.media.rejected")
+        .description("Asynchronous creations rejected because the queue was full")
+        .register(meterRegistry);
+    meterRegistry.gauge(
+      "rental.media.queue.size",
+      executor,
+      pool -> pool.getQueue().size()
+    );
+  }
+
+  /**
+   * Creates a rental and stores its picture in the background.
+   *
+   * @param rentalRequestDTO The DTO containing rental data (picture ignored).
+   * @param spooledPicture   The picture copied by ImageStorageService.spoolImage,
+   *                         deleted once processed ; null for no picture.
+   * @param ownerId          The id of the authenticated owner.
+   * @return The created Rental object, PENDING_MEDIA if it has a picture.
+   * @throws TooManyRequestsException If the processing queue is full.
+   */
+  public Rental createRental(
+    RentalRequestDTO rentalRequestDTO,
+    Path spooledPicture,
+    Integer ownerId
+  ) {
+    if (spooledPicture == null) {
+      return rentalService.createRental(rentalRequestDTO, null, ownerId);
+    }
+    Rental rental;
+    try {
+      rental = rentalService.createPendingRental(rentalRequestDTO, ownerId);
+    } catch (RuntimeException e) {
+      deleteQuietly(spooledPicture);
+      throw e;
+    }
+
+    Integer rentalId = rental.getId();
+    try {
+      executor.execute(() -> process(rentalId, spooledPicture));
+    } catch (RejectedExecutionException e) {
+      rejectedCounter.increment();
+      rentalService.deleteRental(rentalId);
+      deleteQuietly(spooledPicture);
+      throw new TooManyRequestsException(
+        "Too many rentals being created, please retry later.",
+        retryAfterSeconds
+      );
+    }
+    return rental;
+  }
+
+  /**
+   * Stores the picture of a pending rental and records the outcome.
+   */
+  private void process(Integer rentalId, Path spooledPicture) {
+    long start = System.nanoTime();
+    String pictureUrl = null;
+    try (InputStream input = Files.newInputStream(spooledPicture)) {
+      pictureUrl = imageStorageService.saveImage(input);
+      String storedUrl = pictureUrl;
+      if (
+        writeRentals(() ->
+          rentalRepository.completeMedia(
+            rentalId,
+            storedUrl,
+            LocalDateTime.now(),
+            MediaStatus.READY,
+            MediaStatus.PENDING_MEDIA
+          )
+        ) ==
+        0
+      ) {
+        // Deleted, timed out or given another picture in the meantime
+        imageStorageService.releaseImage(pictureUrl);
+      }
+    } catch (IOException | RuntimeException e) {
+      logger.warn("Picture of rental {} could not be stored", rentalId, e);
+      failedCounter.increment();
+      if (pictureUrl != null) {
+        imageStorageService.releaseImage(pictureUrl);
+      }
+      String error = errorMessage(e);
+      writeRentals(() ->
+        rentalRepository.failMedia(
+          rentalId,
+          error,
+          LocalDateTime.now(),
+          MediaStatus.FAILED,
+          MediaStatus.PENDING_MEDIA
+        )
+      );
+    } finally {
+      rentalCacheService.invalidate(rentalId);
+      rentalListSnapshotService.markStale();
+      deleteQuietly(spooledPicture);
+      processingTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /**
+   * Fails the rentals pending for longer than the timeout : their picture
+   * was lost with the instance processing it.
+   */
+  @Scheduled(fixedDelayString = "${rental.media.sweep-interval:60000}")
+  public void failStalePendingRentals() {
+    int failed = writeRentals(() ->
+      rentalRepository.failMediaCreatedBefore(
+        LocalDateTime.now().minus(pendingTimeout),
+        "Picture processing timed out",
+        LocalDateTime.now(),
+        MediaStatus.FAILED,
+        MediaStatus.PENDING_MEDIA
+      )
+    );
+    if (failed > 0) {
+      rentalCacheService.invalidateAll();
+      rentalListSnapshotService.markStale();
+      logger.warn("{} pending rentals failed after {}", failed, pendingTimeout);
+    }
+  }
+
+  /**
+   * Runs a rental write and, if it changed a row, increments the list
+   * version in the same transaction.
+   *
+   * @param write The write, returning the number of rentals changed.
+   * @return The number of rentals changed.
+   */
+  private int writeRentals(IntSupplier write) {
+    return transactionTemplate.execute(status -> {
+      int written = write.getAsInt();
+      if (written > 0) {
+        rentalListSnapshotService.incrementListVersion();
+      }
+      return written;
+    });
+  }
+
+  private static String errorMessage(Exception e) {
+    String message = e.getMessage() != null
+      ? e.getMessage()
+      : e.getClass().getSimpleName();
+    return message.length() > MAX_ERROR_LENGTH
+      ? message.substring(0, MAX_ERROR_LENGTH)
+      : message;
+  }
+
+  private static void deleteQuietly(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      // Leftover temporary file, harmless
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+  }
+}
@@ -0,0 +1,298 @@
+package com.chatop.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.chatop.exception.ResourceNotFoundException;
+import com.chatop.exception.TooManyRequestsException;
+import com.chatop.exception.UnauthorizedAccessException;
+import com.chatop.model.MediaStatus;
+import com.chatop.model.Rental;
+import com.chatop.model.RentalPicture;
+import com.chatop.repository.RentalPictureRepository;
+import com.chatop.repository.RentalRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Service adding pictures to the gallery of a rental.
+ * <p>
+ * The files of a request are checked, hashed and stored in parallel on a
+ * dedicated, bounded executor, so that the request takes about as long as
+ * its slowest file rather than the sum of all of them ; their variants are
+ * then generated by ThumbnailService as for a single upload. The gallery
+ * rows are only inserted once every file is stored : if one file fails, the
+ * others are released and nothing is added. When the queue is full, the
+ * request fails fast with 429 and Retry-After.
+ */
+@Service
+public class RentalPictureService {
+
+  private final RentalRepository rentalRepository;
+  private final RentalPictureRepository rentalPictureRepository;
+  private final ImageStorageService imageStorageService;
+  private final RentalCacheService rentalCacheService;
+  private final RentalListSnapshotService rentalListSnapshotService;
+  private final TransactionTemplate transactionTemplate;
+  private final ThreadPoolExecutor executor;
+  private final int maxCount;
+  private final long retryAfterSeconds;
+
+  private final Timer uploadTimer;
+  private final Counter rejectedCounter;
+
+  /**
+   * Constructs the RentalPictureService.
+   *
+   * @param rentalRepository          The repository of the rentals.
+   * @param rentalPictureRepository   The repository of the galleries.
+   * @param imageStorageService       The service storing the pictures.
+   * @param rentalCacheService        The cache of the rentals read one by one.
+   * @param rentalListSnapshotService The snapshot of the rentals list.
+   * @param transactionManager        The transaction manager of the gallery inserts.
+   * @param meterRegistry             The registry of the upload metrics.
+   * @param threads                   The number of upload threads.
+   * @param queueCapacity             The number of files allowed to wait for a thread.
+   * @param maxCount                  The maximum number of files in one request.
+   * @param retryAfterSeconds         The Retry-After delay sent when saturated, in seconds.
+   */
+  public RentalPictureService(
+    RentalRepository rentalRepository,
+    RentalPictureRepository rentalPictureRepository,
+    ImageStorageService imageStorageService,
+    RentalCacheService rentalCacheService,
+    RentalListSnapshotService rentalListSnapshotService,
+    PlatformTransactionManager transactionManager,
+    MeterRegistry meterRegistry,
+    @Value("${rental.pictures.threads:8}") int threads,
+    @Value("${rental.pictures.queue-capacity:64}") int queueCapacity,
+    @Value("${rental.pictures.max-count:8}") int maxCount,
+    @Value("${rental.pictures.retry-after:1}") long retryAfterSeconds
+  ) {
+    this.rentalRepository = rentalRepository;
+    this.rentalPictureRepository = rentalPictureRepository;
+    this.imageStorageService = imageStorageService;
+    this.rentalCacheService = rentalCacheService;
+    this.rentalListSnapshotService = rentalListSnapshotService;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.maxCount = maxCount;
+    this.retryAfterSeconds = retryAfterSeconds;
+
+    AtomicInteger threadCount = new AtomicInteger();
+    this.executor =
+      new ThreadPoolExecutor(
+        threads,
+        threads,
+        0,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity),
+        runnable -> {
+          Thread thread = new Thread(
+            runnable,
+            "rental-picture-" + threadCount.incrementAndGet()
+          );
+          thread.setDaemon(true);
+          return thread;
+        },
+        new ThreadPoolExecutor.AbortPolicy()
+      );
+
+    this.uploadTimer =
+      Timer
+        .builder("rental.pictures.upload")
+        .description("Time to check, hash and store one gallery picture")
+        .register(meterRegistry);
+    this.rejectedCounter =
+      Counter
+        .builder("rental.pictures.rejected")
+        .description("Gallery uploads rejected because the queue was full")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Adds pictures to the gallery of a rental, after the existing ones.
+   * If the rental has no cover picture yet, the first file becomes it.
+   *
+   * @param rentalId The ID of the rental.
+   * @param files    The uploaded pictures, in gallery order.
+   * @param ownerId  The id of the authenticated owner.
+   * @return The URLs of the added pictures, in order.
+   * @throws IllegalArgumentException    If there is no file, or too many.
+   * @throws ResourceNotFoundException   If the rental is not found.
+   * @throws UnauthorizedAccessException If the current user is not the owner of the rental.
+   * @throws TooManyRequestsException    If the upload queue is full.
+   */
+  public List<String> addPictures(
+    Integer rentalId,
+    List<MultipartFile> files,
+    Integer ownerId
+  ) {
+    List<MultipartFile> pictures = files == null
+      ? List.of()
+      : files.stream().filter(file -> file != null && !file.isEmpty()).toList();
+    if (pictures.isEmpty()) {
+      throw new IllegalArgumentException("At least one picture is required");
+    }
+    if (pictures.size() > maxCount) {
+      throw new IllegalArgumentException(
+        "At most " + maxCount + " pictures can be uploaded at once"
+      );
+    }
+    // Checked before any file is stored
+    checkOwner(findRental(rentalId), ownerId);
+
+    List<String> urls = awaitAll(submitAll(pictures));
+    try {
+      transactionTemplate.executeWithoutResult(status ->
+        attach(rentalId, urls, ownerId)
+      );
+    } catch (RuntimeException e) {
+      urls.forEach(imageStorageService::releaseImage);
+      throw e;
+    }
+    rentalCacheService.invalidate(rentalId);
+    // The cover may have changed
+    rentalListSnapshotService.markStale();
+    return urls;
+  }
+
+  /**
+   * Gets the gallery of a rental.
+   *
+   * @param rentalId The ID of the rental.
+   * @return The URLs of its pictures, in order (the cover excluded).
+   */
+  public List<String> readPictures(Integer rentalId) {
+    return rentalPictureRepository.findUrlsByRentalId(rentalId);
+  }
+
+  /**
+   * Starts the storage of every file on the executor.
+   */
+  private List<CompletableFuture<String>> submitAll(
+    List<MultipartFile> pictures
+  ) {
+    List<CompletableFuture<String>> uploads = new ArrayList<>();
+    try {
+      for (MultipartFile picture : pictures) {
+        uploads.add(
+          CompletableFuture.supplyAsync(
+            () ->
+              uploadTimer.record(() -> imageStorageService.saveImage(picture)),
+            executor
+          )
+        );
+      }
+    } catch (RejectedExecutionException e) {
+      rejectedCounter.increment();
+      // The files already submitted are stored anyway : given back
+      try {
+        awaitAll(uploads).forEach(imageStorageService::releaseImage);
+      } catch (RuntimeException ignored) {
+        // Failed files left nothing behind
+      }
+      throw new TooManyRequestsException(
+        "Too many picture uploads, please retry later.",
+        retryAfterSeconds
+      );
+    }
+    return uploads;
+  }
+
+  /**
+   * Waits for every upload. If one failed, the stored files are released
+   * and the first failure is thrown.
+   */
+  private List<String> awaitAll(List<CompletableFuture<String>> uploads) {
+    List<String> urls = new ArrayList<>();
+    RuntimeException failure = null;
+    for (CompletableFuture<String> upload : uploads) {
+      try {
+        urls.add(upload.join());
+      } catch (CompletionException e) {
+        if (failure == null) {
+          failure =
+            e.getCause() instanceof RuntimeException runtimeException
+              ? runtimeException
+              : new IllegalStateException("Picture upload failed", e.getCause());
+        }
+      }
+    }
+    if (failure != null) {
+      urls.forEach(imageStorageService::releaseImage);
+      throw failure;
+    }
+    return urls;
+  }
+
+  /**
+   * Inserts the gallery rows of the stored pictures.
+   */
+  private void attach(Integer rentalId, List<String> urls, Integer ownerId) {
+    Rental rental = findRental(rentalId);
+    // The rental may have changed hands during the upload
+    checkOwner(rental, ownerId);
+
+    List<String> gallery = urls;
+    if (rental.getPicture() == null) {
+      // Also the retry of a rental whose asynchronous creation failed
+      rental.setPicture(urls.get(0));
+      rental.setMediaStatus(MediaStatus.READY);
+      rental.setMediaError(null);
+      gallery = urls.subList(1, urls.size());
+    }
+    // Also for the gallery alone : the version, and so the ETag, changes
+    rental.setUpdatedAt(LocalDateTime.now());
+    int position = rentalPictureRepository.nextPosition(rentalId);
+    List<RentalPicture> rows = new ArrayList<>();
+    for (String url : gallery) {
+      RentalPicture row = new RentalPicture();
+      row.setRental(rental);
+      row.setUrl(url);
+      row.setPosition(position++);
+      row.setCreatedAt(LocalDateTime.now());
+      rows.add(row);
+    }
+    rentalPictureRepository.saveAll(rows);
+    rentalListSnapshotService.incrementListVersion();
+  }
+
+  private Rental findRental(Integer rentalId) {
+    return rentalRepository
+      .findById(rentalId)
+      .orElseThrow(() ->
+        new ResourceNotFoundException("Rental not found with ID: " + rentalId)
+      );
+  }
+
+  private static void checkOwner(Rental rental, Integer ownerId) {
+    if (!rental.getOwner().getId().equals(ownerId)) {
+      throw new UnauthorizedAccessException(
+        "Current user is not the owner of the rental with ID: " +
+        rental.getId()
+      );
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+  }
+}
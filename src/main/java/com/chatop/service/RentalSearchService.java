@@ -0,0 +1,222 @@
+package com.chatop.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+
+import com.chatop.dto.RentalDTO;
+import com.chatop.model.Rental;
+import com.chatop.repository.RentalRepository;
+import com.chatop.util.InvertedIndex;
+import com.chatop.util.SearchTokenizer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Full-text search of the rentals, on their name and description, from an
+ * in-memory InvertedIndex.
+ * <p>
+ * The index is built at startup by reading the RENTALS table in batches of
+ * ids (short keyset queries, no long-running result set), then kept up to
+ * date by RentalService, which indexes each rental it saves. Words of the
+ * name count twice. A rebuild fills a new index while the current one
+ * serves the searches : the rentals saved meanwhile go to both, and the
+ * version of each rental keeps a streamed row from replacing a newer save.
+ */
+@Service
+public class RentalSearchService implements ApplicationRunner {
+
+  private static final Logger logger = LoggerFactory.getLogger(
+    RentalSearchService.class
+  );
+
+  private static final int BUILD_BATCH_SIZE = 1000;
+
+  private final RentalRepository rentalRepository;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private InvertedIndex current = new InvertedIndex();
+  // The index being built, null outside of a rebuild
+  private InvertedIndex next;
+
+  private final Timer searchTimer;
+  private final Timer buildTimer;
+
+  /**
+   * Constructs the RentalSearchService.
+   *
+   * @param rentalRepository The repository reading the rentals to index.
+   * @param meterRegistry    The registry of the search metrics.
+   */
+  public RentalSearchService(
+    RentalRepository rentalRepository,
+    MeterRegistry meterRegistry
+  ) {
+    this.rentalRepository = rentalRepository;
+
+    this.searchTimer =
+      Timer
+        .builder("rental.search.query")
+        .description("Time to rank the rentals matching a query")
+        .register(meterRegistry);
+    this.buildTimer =
+      Timer
+        .builder("rental.search.build")
+        .description("Time to index the whole RENTALS table")
+        .register(meterRegistry);
+    meterRegistry.gauge(
+      "rental.search.documents",
+      this,
+      RentalSearchService::size
+    );
+  }
+
+  @Override
+  public void run(ApplicationArguments args) {
+    rebuild();
+  }
+
+  /**
+   * Builds a new index from the RENTALS table, then swaps it in.
+   */
+  public synchronized void rebuild() {
+    long start = System.nanoTime();
+    lock.writeLock().lock();
+    try {
+      next = new InvertedIndex();
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    boolean built = false;
+    try {
+      Pageable batch = PageRequest.of(0, BUILD_BATCH_SIZE, Sort.by("id"));
+      Integer lastId = 0;
+      Slice<RentalDTO> rentals;
+      do {
+        rentals = rentalRepository.findIdAfter(lastId, batch);
+        if (rentals.hasContent()) {
+          addToNext(rentals.getContent());
+          lastId =
+            rentals.getContent().get(rentals.getNumberOfElements() - 1).getId();
+        }
+      } while (rentals.hasNext());
+      built = true;
+    } finally {
+      lock.writeLock().lock();
+      try {
+        if (built) {
+          current = next;
+        }
+        next = null;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    long elapsed = System.nanoTime() - start;
+    buildTimer.record(elapsed, TimeUnit.NANOSECONDS);
+    logger.info(
+      "Search index built : {} rentals in {} ms",
+      size(),
+      TimeUnit.NANOSECONDS.toMillis(elapsed)
+    );
+  }
+
+  /**
+   * Indexes a saved rental, once its change is committed.
+   *
+   * @param rental The saved rental, with its new version.
+   */
+  public void index(Rental rental) {
+    lock.writeLock().lock();
+    try {
+      put(current, rental);
+      if (next != null) {
+        put(next, rental);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Finds the rentals matching a query, best first.
+   *
+   * @param query The words to search for, in the name or description.
+   * @param count The maximum number of rentals returned.
+   * @return The IDs of the best rentals and the number of matching ones.
+   */
+  public InvertedIndex.Hits search(String query, int count) {
+    List<String> terms = SearchTokenizer.tokenize(query);
+    lock.readLock().lock();
+    try {
+      return searchTimer.record(() -> current.search(terms, count));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private int size() {
+    lock.readLock().lock();
+    try {
+      return current.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private void addToNext(List<RentalDTO> batch) {
+    lock.writeLock().lock();
+    try {
+      for (RentalDTO rental : batch) {
+        put(
+          next,
+          rental.getId(),
+          rental.getVersion(),
+          rental.getName(),
+          rental.getDescription()
+        );
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private static void put(InvertedIndex index, Rental rental) {
+    put(
+      index,
+      rental.getId(),
+      rental.getVersion(),
+      rental.getName(),
+      rental.getDescription()
+    );
+  }
+
+  private static void put(
+    InvertedIndex index,
+    Integer id,
+    Long version,
+    String name,
+    String description
+  ) {
+    List<String> nameTerms = SearchTokenizer.tokenize(name);
+    List<String> terms = new ArrayList<>(nameTerms);
+    terms.addAll(nameTerms);
+    terms.addAll(SearchTokenizer.tokenize(description));
+    index.put(id, version == null ? 0 : version, terms);
+  }
+}
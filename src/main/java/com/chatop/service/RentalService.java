@@ -1,19 +1,54 @@
 package com.chatop.service;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.chatop.dto.RentalChangesDTO;
 import com.chatop.dto.RentalDTO;
 import com.chatop.dto.RentalRequestDTO;
+import com.chatop.dto.RentalSort;
+import com.chatop.dto.RentalStatusDTO;
+import com.chatop.dto.RentalsResponseDTO;
 import com.chatop.exception.InvalidInputException;
+import com.chatop.exception.PreconditionFailedException;
 import com.chatop.exception.ResourceNotFoundException;
 import com.chatop.exception.UnauthorizedAccessException;
+import com.chatop.model.MediaStatus;
 import com.chatop.model.Rental;
+import com.chatop.model.RentalTombstone;
 import com.chatop.model.User;
+import com.chatop.repository.RentalPictureRepository;
 import com.chatop.repository.RentalRepository;
+import com.chatop.repository.RentalTombstoneRepository;
 import com.chatop.repository.UserRepository;
+import com.chatop.util.CursorUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.persistence.EntityManager;
 
 /**
  * Service for managing rentals, including creation, update, and retrieval.
@@ -22,63 +57,494 @@ import com.chatop.repository.UserRepository;
 public class RentalService {
 
   private final RentalRepository rentalRepository;
+  private final RentalPictureRepository rentalPictureRepository;
+  private final RentalTombstoneRepository rentalTombstoneRepository;
   private final UserRepository userRepository;
   private final ImageStorageService imageStorageService;
+  private final RentalCacheService rentalCacheService;
+  private final RentalListSnapshotService rentalListSnapshotService;
+  private final RentalSearchService rentalSearchService;
+  private final ObjectMapper objectMapper;
+  private final EntityManager entityManager;
+  private final TransactionTemplate transactionTemplate;
+
+  private static final String CSV_HEADER =
+    "id,name,surface,price,picture,description,owner_id,created_at,updated_at";
+
+  @Value("${rental.page.default-limit:20}")
+  private int defaultLimit;
+
+  @Value("${rental.page.max-limit:100}")
+  private int maxLimit;
+
+  @Value("${rental.search.max-results:1000}")
+  private int searchMaxResults;
+
+  @Value("${rental.changes.settle-delay:5s}")
+  private Duration changesSettleDelay;
+
+  // Watermark of a first synchronization : the whole catalog
+  private static final LocalDateTime FIRST_WATERMARK = LocalDateTime.of(
+    1970,
+    1,
+    1,
+    0,
+    0
+  );
 
   public RentalService(
     RentalRepository rentalRepository,
+    RentalPictureRepository rentalPictureRepository,
+    RentalTombstoneRepository rentalTombstoneRepository,
     UserRepository userRepository,
-    ImageStorageService imageStorageService
+    ImageStorageService imageStorageService,
+    RentalCacheService rentalCacheService,
+    RentalListSnapshotService rentalListSnapshotService,
+    RentalSearchService rentalSearchService,
+    ObjectMapper objectMapper,
+    EntityManager entityManager,
+    PlatformTransactionManager transactionManager
   ) {
     this.rentalRepository = rentalRepository;
+    this.rentalPictureRepository = rentalPictureRepository;
+    this.rentalTombstoneRepository = rentalTombstoneRepository;
     this.userRepository = userRepository;
     this.imageStorageService = imageStorageService;
+    this.rentalCacheService = rentalCacheService;
+    this.rentalListSnapshotService = rentalListSnapshotService;
+    this.rentalSearchService = rentalSearchService;
+    this.objectMapper = objectMapper;
+    this.entityManager = entityManager;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+  }
+
+  /**
+   * Reads one page of rentals using keyset pagination.
+   * The cursor carries the sort key value and id of the last row of the
+   * previous page, so that every page is a bounded index range scan.
+   *
+   * @param limit     The maximum number of rentals to return (null for default).
+   * @param cursor    The opaque cursor of the previous page (null for the first page).
+   * @param sortParam The sort key (created_at, price, surface or price_per_m2).
+   * @param order     The sort direction (asc or desc).
+   * @return A RentalsResponseDTO holding the page and the next cursor.
+   * @throws IllegalArgumentException If a parameter or the cursor is invalid.
+   */
+  public RentalsResponseDTO readRentalsPageAsDTO(
+    Integer limit,
+    String cursor,
+    String sortParam,
+    String order
+  ) {
+    RentalSort sort = RentalSort.fromParam(sortParam);
+    Sort.Direction direction = Sort.Direction
+      .fromOptionalString(order)
+      .orElseThrow(() ->
+        new IllegalArgumentException("Invalid sort order: " + order)
+      );
+    Pageable pageable = PageRequest.of(
+      0,
+      pageSize(limit),
+      Sort.by(direction, sort.getProperty(), "id")
+    );
+
+    Slice<RentalDTO> slice = cursor == null || cursor.isBlank()
+      ? rentalRepository.findFirstPage(pageable)
+      : findAfterCursor(sort, direction, cursor, pageable);
+
+    List<RentalDTO> rentals = slice.getContent();
+
+    String nextCursor = null;
+    if (slice.hasNext()) {
+      RentalDTO last = rentals.get(rentals.size() - 1);
+      nextCursor =
+        CursorUtil.encode(
+          sort.getParam(),
+          direction.name(),
+          String.valueOf(sortValue(sort, last)),
+          String.valueOf(last.getId())
+        );
+    }
+    return new RentalsResponseDTO(rentals, nextCursor);
+  }
+
+  /**
+   * Resolves the size of a page of rentals.
+   *
+   * @param limit The requested size, or null for the default one.
+   * @return The page size.
+   * @throws IllegalArgumentException If the limit is out of bounds.
+   */
+  public int pageSize(Integer limit) {
+    int size = limit == null ? defaultLimit : limit;
+    if (size < 1 || size > maxLimit) {
+      throw new IllegalArgumentException(
+        "Limit must be between 1 and " + maxLimit
+      );
+    }
+    return size;
+  }
+
+  /**
+   * Searches the rentals whose name or description contains the words of a
+   * query, ranked by relevance (see RentalSearchService). Only the first
+   * rental.search.max-results rentals can be paged through : each page
+   * ranks every hit before it.
+   *
+   * @param query  The words to search for.
+   * @param limit  The maximum number of rentals to return (null for default).
+   * @param cursor The opaque cursor of the previous page (null for the first page).
+   * @return A RentalsResponseDTO holding the page and the next cursor.
+   * @throws IllegalArgumentException If the query, limit or cursor is invalid.
+   */
+  public RentalsResponseDTO searchRentals(
+    String query,
+    Integer limit,
+    String cursor
+  ) {
+    if (query == null || query.isBlank()) {
+      throw new IllegalArgumentException("Search query is required");
+    }
+    int size = pageSize(limit);
+    int offset = 0;
+    if (cursor != null && !cursor.isBlank()) {
+      try {
+        offset = Integer.parseInt(CursorUtil.decode(cursor, 1)[0]);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+      }
+      if (offset < 0) {
+        throw new IllegalArgumentException("Invalid cursor: " + cursor);
+      }
+      if (offset >= searchMaxResults) {
+        throw new IllegalArgumentException(
+          "Search results are limited to the first " +
+          searchMaxResults +
+          " rentals"
+        );
+      }
+    }
+    size = Math.min(size, searchMaxResults - offset);
+
+    // One more hit tells whether a next page exists
+    int[] ids = rentalSearchService.search(query, offset + size + 1).getIds();
+    List<Integer> pageIds = new ArrayList<>();
+    for (int i = offset; i < Math.min(ids.length, offset + size); i++) {
+      pageIds.add(ids[i]);
+    }
+    Map<Integer, RentalDTO> rentalsById = pageIds.isEmpty()
+      ? Map.of()
+      : rentalRepository
+        .findDTOsByIds(pageIds)
+        .stream()
+        .collect(Collectors.toMap(RentalDTO::getId, Function.identity()));
+    // In the ranking order ; a rental deleted since it was indexed is skipped
+    List<RentalDTO> rentals = pageIds
+      .stream()
+      .map(rentalsById::get)
+      .filter(rental -> rental != null)
+      .toList();
+
+    boolean hasNext =
+      ids.length > offset + size && offset + size < searchMaxResults;
+    String nextCursor = hasNext
+      ? CursorUtil.encode(String.valueOf(offset + size))
+      : null;
+    return new RentalsResponseDTO(rentals, nextCursor);
+  }
+
+  /**
+   * Reads the rentals created, updated or deleted since a watermark.
+   * <p>
+   * The watermark carries the (updated_at, id) of the last change returned :
+   * each call is a range scan of the RENTALS (updated_at, id) index, whose
+   * cost depends on the number of changes and not on the catalog size.
+   * Changes more recent than the settle delay are left to the next call, so
+   * that a transaction committing late cannot be skipped by the watermark.
+   *
+   * @param since The watermark of the previous call (null for the whole catalog).
+   * @param limit The maximum number of rentals to return (null for default).
+   * @return A RentalChangesDTO holding the changes and the next watermark.
+   * @throws IllegalArgumentException If the limit or the watermark is invalid.
+   */
+  public RentalChangesDTO readRentalChanges(String since, Integer limit) {
+    int size = pageSize(limit);
+    LocalDateTime fromAt = FIRST_WATERMARK;
+    Integer fromId = 0;
+    if (since != null && !since.isBlank()) {
+      String[] parts = CursorUtil.decode(since, 2);
+      try {
+        fromAt = LocalDateTime.parse(parts[0]);
+        fromId = Integer.valueOf(parts[1]);
+      } catch (NumberFormatException | DateTimeParseException e) {
+        throw new IllegalArgumentException("Invalid watermark: " + since, e);
+      }
+    }
+
+    LocalDateTime horizon = LocalDateTime.now().minus(changesSettleDelay);
+    if (!horizon.isAfter(fromAt)) {
+      // Nothing settled since the previous call
+      return new RentalChangesDTO(List.of(), List.of(), since, false);
+    }
+    Slice<RentalDTO> slice = rentalRepository.findUpdatedAfter(
+      fromAt,
+      fromId,
+      horizon,
+      PageRequest.of(0, size, Sort.by("updatedAt", "id"))
+    );
+    List<RentalDTO> rentals = slice.getContent();
+
+    LocalDateTime toAt = horizon;
+    Integer toId = 0;
+    if (slice.hasNext()) {
+      RentalDTO last = rentals.get(rentals.size() - 1);
+      toAt = last.getUpdatedAt();
+      toId = last.getId();
+    }
+    // Deletions in [fromAt, toAt) : the windows of successive calls follow
+    // each other without overlap
+    List<Integer> deleted =
+      rentalTombstoneRepository.findRentalIdsDeletedBetween(fromAt, toAt);
+    return new RentalChangesDTO(
+      rentals,
+      deleted,
+      CursorUtil.encode(toAt.toString(), String.valueOf(toId)),
+      slice.hasNext()
+    );
   }
 
   /**
-   * Reads all rentals and converts them to DTOs.
+   * Seeks past the row identified by the cursor, in the requested order.
+   */
+  private Slice<RentalDTO> findAfterCursor(
+    RentalSort sort,
+    Sort.Direction direction,
+    String cursor,
+    Pageable pageable
+  ) {
+    String[] parts = CursorUtil.decode(cursor, 4);
+    if (
+      !sort.getParam().equals(parts[0]) || !direction.name().equals(parts[1])
+    ) {
+      throw new IllegalArgumentException(
+        "Cursor does not match the requested sort: " + cursor
+      );
+    }
+    boolean ascending = direction.isAscending();
+    try {
+      String value = parts[2];
+      Integer id = Integer.valueOf(parts[3]);
+      return switch (sort) {
+        case CREATED_AT -> ascending
+          ? rentalRepository.findCreatedAtAfter(
+            LocalDateTime.parse(value),
+            id,
+            pageable
+          )
+          : rentalRepository.findCreatedAtBefore(
+            LocalDateTime.parse(value),
+            id,
+            pageable
+          );
+        case PRICE -> ascending
+          ? rentalRepository.findPriceAfter(Integer.valueOf(value), id, pageable)
+          : rentalRepository.findPriceBefore(
+            Integer.valueOf(value),
+            id,
+            pageable
+          );
+        case SURFACE -> ascending
+          ? rentalRepository.findSurfaceAfter(
+            Integer.valueOf(value),
+            id,
+            pageable
+          )
+          : rentalRepository.findSurfaceBefore(
+            Integer.valueOf(value),
+            id,
+            pageable
+          );
+        case PRICE_PER_M2 -> ascending
+          ? rentalRepository.findPricePerM2After(
+            new BigDecimal(value),
+            id,
+            pageable
+          )
+          : rentalRepository.findPricePerM2Before(
+            new BigDecimal(value),
+            id,
+            pageable
+          );
+      };
+    } catch (NumberFormatException | DateTimeParseException e) {
+      throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+    }
+  }
+
+  /**
+   * Gets the value of the sort key of a rental, as stored in the cursor.
+   */
+  private Object sortValue(RentalSort sort, RentalDTO rental) {
+    return switch (sort) {
+      case CREATED_AT -> rental.getCreatedAt();
+      case PRICE -> rental.getPrice();
+      case SURFACE -> rental.getSurface();
+      case PRICE_PER_M2 -> Rental.computePricePerM2(
+        rental.getPrice(),
+        rental.getSurface()
+      );
+    };
+  }
+
+  /**
+   * Streams the whole rental catalog to the given output, one RentalDTO per line.
+   * Rows are read from a database cursor and detached once written, so that
+   * memory use does not depend on the catalog size.
    *
-   * @return A list of RentalDTOs.
+   * @param csv true for CSV lines (with a header), false for NDJSON.
+   * @param out The output to write to.
+   * @throws IOException If the output cannot be written.
+   */
+  @Transactional(readOnly = true)
+  public void exportRentals(boolean csv, OutputStream out) throws IOException {
+    OutputStream buffered = new BufferedOutputStream(out, 8192);
+    if (csv) {
+      buffered.write((CSV_HEADER + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    try (Stream<Rental> rentals = rentalRepository.streamAll()) {
+      Iterator<Rental> iterator = rentals.iterator();
+      boolean first = true;
+      while (iterator.hasNext()) {
+        Rental rental = iterator.next();
+        RentalDTO rentalDTO = RentalDTO.fromEntity(rental);
+        entityManager.detach(rental);
+
+        if (csv) {
+          buffered.write(toCsvLine(rentalDTO).getBytes(StandardCharsets.UTF_8));
+        } else {
+          buffered.write(objectMapper.writeValueAsBytes(rentalDTO));
+        }
+        buffered.write('\n');
+
+        if (first) {
+          // Send the first line right away instead of waiting for a full buffer
+          buffered.flush();
+          first = false;
+        }
+      }
+    }
+    buffered.flush();
+  }
+
+  /**
+   * Formats a rental as a CSV line (RFC 4180 quoting).
    */
-  public List<RentalDTO> readAllRentalsAsDTO() {
-    List<Rental> rentals = rentalRepository.findAll();
-    return rentals.stream().map(RentalDTO::fromEntity).toList();
+  private String toCsvLine(RentalDTO rentalDTO) {
+    return String.join(
+      ",",
+      csvField(rentalDTO.getId()),
+      csvField(rentalDTO.getName()),
+      csvField(rentalDTO.getSurface()),
+      csvField(rentalDTO.getPrice()),
+      csvField(rentalDTO.getPicture()),
+      csvField(rentalDTO.getDescription()),
+      csvField(rentalDTO.getOwnerId()),
+      csvField(rentalDTO.getCreatedAt()),
+      csvField(rentalDTO.getUpdatedAt())
+    );
+  }
+
+  private String csvField(Object value) {
+    if (value == null) {
+      return "";
+    }
+    String field = value.toString();
+    if (
+      field.contains(",") ||
+      field.contains("\"") ||
+      field.contains("\n") ||
+      field.contains("\r")
+    ) {
+      return "\"" + field.replace("\"", "\"\"") + "\"";
+    }
+    return field;
   }
 
   /**
-   * Reads a rental by its ID and converts it to a DTO.
+   * Reads a rental by its ID and converts it to a DTO, with its gallery.
+   * The DTO is served from RentalCacheService : it must not be modified.
    *
    * @param id The ID of the rental.
    * @return The RentalDTO of the specified rental.
    * @throws ResourceNotFoundException If the rental is not found.
    */
   public RentalDTO readRentalAsDTO(Integer id) {
-    Rental rental = rentalRepository
-      .findById(id)
+    return rentalCacheService.get(id, () -> loadRentalAsDTO(id));
+  }
+
+  private RentalDTO loadRentalAsDTO(Integer id) {
+    RentalDTO rentalDTO = rentalRepository
+      .findDTOById(id)
       .orElseThrow(() ->
         new ResourceNotFoundException("Rental not found with ID: " + id)
       );
-    return RentalDTO.fromEntity(rental);
+    rentalDTO.setPictures(rentalPictureRepository.findUrlsByRentalId(id));
+    return rentalDTO;
   }
 
   /**
-   * Creates a new rental from a RentalRequestDTO.
+   * Reads the version of a rental, without loading it.
+   *
+   * @param id The ID of the rental.
+   * @return The version of the rental, incremented by each update.
+   * @throws ResourceNotFoundException If the rental is not found.
+   */
+  public Long readRentalVersion(Integer id) {
+    return rentalRepository
+      .findVersionById(id)
+      .orElseThrow(() ->
+        new ResourceNotFoundException("Rental not found with ID: " + id)
+      );
+  }
+
+  /**
+   * Reads the state of the rentals list, changed by any write, with a
+   * single primary key read.
+   *
+   * @return The state, the same as long as no rental is written.
+   */
+  public String readRentalsVersion() {
+    return rentalListSnapshotService.getListVersion();
+  }
+
+  /**
+   * Reads the processing state of a rental.
+   *
+   * @param id The ID of the rental.
+   * @return The RentalStatusDTO of the specified rental.
+   * @throws ResourceNotFoundException If the rental is not found.
+   */
+  public RentalStatusDTO readRentalStatus(Integer id) {
+    return rentalRepository
+      .findStatusById(id)
+      .orElseThrow(() ->
+        new ResourceNotFoundException("Rental not found with ID: " + id)
+      );
+  }
+
+  /**
+   * Creates a new rental from a RentalRequestDTO, saving its picture first.
    *
    * @param rentalRequestDTO The DTO containing rental data.
-   * @param ownerEmail       The email of the rental's owner.
+   * @param ownerId          The id of the authenticated owner.
    * @return The created Rental object.
-   * @throws InvalidInputException If the owner is not found.
+   * @throws InvalidInputException If the picture cannot be saved.
    */
   public Rental createRental(
     RentalRequestDTO rentalRequestDTO,
-    String ownerEmail
+    Integer ownerId
   ) {
-    User owner = userRepository
-      .findByEmail(ownerEmail)
-      .orElseThrow(() ->
-        new InvalidInputException("Owner not found with email: " + ownerEmail)
-      );
-
     String pictureUrl = null;
     if (
       rentalRequestDTO.getPicture() != null &&
@@ -94,18 +560,94 @@ public class RentalService {
         );
       }
     }
+    return createRental(rentalRequestDTO, pictureUrl, ownerId);
+  }
+
+  /**
+   * Creates a new rental whose picture is already stored.
+   * The owner is referenced by id only : no USERS query is needed.
+   *
+   * @param rentalRequestDTO The DTO containing rental data (picture ignored).
+   * @param pictureUrl       The URL returned by ImageStorageService, or null.
+   * @param ownerId          The id of the authenticated owner.
+   * @return The created Rental object.
+   */
+  public Rental createRental(
+    RentalRequestDTO rentalRequestDTO,
+    String pictureUrl,
+    Integer ownerId
+  ) {
+    Rental rental = newRental(rentalRequestDTO, ownerId);
+    rental.setPicture(pictureUrl);
+    rental.setMediaStatus(MediaStatus.READY);
+    return saveAndInvalidate(rental);
+  }
+
+  /**
+   * Creates a new rental whose picture is still being stored, in the
+   * PENDING_MEDIA state (see RentalMediaService).
+   *
+   * @param rentalRequestDTO The DTO containing rental data (picture ignored).
+   * @param ownerId          The id of the authenticated owner.
+   * @return The created Rental object.
+   */
+  public Rental createPendingRental(
+    RentalRequestDTO rentalRequestDTO,
+    Integer ownerId
+  ) {
+    Rental rental = newRental(rentalRequestDTO, ownerId);
+    rental.setMediaStatus(MediaStatus.PENDING_MEDIA);
+    return saveAndInvalidate(rental);
+  }
+
+  /**
+   * Saves a rental with the list version in one transaction, then removes
+   * it from the cache and the list snapshot and indexes it for the search.
+   */
+  private Rental saveAndInvalidate(Rental rental) {
+    Rental saved = transactionTemplate.execute(status -> {
+      Rental written = rentalRepository.save(rental);
+      rentalListSnapshotService.incrementListVersion();
+      return written;
+    });
+    rentalCacheService.invalidate(saved.getId());
+    rentalListSnapshotService.markStale();
+    rentalSearchService.index(saved);
+    return saved;
+  }
+
+  /**
+   * Deletes a rental without gallery nor messages (a creation undone), and
+   * records its tombstone and the list version in the same transaction, so
+   * that the delta sync reports the deletion.
+   *
+   * @param id The ID of the rental.
+   */
+  public void deleteRental(Integer id) {
+    transactionTemplate.executeWithoutResult(status -> {
+      rentalRepository.deleteById(id);
+      RentalTombstone tombstone = new RentalTombstone();
+      tombstone.setRentalId(id);
+      tombstone.setDeletedAt(LocalDateTime.now());
+      rentalTombstoneRepository.save(tombstone);
+      rentalListSnapshotService.incrementListVersion();
+    });
+    rentalCacheService.invalidate(id);
+    rentalListSnapshotService.markStale();
+  }
+
+  private Rental newRental(RentalRequestDTO rentalRequestDTO, Integer ownerId) {
+    User owner = userRepository.getReferenceById(ownerId);
 
     Rental rental = new Rental();
     rental.setName(rentalRequestDTO.getName());
     rental.setSurface(rentalRequestDTO.getSurface());
     rental.setPrice(rentalRequestDTO.getPrice());
-    rental.setPicture(pictureUrl);
     rental.setDescription(rentalRequestDTO.getDescription());
     rental.setOwner(owner);
     rental.setCreatedAt(LocalDateTime.now());
     rental.setUpdatedAt(LocalDateTime.now());
-
-    return rentalRepository.save(rental);
+    return rental;
   }
 
   /**
@@ -122,6 +664,30 @@ public class RentalService {
     Integer id,
     RentalRequestDTO rentalRequestDTO,
     Integer ownerId
+  ) {
+    return updateRental(id, rentalRequestDTO, null, null, ownerId);
+  }
+
+  /**
+   * Updates an existing rental, replacing its cover picture by one already
+   * stored. The previous picture is released once the rental is saved.
+   *
+   * @param id               The ID of the rental to update.
+   * @param rentalRequestDTO The DTO containing updated rental data (picture ignored).
+   * @param pictureUrl       The URL returned by ImageStorageService, or null to keep the picture.
+   * @param expectedVersion  The version given by If-Match, or null to update any version.
+   * @param ownerId          The id of the authenticated owner.
+   * @return The updated Rental object.
+   * @throws UnauthorizedAccessException If the current user is not the owner of the rental.
+   * @throws ResourceNotFoundException   If the rental is not found.
+   * @throws PreconditionFailedException If the rental is no longer at the expected version.
+   */
+  public Rental updateRental(
+    Integer id,
+    RentalRequestDTO rentalRequestDTO,
+    String pictureUrl,
+    Long expectedVersion,
+    Integer ownerId
   ) {
     Rental rental = rentalRepository
       .findById(id)
@@ -134,6 +700,13 @@ public class RentalService {
         "Current user is not the owner of the rental with ID: " + id
       );
     }
+    if (
+      expectedVersion != null && !expectedVersion.equals(rental.getVersion())
+    ) {
+      throw new PreconditionFailedException(
+        "Rental with ID " + id + " has been modified since it was read"
+      );
+    }
 
     if (rentalRequestDTO.getName() != null) {
       rental.setName(rentalRequestDTO.getName());
@@ -144,22 +717,36 @@ public class RentalService {
     if (rentalRequestDTO.getPrice() != null) {
       rental.setPrice(rentalRequestDTO.getPrice());
     }
-    /*if (rentalRequestDTO.getPicture() != null && !rentalRequestDTO.getPicture().isEmpty()) {
-            try {
-                String pictureUrl = imageStorageService.saveImage(rentalRequestDTO.getPicture());
-                rental.setPicture(pictureUrl);
-            } catch (Exception e) {
-                throw new InvalidInputException("Error while saving picture: " + e.getMessage(), e);
-            }
-        }*/
-    rental.setPicture(rental.getPicture()); // TO DO update picture Logic ?
+    String previousPicture = null;
+    if (pictureUrl != null) {
+      previousPicture = rental.getPicture();
+      rental.setPicture(pictureUrl);
+      // Also the retry of a rental whose asynchronous creation failed
+      rental.setMediaStatus(MediaStatus.READY);
+      rental.setMediaError(null);
+    }
 
     if (rentalRequestDTO.getDescription() != null) {
       rental.setDescription(rentalRequestDTO.getDescription());
     }
 
     rental.setUpdatedAt(LocalDateTime.now());
-    return rentalRepository.save(rental);
+    Rental saved;
+    try {
+      // The version read above is checked by the UPDATE : a concurrent
+      // update is detected without holding a lock
+      saved = saveAndInvalidate(rental);
+    } catch (OptimisticLockingFailureException e) {
+      if (expectedVersion == null) {
+        throw e;
+      }
+      throw new PreconditionFailedException(
+        "Rental with ID " + id + " has been modified since it was read"
+      );
+    }
+    // Also right for the same file again : it took one more reference
+    imageStorageService.releaseImage(previousPicture);
+    return saved;
   }
 
 }
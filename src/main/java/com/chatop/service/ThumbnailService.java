@@ -0,0 +1,373 @@
+package com.chatop.service;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.chatop.storage.ImageStore;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Service generating the resized variants of the rental pictures.
+ * <p>
+ * Each picture is decoded once (subsampled while reading when it is much
+ * larger than the biggest variant) and every configured width is stored under
+ * the key {@code w<width>/<file name>}. Variants are generated in
+ * the background after an upload, or on first request for older pictures.
+ * Decoding is memory and CPU heavy : a semaphore caps the number of pictures
+ * decoded at the same time, and a request that cannot get a permit in time
+ * is served the original picture. So is a picture whose header announces
+ * more pixels than the configured budget, which is never decoded.
+ */
+@Service
+public class ThumbnailService {
+
+  private static final Logger logger = LoggerFactory.getLogger(
+    ThumbnailService.class
+  );
+
+  private static final long DECODE_WAIT_SECONDS = 5;
+
+  private final ImageStore imageStore;
+  private final List<Integer> widths;
+  private final long maxPixels;
+  private final Semaphore decodePermits;
+  private final ThreadPoolExecutor executor;
+  private final Timer generationTimer;
+
+  // Generations in progress, so that concurrent requests decode a picture once
+  private final ConcurrentHashMap<String, CompletableFuture<Void>> inProgress =
+    new ConcurrentHashMap<>();
+
+  /**
+   * Constructs the ThumbnailService.
+   *
+   * @param imageStore           The storage of the images.
+   * @param widths               The widths of the variants, in pixels.
+   * @param maxConcurrentDecodes The maximum number of pictures decoded at the same time.
+   * @param queueCapacity        The number of uploads waiting for background generation.
+   * @param maxPixels            The maximum width x height of a decoded picture.
+   * @param meterRegistry        The registry of the generation metrics.
+   */
+  public ThumbnailService(
+    ImageStore imageStore,
+    @Value("${image.thumbnail.widths:320,800,1600}") List<Integer> widths,
+    @Value(
+      "${image.thumbnail.max-concurrent-decodes:2}"
+    ) int maxConcurrentDecodes,
+    @Value("${image.thumbnail.queue-capacity:100}") int queueCapacity,
+    @Value("${image.thumbnail.max-pixels:40000000}") long maxPixels,
+    MeterRegistry meterRegistry
+  ) {
+    this.imageStore = imageStore;
+    this.widths = widths.stream().sorted().toList();
+    this.maxPixels = maxPixels;
+    this.decodePermits = new Semaphore(maxConcurrentDecodes);
+
+    AtomicInteger threadCount = new AtomicInteger();
+    this.executor =
+      new ThreadPoolExecutor(
+        maxConcurrentDecodes,
+        maxConcurrentDecodes,
+        0,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity),
+        runnable -> {
+          Thread thread = new Thread(
+            runnable,
+            "thumbnail-" + threadCount.incrementAndGet()
+          );
+          thread.setDaemon(true);
+          return thread;
+        },
+        new ThreadPoolExecutor.AbortPolicy()
+      );
+
+    this.generationTimer =
+      Timer
+        .builder("image.thumbnail.generation")
+        .description("Time to decode a picture and write all its variants")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Checks whether a width is one of the configured variants.
+   *
+   * @param width The requested width, in pixels.
+   * @return true if variants of this width are generated.
+   */
+  public boolean isSupportedWidth(int width) {
+    return widths.contains(width);
+  }
+
+  /**
+   * Generates the variants of a newly stored picture in the background.
+   * When the queue is full, the variants are generated on first request.
+   *
+   * @param original The key of the stored picture.
+   */
+  public void generateAsync(String original) {
+    try {
+      executor.execute(() -> generate(original));
+    } catch (RejectedExecutionException e) {
+      logger.debug(
+        "Thumbnail queue full, {} left to lazy generation",
+        original
+      );
+    }
+  }
+
+  /**
+   * Gets the key to serve for a picture at a given width, generating the
+   * variants if needed. The original is returned when it cannot be resized
+   * or when decoding is saturated.
+   *
+   * @param original The key of the stored picture.
+   * @param width    A supported width, in pixels.
+   * @return The key of the variant, or the original key.
+   * @throws IOException If the storage cannot be read.
+   */
+  public String getVariant(String original, int width) throws IOException {
+    String variant = variantKey(original, width);
+    if (imageStore.stat(variant).isPresent()) {
+      return variant;
+    }
+    generate(original);
+    return imageStore.stat(variant).isPresent() ? variant : original;
+  }
+
+  /**
+   * Deletes the variants of a picture.
+   *
+   * @param original The key of the picture whose variants are deleted.
+   * @throws IOException If a variant cannot be deleted.
+   */
+  public void deleteVariants(String original) throws IOException {
+    for (int width : widths) {
+      imageStore.delete(variantKey(original, width));
+    }
+  }
+
+  /**
+   * Decodes the picture once and writes its missing variants.
+   * A generation already running for the same picture is awaited instead.
+   */
+  private void generate(String original) {
+    CompletableFuture<Void> mine = new CompletableFuture<>();
+    CompletableFuture<Void> running = inProgress.putIfAbsent(original, mine);
+    if (running != null) {
+      running.join();
+      return;
+    }
+    try {
+      if (!decodePermits.tryAcquire(DECODE_WAIT_SECONDS, TimeUnit.SECONDS)) {
+        logger.debug("Thumbnail decoding saturated, serving {}", original);
+        return;
+      }
+      try {
+        generationTimer.record(() -> writeVariants(original));
+      } finally {
+        decodePermits.release();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      inProgress.remove(original);
+      mine.complete(null);
+    }
+  }
+
+  private void writeVariants(String original) {
+    String format = formatOf(original);
+    if (format == null) {
+      return;
+    }
+
+    try {
+      List<Integer> missing = new ArrayList<>();
+      for (int width : widths) {
+        if (imageStore.stat(variantKey(original, width)).isEmpty()) {
+          missing.add(width);
+        }
+      }
+      if (missing.isEmpty() || imageStore.stat(original).isEmpty()) {
+        return;
+      }
+
+      BufferedImage image = decode(original, missing.get(missing.size() - 1));
+      if (image == null) {
+        return;
+      }
+      for (int width : missing) {
+        // Written aside then stored, so that a partial variant is never served
+        Path tmp = imageStore.createTempFile();
+        try {
+          if (image.getWidth() <= width) {
+            // Never upscale : the variant is a copy of the original, so that
+            // the picture is not decoded again on the next request
+            try (InputStream input = imageStore.open(original)) {
+              Files.copy(input, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+          } else {
+            ImageIO.write(resize(image, width, format), format, tmp.toFile());
+          }
+          imageStore.put(variantKey(original, width), tmp);
+        } finally {
+          Files.deleteIfExists(tmp);
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      logger.warn("Thumbnail generation failed for {}", original, e);
+    }
+  }
+
+  /**
+   * Decodes a picture, skipping pixels while reading when it is more than
+   * twice as large as the largest variant needed. The dimensions are read
+   * from the header first : a picture above the pixel budget is not decoded.
+   */
+  private BufferedImage decode(String original, int maxWidth)
+    throws IOException {
+    try (
+      InputStream stream = imageStore.open(original);
+      ImageInputStream input = ImageIO.createImageInputStream(stream)
+    ) {
+      if (input == null) {
+        return null;
+      }
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+      if (!readers.hasNext()) {
+        return null;
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(input, true, true);
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        if ((long) width * height > maxPixels) {
+          logger.warn(
+            "Picture {} not resized : {}x{} exceeds {} pixels",
+            original,
+            width,
+            height,
+            maxPixels
+          );
+          return null;
+        }
+        // Twice the largest variant in both dimensions (a tall picture is
+        // skipped more), but never narrower than the variant itself
+        int subsampling = Math.min(
+          Math.max(width, height) / (2 * maxWidth),
+          width / maxWidth
+        );
+        ImageReadParam param = reader.getDefaultReadParam();
+        if (subsampling > 1) {
+          param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        }
+        return reader.read(0, param);
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  /**
+   * Resizes by successive halvings then a last bilinear step, which keeps
+   * the quality of a multi-step filter at the cost of a few draws.
+   */
+  private static BufferedImage resize(
+    BufferedImage image,
+    int width,
+    String format
+  ) {
+    int type = "png".equals(format) || "gif".equals(format)
+      ? BufferedImage.TYPE_INT_ARGB
+      : BufferedImage.TYPE_INT_RGB;
+    int targetHeight = Math.max(
+      1,
+      (int) Math.round((double) image.getHeight() * width / image.getWidth())
+    );
+
+    BufferedImage current = image;
+    int currentWidth = image.getWidth();
+    int currentHeight = image.getHeight();
+    do {
+      currentWidth = Math.max(width, currentWidth / 2);
+      currentHeight = Math.max(targetHeight, currentHeight / 2);
+      BufferedImage next = new BufferedImage(currentWidth, currentHeight, type);
+      Graphics2D graphics = next.createGraphics();
+      try {
+        graphics.setRenderingHint(
+          RenderingHints.KEY_INTERPOLATION,
+          RenderingHints.VALUE_INTERPOLATION_BILINEAR
+        );
+        graphics.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+      } finally {
+        graphics.dispose();
+      }
+      current = next;
+    } while (currentWidth > width);
+    return current;
+  }
+
+  /**
+   * Gets the key of the variant of a picture at a given width.
+   *
+   * @param original The key of the picture.
+   * @param width    The width of the variant, in pixels.
+   * @return The key of the variant.
+   */
+  public static String variantKey(String original, int width) {
+    return "w" + width + "/" + original;
+  }
+
+  /**
+   * Gets the ImageIO format to write the variants in, from the extension.
+   *
+   * @return The format, or null if ImageIO cannot write it.
+   */
+  private static String formatOf(String original) {
+    int dot = original.lastIndexOf('.');
+    if (dot < 0) {
+      return null;
+    }
+    String extension = original.substring(dot + 1).toLowerCase(Locale.ROOT);
+    String format = "jpeg".equals(extension) ? "jpg" : extension;
+    return ImageIO.getImageWritersByFormatName(format).hasNext() ? format : null;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+}
@@ -1,8 +1,11 @@
 package com.chatop.service;
 
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.time.LocalDateTime;
+import java.util.regex.Pattern;
 
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
 import com.chatop.dto.LoginRequestDTO;
@@ -10,6 +13,7 @@ import com.chatop.dto.UserDTO;
 import com.chatop.dto.UserRequestDTO;
 import com.chatop.exception.InvalidInputException;
 import com.chatop.exception.ResourceNotFoundException;
+import com.chatop.exception.TooManyRequestsException;
 import com.chatop.model.User;
 import com.chatop.repository.UserRepository;
 import com.chatop.util.JwtUtil;
@@ -20,43 +24,92 @@ import com.chatop.util.JwtUtil;
 @Service
 public class UserService {
 
+  // The unique index on USERS.email (script.sql), as named in the messages
+  // of MySQL ('USERS.USERS_index') and H2 (PUBLIC.USERS_INDEX_...)
+  private static final Pattern EMAIL_INDEX = Pattern.compile(
+    "\\bUSERS_index",
+    Pattern.CASE_INSENSITIVE
+  );
+
   private final UserRepository userRepository;
-  private final PasswordEncoder passwordEncoder;
+  private final PasswordHashingService passwordHashingService;
   private final JwtUtil jwtUtil;
 
   public UserService(
     UserRepository userRepository,
-    PasswordEncoder passwordEncoder,
+    PasswordHashingService passwordHashingService,
     JwtUtil jwtUtil
   ) {
     this.userRepository = userRepository;
-    this.passwordEncoder = passwordEncoder;
+    this.passwordHashingService = passwordHashingService;
     this.jwtUtil = jwtUtil;
   }
 
   /**
    * Creates a new user and hashes the password before saving.
+   * Duplicate emails are detected by the unique index on USERS.email,
+   * which, unlike a lookup before the insert, also holds for concurrent sign-ups.
+   * Other constraint violations are not duplicates, and are rethrown.
    *
    * @param userRequestDTO The DTO containing user details for registration.
    * @return The created user entity.
    * @throws InvalidInputException If the email already exists.
+   * @throws TooManyRequestsException If the password hashing queue is full.
    */
   public User createUser(UserRequestDTO userRequestDTO) {
-    if (userRepository.findByEmail(userRequestDTO.getEmail()).isPresent()) {
-      throw new InvalidInputException(
-        "Email already exists: " + userRequestDTO.getEmail()
-      );
-    }
-
     User user = new User();
     user.setName(userRequestDTO.getName().trim());
     user.setEmail(userRequestDTO.getEmail().trim());
-    user.setPassword(passwordEncoder.encode(userRequestDTO.getPassword()));
+    user.setPassword(
+      passwordHashingService.encode(userRequestDTO.getPassword())
+    );
     user.setRole("ROLE_USER");
     user.setCreatedAt(LocalDateTime.now());
     user.setUpdatedAt(LocalDateTime.now());
 
-    return userRepository.save(user);
+    try {
+      return userRepository.saveAndFlush(user);
+    } catch (DataIntegrityViolationException e) {
+      if (!isDuplicateEmail(e)) {
+        throw e;
+      }
+      throw new InvalidInputException(
+        "Email already exists: " + userRequestDTO.getEmail(),
+        e
+      );
+    }
+  }
+
+  /**
+   * Checks whether an insert was refused by the unique index on the email,
+   * named by the constraint violation reported by the driver.
+   */
+  private static boolean isDuplicateEmail(DataIntegrityViolationException e) {
+    Throwable cause = NestedExceptionUtils.getMostSpecificCause(e);
+    return (
+      cause instanceof SQLIntegrityConstraintViolationException &&
+      cause.getMessage() != null &&
+      EMAIL_INDEX.matcher(cause.getMessage()).find()
+    );
+  }
+
+  /**
+   * Registers a new user and generates its JWT token.
+   * The token is issued from the persisted user : the password is hashed once
+   * and not checked again.
+   *
+   * @param userRequestDTO The DTO containing user details for registration.
+   * @return The generated JWT token.
+   * @throws InvalidInputException If the email already exists.
+   * @throws TooManyRequestsException If the password hashing queue is full.
+   */
+  public String registerUser(UserRequestDTO userRequestDTO) {
+    User user = createUser(userRequestDTO);
+    return jwtUtil.generateToken(
+      user.getId(),
+      user.getEmail(),
+      user.getRole()
+    );
   }
 
   /**
@@ -97,6 +150,7 @@ public class UserService {
    * @return The generated JWT token if authentication succeeds.
    * @throws ResourceNotFoundException If the email is not found.
    * @throws InvalidInputException If the password is invalid.
+   * @throws TooManyRequestsException If the password hashing queue is full.
    */
   public String authenticateUser(LoginRequestDTO loginRequestDTO) {
     User user = userRepository
@@ -108,7 +162,7 @@ public class UserService {
       );
 
     if (
-      !passwordEncoder.matches(
+      !passwordHashingService.matches(
         loginRequestDTO.getPassword(),
         user.getPassword()
       )
@@ -118,7 +172,11 @@ public class UserService {
       );
     }
 
-    return jwtUtil.generateToken(user.getEmail(), user.getRole());
+    return jwtUtil.generateToken(
+      user.getId(),
+      user.getEmail(),
+      user.getRole()
+    );
   }
 
   // TO DO Update User's details Method ?
@@ -0,0 +1,114 @@
+package com.chatop.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Storage backend of the image files (SPI).
+ * <p>
+ * Images are addressed by a key : a file name ({@code <digest>.jpg}),
+ * optionally prefixed by one directory for the resized variants
+ * ({@code w320/<digest>.jpg}). Implementations decide where the bytes live :
+ * see LocalShardedImageStore and S3ImageStore.
+ */
+public interface ImageStore {
+  Pattern KEY = Pattern.compile(
+    "(w[0-9]+/)?[A-Za-z0-9_-][A-Za-z0-9._-]*"
+  );
+
+  /**
+   * Creates an empty temporary file to write an upload to, before put.
+   *
+   * @return The temporary file.
+   * @throws IOException If the file cannot be created.
+   */
+  Path createTempFile() throws IOException;
+
+  /**
+   * Stores a file under a key, replacing any previous content.
+   * The file is consumed : it is moved or deleted once stored.
+   *
+   * @param key  The image key.
+   * @param file The file to store, created by createTempFile.
+   * @throws IOException If the file cannot be stored.
+   */
+  void put(String key, Path file) throws IOException;
+
+  /**
+   * Gets the metadata of an image.
+   *
+   * @param key The image key.
+   * @return The metadata, or empty if the image does not exist.
+   * @throws IOException If the storage cannot be read.
+   */
+  Optional<StoredImage> stat(String key) throws IOException;
+
+  /**
+   * Opens a part of an image.
+   *
+   * @param key   The image key.
+   * @param start The first byte to read.
+   * @param count The number of bytes to read.
+   * @return A stream of the requested bytes, to be closed by the caller.
+   * @throws IOException If the image cannot be read.
+   */
+  InputStream open(String key, long start, long count) throws IOException;
+
+  /**
+   * Gets the local file of an image, when the backend has one, so that it
+   * can be sent without copying it through the heap.
+   *
+   * @param key The image key.
+   * @return The local file, or empty.
+   */
+  Optional<Path> localPath(String key);
+
+  /**
+   * Deletes an image.
+   *
+   * @param key The image key.
+   * @return true if the image existed.
+   * @throws IOException If the image cannot be deleted.
+   */
+  boolean delete(String key) throws IOException;
+
+  /**
+   * Lists the keys of the stored images, originals and variants, reading
+   * the storage as the stream is consumed. Files that are not images of the
+   * store (temporary uploads...) are not listed.
+   *
+   * @return The keys, in no particular order : a stream to be closed.
+   * @throws IOException If the storage cannot be read.
+   */
+  Stream<String> list() throws IOException;
+
+  /**
+   * Opens a whole image.
+   *
+   * @param key The image key.
+   * @return A stream of the image, to be closed by the caller.
+   * @throws IOException If the image cannot be read.
+   */
+  default InputStream open(String key) throws IOException {
+    return open(key, 0, Long.MAX_VALUE);
+  }
+
+  /**
+   * Checks that a key is a file name, optionally in a variant directory,
+   * so that it cannot escape the storage.
+   *
+   * @param key The image key.
+   * @return The key.
+   * @throws IllegalArgumentException If the key is invalid.
+   */
+  static String checkKey(String key) {
+    if (key == null || !KEY.matcher(key).matches()) {
+      throw new IllegalArgumentException("Invalid image name: " + key);
+    }
+    return key;
+  }
+}
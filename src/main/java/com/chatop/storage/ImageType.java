@@ -0,0 +1,93 @@
+package com.chatop.storage;
+
+import java.util.Optional;
+
+/**
+ * Image formats accepted for upload, recognized by their first bytes
+ * (magic numbers) rather than by the name or the Content-Type sent by the
+ * client.
+ */
+public enum ImageType {
+  JPEG("jpg"),
+  PNG("png"),
+  GIF("gif"),
+  WEBP("webp");
+
+  /**
+   * Number of bytes needed to recognize every format.
+   */
+  public static final int HEADER_LENGTH = 12;
+
+  private static final byte[] JPEG_MAGIC = {
+    (byte) 0xFF, (byte) 0xD8, (byte) 0xFF,
+  };
+  private static final byte[] PNG_MAGIC = {
+    (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n',
+  };
+  private static final byte[] GIF87_MAGIC = { 'G', 'I', 'F', '8', '7', 'a' };
+  private static final byte[] GIF89_MAGIC = { 'G', 'I', 'F', '8', '9', 'a' };
+  private static final byte[] RIFF_MAGIC = { 'R', 'I', 'F', 'F' };
+  private static final byte[] WEBP_MAGIC = { 'W', 'E', 'B', 'P' };
+
+  private final String extension;
+
+  ImageType(String extension) {
+    this.extension = extension;
+  }
+
+  /**
+   * Gets the extension of the stored files of this format.
+   *
+   * @return The extension, in lower case (e.g. "jpg").
+   */
+  public String getExtension() {
+    return extension;
+  }
+
+  /**
+   * Recognizes the format of an image from its first bytes.
+   *
+   * @param header The first bytes of the file.
+   * @param length The number of bytes read in header.
+   * @return The format, or empty if the bytes do not start a known image.
+   */
+  public static Optional<ImageType> sniff(byte[] header, int length) {
+    if (startsWith(header, length, 0, JPEG_MAGIC)) {
+      return Optional.of(JPEG);
+    }
+    if (startsWith(header, length, 0, PNG_MAGIC)) {
+      return Optional.of(PNG);
+    }
+    if (
+      startsWith(header, length, 0, GIF87_MAGIC) ||
+      startsWith(header, length, 0, GIF89_MAGIC)
+    ) {
+      return Optional.of(GIF);
+    }
+    // RIFF container : 4 bytes of size between the two tags
+    if (
+      startsWith(header, length, 0, RIFF_MAGIC) &&
+      startsWith(header, length, 8, WEBP_MAGIC)
+    ) {
+      return Optional.of(WEBP);
+    }
+    return Optional.empty();
+  }
+
+  private static boolean startsWith(
+    byte[] header,
+    int length,
+    int offset,
+    byte[] magic
+  ) {
+    if (length < offset + magic.length) {
+      return false;
+    }
+    for (int i = 0; i < magic.length; i++) {
+      if (header[offset + i] != magic[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,271 @@
+package com.chatop.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Image store on the local filesystem, with a two-level hashed fan-out :
+ * {@code w320/<digest>.jpg} is stored as {@code <root>/w320/ab/cd/<digest>.jpg}
+ * where abcd starts the SHA-256 of the file name. Each directory then holds
+ * at most a few hundred entries, even with millions of images.
+ * <p>
+ * Files of the former flat layout ({@code <root>/<name>}) are still found
+ * until they are moved by migrateFlatFiles.
+ */
+public class LocalShardedImageStore implements ImageStore {
+
+  private static final Logger logger = LoggerFactory.getLogger(
+    LocalShardedImageStore.class
+  );
+
+  private static final String TMP_DIRECTORY = "tmp";
+
+  private final Path root;
+
+  /**
+   * Constructs the LocalShardedImageStore.
+   *
+   * @param root The root directory of the images.
+   */
+  public LocalShardedImageStore(Path root) {
+    this.root = root.toAbsolutePath().normalize();
+  }
+
+  @Override
+  public Path createTempFile() throws IOException {
+    Path tmpDirectory = Files.createDirectories(root.resolve(TMP_DIRECTORY));
+    return Files.createTempFile(tmpDirectory, "upload", ".tmp");
+  }
+
+  @Override
+  public void put(String key, Path file) throws IOException {
+    Path target = shardedPath(key);
+    Files.createDirectories(target.getParent());
+    // Same filesystem as createTempFile : a rename, never a partial file
+    Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+    Files.deleteIfExists(flatPath(key));
+  }
+
+  @Override
+  public Optional<StoredImage> stat(String key) throws IOException {
+    Optional<Path> path = localPath(key);
+    if (path.isEmpty()) {
+      return Optional.empty();
+    }
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(
+        path.get(),
+        BasicFileAttributes.class
+      );
+      return Optional.of(
+        new StoredImage(
+          attributes.size(),
+          attributes.lastModifiedTime().toMillis()
+        )
+      );
+    } catch (NoSuchFileException e) {
+      return Optional.empty();
+    }
+  }
+
+  @Override
+  public InputStream open(String key, long start, long count)
+    throws IOException {
+    Path path = localPath(key)
+      .orElseThrow(() -> new NoSuchFileException(key));
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    channel.position(start);
+    InputStream input = Channels.newInputStream(channel);
+    return count == Long.MAX_VALUE ? input : new BoundedInputStream(input, count);
+  }
+
+  @Override
+  public Optional<Path> localPath(String key) {
+    Path sharded = shardedPath(key);
+    if (Files.isRegularFile(sharded)) {
+      return Optional.of(sharded);
+    }
+    Path flat = flatPath(key);
+    return Files.isRegularFile(flat) ? Optional.of(flat) : Optional.empty();
+  }
+
+  @Override
+  public boolean delete(String key) throws IOException {
+    boolean deleted = Files.deleteIfExists(shardedPath(key));
+    return Files.deleteIfExists(flatPath(key)) || deleted;
+  }
+
+  @Override
+  public Stream<String> list() throws IOException {
+    if (!Files.isDirectory(root)) {
+      return Stream.empty();
+    }
+    Path tmpDirectory = root.resolve(TMP_DIRECTORY);
+    // Lazy walk : directories are read as the keys are consumed
+    return Files
+      .walk(root)
+      .filter(path -> !path.startsWith(tmpDirectory))
+      .filter(Files::isRegularFile)
+      .map(this::keyOf)
+      .filter(key -> key != null);
+  }
+
+  /**
+   * Gets the key of a file of the sharded or the flat layout.
+   *
+   * @return The key, or null if the file is not an image of the store.
+   */
+  private String keyOf(Path file) {
+    Path relative = root.relativize(file);
+    String name = file.getFileName().toString();
+    String first = relative.getName(0).toString();
+    String key = relative.getNameCount() > 1 && first.matches("w[0-9]+")
+      ? first + "/" + name
+      : name;
+    return KEY.matcher(key).matches() ? key : null;
+  }
+
+  /**
+   * Moves the files of the flat layout into their shard : the files directly
+   * in the root directory and in the variant directories (w320...).
+   * Safe to run while the application serves images, and to run again.
+   *
+   * @return The number of files moved.
+   * @throws IOException If the directories cannot be read.
+   */
+  public int migrateFlatFiles() throws IOException {
+    if (!Files.isDirectory(root)) {
+      return 0;
+    }
+    int moved = migrateDirectory(root, "");
+    for (Path directory : list(root)) {
+      String name = directory.getFileName().toString();
+      if (Files.isDirectory(directory) && name.matches("w[0-9]+")) {
+        moved += migrateDirectory(directory, name + "/");
+      }
+    }
+    logger.info("{} images moved to the sharded layout in {}", moved, root);
+    return moved;
+  }
+
+  private int migrateDirectory(Path directory, String prefix)
+    throws IOException {
+    int moved = 0;
+    for (Path file : list(directory)) {
+      String key = prefix + file.getFileName();
+      if (!Files.isRegularFile(file) || !KEY.matcher(key).matches()) {
+        continue;
+      }
+      Path target = shardedPath(key);
+      Files.createDirectories(target.getParent());
+      Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+      moved++;
+    }
+    return moved;
+  }
+
+  private static List<Path> list(Path directory) throws IOException {
+    List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+      stream.forEach(files::add);
+    }
+    return files;
+  }
+
+  /**
+   * Gets the path of a key in the sharded layout.
+   */
+  Path shardedPath(String key) {
+    ImageStore.checkKey(key);
+    int slash = key.indexOf('/');
+    String name = key.substring(slash + 1);
+    String shard = shard(name);
+    Path directory = slash < 0 ? root : root.resolve(key.substring(0, slash));
+    return directory
+      .resolve(shard.substring(0, 2))
+      .resolve(shard.substring(2, 4))
+      .resolve(name);
+  }
+
+  private Path flatPath(String key) {
+    return root.resolve(ImageStore.checkKey(key));
+  }
+
+  private static String shard(String name) {
+    try {
+      byte[] hash = MessageDigest
+        .getInstance("SHA-256")
+        .digest(name.getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(hash, 0, 2);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  /**
+   * Stream reading at most a given number of bytes of another stream.
+   */
+  private static final class BoundedInputStream extends InputStream {
+
+    private final InputStream input;
+    private long remaining;
+
+    private BoundedInputStream(InputStream input, long remaining) {
+      this.input = input;
+      this.remaining = remaining;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int read = input.read();
+      if (read >= 0) {
+        remaining--;
+      }
+      return read;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int read = input.read(
+        buffer,
+        offset,
+        (int) Math.min(length, remaining)
+      );
+      if (read > 0) {
+        remaining -= read;
+      }
+      return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+      input.close();
+    }
+  }
+}
@@ -0,0 +1,466 @@
+package com.chatop.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Image store in an S3-compatible bucket (AWS S3, MinIO, Ceph...).
+ * <p>
+ * Objects are addressed path-style ({@code <endpoint>/<bucket>/<key>}) and
+ * requests are signed with AWS Signature V4 using the JDK HTTP client, so
+ * that no SDK is needed. Payloads are sent unsigned (UNSIGNED-PAYLOAD) :
+ * use an https endpoint outside of tests.
+ */
+public class S3ImageStore implements ImageStore {
+
+  private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+  private static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+  private static final String SIGNED_HEADERS =
+    "host;x-amz-content-sha256;x-amz-date";
+  private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern(
+    "yyyyMMdd'T'HHmmss'Z'"
+  );
+
+  private final URI endpoint;
+  private final String bucket;
+  private final String region;
+  private final String accessKey;
+  private final String secretKey;
+  private final HttpClient httpClient;
+
+  /**
+   * Constructs the S3ImageStore.
+   *
+   * @param endpoint  The endpoint URL (e.g. https://s3.eu-west-3.amazonaws.com).
+   * @param bucket    The bucket name.
+   * @param region    The region used in the signature (e.g. eu-west-3).
+   * @param accessKey The access key id.
+   * @param secretKey The secret access key.
+   */
+  public S3ImageStore(
+    String endpoint,
+    String bucket,
+    String region,
+    String accessKey,
+    String secretKey
+  ) {
+    this.endpoint =
+      URI.create(
+        endpoint.endsWith("/")
+          ? endpoint.substring(0, endpoint.length() - 1)
+          : endpoint
+      );
+    this.bucket = bucket;
+    this.region = region;
+    this.accessKey = accessKey;
+    this.secretKey = secretKey;
+    this.httpClient =
+      HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+  }
+
+  @Override
+  public Path createTempFile() throws IOException {
+    return Files.createTempFile("upload", ".tmp");
+  }
+
+  @Override
+  public void put(String key, Path file) throws IOException {
+    try {
+      String contentType = MediaTypeFactory
+        .getMediaType(key)
+        .orElse(MediaType.APPLICATION_OCTET_STREAM)
+        .toString();
+      HttpResponse<String> response = send(
+        request(key, "PUT", HttpRequest.BodyPublishers.ofFile(file))
+          .header("Content-Type", contentType),
+        HttpResponse.BodyHandlers.ofString()
+      );
+      check(response, key);
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Override
+  public Optional<StoredImage> stat(String key) throws IOException {
+    HttpResponse<Void> response = send(
+      request(key, "HEAD", HttpRequest.BodyPublishers.noBody()),
+      HttpResponse.BodyHandlers.discarding()
+    );
+    if (response.statusCode() == 404) {
+      return Optional.empty();
+    }
+    check(response, key);
+    long length = response
+      .headers()
+      .firstValueAsLong("Content-Length")
+      .orElse(0);
+    long lastModified = response
+      .headers()
+      .firstValue("Last-Modified")
+      .map(value ->
+        ZonedDateTime
+          .parse(value, DateTimeFormatter.RFC_1123_DATE_TIME)
+          .toInstant()
+          .toEpochMilli()
+      )
+      .orElse(0L);
+    return Optional.of(new StoredImage(length, lastModified));
+  }
+
+  @Override
+  public InputStream open(String key, long start, long count)
+    throws IOException {
+    HttpRequest.Builder request = request(
+      key,
+      "GET",
+      HttpRequest.BodyPublishers.noBody()
+    );
+    if (start > 0 || count != Long.MAX_VALUE) {
+      request.header(
+        "Range",
+        "bytes=" +
+        start +
+        "-" +
+        (count == Long.MAX_VALUE ? "" : String.valueOf(start + count - 1))
+      );
+    }
+    HttpResponse<InputStream> response = send(
+      request,
+      HttpResponse.BodyHandlers.ofInputStream()
+    );
+    if (response.statusCode() >= 300) {
+      response.body().close();
+      if (response.statusCode() == 404) {
+        throw new NoSuchFileException(key);
+      }
+      throw new IOException(
+        "S3 GET " + key + " failed with status " + response.statusCode()
+      );
+    }
+    return response.body();
+  }
+
+  @Override
+  public Optional<Path> localPath(String key) {
+    return Optional.empty();
+  }
+
+  @Override
+  public boolean delete(String key) throws IOException {
+    boolean existed = stat(key).isPresent();
+    HttpResponse<String> response = send(
+      request(key, "DELETE", HttpRequest.BodyPublishers.noBody()),
+      HttpResponse.BodyHandlers.ofString()
+    );
+    if (response.statusCode() != 404) {
+      check(response, key);
+    }
+    return existed;
+  }
+
+  @Override
+  public Stream<String> list() {
+    Iterator<String> keys = new KeyIterator();
+    return StreamSupport.stream(
+      Spliterators.spliteratorUnknownSize(keys, Spliterator.NONNULL),
+      false
+    );
+  }
+
+  /**
+   * Reads one page of the bucket listing (ListObjectsV2).
+   *
+   * @param continuationToken The token of the page, null for the first one.
+   * @param keys              The list the keys of the page are added to.
+   * @return The token of the next page, or null after the last one.
+   */
+  private String listPage(String continuationToken, List<String> keys)
+    throws IOException {
+    // Canonical query string : parameters sorted by name
+    String query = continuationToken == null
+      ? "list-type=2"
+      : "continuation-token=" + encode(continuationToken) + "&list-type=2";
+    HttpResponse<InputStream> response = send(
+      signedRequest(
+        endpoint.getRawPath() + "/" + encode(bucket),
+        query,
+        "GET",
+        HttpRequest.BodyPublishers.noBody()
+      ),
+      HttpResponse.BodyHandlers.ofInputStream()
+    );
+    try (InputStream body = response.body()) {
+      if (response.statusCode() >= 300) {
+        throw new IOException(
+          "S3 list of " +
+          bucket +
+          " failed with status " +
+          response.statusCode()
+        );
+      }
+      Document document = parse(body);
+      NodeList contents = document.getElementsByTagName("Key");
+      for (int i = 0; i < contents.getLength(); i++) {
+        String key = contents.item(i).getTextContent();
+        if (KEY.matcher(key).matches()) {
+          keys.add(key);
+        }
+      }
+      NodeList truncated = document.getElementsByTagName("IsTruncated");
+      NodeList next = document.getElementsByTagName("NextContinuationToken");
+      boolean more =
+        truncated.getLength() > 0 &&
+        "true".equals(truncated.item(0).getTextContent().trim());
+      return more && next.getLength() > 0 ? next.item(0).getTextContent() : null;
+    }
+  }
+
+  private static Document parse(InputStream body) throws IOException {
+    try {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setFeature(
+        "http://apache.org/xml/features/disallow-doctype-decl",
+        true
+      );
+      factory.setXIncludeAware(false);
+      factory.setExpandEntityReferences(false);
+      return factory.newDocumentBuilder().parse(body);
+    } catch (ParserConfigurationException | SAXException e) {
+      throw new IOException("Invalid S3 list response", e);
+    }
+  }
+
+  /**
+   * Keys of the bucket, one page of the listing read at a time.
+   */
+  private final class KeyIterator implements Iterator<String> {
+
+    private final List<String> page = new ArrayList<>();
+    private int index;
+    private String continuationToken;
+    private boolean lastPage;
+
+    @Override
+    public boolean hasNext() {
+      while (index == page.size() && !lastPage) {
+        page.clear();
+        index = 0;
+        try {
+          continuationToken = listPage(continuationToken, page);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        lastPage = continuationToken == null;
+      }
+      return index < page.size();
+    }
+
+    @Override
+    public String next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return page.get(index++);
+    }
+  }
+
+  /**
+   * Builds a signed request for an object.
+   */
+  private HttpRequest.Builder request(
+    String key,
+    String method,
+    HttpRequest.BodyPublisher body
+  ) {
+    return signedRequest(
+      endpoint.getRawPath() + "/" + encode(bucket) + "/" + encodeKey(key),
+      "",
+      method,
+      body
+    );
+  }
+
+  /**
+   * Builds a signed request.
+   *
+   * @param path  The encoded path.
+   * @param query The encoded query string, parameters sorted by name.
+   */
+  private HttpRequest.Builder signedRequest(
+    String path,
+    String query,
+    String method,
+    HttpRequest.BodyPublisher body
+  ) {
+    URI uri = endpoint.resolve(query.isEmpty() ? path : path + "?" + query);
+    String amzDate = ZonedDateTime.now(ZoneOffset.UTC).format(AMZ_DATE);
+    return HttpRequest
+      .newBuilder(uri)
+      .timeout(Duration.ofSeconds(30))
+      .method(method, body)
+      .header("x-amz-date", amzDate)
+      .header("x-amz-content-sha256", UNSIGNED_PAYLOAD)
+      .header("Authorization", authorization(method, uri, amzDate));
+  }
+
+  /**
+   * Computes the Authorization header (AWS Signature V4, header-based).
+   */
+  String authorization(String method, URI uri, String amzDate) {
+    String date = amzDate.substring(0, 8);
+    String scope = date + "/" + region + "/s3/aws4_request";
+    String host = uri.getPort() == -1
+      ? uri.getHost()
+      : uri.getHost() + ":" + uri.getPort();
+    String canonicalRequest =
+      method +
+      "\n" +
+      uri.getRawPath() +
+      "\n" +
+      (uri.getRawQuery() == null ? "" : uri.getRawQuery()) +
+      "\n" +
+      "host:" +
+      host +
+      "\n" +
+      "x-amz-content-sha256:" +
+      UNSIGNED_PAYLOAD +
+      "\n" +
+      "x-amz-date:" +
+      amzDate +
+      "\n" +
+      "\n" +
+      SIGNED_HEADERS +
+      "\n" +
+      UNSIGNED_PAYLOAD;
+    String stringToSign =
+      ALGORITHM +
+      "\n" +
+      amzDate +
+      "\n" +
+      scope +
+      "\n" +
+      HexFormat.of().formatHex(sha256(canonicalRequest));
+
+    byte[] signingKey = hmac(
+      ("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8),
+      date
+    );
+    signingKey = hmac(signingKey, region);
+    signingKey = hmac(signingKey, "s3");
+    signingKey = hmac(signingKey, "aws4_request");
+    String signature = HexFormat.of().formatHex(hmac(signingKey, stringToSign));
+
+    return (
+      ALGORITHM +
+      " Credential=" +
+      accessKey +
+      "/" +
+      scope +
+      ", SignedHeaders=" +
+      SIGNED_HEADERS +
+      ", Signature=" +
+      signature
+    );
+  }
+
+  private <T> HttpResponse<T> send(
+    HttpRequest.Builder request,
+    HttpResponse.BodyHandler<T> handler
+  ) throws IOException {
+    try {
+      return httpClient.send(request.build(), handler);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("S3 request interrupted", e);
+    }
+  }
+
+  private static void check(HttpResponse<?> response, String key)
+    throws IOException {
+    if (response.statusCode() >= 300) {
+      throw new IOException(
+        "S3 " +
+        response.request().method() +
+        " " +
+        key +
+        " failed with status " +
+        response.statusCode()
+      );
+    }
+  }
+
+  // URI encoding of AWS : everything but the unreserved characters
+  private static String encode(String segment) {
+    return URLEncoder
+      .encode(segment, StandardCharsets.UTF_8)
+      .replace("+", "%20")
+      .replace("*", "%2A")
+      .replace("%7E", "~");
+  }
+
+  private static String encodeKey(String key) {
+    int slash = ImageStore.checkKey(key).indexOf('/');
+    return slash < 0
+      ? encode(key)
+      : encode(key.substring(0, slash)) + "/" + encode(key.substring(slash + 1));
+  }
+
+  private static byte[] sha256(String value) {
+    try {
+      return MessageDigest
+        .getInstance("SHA-256")
+        .digest(value.getBytes(StandardCharsets.UTF_8));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  private static byte[] hmac(byte[] key, String value) {
+    try {
+      Mac mac = Mac.getInstance("HmacSHA256");
+      mac.init(new SecretKeySpec(key, "HmacSHA256"));
+      return mac.doFinal(value.getBytes(StandardCharsets.UTF_8));
+    } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+      throw new IllegalStateException("HmacSHA256 is not available", e);
+    }
+  }
+}
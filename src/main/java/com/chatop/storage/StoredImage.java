@@ -0,0 +1,29 @@
+package com.chatop.storage;
+
+/**
+ * Metadata of a stored image, used for the HTTP validators and ranges.
+ */
+public final class StoredImage {
+
+  private final long length;
+  private final long lastModified;
+
+  /**
+   * Constructs a StoredImage.
+   *
+   * @param length       The size of the image, in bytes.
+   * @param lastModified The last modification time, in ms since the epoch.
+   */
+  public StoredImage(long length, long lastModified) {
+    this.length = length;
+    this.lastModified = lastModified;
+  }
+
+  public long getLength() {
+    return length;
+  }
+
+  public long getLastModified() {
+    return lastModified;
+  }
+}
@@ -0,0 +1,54 @@
+package com.chatop.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Encodes and decodes the opaque cursors used by keyset-paginated endpoints.
+ * A cursor is the list of key values of the last row of a page, joined and
+ * Base64url encoded so that clients treat it as an opaque token.
+ */
+public final class CursorUtil {
+
+  private static final String SEPARATOR = "|";
+
+  private CursorUtil() {}
+
+  /**
+   * Encodes the given key values into an opaque cursor.
+   *
+   * @param parts The key values of the last row of a page.
+   * @return The opaque cursor.
+   */
+  public static String encode(String... parts) {
+    String raw = String.join(SEPARATOR, parts);
+    return Base64
+      .getUrlEncoder()
+      .withoutPadding()
+      .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Decodes an opaque cursor into its key values.
+   *
+   * @param cursor        The opaque cursor sent by the client.
+   * @param expectedParts The number of key values the cursor must contain.
+   * @return The decoded key values.
+   * @throws IllegalArgumentException If the cursor is malformed.
+   */
+  public static String[] decode(String cursor, int expectedParts) {
+    try {
+      String raw = new String(
+        Base64.getUrlDecoder().decode(cursor),
+        StandardCharsets.UTF_8
+      );
+      String[] parts = raw.split("\\" + SEPARATOR, -1);
+      if (parts.length != expectedParts) {
+        throw new IllegalArgumentException("Invalid cursor: " + cursor);
+      }
+      return parts;
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+    }
+  }
+}
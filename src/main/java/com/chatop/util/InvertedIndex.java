@@ -0,0 +1,278 @@
+package com.chatop.util;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Inverted index of documents identified by a positive int id, ranked with
+ * BM25.
+ * <p>
+ * Each document gets a slot, and each term the posting list of the slots
+ * containing it : the slots and term frequencies are kept in int arrays,
+ * in slot order. Putting a document again (an update) removes its slot and
+ * appends a new one ; removed slots are skipped by the searches, still
+ * counted in the document frequencies, and dropped by a compaction once
+ * they are a quarter of the slots.
+ * <p>
+ * A document is only replaced by a higher version, so that puts of the same
+ * document may arrive in any order. Not thread-safe : the callers guard it.
+ */
+public final class InvertedIndex {
+
+  // BM25 term frequency saturation and length normalization
+  private static final float K1 = 1.2f;
+  private static final float B = 0.75f;
+
+  private static final int MIN_COMPACTED_SLOTS = 1024;
+
+  private final Map<String, Postings> postings = new HashMap<>();
+
+  // Slot + 1 of each document id, 0 when not indexed
+  private int[] slotsById = new int[1024];
+  private int[] idsBySlot = new int[1024];
+  private long[] versionsBySlot = new long[1024];
+  private int[] lengthsBySlot = new int[1024];
+  private int slotCount;
+  private final BitSet removed = new BitSet();
+  private int removedCount;
+  private long totalLength;
+
+  /**
+   * Indexes a document, replacing its lower version.
+   *
+   * @param id      The id of the document, positive.
+   * @param version The version of the document.
+   * @param terms   The terms of the document, with repetitions.
+   * @return false if an equal or higher version is already indexed.
+   */
+  public boolean put(int id, long version, List<String> terms) {
+    if (id <= 0) {
+      throw new IllegalArgumentException("Invalid document id: " + id);
+    }
+    if (id < slotsById.length && slotsById[id] > 0) {
+      int previous = slotsById[id] - 1;
+      if (versionsBySlot[previous] >= version) {
+        return false;
+      }
+      remove(previous);
+    }
+
+    int slot = slotCount++;
+    if (slot == idsBySlot.length) {
+      int capacity = idsBySlot.length * 2;
+      idsBySlot = Arrays.copyOf(idsBySlot, capacity);
+      versionsBySlot = Arrays.copyOf(versionsBySlot, capacity);
+      lengthsBySlot = Arrays.copyOf(lengthsBySlot, capacity);
+    }
+    if (id >= slotsById.length) {
+      slotsById =
+        Arrays.copyOf(slotsById, Math.max(id + 1, slotsById.length * 2));
+    }
+    slotsById[id] = slot + 1;
+    idsBySlot[slot] = id;
+    versionsBySlot[slot] = version;
+    lengthsBySlot[slot] = terms.size();
+    totalLength += terms.size();
+
+    Map<String, Integer> frequencies = new HashMap<>();
+    for (String term : terms) {
+      frequencies.merge(term, 1, Integer::sum);
+    }
+    for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+      postings
+        .computeIfAbsent(entry.getKey(), term -> new Postings())
+        .add(slot, entry.getValue());
+    }
+
+    if (
+      removedCount >= MIN_COMPACTED_SLOTS && removedCount * 4 >= slotCount
+    ) {
+      compact();
+    }
+    return true;
+  }
+
+  /**
+   * Finds the documents containing any of the terms, best first.
+   * <p>
+   * Scores are summed term by term into an array of one float per slot.
+   *
+   * @param terms The terms of the query.
+   * @param count The maximum number of documents returned.
+   * @return The best documents and the number of matching ones.
+   */
+  public Hits search(List<String> terms, int count) {
+    int documents = size();
+    if (documents == 0 || count <= 0) {
+      return new Hits(new int[0], new float[0], 0);
+    }
+    float averageLength = (float) totalLength / documents;
+    float[] scores = new float[slotCount];
+    int[] matches = new int[64];
+    int matchCount = 0;
+
+    for (String term : new LinkedHashSet<>(terms)) {
+      Postings list = postings.get(term);
+      if (list == null) {
+        continue;
+      }
+      // Removed slots still in the list would make the idf negative
+      int frequency = Math.min(list.size, documents);
+      float idf = (float) Math.log(
+        1 + (documents - frequency + 0.5) / (frequency + 0.5)
+      );
+      for (int i = 0; i < list.size; i++) {
+        int slot = list.slots[i];
+        if (removed.get(slot)) {
+          continue;
+        }
+        float tf = list.frequencies[i];
+        float norm = K1 * (1 - B + B * lengthsBySlot[slot] / averageLength);
+        if (scores[slot] == 0) {
+          if (matchCount == matches.length) {
+            matches = Arrays.copyOf(matches, matchCount * 2);
+          }
+          matches[matchCount++] = slot;
+        }
+        scores[slot] += idf * tf * (K1 + 1) / (tf + norm);
+      }
+    }
+
+    // Min-heap of the best slots : the worst one is replaced first
+    PriorityQueue<Integer> best = new PriorityQueue<>(
+      Math.min(count, Math.max(matchCount, 1)),
+      (a, b) ->
+        scores[a] != scores[b]
+          ? Float.compare(scores[a], scores[b])
+          : Integer.compare(idsBySlot[b], idsBySlot[a])
+    );
+    for (int i = 0; i < matchCount; i++) {
+      best.add(matches[i]);
+      if (best.size() > count) {
+        best.poll();
+      }
+    }
+    int[] ids = new int[best.size()];
+    float[] bestScores = new float[best.size()];
+    for (int i = ids.length - 1; i >= 0; i--) {
+      int slot = best.poll();
+      ids[i] = idsBySlot[slot];
+      bestScores[i] = scores[slot];
+    }
+    return new Hits(ids, bestScores, matchCount);
+  }
+
+  /**
+   * Gets the number of indexed documents.
+   *
+   * @return The number of documents, without the removed slots.
+   */
+  public int size() {
+    return slotCount - removedCount;
+  }
+
+  private void remove(int slot) {
+    removed.set(slot);
+    removedCount++;
+    totalLength -= lengthsBySlot[slot];
+    slotsById[idsBySlot[slot]] = 0;
+  }
+
+  /**
+   * Renumbers the slots without the removed ones, and drops them from the
+   * posting lists.
+   */
+  private void compact() {
+    int[] newSlots = new int[slotCount];
+    int next = 0;
+    for (int slot = 0; slot < slotCount; slot++) {
+      if (removed.get(slot)) {
+        newSlots[slot] = -1;
+        continue;
+      }
+      newSlots[slot] = next;
+      idsBySlot[next] = idsBySlot[slot];
+      versionsBySlot[next] = versionsBySlot[slot];
+      lengthsBySlot[next] = lengthsBySlot[slot];
+      slotsById[idsBySlot[next]] = next + 1;
+      next++;
+    }
+    slotCount = next;
+    removed.clear();
+    removedCount = 0;
+
+    postings
+      .values()
+      .removeIf(list -> {
+        int kept = 0;
+        for (int i = 0; i < list.size; i++) {
+          int slot = newSlots[list.slots[i]];
+          if (slot >= 0) {
+            list.slots[kept] = slot;
+            list.frequencies[kept] = list.frequencies[i];
+            kept++;
+          }
+        }
+        list.size = kept;
+        return kept == 0;
+      });
+  }
+
+  /**
+   * The slots containing a term and its frequency in each, in slot order.
+   */
+  private static final class Postings {
+
+    private int[] slots = new int[2];
+    private int[] frequencies = new int[2];
+    private int size;
+
+    private void add(int slot, int frequency) {
+      if (size == slots.length) {
+        slots = Arrays.copyOf(slots, size * 2);
+        frequencies = Arrays.copyOf(frequencies, size * 2);
+      }
+      slots[size] = slot;
+      frequencies[size] = frequency;
+      size++;
+    }
+  }
+
+  /**
+   * The best documents of a search, best first.
+   */
+  public static final class Hits {
+
+    private final int[] ids;
+    private final float[] scores;
+    private final int total;
+
+    private Hits(int[] ids, float[] scores, int total) {
+      this.ids = ids;
+      this.scores = scores;
+      this.total = total;
+    }
+
+    public int[] getIds() {
+      return ids;
+    }
+
+    public float[] getScores() {
+      return scores;
+    }
+
+    /**
+     * Gets the number of matching documents, returned or not.
+     *
+     * @return The number of documents containing a term of the query.
+     */
+    public int getTotal() {
+      return total;
+    }
+  }
+}
@@ -0,0 +1,291 @@
+package com.chatop.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.SecretKey;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+
+/**
+ * Ring of HMAC keys used to sign and verify JWT tokens.
+ * <p>
+ * Keys are read from a directory shared by all instances, one file per key :
+ * {@code <kid>.key} holding the Base64 encoded key (see GenerateJwtKey).
+ * Tokens are signed with the newest key and carry its id in the {@code kid}
+ * header, so any instance verifies any token with a single map lookup.
+ * <p>
+ * The directory is reloaded periodically. A new key is only used for signing
+ * once it is older than the reload interval, so that every instance knows it
+ * before the first token signed with it. When a rotation period is set, the
+ * instance adds a new key when the newest one is too old and deletes the keys
+ * that can no longer have valid tokens, never the two newest ones (enable it
+ * on one instance only).
+ * Without directory, a single in-memory key is generated (development only).
+ */
+@Component
+public class JwtKeyRing {
+
+  private static final Logger logger = LoggerFactory.getLogger(
+    JwtKeyRing.class
+  );
+
+  private static final String KEY_SUFFIX = ".key";
+  private static final long MIN_ON_DEMAND_RELOAD_INTERVAL = 1000;
+
+  private final Path directory;
+  private final long reloadInterval;
+  private final long rotationPeriod;
+  private final long retention;
+
+  private volatile KeySet keySet;
+  private volatile long lastReload;
+
+  /**
+   * Constructs the JwtKeyRing and loads the keys.
+   *
+   * @param directory       The key directory (blank for a single in-memory key).
+   * @param reloadInterval  The interval between two reloads of the directory, in ms.
+   * @param rotationPeriod  The age of the newest key triggering a rotation, in ms (0 to disable).
+   * @param tokenExpiration The validity of the tokens, in ms.
+   * @throws IllegalStateException If no key can be loaded.
+   */
+  public JwtKeyRing(
+    @Value("${jwt.keys.directory:}") String directory,
+    @Value("${jwt.keys.reload-interval:60000}") long reloadInterval,
+    @Value("${jwt.keys.rotation-period:0}") long rotationPeriod,
+    @Value("${jwt.expiration:3600000}") long tokenExpiration
+  ) {
+    this.directory = directory == null || directory.isBlank()
+      ? null
+      : Paths.get(directory);
+    this.reloadInterval = reloadInterval;
+    this.rotationPeriod = rotationPeriod;
+    // A retired key signed tokens until it was replaced (rotation period
+    // plus activation delay) and these tokens live for tokenExpiration.
+    this.retention = rotationPeriod + reloadInterval + tokenExpiration;
+
+    if (this.directory == null) {
+      logger.warn(
+        "jwt.keys.directory is not set : tokens are signed with an in-memory key and will not be valid on other instances"
+      );
+      SecretKey key = Keys.secretKeyFor(SignatureAlgorithm.HS256);
+      this.keySet = new KeySet(Map.of("ephemeral", key), "ephemeral");
+      return;
+    }
+
+    refresh();
+    if (keySet == null || keySet.signingKeyId == null) {
+      throw new IllegalStateException("No JWT key found in " + this.directory);
+    }
+  }
+
+  /**
+   * Gets the key currently used to sign new tokens.
+   *
+   * @return The key id and the key.
+   */
+  public Map.Entry<String, SecretKey> getSigningKey() {
+    KeySet current = keySet;
+    return Map.entry(
+      current.signingKeyId,
+      current.keys.get(current.signingKeyId)
+    );
+  }
+
+  /**
+   * Gets the verification key of a token from its kid header.
+   * An unknown id triggers a reload of the directory (at most once a second),
+   * in case another instance has just rotated the keys.
+   *
+   * @param keyId The kid header of the token.
+   * @return The key, or null if the id is unknown.
+   */
+  public SecretKey getVerificationKey(String keyId) {
+    if (keyId == null) {
+      return null;
+    }
+    SecretKey key = keySet.keys.get(keyId);
+    if (
+      key == null &&
+      directory != null &&
+      System.currentTimeMillis() - lastReload > MIN_ON_DEMAND_RELOAD_INTERVAL
+    ) {
+      reload();
+      key = keySet.keys.get(keyId);
+    }
+    return key;
+  }
+
+  /**
+   * Checks whether a key is still in the ring.
+   *
+   * @param keyId The key id.
+   * @return true if tokens signed with this key are still accepted.
+   */
+  public boolean contains(String keyId) {
+    return keyId != null && keySet.keys.containsKey(keyId);
+  }
+
+  /**
+   * Rotates the keys if due and reloads the directory.
+   */
+  @Scheduled(
+    fixedDelayString = "${jwt.keys.reload-interval:60000}",
+    initialDelayString = "${jwt.keys.reload-interval:60000}"
+  )
+  public synchronized void refresh() {
+    if (directory == null) {
+      return;
+    }
+    if (rotationPeriod > 0) {
+      try {
+        rotate();
+      } catch (IOException e) {
+        logger.error("JWT key rotation failed in {}", directory, e);
+      }
+    }
+    reload();
+  }
+
+  /**
+   * Reads every key file of the directory and swaps the key set.
+   * On error, the previous key set is kept.
+   */
+  private synchronized void reload() {
+    try {
+      Map<String, SecretKey> keys = new HashMap<>();
+      String newestId = null;
+      long newestTime = Long.MIN_VALUE;
+      String signingId = null;
+      long signingTime = Long.MIN_VALUE;
+      long now = System.currentTimeMillis();
+
+      for (Path file : listKeyFiles()) {
+        String keyId = keyId(file);
+        byte[] bytes = Base64
+          .getDecoder()
+          .decode(Files.readString(file, StandardCharsets.US_ASCII).trim());
+        keys.put(keyId, Keys.hmacShaKeyFor(bytes));
+
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        if (modified > newestTime) {
+          newestTime = modified;
+          newestId = keyId;
+        }
+        if (now - modified >= reloadInterval && modified > signingTime) {
+          signingTime = modified;
+          signingId = keyId;
+        }
+      }
+
+      keySet =
+        new KeySet(
+          Collections.unmodifiableMap(keys),
+          signingId != null ? signingId : newestId
+        );
+      lastReload = now;
+    } catch (IOException | IllegalArgumentException e) {
+      logger.error("Failed to load JWT keys from {}", directory, e);
+    }
+  }
+
+  /**
+   * Adds a new key when the newest one is older than the rotation period
+   * and deletes the keys older than the retention. The two newest keys are
+   * always kept whatever their age : the newest signs the tokens until the
+   * new one is activated, and the previous one signed the tokens issued
+   * before it (after a long downtime, both are older than the retention).
+   */
+  private void rotate() throws IOException {
+    Files.createDirectories(directory);
+    long now = System.currentTimeMillis();
+    Map<Path, Long> modified = new HashMap<>();
+    for (Path file : listKeyFiles()) {
+      modified.put(file, Files.getLastModifiedTime(file).toMillis());
+    }
+    List<Path> files = new ArrayList<>(modified.keySet());
+    files.sort(Comparator.comparing(modified::get, Comparator.reverseOrder()));
+    for (Path file : files.subList(Math.min(2, files.size()), files.size())) {
+      if (now - modified.get(file) > retention) {
+        Files.delete(file);
+        logger.info("JWT key {} retired", keyId(file));
+      }
+    }
+    long newest = files.isEmpty()
+      ? Long.MIN_VALUE
+      : modified.get(files.get(0));
+
+    if (newest == Long.MIN_VALUE || now - newest >= rotationPeriod) {
+      String keyId = "k" + now;
+      byte[] bytes = Keys.secretKeyFor(SignatureAlgorithm.HS256).getEncoded();
+      // Written aside then moved, so that other instances never read a partial key
+      Path tmp = Files.createTempFile(directory, keyId, ".tmp");
+      Files.writeString(
+        tmp,
+        Base64.getEncoder().encodeToString(bytes),
+        StandardCharsets.US_ASCII
+      );
+      Files.move(
+        tmp,
+        directory.resolve(keyId + KEY_SUFFIX),
+        StandardCopyOption.ATOMIC_MOVE
+      );
+      logger.info("JWT key {} created", keyId);
+    }
+  }
+
+  private List<Path> listKeyFiles() throws IOException {
+    if (!Files.isDirectory(directory)) {
+      return Collections.emptyList();
+    }
+    List<Path> files = new ArrayList<>();
+    try (
+      DirectoryStream<Path> stream = Files.newDirectoryStream(
+        directory,
+        "*" + KEY_SUFFIX
+      )
+    ) {
+      stream.forEach(files::add);
+    }
+    return files;
+  }
+
+  private static String keyId(Path file) {
+    String name = file.getFileName().toString();
+    return name.substring(0, name.length() - KEY_SUFFIX.length());
+  }
+
+  /**
+   * Immutable snapshot of the ring, swapped as a whole on reload.
+   */
+  private static final class KeySet {
+
+    private final Map<String, SecretKey> keys;
+    private final String signingKeyId;
+
+    private KeySet(Map<String, SecretKey> keys, String signingKeyId) {
+      this.keys = keys;
+      this.signingKeyId = signingKeyId;
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package com.chatop.util;
+
+import java.security.Principal;
+import java.time.Instant;
+
+/**
+ * Immutable view of the verified claims of a JWT token.
+ * Set as the principal of the security context by JwtAuthenticationFilter,
+ * it can be injected in controllers with @AuthenticationPrincipal.
+ */
+public final class JwtPrincipal implements Principal {
+
+  private final Integer userId;
+  private final String email;
+  private final String role;
+  private final Instant expiresAt;
+
+  /**
+   * Constructs a JwtPrincipal.
+   *
+   * @param userId    The user's ID.
+   * @param email     The user's email (token subject).
+   * @param role      The user's role.
+   * @param expiresAt The expiration instant of the token.
+   */
+  public JwtPrincipal(
+    Integer userId,
+    String email,
+    String role,
+    Instant expiresAt
+  ) {
+    this.userId = userId;
+    this.email = email;
+    this.role = role;
+    this.expiresAt = expiresAt;
+  }
+
+  public Integer getUserId() {
+    return userId;
+  }
+
+  public String getEmail() {
+    return email;
+  }
+
+  public String getRole() {
+    return role;
+  }
+
+  public Instant getExpiresAt() {
+    return expiresAt;
+  }
+
+  /**
+   * Checks whether the token has expired at the given instant.
+   *
+   * @param now The current instant.
+   * @return true if the token is expired.
+   */
+  public boolean isExpired(Instant now) {
+    return expiresAt != null && !now.isBefore(expiresAt);
+  }
+
+  /**
+   * Gets the principal name, i.e. the user's email, as returned by Authentication.getName().
+   */
+  @Override
+  public String getName() {
+    return email;
+  }
+
+  @Override
+  public String toString() {
+    return email;
+  }
+}
@@ -1,52 +1,145 @@
 package com.chatop.util;
 
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Base64;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.crypto.SecretKey;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import com.chatop.exception.JwtValidationException;
 
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwsHeader;
 import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.MalformedJwtException;
-import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
 import io.jsonwebtoken.UnsupportedJwtException;
-import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
 
 @Component
 public class JwtUtil {
 
-  private final SecretKey secretKey;
+  private static final String USER_ID_CLAIM = "uid";
+  private static final String ROLE_CLAIM = "role";
+
+  // Entrées examinées pour choisir le token retiré d'un cache plein
+  private static final int EVICTION_SAMPLE = 8;
+
+  private final JwtKeyRing keyRing;
   private final long expiration;
 
-  public JwtUtil() {
-    this.secretKey = Keys.secretKeyFor(SignatureAlgorithm.HS256);
-    this.expiration = 3600000;
+  // Le parser est immuable et thread-safe : construit une seule fois,
+  // la clé de vérification est choisie d'après l'en-tête kid du token
+  private final JwtParser parser;
+
+  // Tokens déjà vérifiés, indexés par leur empreinte SHA-256
+  private final Map<String, VerifiedToken> verifiedTokens =
+    new ConcurrentHashMap<>();
+  private final int cacheMaxSize;
+
+  /**
+   * Construit le JwtUtil.
+   *
+   * @param keyRing      Le trousseau des clés de signature.
+   * @param expiration   La durée de validité des tokens, en ms.
+   * @param cacheMaxSize Nombre maximum de tokens vérifiés gardés en cache (0 pour désactiver).
+   */
+  public JwtUtil(
+    JwtKeyRing keyRing,
+    @Value("${jwt.expiration:3600000}") long expiration,
+    @Value("${jwt.cache.max-size:10000}") int cacheMaxSize
+  ) {
+    this.keyRing = keyRing;
+    this.expiration = expiration;
+    this.parser =
+      Jwts
+        .parserBuilder()
+        .setSigningKeyResolver(
+          new SigningKeyResolverAdapter() {
+            @Override
+            public Key resolveSigningKey(JwsHeader header, Claims claims) {
+              Key key = keyRing.getVerificationKey(header.getKeyId());
+              if (key == null) {
+                throw new SignatureException(
+                  "Unknown signing key: " + header.getKeyId()
+                );
+              }
+              return key;
+            }
+          }
+        )
+        .build();
+    this.cacheMaxSize = cacheMaxSize;
   }
 
   /**
-   * Génère un token JWT contenant l'email et le rôle de l'utilisateur.
+   * Génère un token JWT contenant l'id, l'email et le rôle de l'utilisateur.
    *
-   * @param email L'email de l'utilisateur.
-   * @param role  Le rôle de l'utilisateur.
+   * @param userId L'id de l'utilisateur.
+   * @param email  L'email de l'utilisateur.
+   * @param role   Le rôle de l'utilisateur.
    * @return Le token JWT.
    */
-  public String generateToken(String email, String role) {
+  public String generateToken(Integer userId, String email, String role) {
+    Map.Entry<String, SecretKey> signingKey = keyRing.getSigningKey();
     return Jwts
       .builder()
+      .setHeaderParam(JwsHeader.KEY_ID, signingKey.getKey())
       .setSubject(email)
-      .claim("role", role)
+      .claim(USER_ID_CLAIM, userId)
+      .claim(ROLE_CLAIM, role)
       .setIssuedAt(new Date())
       .setExpiration(new Date(System.currentTimeMillis() + expiration))
-      .signWith(secretKey)
+      .signWith(signingKey.getValue())
       .compact();
   }
 
+  /**
+   * Vérifie un token JWT (signature et expiration) en une seule analyse.
+   * Un token déjà vérifié est servi depuis le cache jusqu'à son expiration,
+   * tant que sa clé de signature reste dans le trousseau.
+   *
+   * @param token Le token JWT.
+   * @return Les informations vérifiées du token.
+   * @throws JwtValidationException En cas d'erreur de validation du token.
+   */
+  public JwtPrincipal verify(String token) {
+    String digest = cacheMaxSize > 0 ? digest(token) : null;
+    Instant now = Instant.now();
+
+    if (digest != null) {
+      VerifiedToken cached = verifiedTokens.get(digest);
+      if (cached != null) {
+        if (
+          !cached.principal.isExpired(now) && keyRing.contains(cached.keyId)
+        ) {
+          return cached.principal;
+        }
+        verifiedTokens.remove(digest);
+      }
+    }
+
+    VerifiedToken verified = parse(token);
+    if (digest != null) {
+      cache(digest, verified, now);
+    }
+    return verified.principal;
+  }
+
   /**
    * Valide un token JWT.
    *
@@ -55,19 +148,7 @@ public class JwtUtil {
    * @throws JwtValidationException En cas d'erreur de validation du token.
    */
   public boolean validateToken(String token) {
-    try {
-      JwtParser parser = Jwts.parserBuilder().setSigningKey(secretKey).build();
-      parser.parseClaimsJws(token);
-      return true;
-    } catch (ExpiredJwtException e) {
-      throw new JwtValidationException("Token expired", e);
-    } catch (MalformedJwtException e) {
-      throw new JwtValidationException("Token malformed", e);
-    } catch (UnsupportedJwtException e) {
-      throw new JwtValidationException("Token unsupported", e);
-    } catch (JwtException e) {
-      throw new JwtValidationException("Token validation error", e);
-    }
+    return verify(token) != null;
   }
 
   /**
@@ -78,25 +159,7 @@ public class JwtUtil {
    * @throws JwtValidationException En cas d'erreur de validation du token.
    */
   public Date extractExpiration(String token) {
-    try {
-      return Jwts
-        .parserBuilder()
-        .setSigningKey(secretKey)
-        .build()
-        .parseClaimsJws(token)
-        .getBody()
-        .getExpiration();
-    } catch (ExpiredJwtException e) {
-      throw new JwtValidationException(
-        "Token expired while extracting expiration",
-        e
-      );
-    } catch (JwtException e) {
-      throw new JwtValidationException(
-        "Error extracting expiration from token",
-        e
-      );
-    }
+    return Date.from(verify(token).getExpiresAt());
   }
 
   /**
@@ -107,22 +170,7 @@ public class JwtUtil {
    * @throws JwtValidationException En cas d'erreur de validation du token.
    */
   public String extractEmail(String token) {
-    try {
-      Claims claims = Jwts
-        .parserBuilder()
-        .setSigningKey(secretKey)
-        .build()
-        .parseClaimsJws(token)
-        .getBody();
-      return claims.getSubject();
-    } catch (ExpiredJwtException e) {
-      throw new JwtValidationException(
-        "Token expired while extracting email",
-        e
-      );
-    } catch (JwtException e) {
-      throw new JwtValidationException("Error extracting email from token", e);
-    }
+    return verify(token).getEmail();
   }
 
   /**
@@ -133,16 +181,101 @@ public class JwtUtil {
    * @throws JwtValidationException En cas d'erreur de validation du token.
    */
   public String extractRole(String token) {
+    return verify(token).getRole();
+  }
+
+  /**
+   * Analyse et vérifie la signature du token avec le parser partagé.
+   */
+  private VerifiedToken parse(String token) {
     try {
-      Claims claims = Jwts
-        .parserBuilder()
-        .setSigningKey(secretKey)
-        .build()
-        .parseClaimsJws(token)
-        .getBody();
-      return claims.get("role", String.class);
-    } catch (JwtException e) {
-      throw new JwtValidationException("Error extracting role from token", e);
+      Jws<Claims> jws = parser.parseClaimsJws(token);
+      Claims claims = jws.getBody();
+      JwtPrincipal principal = new JwtPrincipal(
+        claims.get(USER_ID_CLAIM, Integer.class),
+        claims.getSubject(),
+        claims.get(ROLE_CLAIM, String.class),
+        claims.getExpiration().toInstant()
+      );
+      return new VerifiedToken(principal, jws.getHeader().getKeyId());
+    } catch (ExpiredJwtException e) {
+      throw new JwtValidationException("Token expired", e);
+    } catch (MalformedJwtException e) {
+      throw new JwtValidationException("Token malformed", e);
+    } catch (UnsupportedJwtException e) {
+      throw new JwtValidationException("Token unsupported", e);
+    } catch (JwtException | IllegalArgumentException e) {
+      throw new JwtValidationException("Token validation error", e);
+    }
+  }
+
+  /**
+   * Ajoute un token vérifié au cache. Quand le cache est plein, une entrée
+   * est d'abord retirée : le cache reste borné et chaque miss est mis en
+   * cache, sans parcourir tout le cache.
+   */
+  private void cache(String digest, VerifiedToken verified, Instant now) {
+    if (verifiedTokens.size() >= cacheMaxSize) {
+      evictOne(now);
+    }
+    verifiedTokens.put(digest, verified);
+  }
+
+  /**
+   * Retire, parmi quelques entrées du cache (dans l'ordre des empreintes,
+   * donc au hasard), la première expirée ou signée par une clé retirée du
+   * trousseau, sinon celle qui expire le plus tôt.
+   */
+  private void evictOne(Instant now) {
+    Map.Entry<String, VerifiedToken> victim = null;
+    Iterator<Map.Entry<String, VerifiedToken>> entries = verifiedTokens
+      .entrySet()
+      .iterator();
+    for (int i = 0; i < EVICTION_SAMPLE && entries.hasNext(); i++) {
+      Map.Entry<String, VerifiedToken> entry = entries.next();
+      JwtPrincipal principal = entry.getValue().principal;
+      if (
+        principal.isExpired(now) || !keyRing.contains(entry.getValue().keyId)
+      ) {
+        victim = entry;
+        break;
+      }
+      if (
+        victim == null ||
+        principal
+          .getExpiresAt()
+          .isBefore(victim.getValue().principal.getExpiresAt())
+      ) {
+        victim = entry;
+      }
+    }
+    if (victim != null) {
+      verifiedTokens.remove(victim.getKey(), victim.getValue());
+    }
+  }
+
+  private static String digest(String token) {
+    try {
+      byte[] hash = MessageDigest
+        .getInstance("SHA-256")
+        .digest(token.getBytes(StandardCharsets.UTF_8));
+      return Base64.getEncoder().encodeToString(hash);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+
+  /**
+   * Token vérifié gardé en cache, avec l'id de sa clé de signature.
+   */
+  private static final class VerifiedToken {
+
+    private final JwtPrincipal principal;
+    private final String keyId;
+
+    private VerifiedToken(JwtPrincipal principal, String keyId) {
+      this.principal = principal;
+      this.keyId = keyId;
     }
   }
 }
@@ -0,0 +1,336 @@
+package com.chatop.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming reader of a multipart/form-data body.
+ * <p>
+ * Parts are read one after the other straight from the request body, through
+ * a fixed buffer : unlike the container's multipart support, nothing is
+ * spooled to a temporary file or kept in memory, so that a file part can be
+ * streamed directly to its storage. Each part must be read (or skipped by
+ * asking for the next one) in order.
+ */
+public class MultipartReader {
+
+  private static final int BUFFER_SIZE = 16 * 1024;
+  private static final int MAX_HEADERS_LENGTH = 8 * 1024;
+  private static final Pattern BOUNDARY = Pattern.compile(
+    "boundary=(?:\"([^\"]{1,70})\"|([^;\\s]{1,70}))",
+    Pattern.CASE_INSENSITIVE
+  );
+  private static final Pattern NAME = Pattern.compile(
+    "(?:^|;)\\s*name=\"([^\"]*)\"",
+    Pattern.CASE_INSENSITIVE
+  );
+  private static final Pattern FILENAME = Pattern.compile(
+    "(?:^|;)\\s*filename=\"([^\"]*)\"",
+    Pattern.CASE_INSENSITIVE
+  );
+
+  private final InputStream input;
+  // CRLF + "--" + boundary : the CRLF before the delimiter belongs to it
+  private final byte[] delimiter;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private int head;
+  private int tail;
+  private boolean eof;
+  private boolean finished;
+  private PartInputStream current;
+
+  /**
+   * Constructs the MultipartReader.
+   *
+   * @param input    The body of the request.
+   * @param boundary The boundary, from the Content-Type of the request.
+   */
+  public MultipartReader(InputStream input, String boundary) {
+    this.input = input;
+    this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.US_ASCII);
+    // The first delimiter is not preceded by a CRLF : one is assumed, so that
+    // the preamble is skipped like the content of a part
+    buffer[0] = '\r';
+    buffer[1] = '\n';
+    tail = 2;
+    current = new PartInputStream();
+  }
+
+  /**
+   * Extracts the boundary from the Content-Type of a multipart request.
+   *
+   * @param contentType The Content-Type header.
+   * @return The boundary.
+   * @throws IllegalArgumentException If the request is not multipart/form-data.
+   */
+  public static String boundary(String contentType) {
+    if (
+      contentType == null ||
+      !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/form-data")
+    ) {
+      throw new IllegalArgumentException(
+        "A multipart/form-data body is expected"
+      );
+    }
+    Matcher matcher = BOUNDARY.matcher(contentType);
+    if (!matcher.find()) {
+      throw new IllegalArgumentException("Missing multipart boundary");
+    }
+    return matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+  }
+
+  /**
+   * Moves to the next part, skipping what is left of the current one.
+   *
+   * @return The next part, or null after the last one.
+   * @throws IOException If the body cannot be read or is malformed.
+   */
+  public Part nextPart() throws IOException {
+    if (finished) {
+      return null;
+    }
+    current.skipRemaining();
+
+    // After a delimiter : "--" closes the body, CRLF starts the headers
+    if (!fill(2)) {
+      throw new IOException("Unexpected end of multipart body");
+    }
+    if (buffer[head] == '-' && buffer[head + 1] == '-') {
+      finished = true;
+      return null;
+    }
+    String headers = readHeaders();
+    current = new PartInputStream();
+
+    String name = null;
+    String filename = null;
+    String contentType = null;
+    for (String line : headers.split("\r\n")) {
+      int colon = line.indexOf(':');
+      if (colon < 0) {
+        continue;
+      }
+      String header = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+      String value = line.substring(colon + 1).trim();
+      if ("content-disposition".equals(header)) {
+        name = group(NAME, value);
+        filename = group(FILENAME, value);
+      } else if ("content-type".equals(header)) {
+        contentType = value;
+      }
+    }
+    if (name == null) {
+      throw new IOException("Multipart part without a name");
+    }
+    return new Part(name, filename, contentType, current);
+  }
+
+  private static String group(Pattern pattern, String value) {
+    Matcher matcher = pattern.matcher(value);
+    return matcher.find() ? matcher.group(1) : null;
+  }
+
+  /**
+   * Reads the rest of the delimiter line and the headers of a part, up to
+   * the empty line.
+   */
+  private String readHeaders() throws IOException {
+    ByteArrayOutputStream headers = new ByteArrayOutputStream();
+    int matched = 0;
+    // The line of the delimiter ends with CRLF (transport padding ignored)
+    byte[] end = { '\r', '\n', '\r', '\n' };
+    boolean delimiterLine = true;
+    while (true) {
+      if (!fill(1)) {
+        throw new IOException("Unexpected end of multipart body");
+      }
+      byte b = buffer[head++];
+      if (delimiterLine) {
+        if (b == '\n') {
+          delimiterLine = false;
+          matched = 2;
+        }
+        continue;
+      }
+      headers.write(b);
+      if (headers.size() > MAX_HEADERS_LENGTH) {
+        throw new IOException("Multipart headers too long");
+      }
+      matched = b == end[matched] ? matched + 1 : (b == '\r' ? 1 : 0);
+      if (matched == end.length) {
+        String text = headers.toString(StandardCharsets.UTF_8);
+        return text.substring(0, Math.max(0, text.length() - 4));
+      }
+    }
+  }
+
+  /**
+   * Ensures that at least count bytes are buffered, unless the body ends.
+   *
+   * @return true if count bytes are available.
+   */
+  private boolean fill(int count) throws IOException {
+    if (tail - head >= count) {
+      return true;
+    }
+    if (head > 0) {
+      System.arraycopy(buffer, head, buffer, 0, tail - head);
+      tail -= head;
+      head = 0;
+    }
+    while (tail - head < count && !eof) {
+      int read = input.read(buffer, tail, buffer.length - tail);
+      if (read == -1) {
+        eof = true;
+      } else {
+        tail += read;
+      }
+    }
+    return tail - head >= count;
+  }
+
+  /**
+   * Finds the delimiter in the buffered bytes.
+   *
+   * @return Its index, or -1 if absent.
+   */
+  private int indexOfDelimiter() {
+    int last = tail - delimiter.length;
+    for (int i = head; i <= last; i++) {
+      if (buffer[i] != delimiter[0]) {
+        continue;
+      }
+      int j = 1;
+      while (j < delimiter.length && buffer[i + j] == delimiter[j]) {
+        j++;
+      }
+      if (j == delimiter.length) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Content of the current part, ending before the next delimiter.
+   */
+  private final class PartInputStream extends InputStream {
+
+    private boolean done;
+
+    @Override
+    public int read() throws IOException {
+      byte[] single = new byte[1];
+      int read = read(single, 0, 1);
+      return read == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+      if (done || current != this) {
+        return -1;
+      }
+      if (length == 0) {
+        return 0;
+      }
+      fill(delimiter.length);
+      int index = indexOfDelimiter();
+      int available;
+      if (index >= 0) {
+        available = index - head;
+        if (available == 0) {
+          head += delimiter.length;
+          done = true;
+          return -1;
+        }
+      } else {
+        if (eof && tail - head < delimiter.length) {
+          throw new IOException("Unexpected end of multipart body");
+        }
+        // The end of the buffer may start a delimiter : kept for the next read
+        available = tail - head - (delimiter.length - 1);
+      }
+      int count = Math.min(length, available);
+      System.arraycopy(buffer, head, bytes, offset, count);
+      head += count;
+      return count;
+    }
+
+    private void skipRemaining() throws IOException {
+      byte[] skipped = new byte[BUFFER_SIZE];
+      while (read(skipped, 0, skipped.length) != -1) {
+        // Discarded
+      }
+    }
+  }
+
+  /**
+   * A part of the body : its headers and its content.
+   */
+  public static final class Part {
+
+    private final String name;
+    private final String filename;
+    private final String contentType;
+    private final InputStream inputStream;
+
+    private Part(
+      String name,
+      String filename,
+      String contentType,
+      InputStream inputStream
+    ) {
+      this.name = name;
+      this.filename = filename;
+      this.contentType = contentType;
+      this.inputStream = inputStream;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Gets the file name sent by the client.
+     *
+     * @return The file name, or null if the part is not a file.
+     */
+    public String getFilename() {
+      return filename;
+    }
+
+    public String getContentType() {
+      return contentType;
+    }
+
+    /**
+     * Gets the content of the part, readable until the next part is asked.
+     *
+     * @return The content.
+     */
+    public InputStream getInputStream() {
+      return inputStream;
+    }
+
+    /**
+     * Reads the content of a form field as UTF-8 text.
+     *
+     * @param maxLength The maximum length, in bytes.
+     * @return The value of the field.
+     * @throws IOException              If the body cannot be read.
+     * @throws IllegalArgumentException If the value is too long.
+     */
+    public String readString(int maxLength) throws IOException {
+      byte[] value = inputStream.readNBytes(maxLength + 1);
+      if (value.length > maxLength) {
+        throw new IllegalArgumentException("Field too long: " + name);
+      }
+      return new String(value, StandardCharsets.UTF_8);
+    }
+  }
+}
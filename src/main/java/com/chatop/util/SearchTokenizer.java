@@ -0,0 +1,88 @@
+package com.chatop.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Splits French text into the terms of the search index.
+ * Terms are folded to lower case without accents ("Été" and "ete" are the
+ * same term), and the words too short or too common to rank are dropped
+ * (elided articles such as the l of "l'appartement", stop words).
+ */
+public final class SearchTokenizer {
+
+  private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+  private static final Set<String> STOP_WORDS = Set.of(
+    "au",
+    "aux",
+    "avec",
+    "ce",
+    "ces",
+    "dans",
+    "de",
+    "des",
+    "du",
+    "en",
+    "est",
+    "et",
+    "la",
+    "le",
+    "les",
+    "ou",
+    "par",
+    "pour",
+    "sur",
+    "un",
+    "une"
+  );
+
+  private SearchTokenizer() {}
+
+  /**
+   * Splits a text into folded terms, in their order in the text.
+   *
+   * @param text The text, or null.
+   * @return The terms, with repetitions.
+   */
+  public static List<String> tokenize(String text) {
+    List<String> terms = new ArrayList<>();
+    if (text == null || text.isEmpty()) {
+      return terms;
+    }
+    String folded = fold(text);
+    int start = -1;
+    for (int i = 0; i <= folded.length(); i++) {
+      boolean inWord =
+        i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+      if (inWord && start < 0) {
+        start = i;
+      } else if (!inWord && start >= 0) {
+        String term = folded.substring(start, i);
+        if (term.length() > 1 && !STOP_WORDS.contains(term)) {
+          terms.add(term);
+        }
+        start = -1;
+      }
+    }
+    return terms;
+  }
+
+  /**
+   * Folds a text to lower case, without accents and ligatures.
+   */
+  private static String fold(String text) {
+    // NFD splits "é" into "e" and a combining accent, removed with the marks
+    String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+    return MARKS
+      .matcher(decomposed)
+      .replaceAll("")
+      .toLowerCase(Locale.ROOT)
+      .replace("œ", "oe")
+      .replace("æ", "ae");
+  }
+}
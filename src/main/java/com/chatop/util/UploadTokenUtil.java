@@ -0,0 +1,200 @@
+package com.chatop.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Signs and verifies the short-lived tokens of the direct picture uploads.
+ * <p>
+ * A token is {@code <kid>.<payload>.<signature>}, Base64url encoded : the
+ * payload holds its purpose, the user id, the expiry and, for a picture key,
+ * the stored file name ; the signature is an HMAC-SHA256 with the key of the
+ * JWT key ring, so that any instance verifies a token issued by another one.
+ * The purpose is signed first, so that neither an upload token nor a picture
+ * key can be taken for the other or for a JWT.
+ */
+@Component
+public class UploadTokenUtil {
+
+  private static final String UPLOAD = "upload";
+  private static final String PICTURE = "picture";
+  private static final String SEPARATOR = "|";
+
+  private final JwtKeyRing keyRing;
+  private final Duration uploadTtl;
+  private final Duration pictureKeyTtl;
+
+  /**
+   * Constructs the UploadTokenUtil.
+   *
+   * @param keyRing       The ring of the signing keys.
+   * @param uploadTtl     The validity of an upload URL.
+   * @param pictureKeyTtl The validity of the key of an uploaded picture.
+   */
+  public UploadTokenUtil(
+    JwtKeyRing keyRing,
+    @Value("${image.upload.url-ttl:5m}") Duration uploadTtl,
+    @Value("${image.upload.key-ttl:1h}") Duration pictureKeyTtl
+  ) {
+    this.keyRing = keyRing;
+    this.uploadTtl = uploadTtl;
+    this.pictureKeyTtl = pictureKeyTtl;
+  }
+
+  /**
+   * Issues the token of an upload URL.
+   *
+   * @param userId The id of the user allowed to upload.
+   * @return The token.
+   */
+  public String issueUploadToken(Integer userId) {
+    return sign(UPLOAD, userId, expiry(uploadTtl), "");
+  }
+
+  /**
+   * Gets the expiry of the upload URLs issued now.
+   *
+   * @return The expiry.
+   */
+  public Instant uploadExpiry() {
+    return Instant.ofEpochSecond(expiry(uploadTtl));
+  }
+
+  /**
+   * Verifies the token of an upload URL.
+   *
+   * @param token The token.
+   * @return The id of the user allowed to upload.
+   * @throws IllegalArgumentException If the token is invalid or expired.
+   */
+  public Integer verifyUploadToken(String token) {
+    return Integer.valueOf(verify(token, UPLOAD)[1]);
+  }
+
+  /**
+   * Issues the key referencing an uploaded picture, for its uploader only.
+   *
+   * @param userId   The id of the uploader.
+   * @param fileName The name of the stored file.
+   * @return The key.
+   */
+  public String issuePictureKey(Integer userId, String fileName) {
+    return sign(PICTURE, userId, expiry(pictureKeyTtl), fileName);
+  }
+
+  /**
+   * Verifies the key of an uploaded picture.
+   *
+   * @param key    The key.
+   * @param userId The id of the user referencing the picture.
+   * @return The name of the stored file.
+   * @throws IllegalArgumentException If the key is invalid, expired or
+   *                                  issued to another user.
+   */
+  public String verifyPictureKey(String key, Integer userId) {
+    String[] parts = verify(key, PICTURE);
+    if (!parts[1].equals(String.valueOf(userId))) {
+      throw new IllegalArgumentException("Invalid picture key");
+    }
+    return parts[3];
+  }
+
+  private static long expiry(Duration ttl) {
+    return Instant.now().plus(ttl).getEpochSecond();
+  }
+
+  private String sign(
+    String purpose,
+    Integer userId,
+    long expiresAt,
+    String value
+  ) {
+    Map.Entry<String, SecretKey> key = keyRing.getSigningKey();
+    String payload = String.join(
+      SEPARATOR,
+      purpose,
+      String.valueOf(userId),
+      String.valueOf(expiresAt),
+      value
+    );
+    String encodedPayload = encode(payload.getBytes(StandardCharsets.UTF_8));
+    return (
+      key.getKey() +
+      "." +
+      encodedPayload +
+      "." +
+      encode(hmac(key.getValue(), key.getKey() + "." + encodedPayload))
+    );
+  }
+
+  /**
+   * Checks the signature, purpose and expiry of a token.
+   *
+   * @return The payload : purpose, user id, expiry and value.
+   */
+  private String[] verify(String token, String purpose) {
+    // Split from the right : the key id is a file name
+    int signatureStart = token == null ? -1 : token.lastIndexOf('.');
+    int payloadStart = signatureStart < 1
+      ? -1
+      : token.lastIndexOf('.', signatureStart - 1);
+    if (payloadStart < 1) {
+      throw new IllegalArgumentException("Invalid " + purpose + " token");
+    }
+    String[] parts = {
+      token.substring(0, payloadStart),
+      token.substring(payloadStart + 1, signatureStart),
+      token.substring(signatureStart + 1),
+    };
+    SecretKey key = keyRing.getVerificationKey(parts[0]);
+    // Base64 and number format errors are IllegalArgumentExceptions as well
+    if (
+      key == null ||
+      !MessageDigest.isEqual(
+        hmac(key, parts[0] + "." + parts[1]),
+        Base64.getUrlDecoder().decode(parts[2])
+      )
+    ) {
+      throw new IllegalArgumentException("Invalid " + purpose + " token");
+    }
+    String[] payload = new String(
+      Base64.getUrlDecoder().decode(parts[1]),
+      StandardCharsets.UTF_8
+    )
+      .split("\\" + SEPARATOR, -1);
+    if (payload.length != 4 || !payload[0].equals(purpose)) {
+      throw new IllegalArgumentException("Invalid " + purpose + " token");
+    }
+    if (Long.parseLong(payload[2]) < Instant.now().getEpochSecond()) {
+      throw new IllegalArgumentException("Expired " + purpose + " token");
+    }
+    return payload;
+  }
+
+  private static byte[] hmac(SecretKey key, String data) {
+    try {
+      Mac mac = Mac.getInstance("HmacSHA256");
+      mac.init(new SecretKeySpec(key.getEncoded(), "HmacSHA256"));
+      return mac.doFinal(data.getBytes(StandardCharsets.US_ASCII));
+    } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+      throw new IllegalStateException("HmacSHA256 is not available", e);
+    }
+  }
+
+  private static String encode(byte[] bytes) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+  }
+}
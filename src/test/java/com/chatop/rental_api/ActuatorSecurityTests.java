@@ -0,0 +1,48 @@
+package com.chatop.rental_api;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+
+/**
+ * Health probes reach /actuator/health without a token, the metrics stay
+ * reserved to the ADMIN role.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class ActuatorSecurityTests {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Test
+  void healthIsPublicWithoutDetails() throws Exception {
+    mockMvc
+      .perform(get("/actuator/health"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.status").value("UP"))
+      .andExpect(jsonPath("$.components").doesNotExist());
+  }
+
+  @Test
+  void metricsRequireAuthentication() throws Exception {
+    mockMvc
+      .perform(get("/actuator/metrics"))
+      .andExpect(status().isForbidden());
+  }
+
+  @Test
+  @WithMockUser(username = "test@test.com", roles = "USER")
+  void metricsAreForbiddenToUsers() throws Exception {
+    mockMvc
+      .perform(get("/actuator/metrics"))
+      .andExpect(status().isForbidden());
+  }
+}
@@ -0,0 +1,213 @@
+package com.chatop.rental_api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+
+/**
+ * Image serving : content type, validators, 304 on revalidation,
+ * byte ranges, cache headers and resized variants.
+ */
+@SpringBootTest(
+  properties = {
+    "image.storage.directory=" + ImageControllerTests.DIRECTORY,
+    "image.thumbnail.max-pixels=1000000",
+  }
+)
+@AutoConfigureMockMvc
+class ImageControllerTests {
+
+  static final String DIRECTORY = "target/test-pictures/";
+
+  private static final String UUID_NAME =
+    "0b6f7c1e-5a8d-4f3e-9c2b-1d2e3f4a5b6c.jpg";
+
+  // Digest-named uploads, immutable unless the original is served for a width
+  private static final String WIDE_DIGEST_NAME = "a".repeat(64) + ".png";
+  private static final String HUGE_DIGEST_NAME = "b".repeat(64) + ".png";
+
+  private static final byte[] CONTENT = "0123456789".getBytes();
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    Path directory = Files.createDirectories(Paths.get(DIRECTORY));
+    Files.write(directory.resolve(UUID_NAME), CONTENT);
+    Files.write(directory.resolve("rental_01.jpg"), CONTENT);
+    ImageIO.write(
+      new BufferedImage(1000, 500, BufferedImage.TYPE_INT_RGB),
+      "png",
+      directory.resolve("wide.png").toFile()
+    );
+    ImageIO.write(
+      new BufferedImage(2000, 600, BufferedImage.TYPE_INT_RGB),
+      "png",
+      directory.resolve("huge.png").toFile()
+    );
+    Files.copy(
+      directory.resolve("wide.png"),
+      directory.resolve(WIDE_DIGEST_NAME),
+      StandardCopyOption.REPLACE_EXISTING
+    );
+    Files.copy(
+      directory.resolve("huge.png"),
+      directory.resolve(HUGE_DIGEST_NAME),
+      StandardCopyOption.REPLACE_EXISTING
+    );
+  }
+
+  @Test
+  void servesImageWithValidatorsAndImmutableCache() throws Exception {
+    mockMvc
+      .perform(get("/images/" + UUID_NAME))
+      .andExpect(status().isOk())
+      .andExpect(content().contentType("image/jpeg"))
+      .andExpect(content().bytes(CONTENT))
+      .andExpect(header().exists(HttpHeaders.ETAG))
+      .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+      .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+      .andExpect(
+        header()
+          .string(
+            HttpHeaders.CACHE_CONTROL,
+            "public, max-age=31536000, immutable"
+          )
+      );
+
+    mockMvc
+      .perform(get("/images/rental_01.jpg"))
+      .andExpect(status().isOk())
+      .andExpect(
+        header().string(HttpHeaders.CACHE_CONTROL, "public, no-cache")
+      );
+  }
+
+  @Test
+  void answersNotModifiedToMatchingEtag() throws Exception {
+    String etag = mockMvc
+      .perform(get("/images/" + UUID_NAME))
+      .andReturn()
+      .getResponse()
+      .getHeader(HttpHeaders.ETAG);
+
+    mockMvc
+      .perform(
+        get("/images/" + UUID_NAME).header(HttpHeaders.IF_NONE_MATCH, etag)
+      )
+      .andExpect(status().isNotModified())
+      .andExpect(content().bytes(new byte[0]));
+  }
+
+  @Test
+  void servesByteRanges() throws Exception {
+    mockMvc
+      .perform(
+        get("/images/" + UUID_NAME).header(HttpHeaders.RANGE, "bytes=2-5")
+      )
+      .andExpect(status().isPartialContent())
+      .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+      .andExpect(content().bytes("2345".getBytes()));
+
+    mockMvc
+      .perform(
+        get("/images/" + UUID_NAME).header(HttpHeaders.RANGE, "bytes=-3")
+      )
+      .andExpect(status().isPartialContent())
+      .andExpect(content().bytes("789".getBytes()));
+
+    mockMvc
+      .perform(
+        get("/images/" + UUID_NAME).header(HttpHeaders.RANGE, "bytes=20-")
+      )
+      .andExpect(status().isRequestedRangeNotSatisfiable())
+      .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"));
+  }
+
+  @Test
+  void rejectsUnknownImage() throws Exception {
+    mockMvc
+      .perform(get("/images/missing.jpg"))
+      .andExpect(status().isNotFound());
+  }
+
+  @Test
+  void servesResizedVariants() throws Exception {
+    assertEquals(320, servedWidth("/images/wide.png?w=320"));
+    assertEquals(800, servedWidth("/images/wide.png?w=800"));
+    // Never upscaled
+    assertEquals(1000, servedWidth("/images/wide.png?w=1600"));
+
+    mockMvc
+      .perform(get("/images/wide.png").param("w", "500"))
+      .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void servesOriginalAbovePixelBudget() throws Exception {
+    // 1.2 million pixels, above the budget of this test : never decoded
+    assertEquals(2000, servedWidth("/images/huge.png?w=320"));
+  }
+
+  @Test
+  void revalidatesOriginalServedForWidth() throws Exception {
+    mockMvc
+      .perform(get("/images/" + WIDE_DIGEST_NAME).param("w", "320"))
+      .andExpect(status().isOk())
+      .andExpect(
+        header()
+          .string(
+            HttpHeaders.CACHE_CONTROL,
+            "public, max-age=31536000, immutable"
+          )
+      );
+
+    // Above the pixel budget : the original is served for the width
+    mockMvc
+      .perform(get("/images/" + HUGE_DIGEST_NAME).param("w", "320"))
+      .andExpect(status().isOk())
+      .andExpect(
+        header().string(HttpHeaders.CACHE_CONTROL, "public, no-cache")
+      );
+    mockMvc
+      .perform(get("/images/" + HUGE_DIGEST_NAME))
+      .andExpect(status().isOk())
+      .andExpect(
+        header()
+          .string(
+            HttpHeaders.CACHE_CONTROL,
+            "public, max-age=31536000, immutable"
+          )
+      );
+  }
+
+  private int servedWidth(String url) throws Exception {
+    byte[] body = mockMvc
+      .perform(get(url))
+      .andExpect(status().isOk())
+      .andReturn()
+      .getResponse()
+      .getContentAsByteArray();
+    return ImageIO.read(new ByteArrayInputStream(body)).getWidth();
+  }
+}
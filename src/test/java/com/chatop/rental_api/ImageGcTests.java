@@ -0,0 +1,170 @@
+package com.chatop.rental_api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.chatop.dto.ImageGcReportDTO;
+import com.chatop.model.Picture;
+import com.chatop.model.Rental;
+import com.chatop.model.RentalPicture;
+import com.chatop.model.User;
+import com.chatop.repository.PictureRepository;
+import com.chatop.repository.RentalPictureRepository;
+import com.chatop.repository.RentalRepository;
+import com.chatop.service.ImageGarbageCollectorService;
+import com.chatop.storage.ImageStore;
+
+/**
+ * The orphan collector deletes only the images that neither a rental (cover
+ * or gallery) nor PICTURES references, variants included, and only reports
+ * them in dry-run mode.
+ */
+@SpringBootTest(
+  properties = {
+    "image.storage.directory=target/test-pictures-gc/",
+    "image.gc.grace-period=0s",
+    "image.gc.max-deletes-per-second=1000",
+  }
+)
+class ImageGcTests {
+
+  private static final String REFERENCED_DIGEST = "a".repeat(64) + ".jpg";
+  private static final String PENDING_DIGEST = "b".repeat(64) + ".png";
+  private static final String ORPHAN_DIGEST = "c".repeat(64) + ".jpg";
+
+  @Autowired
+  private ImageGarbageCollectorService imageGarbageCollectorService;
+
+  @Autowired
+  private ImageStore imageStore;
+
+  @Autowired
+  private TestFixtures fixtures;
+
+  @Autowired
+  private RentalRepository rentalRepository;
+
+  @Autowired
+  private RentalPictureRepository rentalPictureRepository;
+
+  @Autowired
+  private PictureRepository pictureRepository;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    fixtures.cleanUp();
+    try (Stream<String> keys = imageStore.list()) {
+      for (String key : keys.toList()) {
+        imageStore.delete(key);
+      }
+    }
+
+    User owner = fixtures.createUser("owner@test.com");
+    createRental(owner, "http://localhost:3001/images/" + REFERENCED_DIGEST);
+    Rental rental = createRental(
+      owner,
+      "http://localhost:3001/images/rental_01.jpg"
+    );
+    RentalPicture galleryPicture = new RentalPicture();
+    galleryPicture.setRental(rental);
+    galleryPicture.setUrl("http://localhost:3001/images/rental_02.jpg");
+    galleryPicture.setPosition(0);
+    galleryPicture.setCreatedAt(LocalDateTime.now());
+    rentalPictureRepository.save(galleryPicture);
+    // Uploaded, not yet attached to a rental
+    Picture pending = new Picture();
+    pending.setFileName(PENDING_DIGEST);
+    pending.setRefCount(0);
+    pending.setCreatedAt(LocalDateTime.now());
+    pictureRepository.save(pending);
+
+    for (String key : Set.of(
+      REFERENCED_DIGEST,
+      "w320/" + REFERENCED_DIGEST,
+      "rental_01.jpg",
+      "rental_02.jpg",
+      PENDING_DIGEST,
+      ORPHAN_DIGEST,
+      "w320/" + ORPHAN_DIGEST,
+      "rental_99.jpg"
+    )) {
+      store(key);
+    }
+  }
+
+  @Test
+  void dryRunOnlyReportsOrphans() throws Exception {
+    ImageGcReportDTO report = collect(true);
+
+    assertEquals("completed", report.getStatus());
+    assertEquals(8, report.getScanned());
+    assertEquals(3, report.getOrphans());
+    assertEquals(0, report.getDeleted());
+    assertEquals(
+      Set.of(ORPHAN_DIGEST, "w320/" + ORPHAN_DIGEST, "rental_99.jpg"),
+      Set.copyOf(report.getOrphanSample())
+    );
+    assertTrue(imageStore.stat(ORPHAN_DIGEST).isPresent());
+  }
+
+  @Test
+  void deletesOnlyUnreferencedImages() throws Exception {
+    ImageGcReportDTO report = collect(false);
+
+    // The variant may be deleted with its original before being walked
+    assertTrue(report.getDeleted() >= 2);
+    assertFalse(imageStore.stat(ORPHAN_DIGEST).isPresent());
+    assertFalse(imageStore.stat("w320/" + ORPHAN_DIGEST).isPresent());
+    assertFalse(imageStore.stat("rental_99.jpg").isPresent());
+    assertTrue(imageStore.stat(REFERENCED_DIGEST).isPresent());
+    assertTrue(imageStore.stat("w320/" + REFERENCED_DIGEST).isPresent());
+    assertTrue(imageStore.stat("rental_01.jpg").isPresent());
+    assertTrue(imageStore.stat("rental_02.jpg").isPresent());
+    assertTrue(imageStore.stat(PENDING_DIGEST).isPresent());
+    assertEquals(1, pictureRepository.count());
+  }
+
+  private ImageGcReportDTO collect(boolean dryRun) throws Exception {
+    imageGarbageCollectorService.start(dryRun);
+    for (int i = 0; i < 100; i++) {
+      ImageGcReportDTO report = imageGarbageCollectorService
+        .getReport()
+        .orElseThrow();
+      if (report.getFinishedAt() != null) {
+        return report;
+      }
+      Thread.sleep(50);
+    }
+    throw new AssertionError("Collection not finished");
+  }
+
+  private Rental createRental(User owner, String picture) {
+    Rental rental = new Rental();
+    rental.setName("rental");
+    rental.setSurface(50);
+    rental.setPrice(100);
+    rental.setPicture(picture);
+    rental.setOwner(owner);
+    rental.setCreatedAt(LocalDateTime.now());
+    rental.setUpdatedAt(LocalDateTime.now());
+    return rentalRepository.save(rental);
+  }
+
+  private void store(String key) throws Exception {
+    Path tmp = imageStore.createTempFile();
+    Files.writeString(tmp, key);
+    imageStore.put(key, tmp);
+  }
+}
@@ -0,0 +1,128 @@
+package com.chatop.rental_api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+
+import com.chatop.exception.FileValidationException;
+import com.chatop.repository.PictureRepository;
+import com.chatop.service.ImageStorageService;
+import com.chatop.storage.ImageStore;
+
+/**
+ * Identical uploads share one content-addressed file, which is deleted
+ * only when its last reference is released, and are typed by their content.
+ */
+@SpringBootTest(
+  properties = {
+    "image.storage.directory=" + ImageStorageTests.DIRECTORY,
+    "image.base.url=http://localhost/images/",
+  }
+)
+class ImageStorageTests {
+
+  static final String DIRECTORY = "target/test-pictures-store/";
+
+  private static final byte[] PNG_MAGIC = {
+    (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13,
+  };
+
+  @Autowired
+  private ImageStorageService imageStorageService;
+
+  @Autowired
+  private PictureRepository pictureRepository;
+
+  @Autowired
+  private ImageStore imageStore;
+
+  @Test
+  void identicalUploadsShareOneFile() throws Exception {
+    String first = imageStorageService.saveImage(upload("house.JPG", "same"));
+    String second = imageStorageService.saveImage(upload("copy.jpg", "same"));
+    String other = imageStorageService.saveImage(upload("other.jpg", "other"));
+
+    assertEquals(first, second);
+    assertNotEquals(first, other);
+    assertTrue(first.matches("http://localhost/images/[0-9a-f]{64}\\.jpg"));
+    assertEquals(
+      2,
+      pictureRepository.findById(fileName(first)).get().getRefCount()
+    );
+
+    imageStorageService.releaseImage(first);
+    assertTrue(exists(first));
+
+    imageStorageService.releaseImage(second);
+    assertFalse(exists(first));
+    assertFalse(pictureRepository.existsById(fileName(first)));
+    assertTrue(exists(other));
+  }
+
+  @Test
+  void typeIsSniffedFromContent() {
+    String png = imageStorageService.saveImage(
+      new MockMultipartFile(
+        "picture",
+        "photo.jpg",
+        "image/jpeg",
+        PNG_MAGIC
+      )
+    );
+    assertTrue(png.endsWith(".png"));
+
+    assertThrows(
+      FileValidationException.class,
+      () ->
+        imageStorageService.saveImage(
+          new MockMultipartFile(
+            "picture",
+            "photo.jpg",
+            "image/jpeg",
+            "<html>not an image</html>".getBytes()
+          )
+        )
+    );
+  }
+
+  @Test
+  void releasingUnknownImageIsIgnored() {
+    imageStorageService.releaseImage(null);
+    imageStorageService.releaseImage("http://localhost/images/rental_01.jpg");
+  }
+
+  private MockMultipartFile upload(String name, String content) {
+    return new MockMultipartFile(
+      "picture",
+      name,
+      "image/jpeg",
+      jpeg(content)
+    );
+  }
+
+  // JPEG magic bytes followed by the content
+  private static byte[] jpeg(String content) {
+    byte[] bytes = content.getBytes();
+    byte[] jpeg = new byte[3 + bytes.length];
+    jpeg[0] = (byte) 0xFF;
+    jpeg[1] = (byte) 0xD8;
+    jpeg[2] = (byte) 0xFF;
+    System.arraycopy(bytes, 0, jpeg, 3, bytes.length);
+    return jpeg;
+  }
+
+  private static String fileName(String url) {
+    return url.substring(url.lastIndexOf('/') + 1);
+  }
+
+  private boolean exists(String url) throws Exception {
+    return imageStore.stat(fileName(url)).isPresent();
+  }
+}
@@ -0,0 +1,128 @@
+package com.chatop.rental_api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.chatop.dto.MessageDTO;
+import com.chatop.dto.MessagesResponseDTO;
+import com.chatop.model.Message;
+import com.chatop.model.Rental;
+import com.chatop.model.User;
+import com.chatop.repository.MessageRepository;
+import com.chatop.repository.RentalRepository;
+import com.chatop.service.MessageService;
+
+/**
+ * Walking the owner inbox page by page returns every message received on
+ * the owner's rentals exactly once, newest first.
+ */
+@SpringBootTest
+class MessageInboxTests {
+
+  @Autowired
+  private MessageService messageService;
+
+  @Autowired
+  private TestFixtures fixtures;
+
+  @Autowired
+  private RentalRepository rentalRepository;
+
+  @Autowired
+  private MessageRepository messageRepository;
+
+  @BeforeEach
+  void setUp() {
+    fixtures.cleanUp();
+  }
+
+  @Test
+  void inboxPagesMergeAllRentalsNewestFirst() {
+    User owner = fixtures.createUser("owner@test.com");
+    User other = fixtures.createUser("other@test.com");
+    User sender = fixtures.createUser("sender@test.com");
+    Rental first = createRental(owner);
+    Rental second = createRental(owner);
+    Rental notOwned = createRental(other);
+
+    // Interleaved between the two rentals, with duplicate timestamps
+    LocalDateTime start = LocalDateTime.of(2024, 1, 1, 12, 0);
+    for (int i = 0; i < 12; i++) {
+      createMessage(
+        i % 2 == 0 ? first : second,
+        sender,
+        start.plusMinutes(i / 3)
+      );
+    }
+    createMessage(notOwned, sender, start.plusHours(1));
+
+    List<MessageDTO> read = new ArrayList<>();
+    String cursor = null;
+    int pages = 0;
+    do {
+      MessagesResponseDTO page = messageService.readInboxAsDTO(
+        owner.getId(),
+        5,
+        cursor
+      );
+      read.addAll(page.getMessages());
+      cursor = page.getNextCursor();
+      pages++;
+    } while (cursor != null);
+
+    assertEquals(3, pages);
+    assertEquals(12, read.size());
+    for (int i = 1; i < read.size(); i++) {
+      MessageDTO previous = read.get(i - 1);
+      MessageDTO current = read.get(i);
+      int order = previous.getCreatedAt().compareTo(current.getCreatedAt());
+      assertTrue(
+        order > 0 || (order == 0 && previous.getId() > current.getId())
+      );
+    }
+  }
+
+  @Test
+  void ownerWithoutRentalsHasEmptyInbox() {
+    User owner = fixtures.createUser("owner@test.com");
+
+    MessagesResponseDTO page = messageService.readInboxAsDTO(
+      owner.getId(),
+      null,
+      null
+    );
+
+    assertEquals(0, page.getMessages().size());
+    assertNull(page.getNextCursor());
+  }
+
+  private Rental createRental(User owner) {
+    Rental rental = new Rental();
+    rental.setName("rental");
+    rental.setSurface(50);
+    rental.setPrice(100);
+    rental.setOwner(owner);
+    rental.setCreatedAt(LocalDateTime.now());
+    return rentalRepository.save(rental);
+  }
+
+  private void createMessage(Rental rental, User sender, LocalDateTime at) {
+    Message message = new Message();
+    message.setMessage("hello");
+    message.setRental(rental);
+    message.setUser(sender);
+    message.setCreatedAt(at);
+    message.setUpdatedAt(at);
+    messageRepository.save(message);
+  }
+}
@@ -0,0 +1,163 @@
+package com.chatop.rental_api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.chatop.exception.TooManyRequestsException;
+import com.chatop.model.Rental;
+import com.chatop.model.User;
+import com.chatop.repository.MessageRepository;
+import com.chatop.repository.RentalRepository;
+import com.chatop.service.MessageWriteBehindService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Write-behind pipeline : queued messages are written by batches, a batch
+ * refused by a foreign key only loses its invalid messages (never writing
+ * the others twice), a full queue refuses with 429 and shutdown flushes.
+ */
+@SpringBootTest
+class MessageWriteBehindTests {
+
+  private static final long HOUR = 3600000;
+
+  @Autowired
+  private TestFixtures fixtures;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Autowired
+  private RentalRepository rentalRepository;
+
+  @Autowired
+  private MessageRepository messageRepository;
+
+  private MeterRegistry meterRegistry;
+  private Integer userId;
+  private Integer rentalId;
+
+  @BeforeEach
+  void setUp() {
+    fixtures.cleanUp();
+    meterRegistry = new SimpleMeterRegistry();
+    User user = fixtures.createUser("owner@test.com");
+    userId = user.getId();
+
+    Rental rental = new Rental();
+    rental.setName("Cottage");
+    rental.setSurface(80);
+    rental.setPrice(200);
+    rental.setOwner(user);
+    rental.setCreatedAt(LocalDateTime.now());
+    rental.setUpdatedAt(LocalDateTime.now());
+    rentalId = rentalRepository.save(rental).getId();
+  }
+
+  @AfterEach
+  void cleanUp() {
+    fixtures.cleanUp();
+  }
+
+  @Test
+  void writesQueuedMessagesByBatchesOnShutdown() throws Exception {
+    // Never flushed on schedule during the test
+    MessageWriteBehindService service = service(100, 2, HOUR);
+    for (int i = 0; i < 5; i++) {
+      service.enqueue("hello " + i, userId, rentalId);
+    }
+    assertEquals(0, messageRepository.count());
+
+    service.shutdown();
+
+    assertEquals(5, messageRepository.count());
+    assertEquals(5, count("messages.write_behind.written"));
+    assertThrows(
+      TooManyRequestsException.class,
+      () -> service.enqueue("late", userId, rentalId)
+    );
+  }
+
+  @Test
+  void dropsOnlyInvalidMessagesOfRefusedBatch() throws Exception {
+    MessageWriteBehindService service = service(100, 10, HOUR);
+    service.enqueue("first", userId, rentalId);
+    service.enqueue("unknown rental", userId, rentalId + 1000);
+    service.enqueue("second", userId, rentalId);
+
+    service.shutdown();
+
+    // Rolled back then replayed one by one : no duplicate
+    assertEquals(2, messageRepository.count());
+    assertEquals(2, count("messages.write_behind.written"));
+    assertEquals(1, count("messages.write_behind.dropped"));
+    assertEquals(0, count("messages.write_behind.retried"));
+  }
+
+  @Test
+  void refusesMessagesWhenQueueIsFull() throws Exception {
+    MessageWriteBehindService service = service(2, 10, HOUR);
+    service.enqueue("first", userId, rentalId);
+    service.enqueue("second", userId, rentalId);
+
+    TooManyRequestsException refused = assertThrows(
+      TooManyRequestsException.class,
+      () -> service.enqueue("third", userId, rentalId)
+    );
+    assertEquals(7, refused.getRetryAfterSeconds());
+
+    service.shutdown();
+    assertEquals(2, messageRepository.count());
+  }
+
+  @Test
+  void flushesOnSchedule() throws Exception {
+    MessageWriteBehindService service = service(100, 10, 20);
+    try {
+      service.enqueue("hello", userId, rentalId);
+      for (int i = 0; i < 100 && messageRepository.count() == 0; i++) {
+        Thread.sleep(50);
+      }
+      assertEquals(1, messageRepository.count());
+    } finally {
+      service.shutdown();
+    }
+  }
+
+  private MessageWriteBehindService service(
+    int queueCapacity,
+    int batchSize,
+    long flushInterval
+  ) {
+    return new MessageWriteBehindService(
+      jdbcTemplate,
+      transactionManager,
+      meterRegistry,
+      queueCapacity,
+      batchSize,
+      flushInterval,
+      100,
+      1000,
+      7
+    );
+  }
+
+  private long count(String counter) {
+    return (long) meterRegistry.counter(counter).count();
+  }
+}
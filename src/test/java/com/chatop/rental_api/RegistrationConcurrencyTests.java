@@ -0,0 +1,86 @@
+package com.chatop.rental_api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.chatop.dto.UserRequestDTO;
+import com.chatop.exception.InvalidInputException;
+import com.chatop.model.User;
+import com.chatop.repository.UserRepository;
+import com.chatop.service.UserService;
+import com.chatop.util.JwtUtil;
+
+/**
+ * Parallel sign-ups with the same email : exactly one succeeds,
+ * the others are rejected by the unique email index.
+ */
+@SpringBootTest
+class RegistrationConcurrencyTests {
+
+  private static final int SIGN_UPS = 8;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private JwtUtil jwtUtil;
+
+  @Test
+  void parallelDuplicateSignUpsCreateOneUser() throws Exception {
+    String email = "duplicate@test.com";
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(SIGN_UPS);
+    List<Future<String>> results = new ArrayList<>();
+    try {
+      for (int i = 0; i < SIGN_UPS; i++) {
+        results.add(
+          executor.submit(() -> {
+            start.await();
+            return userService.registerUser(request(email));
+          })
+        );
+      }
+      start.countDown();
+
+      String token = null;
+      int rejected = 0;
+      for (Future<String> result : results) {
+        try {
+          token = result.get();
+        } catch (ExecutionException e) {
+          assertTrue(e.getCause() instanceof InvalidInputException);
+          rejected++;
+        }
+      }
+
+      assertEquals(SIGN_UPS - 1, rejected);
+      User user = userRepository.findByEmail(email).orElseThrow();
+      assertEquals(user.getId(), jwtUtil.verify(token).getUserId());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private UserRequestDTO request(String email) {
+    UserRequestDTO userRequestDTO = new UserRequestDTO();
+    userRequestDTO.setName("Duplicate");
+    userRequestDTO.setEmail(email);
+    userRequestDTO.setPassword("password123!");
+    return userRequestDTO;
+  }
+}
@@ -0,0 +1,238 @@
+package com.chatop.rental_api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import com.chatop.dto.RentalRequestDTO;
+import com.chatop.dto.RentalStatusDTO;
+import com.chatop.model.MediaStatus;
+import com.chatop.model.Rental;
+import com.chatop.repository.PictureRepository;
+import com.chatop.repository.RentalRepository;
+import com.chatop.repository.UserRepository;
+import com.chatop.service.RentalMediaService;
+import com.chatop.service.RentalService;
+
+/**
+ * Asynchronous creation : the rental is saved as PENDING_MEDIA and answered
+ * with 202, then moves to READY with its picture, or to FAILED with the
+ * reason ; a failed rental is retried through its gallery.
+ */
+@SpringBootTest(
+  properties = {
+    "image.storage.directory=target/test-pictures-async/",
+    "image.base.url=http://localhost/images/",
+  }
+)
+@AutoConfigureMockMvc
+class RentalAsyncCreateTests {
+
+  private static final String BOUNDARY = "----chatopBoundary7MA4YWxk";
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private TestFixtures fixtures;
+
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private RentalRepository rentalRepository;
+
+  @Autowired
+  private PictureRepository pictureRepository;
+
+  @Autowired
+  private RentalService rentalService;
+
+  @Autowired
+  private RentalMediaService rentalMediaService;
+
+  private String token;
+
+  @BeforeEach
+  void setUp() {
+    fixtures.cleanUp();
+    token = fixtures.tokenOf(fixtures.createUser("owner@test.com"));
+  }
+
+  @AfterEach
+  void cleanUp() {
+    fixtures.cleanUp();
+  }
+
+  @Test
+  void acceptsThenStoresPicture() throws Exception {
+    mockMvc
+      .perform(createRental(jpeg(1000)))
+      .andExpect(status().isAccepted())
+      .andExpect(header().string("Preference-Applied", "respond-async"))
+      .andExpect(jsonPath("$.status_url").exists());
+
+    Rental rental = rentalRepository.findAll().get(0);
+    RentalStatusDTO status = awaitProcessed(rental.getId());
+    assertEquals(MediaStatus.READY, status.getStatus());
+    assertTrue(
+      status.getPicture().matches("http://localhost/images/[0-9a-f]{64}\\.jpg")
+    );
+    assertEquals(1, pictureRepository.count());
+
+    mockMvc
+      .perform(
+        get("/api/rentals/" + rental.getId() + "/status")
+          .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+      )
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.status").value("READY"));
+  }
+
+  @Test
+  void failedRentalIsRetriedThroughGallery() throws Exception {
+    Rental rental = rentalService.createPendingRental(
+      new RentalRequestDTO("Cottage", 80, 200, null, null),
+      userRepository.findAll().get(0).getId()
+    );
+    rentalRepository.failMedia(
+      rental.getId(),
+      "Failed to save the file",
+      LocalDateTime.now(),
+      MediaStatus.FAILED,
+      MediaStatus.PENDING_MEDIA
+    );
+    RentalStatusDTO status = rentalService.readRentalStatus(rental.getId());
+    assertEquals(MediaStatus.FAILED, status.getStatus());
+    assertEquals("Failed to save the file", status.getError());
+
+    mockMvc
+      .perform(
+        multipart(status.getRetryUrl())
+          .file(
+            new MockMultipartFile(
+              "pictures",
+              "photo.jpg",
+              "image/jpeg",
+              jpeg(100)
+            )
+          )
+          .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+      )
+      .andExpect(status().isCreated());
+
+    status = rentalService.readRentalStatus(rental.getId());
+    assertEquals(MediaStatus.READY, status.getStatus());
+    assertNull(status.getError());
+    assertTrue(status.getPicture() != null);
+  }
+
+  @Test
+  void rejectsNonImageBeforeSaving() throws Exception {
+    mockMvc
+      .perform(createRental("<svg onload=alert(1)>".getBytes()))
+      .andExpect(status().isBadRequest())
+      .andExpect(jsonPath("$.code").value("400 - INVALID_FILE"));
+
+    assertEquals(0, rentalRepository.count());
+  }
+
+  @Test
+  void failsStalePendingRentals() {
+    Rental rental = new Rental();
+    rental.setName("Cottage");
+    rental.setSurface(80);
+    rental.setPrice(200);
+    rental.setOwner(userRepository.findAll().get(0));
+    rental.setMediaStatus(MediaStatus.PENDING_MEDIA);
+    rental.setCreatedAt(LocalDateTime.now().minusHours(1));
+    rental = rentalRepository.save(rental);
+
+    rentalMediaService.failStalePendingRentals();
+
+    RentalStatusDTO status = rentalService.readRentalStatus(rental.getId());
+    assertEquals(MediaStatus.FAILED, status.getStatus());
+    assertEquals("Picture processing timed out", status.getError());
+    assertNull(status.getPicture());
+  }
+
+  private RentalStatusDTO awaitProcessed(Integer id) throws Exception {
+    for (int i = 0; i < 100; i++) {
+      RentalStatusDTO status = rentalService.readRentalStatus(id);
+      if (status.getStatus() != MediaStatus.PENDING_MEDIA) {
+        return status;
+      }
+      Thread.sleep(50);
+    }
+    throw new AssertionError("Rental still pending");
+  }
+
+  private RequestBuilder createRental(byte[] picture) throws Exception {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    body.write(field("name", "Cottage"));
+    body.write(field("surface", "80"));
+    body.write(
+      (
+        "--" +
+        BOUNDARY +
+        "\r\nContent-Disposition: form-data; name=\"picture\"; " +
+        "filename=\"photo.jpg\"\r\nContent-Type: image/jpeg\r\n\r\n"
+      ).getBytes(StandardCharsets.UTF_8)
+    );
+    body.write(picture);
+    body.write("\r\n".getBytes(StandardCharsets.UTF_8));
+    body.write(field("price", "200"));
+    body.write(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+    return post("/api/rentals")
+      .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+      .header("Prefer", "respond-async")
+      .contentType("multipart/form-data; boundary=" + BOUNDARY)
+      .content(body.toByteArray());
+  }
+
+  private static byte[] field(String name, String value) {
+    return (
+      "--" +
+      BOUNDARY +
+      "\r\nContent-Disposition: form-data; name=\"" +
+      name +
+      "\"\r\n\r\n" +
+      value +
+      "\r\n"
+    ).getBytes(StandardCharsets.UTF_8);
+  }
+
+  // JPEG magic bytes followed by arbitrary content
+  private static byte[] jpeg(int length) {
+    byte[] jpeg = new byte[length];
+    for (int i = 3; i < length; i++) {
+      jpeg[i] = (byte) (i * 31);
+    }
+    jpeg[0] = (byte) 0xFF;
+    jpeg[1] = (byte) 0xD8;
+    jpeg[2] = (byte) 0xFF;
+    return jpeg;
+  }
+}
@@ -0,0 +1,171 @@
+package com.chatop.rental_api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import com.chatop.dto.RentalRequestDTO;
+import com.chatop.model.RentalTombstone;
+import com.chatop.repository.RentalTombstoneRepository;
+import com.chatop.service.RentalService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Delta sync : only the rentals changed since the watermark, the deleted
+ * ones as tombstones, and a watermark to resume from.
+ */
+@SpringBootTest(properties = "rental.changes.settle-delay=0s")
+@AutoConfigureMockMvc
+@WithMockUser(username = "test@test.com", roles = "USER")
+class RentalChangesTests {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private RentalService rentalService;
+
+  @Autowired
+  private TestFixtures fixtures;
+
+  @Autowired
+  private RentalTombstoneRepository rentalTombstoneRepository;
+
+  private Integer ownerId;
+
+  @BeforeEach
+  void setUp() {
+    fixtures.cleanUp();
+    ownerId = fixtures.createUser("owner@test.com").getId();
+  }
+
+  @Test
+  void returnsOnlyChangesSinceWatermark() throws Exception {
+    Integer cottage = createRental("Cottage");
+    createRental("Loft");
+
+    JsonNode first = changes(null, null);
+    assertEquals(2, first.get("rentals").size());
+    assertFalse(first.get("has_more").asBoolean());
+    String watermark = first.get("watermark").asText();
+
+    Thread.sleep(5);
+    assertEquals(0, changes(watermark, null).get("rentals").size());
+
+    rentalService.updateRental(
+      cottage,
+      new RentalRequestDTO("Cottage", 90, 210, null, null),
+      ownerId
+    );
+    RentalTombstone tombstone = new RentalTombstone();
+    tombstone.setRentalId(999);
+    tombstone.setDeletedAt(LocalDateTime.now());
+    rentalTombstoneRepository.save(tombstone);
+    Thread.sleep(5);
+
+    JsonNode second = changes(watermark, null);
+    assertEquals(1, second.get("rentals").size());
+    assertEquals(cottage, second.get("rentals").get(0).get("id").asInt());
+    assertEquals(90, second.get("rentals").get(0).get("surface").asInt());
+    assertEquals(1, second.get("deleted").size());
+    assertEquals(999, second.get("deleted").get(0).asInt());
+
+    // Both already sent
+    Thread.sleep(5);
+    JsonNode third = changes(second.get("watermark").asText(), null);
+    assertEquals(0, third.get("rentals").size());
+    assertEquals(0, third.get("deleted").size());
+  }
+
+  @Test
+  void reportsDeletedRental() throws Exception {
+    Integer cottage = createRental("Cottage");
+    String watermark = changes(null, null).get("watermark").asText();
+    Thread.sleep(5);
+
+    rentalService.deleteRental(cottage);
+    Thread.sleep(5);
+
+    JsonNode changes = changes(watermark, null);
+    assertEquals(0, changes.get("rentals").size());
+    assertEquals(1, changes.get("deleted").size());
+    assertEquals(cottage, changes.get("deleted").get(0).asInt());
+  }
+
+  @Test
+  void resumesFromWatermarkWhenMoreChangesAreWaiting() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      createRental("Rental " + i);
+    }
+    Thread.sleep(5);
+
+    Set<Integer> ids = new HashSet<>();
+    String watermark = null;
+    int calls = 0;
+    boolean hasMore = true;
+    while (hasMore) {
+      JsonNode page = changes(watermark, 2);
+      page.get("rentals").forEach(rental -> ids.add(rental.get("id").asInt()));
+      watermark = page.get("watermark").asText();
+      hasMore = page.get("has_more").asBoolean();
+      calls++;
+    }
+
+    assertEquals(5, ids.size());
+    assertTrue(calls >= 3);
+  }
+
+  @Test
+  void rejectsInvalidWatermark() throws Exception {
+    mockMvc
+      .perform(get("/api/rentals/changes").param("since", "not-a-watermark"))
+      .andExpect(status().isBadRequest());
+  }
+
+  private JsonNode changes(String since, Integer limit) throws Exception {
+    MockHttpServletRequestBuilder request = get("/api/rentals/changes");
+    if (since != null) {
+      request.param("since", since);
+    }
+    if (limit != null) {
+      request.param("limit", String.valueOf(limit));
+    }
+    return objectMapper.readTree(
+      mockMvc
+        .perform(request)
+        .andExpect(status().isOk())
+        .andReturn()
+        .getResponse()
+        .getContentAsString()
+    );
+  }
+
+  private Integer createRental(String name) {
+    return rentalService
+      .createRental(
+        new RentalRequestDTO(name, 80, 200, null, null),
+        null,
+        ownerId
+      )
+      .getId();
+  }
+}
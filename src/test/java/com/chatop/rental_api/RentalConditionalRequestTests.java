@@ -0,0 +1,196 @@
+package com.chatop.rental_api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import com.chatop.dto.RentalRequestDTO;
+import com.chatop.model.User;
+import com.chatop.repository.RentalRepository;
+import com.chatop.service.RentalService;
+
+/**
+ * ETags derived from the rental versions : 304 on a matching If-None-Match,
+ * 412 on a stale If-Match.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class RentalConditionalRequestTests {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private TestFixtures fixtures;
+
+  @Autowired
+  private RentalService rentalService;
+
+  @Autowired
+  private RentalRepository rentalRepository;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  private Integer ownerId;
+  private String token;
+
+  @BeforeEach
+  void setUp() {
+    fixtures.cleanUp();
+    User owner = fixtures.createUser("owner@test.com");
+    ownerId = owner.getId();
+    token = fixtures.tokenOf(owner);
+  }
+
+  @Test
+  void answersNotModifiedForCurrentRental() throws Exception {
+    Integer id = createRental("Cottage");
+
+    String etag = mockMvc
+      .perform(authorized(get("/api/rentals/" + id)))
+      .andExpect(status().isOk())
+      .andExpect(header().string(HttpHeaders.ETAG, "\"" + id + "-0\""))
+      .andReturn()
+      .getResponse()
+      .getHeader(HttpHeaders.ETAG);
+
+    mockMvc
+      .perform(
+        authorized(get("/api/rentals/" + id))
+          .header(HttpHeaders.IF_NONE_MATCH, etag)
+      )
+      .andExpect(status().isNotModified());
+
+    update(id, "Loft", etag).andExpect(status().isOk());
+    mockMvc
+      .perform(
+        authorized(get("/api/rentals/" + id))
+          .header(HttpHeaders.IF_NONE_MATCH, etag)
+      )
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.name").value("Loft"))
+      .andExpect(header().string(HttpHeaders.ETAG, "\"" + id + "-1\""));
+  }
+
+  @Test
+  void rejectsUpdateOfModifiedRental() throws Exception {
+    Integer id = createRental("Cottage");
+    String etag = "\"" + id + "-0\"";
+
+    String updated = update(id, "Loft", etag)
+      .andExpect(status().isOk())
+      .andReturn()
+      .getResponse()
+      .getHeader(HttpHeaders.ETAG);
+    assertNotEquals(etag, updated);
+
+    // A second writer still holding the first version
+    update(id, "Chalet", etag).andExpect(status().isPreconditionFailed());
+    assertEquals(
+      "Loft",
+      rentalRepository.findById(id).orElseThrow().getName()
+    );
+
+    update(id, "Chalet", updated).andExpect(status().isOk());
+    update(id, "Barn", "*").andExpect(status().isOk());
+  }
+
+  @Test
+  void answersNotModifiedForUnchangedList() throws Exception {
+    Integer id = createRental("Cottage");
+
+    String etag = mockMvc
+      .perform(authorized(get("/api/rentals")))
+      .andExpect(status().isOk())
+      .andReturn()
+      .getResponse()
+      .getHeader(HttpHeaders.ETAG);
+
+    mockMvc
+      .perform(
+        authorized(get("/api/rentals")).header(HttpHeaders.IF_NONE_MATCH, etag)
+      )
+      .andExpect(status().isNotModified());
+
+    update(id, "Loft", null).andExpect(status().isOk());
+    mockMvc
+      .perform(
+        authorized(get("/api/rentals")).header(HttpHeaders.IF_NONE_MATCH, etag)
+      )
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.rentals[0].name").value("Loft"));
+  }
+
+  @Test
+  void changesListETagAfterWriteOfAnotherInstance() throws Exception {
+    createRental("Cottage");
+    String etag = mockMvc
+      .perform(authorized(get("/api/rentals")))
+      .andExpect(status().isOk())
+      .andReturn()
+      .getResponse()
+      .getHeader(HttpHeaders.ETAG);
+
+    // A write committed by another instance, which shares only the database
+    jdbcTemplate.update(
+      "UPDATE RENTAL_LIST_VERSION SET version = version + 1 WHERE id = 1"
+    );
+
+    mockMvc
+      .perform(
+        authorized(get("/api/rentals")).header(HttpHeaders.IF_NONE_MATCH, etag)
+      )
+      .andExpect(status().isOk());
+  }
+
+  private Integer createRental(String name) {
+    return rentalService
+      .createRental(
+        new RentalRequestDTO(name, 80, 200, null, null),
+        null,
+        ownerId
+      )
+      .getId();
+  }
+
+  private ResultActions update(
+    Integer id,
+    String name,
+    String ifMatch
+  ) throws Exception {
+    MockHttpServletRequestBuilder request = multipart(
+      HttpMethod.PUT,
+      "/api/rentals/" + id
+    )
+      .param("name", name)
+      .param("surface", "80")
+      .param("price", "200");
+    if (ifMatch != null) {
+      request.header(HttpHeaders.IF_MATCH, ifMatch);
+    }
+    return mockMvc.perform(authorized(request));
+  }
+
+  private MockHttpServletRequestBuilder authorized(
+    MockHttpServletRequestBuilder request
+  ) {
+    return request.header(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+  }
+}
@@ -0,0 +1,156 @@
+package com.chatop.rental_api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import com.chatop.model.Rental;
+import com.chatop.model.User;
+import com.chatop.repository.RentalRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Catalog export : streamed asynchronously, one rental per line in NDJSON,
+ * or in CSV with the fields quoted when needed.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class RentalExportTests {
+
+  // Enough rentals for the export to fill its output buffer several times
+  private static final int RENTALS = 150;
+
+  private static final String DESCRIPTION =
+    "Sea view, \"quiet\"\nnear the port";
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private TestFixtures fixtures;
+
+  @Autowired
+  private RentalRepository rentalRepository;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  private String token;
+
+  @BeforeEach
+  void setUp() {
+    fixtures.cleanUp();
+    User owner = fixtures.createUser("owner@test.com");
+    token = fixtures.tokenOf(owner);
+
+    List<Rental> rentals = new ArrayList<>();
+    for (int i = 0; i < RENTALS; i++) {
+      Rental rental = new Rental();
+      rental.setName("Rental " + i);
+      rental.setSurface(50 + i);
+      rental.setPrice(100 + i);
+      rental.setDescription(i == 0 ? DESCRIPTION : "A ".repeat(40) + i);
+      rental.setOwner(owner);
+      rental.setCreatedAt(LocalDateTime.now());
+      rental.setUpdatedAt(LocalDateTime.now());
+      rentals.add(rental);
+    }
+    rentalRepository.saveAll(rentals);
+  }
+
+  @AfterEach
+  void cleanUp() {
+    fixtures.cleanUp();
+  }
+
+  @Test
+  void exportsEveryRentalAsNdjson() throws Exception {
+    MvcResult result = export("ndjson");
+
+    String[] lines = body(result).split("\n");
+    assertEquals(RENTALS, lines.length);
+    JsonNode first = objectMapper.readTree(lines[0]);
+    assertEquals("Rental 0", first.get("name").asText());
+    assertEquals(DESCRIPTION, first.get("description").asText());
+    assertEquals(
+      "Rental " + (RENTALS - 1),
+      objectMapper.readTree(lines[RENTALS - 1]).get("name").asText()
+    );
+  }
+
+  @Test
+  void exportsEveryRentalAsCsv() throws Exception {
+    MvcResult result = export("csv");
+
+    String body = body(result);
+    assertTrue(body.startsWith("id,name,surface,price,picture,description,"));
+    // Quoted, inner quotes doubled, the line break kept inside the field
+    assertTrue(body.contains(",\"Sea view, \"\"quiet\"\"\nnear the port\","));
+    // Header, one line per rental, and the line break of the description
+    assertEquals(RENTALS + 2, body.split("\n").length);
+    assertTrue(body.contains(",Rental " + (RENTALS - 1) + ","));
+  }
+
+  @Test
+  void rejectsUnknownFormat() throws Exception {
+    mockMvc
+      .perform(
+        get("/api/rentals/export")
+          .param("format", "xml")
+          .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+      )
+      .andExpect(status().isBadRequest());
+  }
+
+  private MvcResult export(String format) throws Exception {
+    MvcResult started = mockMvc
+      .perform(
+        get("/api/rentals/export")
+          .param("format", format)
+          .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+      )
+      .andExpect(request().asyncStarted())
+      .andReturn();
+
+    return mockMvc
+      .perform(asyncDispatch(started))
+      .andExpect(status().isOk())
+      .andExpect(
+        content()
+          .contentTypeCompatibleWith(
+            "csv".equals(format)
+              ? MediaType.parseMediaType("text/csv")
+              : MediaType.APPLICATION_NDJSON
+          )
+      )
+      .andReturn();
+  }
+
+  private static String body(MvcResult result) {
+    return new String(
+      result.getResponse().getContentAsByteArray(),
+      StandardCharsets.UTF_8
+    );
+  }
+}
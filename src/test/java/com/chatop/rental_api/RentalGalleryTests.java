@@ -0,0 +1,173 @@
+package com.chatop.rental_api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import com.chatop.model.Rental;
+import com.chatop.model.User;
+import com.chatop.repository.PictureRepository;
+import com.chatop.repository.RentalPictureRepository;
+import com.chatop.repository.RentalRepository;
+
+/**
+ * Gallery uploads : the first picture of a rental without one becomes its
+ * cover, the others are appended in order, and one invalid file leaves
+ * nothing stored. The list only carries the cover.
+ */
+@SpringBootTest(
+  properties = {
+    "image.storage.directory=target/test-pictures-gallery/",
+    "image.base.url=http://localhost/images/",
+    "rental.pictures.max-count=3",
+  }
+)
+@AutoConfigureMockMvc
+class RentalGalleryTests {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private TestFixtures fixtures;
+
+  @Autowired
+  private RentalRepository rentalRepository;
+
+  @Autowired
+  private RentalPictureRepository rentalPictureRepository;
+
+  @Autowired
+  private PictureRepository pictureRepository;
+
+  private String token;
+  private Integer rentalId;
+
+  @BeforeEach
+  void setUp() {
+    fixtures.cleanUp();
+    User user = fixtures.createUser("owner@test.com");
+    token = fixtures.tokenOf(user);
+
+    Rental rental = new Rental();
+    rental.setName("Cottage");
+    rental.setSurface(80);
+    rental.setPrice(200);
+    rental.setOwner(user);
+    rental.setCreatedAt(LocalDateTime.now());
+    rental.setUpdatedAt(LocalDateTime.now());
+    rentalId = rentalRepository.save(rental).getId();
+  }
+
+  @AfterEach
+  void cleanUp() {
+    fixtures.cleanUp();
+  }
+
+  @Test
+  void firstPictureBecomesCoverAndOthersTheGallery() throws Exception {
+    addPictures(picture(jpeg(100, 1)), picture(jpeg(100, 2)))
+      .andExpect(status().isCreated())
+      .andExpect(jsonPath("$.pictures.length()").value(2));
+    addPictures(picture(jpeg(100, 3)), picture(jpeg(100, 4)))
+      .andExpect(status().isCreated());
+
+    String cover = rentalRepository.findById(rentalId).get().getPicture();
+    assertTrue(cover.matches("http://localhost/images/[0-9a-f]{64}\\.jpg"));
+    List<String> gallery = rentalPictureRepository.findUrlsByRentalId(
+      rentalId
+    );
+    assertEquals(3, gallery.size());
+    assertEquals(4, pictureRepository.count());
+
+    mockMvc
+      .perform(
+        get("/api/rentals/" + rentalId)
+          .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+      )
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.picture").value(cover))
+      .andExpect(jsonPath("$.pictures[0]").value(gallery.get(0)))
+      .andExpect(jsonPath("$.pictures[2]").value(gallery.get(2)));
+    mockMvc
+      .perform(
+        get("/api/rentals").header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+      )
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.rentals[0].picture").value(cover))
+      .andExpect(jsonPath("$.rentals[0].pictures").doesNotExist());
+  }
+
+  @Test
+  void invalidFileLeavesNothingStored() throws Exception {
+    addPictures(
+      picture(jpeg(100, 1)),
+      picture("<svg onload=alert(1)>".getBytes()),
+      picture(jpeg(100, 2))
+    )
+      .andExpect(status().isBadRequest())
+      .andExpect(jsonPath("$.code").value("400 - INVALID_FILE"));
+
+    assertNull(rentalRepository.findById(rentalId).get().getPicture());
+    assertEquals(0, rentalPictureRepository.count());
+    assertEquals(0, pictureRepository.count());
+  }
+
+  @Test
+  void rejectsTooManyPictures() throws Exception {
+    addPictures(
+      picture(jpeg(100, 1)),
+      picture(jpeg(100, 2)),
+      picture(jpeg(100, 3)),
+      picture(jpeg(100, 4))
+    )
+      .andExpect(status().isBadRequest());
+
+    assertEquals(0, pictureRepository.count());
+  }
+
+  private ResultActions addPictures(MockMultipartFile... pictures)
+    throws Exception {
+    var request = multipart("/api/rentals/" + rentalId + "/pictures");
+    for (MockMultipartFile picture : pictures) {
+      request.file(picture);
+    }
+    return mockMvc.perform(
+      request.header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+    );
+  }
+
+  private static MockMultipartFile picture(byte[] content) {
+    return new MockMultipartFile("pictures", "photo.jpg", "image/jpeg", content);
+  }
+
+  // JPEG magic bytes followed by content depending on the seed
+  private static byte[] jpeg(int length, int seed) {
+    byte[] jpeg = new byte[length];
+    for (int i = 3; i < length; i++) {
+      jpeg[i] = (byte) (i * 31 + seed);
+    }
+    jpeg[0] = (byte) 0xFF;
+    jpeg[1] = (byte) 0xD8;
+    jpeg[2] = (byte) 0xFF;
+    return jpeg;
+  }
+}
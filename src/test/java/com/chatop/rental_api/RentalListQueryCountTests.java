@@ -0,0 +1,107 @@
+package com.chatop.rental_api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.LocalDateTime;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.chatop.model.Rental;
+import com.chatop.model.User;
+import com.chatop.repository.RentalRepository;
+import com.chatop.repository.UserRepository;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Checks that listing rentals runs a constant number of SQL statements,
+ * whatever the number of rentals and owners (no owner select per row).
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@WithMockUser(username = "test@test.com", roles = "USER")
+class RentalListQueryCountTests {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private TestFixtures fixtures;
+
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private RentalRepository rentalRepository;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  private Statistics statistics;
+
+  @BeforeEach
+  void setUp() {
+    fixtures.cleanUp();
+    statistics =
+      entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+  }
+
+  @Test
+  void listingRentalsRunsConstantStatementCount() throws Exception {
+    createRentals(5);
+    long fewRows = countListStatements(5);
+
+    createRentals(45);
+    long manyRows = countListStatements(50);
+
+    assertEquals(1, fewRows);
+    assertEquals(fewRows, manyRows);
+  }
+
+  @Test
+  void readingOneRentalRunsSingleStatement() throws Exception {
+    createRentals(1);
+    Integer id = rentalRepository.findAll().get(0).getId();
+
+    statistics.clear();
+    mockMvc.perform(get("/api/rentals/" + id)).andExpect(status().isOk());
+
+    assertEquals(1, statistics.getPrepareStatementCount());
+  }
+
+  private long countListStatements(int expectedRows) throws Exception {
+    statistics.clear();
+    mockMvc
+      .perform(get("/api/rentals").param("limit", "100"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.rentals.length()").value(expectedRows));
+    return statistics.getPrepareStatementCount();
+  }
+
+  // Each rental gets its own owner, so that an owner select per row would show up
+  private void createRentals(int count) {
+    long existing = userRepository.count();
+    for (int i = 0; i < count; i++) {
+      User owner = fixtures.createUser("owner" + (existing + i) + "@test.com");
+
+      Rental rental = new Rental();
+      rental.setName("rental " + (existing + i));
+      rental.setSurface(50 + i);
+      rental.setPrice(100 + i);
+      rental.setOwner(owner);
+      rental.setCreatedAt(LocalDateTime.now());
+      rentalRepository.save(rental);
+    }
+  }
+}
@@ -0,0 +1,255 @@
+package com.chatop.rental_api;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.ByteArrayInputStream;
+import java.time.LocalDateTime;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.chatop.dto.RentalRequestDTO;
+import com.chatop.model.Rental;
+import com.chatop.model.User;
+import com.chatop.repository.RentalRepository;
+import com.chatop.service.RentalService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Snapshot mode of the rentals list : pre-rendered bytes with a strong
+ * ETag, a gzip copy, and a rebuild after each write.
+ */
+@SpringBootTest(
+  properties = {
+    "rental.list.snapshot.enabled=true",
+    "rental.list.snapshot.check-interval=0s",
+  }
+)
+@AutoConfigureMockMvc
+@WithMockUser(username = "test@test.com", roles = "USER")
+class RentalListSnapshotTests {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private RentalService rentalService;
+
+  @Autowired
+  private TestFixtures fixtures;
+
+  @Autowired
+  private RentalRepository rentalRepository;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  private User owner;
+  private Integer ownerId;
+
+  @BeforeEach
+  void setUp() {
+    fixtures.cleanUp();
+    owner = fixtures.createUser("owner@test.com");
+    ownerId = owner.getId();
+  }
+
+  @Test
+  void servesSnapshotUntilRebuilt() throws Exception {
+    createRental("Cottage");
+    createRental("Loft");
+
+    // A page of its own, so that no earlier test has rendered it
+    MockHttpServletResponse first = mockMvc
+      .perform(get("/api/rentals").param("limit", "11"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.rentals.length()").value(2))
+      .andExpect(
+        header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+      )
+      .andReturn()
+      .getResponse();
+    String etag = first.getHeader(HttpHeaders.ETAG);
+    assertEquals(
+      first.getContentLength(),
+      first.getContentAsByteArray().length
+    );
+
+    mockMvc
+      .perform(
+        get("/api/rentals")
+          .param("limit", "11")
+          .header(HttpHeaders.IF_NONE_MATCH, etag)
+      )
+      .andExpect(status().isNotModified());
+
+    createRental("Chalet");
+    String rebuilt = null;
+    for (int i = 0; i < 100; i++) {
+      MockHttpServletResponse response = mockMvc
+        .perform(get("/api/rentals").param("limit", "11"))
+        .andReturn()
+        .getResponse();
+      if (
+        objectMapper
+          .readTree(response.getContentAsByteArray())
+          .get("rentals")
+          .size() ==
+        3
+      ) {
+        rebuilt = response.getHeader(HttpHeaders.ETAG);
+        break;
+      }
+      Thread.sleep(50);
+    }
+    assertNotNull(rebuilt);
+    assertNotEquals(etag, rebuilt);
+  }
+
+  @Test
+  void servesGzipCopy() throws Exception {
+    createRental("Cottage");
+
+    byte[] json = mockMvc
+      .perform(get("/api/rentals").param("limit", "12"))
+      .andReturn()
+      .getResponse()
+      .getContentAsByteArray();
+    MockHttpServletResponse gzipped = mockMvc
+      .perform(
+        get("/api/rentals")
+          .param("limit", "12")
+          .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate")
+      )
+      .andExpect(status().isOk())
+      .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+      .andReturn()
+      .getResponse();
+
+    try (
+      GZIPInputStream input = new GZIPInputStream(
+        new ByteArrayInputStream(gzipped.getContentAsByteArray())
+      )
+    ) {
+      assertArrayEquals(json, input.readAllBytes());
+    }
+  }
+
+  @Test
+  void refusesGzipWithZeroQuality() throws Exception {
+    createRental("Cottage");
+
+    mockMvc
+      .perform(
+        get("/api/rentals")
+          .param("limit", "12")
+          .header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, identity")
+      )
+      .andExpect(status().isOk())
+      .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+      .andExpect(jsonPath("$.rentals.length()").value(1));
+    mockMvc
+      .perform(
+        get("/api/rentals")
+          .param("limit", "12")
+          .header(HttpHeaders.ACCEPT_ENCODING, "*;q=0.5")
+      )
+      .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"));
+  }
+
+  @Test
+  void sharesPageOfDefaultLimit() throws Exception {
+    createRental("Cottage");
+    // Until the page is kept by the rebuild that follows the write
+    double hits = hits();
+    for (int i = 0; i < 100 && hits() == hits; i++) {
+      mockMvc.perform(get("/api/rentals")).andExpect(status().isOk());
+      Thread.sleep(50);
+    }
+
+    hits = hits();
+    mockMvc
+      .perform(
+        get("/api/rentals")
+          .param("limit", String.valueOf(rentalService.pageSize(null)))
+      )
+      .andExpect(status().isOk());
+    assertEquals(hits + 1, hits());
+  }
+
+  @Test
+  void rebuildsAfterWriteOfAnotherInstance() throws Exception {
+    createRental("Cottage");
+    mockMvc
+      .perform(get("/api/rentals").param("limit", "13"))
+      .andExpect(jsonPath("$.rentals.length()").value(1));
+
+    // Written by another instance : the database only is changed
+    Rental rental = new Rental();
+    rental.setName("Loft");
+    rental.setSurface(80);
+    rental.setPrice(200);
+    rental.setOwner(owner);
+    rental.setCreatedAt(LocalDateTime.now());
+    rental.setUpdatedAt(LocalDateTime.now());
+    rentalRepository.save(rental);
+    jdbcTemplate.update(
+      "UPDATE RENTAL_LIST_VERSION SET version = version + 1 WHERE id = 1"
+    );
+
+    Integer size = null;
+    for (int i = 0; i < 100 && (size == null || size != 2); i++) {
+      Thread.sleep(50);
+      size =
+        objectMapper
+          .readTree(
+            mockMvc
+              .perform(get("/api/rentals").param("limit", "13"))
+              .andReturn()
+              .getResponse()
+              .getContentAsByteArray()
+          )
+          .get("rentals")
+          .size();
+    }
+    assertEquals(2, size);
+  }
+
+  private double hits() {
+    return meterRegistry
+      .counter("rental.list.snapshot.requests", "result", "hit")
+      .count();
+  }
+
+  private void createRental(String name) {
+    rentalService.createRental(
+      new RentalRequestDTO(name, 80, 200, null, null),
+      null,
+      ownerId
+    );
+  }
+}
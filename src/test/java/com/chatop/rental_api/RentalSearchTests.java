@@ -0,0 +1,158 @@
+package com.chatop.rental_api;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.chatop.dto.RentalRequestDTO;
+import com.chatop.service.RentalSearchService;
+import com.chatop.service.RentalService;
+import com.chatop.util.CursorUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Full-text search on the name and description, accents and case folded,
+ * kept up to date by the rental writes.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@WithMockUser(username = "test@test.com", roles = "USER")
+class RentalSearchTests {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private RentalService rentalService;
+
+  @Autowired
+  private RentalSearchService rentalSearchService;
+
+  @Autowired
+  private TestFixtures fixtures;
+
+  private Integer ownerId;
+
+  @BeforeEach
+  void setUp() {
+    fixtures.cleanUp();
+    // Forgets the rentals deleted above, behind RentalService's back
+    rentalSearchService.rebuild();
+
+    ownerId = fixtures.createUser("owner@test.com").getId();
+  }
+
+  @Test
+  void findsRentalsByFoldedWordsOfNameAndDescription() throws Exception {
+    Integer chalet = createRental("Chalet d'été", "Près des pistes");
+    createRental("Studio", "Idéal pour l'été, vue sur le lac");
+    createRental("Loft", "En centre-ville");
+
+    mockMvc
+      .perform(get("/api/rentals/search").param("q", "ETE"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.rentals.length()").value(2))
+      // In the name, which counts twice
+      .andExpect(jsonPath("$.rentals[0].id").value(chalet));
+
+    mockMvc
+      .perform(get("/api/rentals/search").param("q", "pres pistes"))
+      .andExpect(jsonPath("$.rentals.length()").value(1))
+      .andExpect(jsonPath("$.rentals[0].id").value(chalet));
+  }
+
+  @Test
+  void indexesUpdatedRentals() throws Exception {
+    Integer id = createRental("Péniche", "Amarrée sur la Seine");
+
+    rentalService.updateRental(
+      id,
+      new RentalRequestDTO("Péniche", null, null, null, "Quai du canal"),
+      ownerId
+    );
+
+    mockMvc
+      .perform(get("/api/rentals/search").param("q", "seine"))
+      .andExpect(jsonPath("$.rentals.length()").value(0));
+    mockMvc
+      .perform(get("/api/rentals/search").param("q", "canal"))
+      .andExpect(jsonPath("$.rentals[0].id").value(id));
+  }
+
+  @Test
+  void pagesThroughResults() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      createRental("Cabane " + i, "Dans les arbres");
+    }
+
+    String first = mockMvc
+      .perform(
+        get("/api/rentals/search").param("q", "arbres").param("limit", "2")
+      )
+      .andExpect(jsonPath("$.rentals.length()").value(2))
+      .andExpect(jsonPath("$.next_cursor", Matchers.notNullValue()))
+      .andReturn()
+      .getResponse()
+      .getContentAsString();
+    String cursor = objectMapper.readTree(first).get("next_cursor").asText();
+
+    mockMvc
+      .perform(
+        get("/api/rentals/search")
+          .param("q", "arbres")
+          .param("limit", "2")
+          .param("cursor", cursor)
+      )
+      .andExpect(jsonPath("$.rentals.length()").value(1))
+      .andExpect(jsonPath("$.next_cursor").doesNotExist());
+  }
+
+  @Test
+  void rejectsMissingQuery() throws Exception {
+    mockMvc
+      .perform(get("/api/rentals/search").param("q", " "))
+      .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void rejectsCursorPastResultsWindow() throws Exception {
+    createRental("Cabane", "Dans les arbres");
+
+    mockMvc
+      .perform(
+        get("/api/rentals/search")
+          .param("q", "arbres")
+          .param("cursor", CursorUtil.encode("1000"))
+      )
+      .andExpect(status().isBadRequest());
+    mockMvc
+      .perform(
+        get("/api/rentals/search")
+          .param("q", "arbres")
+          .param("cursor", CursorUtil.encode(String.valueOf(Long.MAX_VALUE)))
+      )
+      .andExpect(status().isBadRequest());
+  }
+
+  private Integer createRental(String name, String description) {
+    return rentalService
+      .createRental(
+        new RentalRequestDTO(name, 80, 200, null, description),
+        null,
+        ownerId
+      )
+      .getId();
+  }
+}
@@ -0,0 +1,198 @@
+package com.chatop.rental_api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import com.chatop.model.Rental;
+import com.chatop.repository.PictureRepository;
+import com.chatop.repository.RentalRepository;
+import com.chatop.storage.ImageStore;
+
+/**
+ * Rental creation reads its multipart body as a stream : the picture is
+ * typed by its first bytes, and an invalid or oversized picture is rejected
+ * without leaving a stored file behind.
+ */
+@SpringBootTest(
+  properties = {
+    "image.storage.directory=target/test-pictures-upload/",
+    "image.base.url=http://localhost/images/",
+    "image.upload.max-size=4KB",
+  }
+)
+@AutoConfigureMockMvc
+class RentalUploadTests {
+
+  private static final String BOUNDARY = "----chatopBoundary7MA4YWxk";
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private TestFixtures fixtures;
+
+  @Autowired
+  private RentalRepository rentalRepository;
+
+  @Autowired
+  private PictureRepository pictureRepository;
+
+  @Autowired
+  private ImageStore imageStore;
+
+  private String token;
+
+  @BeforeEach
+  void setUp() {
+    fixtures.cleanUp();
+    token = fixtures.tokenOf(fixtures.createUser("owner@test.com"));
+  }
+
+  @Test
+  void storesPictureTypedByContent() throws Exception {
+    // Declared as a text file named .png : the bytes are a JPEG
+    createRental("200", picture("photo.png", "text/plain", jpeg(1000)))
+      .andExpect(status().isCreated());
+
+    List<Rental> rentals = rentalRepository.findAll();
+    assertEquals(1, rentals.size());
+    assertEquals("Cottage", rentals.get(0).getName());
+    String picture = rentals.get(0).getPicture();
+    assertTrue(picture.matches("http://localhost/images/[0-9a-f]{64}\\.jpg"));
+    String fileName = picture.substring(picture.lastIndexOf('/') + 1);
+    assertEquals(1000, imageStore.stat(fileName).get().getLength());
+    assertEquals(1, pictureRepository.findById(fileName).get().getRefCount());
+  }
+
+  @Test
+  void rejectsPictureThatIsNotAnImage() throws Exception {
+    createRental(
+      "200",
+      picture("photo.jpg", "image/jpeg", "<svg onload=alert(1)>".getBytes())
+    )
+      .andExpect(status().isBadRequest())
+      .andExpect(jsonPath("$.code").value("400 - INVALID_FILE"));
+
+    assertEquals(0, rentalRepository.count());
+    assertEquals(0, pictureRepository.count());
+  }
+
+  @Test
+  void rejectsOversizedPictureWhileReading() throws Exception {
+    createRental("200", picture("photo.jpg", "image/jpeg", jpeg(5000)))
+      .andExpect(status().isPayloadTooLarge());
+
+    assertEquals(0, rentalRepository.count());
+    assertEquals(0, pictureRepository.count());
+  }
+
+  @Test
+  void releasesPictureWhenFieldsAreInvalid() throws Exception {
+    createRental("not a number", picture("photo.jpg", "image/jpeg", jpeg(100)))
+      .andExpect(status().isBadRequest())
+      .andExpect(jsonPath("$.details.price").exists());
+
+    assertEquals(0, rentalRepository.count());
+    assertEquals(0, pictureRepository.count());
+  }
+
+  @Test
+  void countsFieldsLengthInBytes() throws Exception {
+    // 20,000 characters but 60,000 bytes, then 6,000 more bytes
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    body.write(field("description", "\u20ac".repeat(20000)));
+    body.write(field("name", "C".repeat(6000)));
+    body.write(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+    mockMvc
+      .perform(
+        post("/api/rentals")
+          .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+          .contentType("multipart/form-data; boundary=" + BOUNDARY)
+          .content(body.toByteArray())
+      )
+      .andExpect(status().isBadRequest());
+
+    assertEquals(0, rentalRepository.count());
+  }
+
+  private ResultActions createRental(String price, byte[] picturePart)
+    throws Exception {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    body.write(field("name", "Cottage"));
+    body.write(field("surface", "80"));
+    body.write(picturePart);
+    body.write(field("price", price));
+    body.write(field("description", "Near the sea"));
+    body.write(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+    return mockMvc.perform(
+      post("/api/rentals")
+        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+        .contentType("multipart/form-data; boundary=" + BOUNDARY)
+        .content(body.toByteArray())
+    );
+  }
+
+  private static byte[] field(String name, String value) {
+    return (
+      "--" +
+      BOUNDARY +
+      "\r\nContent-Disposition: form-data; name=\"" +
+      name +
+      "\"\r\n\r\n" +
+      value +
+      "\r\n"
+    ).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] picture(
+    String filename,
+    String contentType,
+    byte[] content
+  ) throws Exception {
+    ByteArrayOutputStream part = new ByteArrayOutputStream();
+    part.write(
+      (
+        "--" +
+        BOUNDARY +
+        "\r\nContent-Disposition: form-data; name=\"picture\"; filename=\"" +
+        filename +
+        "\"\r\nContent-Type: " +
+        contentType +
+        "\r\n\r\n"
+      ).getBytes(StandardCharsets.UTF_8)
+    );
+    part.write(content);
+    part.write("\r\n".getBytes(StandardCharsets.UTF_8));
+    return part.toByteArray();
+  }
+
+  // JPEG magic bytes followed by arbitrary content
+  private static byte[] jpeg(int length) {
+    byte[] jpeg = new byte[length];
+    for (int i = 3; i < length; i++) {
+      jpeg[i] = (byte) (i * 31);
+    }
+    jpeg[0] = (byte) 0xFF;
+    jpeg[1] = (byte) 0xD8;
+    jpeg[2] = (byte) 0xFF;
+    return jpeg;
+  }
+}
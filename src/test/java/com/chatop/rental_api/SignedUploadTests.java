@@ -0,0 +1,315 @@
+package com.chatop.rental_api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.chatop.model.Picture;
+import com.chatop.model.Rental;
+import com.chatop.repository.PictureRepository;
+import com.chatop.repository.RentalRepository;
+import com.chatop.service.ImageStorageService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Direct uploads : a signed URL is handed out, the picture is sent to it as
+ * the raw body, and the returned key is referenced by a rental creation or
+ * update.
+ */
+@SpringBootTest(
+  properties = {
+    "image.storage.directory=" + SignedUploadTests.DIRECTORY,
+    "image.base.url=http://localhost/images/",
+  }
+)
+@AutoConfigureMockMvc
+class SignedUploadTests {
+
+  static final String DIRECTORY = "target/test-pictures-signed/";
+
+  private static final String BOUNDARY = "----chatopBoundary7MA4YWxk";
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private TestFixtures fixtures;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private RentalRepository rentalRepository;
+
+  @Autowired
+  private PictureRepository pictureRepository;
+
+  @Autowired
+  private ImageStorageService imageStorageService;
+
+  private String token;
+  private String otherToken;
+
+  @BeforeEach
+  void setUp() {
+    fixtures.cleanUp();
+    token = fixtures.tokenOf(fixtures.createUser("owner@test.com"));
+    otherToken = fixtures.tokenOf(fixtures.createUser("other@test.com"));
+  }
+
+  @AfterEach
+  void cleanUp() {
+    fixtures.cleanUp();
+  }
+
+  @Test
+  void createsRentalWithUploadedPicture() throws Exception {
+    String pictureKey = upload(token, jpeg(1000));
+    // Pending, not referenced until a rental uses it
+    assertEquals(0, pictureRepository.findAll().get(0).getRefCount());
+
+    mockMvc
+      .perform(
+        post("/api/rentals")
+          .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+          .contentType("multipart/form-data; boundary=" + BOUNDARY)
+          .content(
+            form(
+              "name",
+              "Cottage",
+              "surface",
+              "80",
+              "price",
+              "200",
+              "picture_key",
+              pictureKey
+            )
+          )
+      )
+      .andExpect(status().isCreated());
+
+    Rental rental = rentalRepository.findAll().get(0);
+    assertTrue(
+      rental.getPicture().matches("http://localhost/images/[0-9a-f]{64}\\.jpg")
+    );
+    assertEquals(1, pictureRepository.findAll().get(0).getRefCount());
+  }
+
+  @Test
+  void replacesPictureOnUpdate() throws Exception {
+    String firstKey = upload(token, jpeg(1000));
+    mockMvc
+      .perform(
+        post("/api/rentals")
+          .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+          .contentType("multipart/form-data; boundary=" + BOUNDARY)
+          .content(
+            form(
+              "name",
+              "Cottage",
+              "surface",
+              "80",
+              "price",
+              "200",
+              "picture_key",
+              firstKey
+            )
+          )
+      )
+      .andExpect(status().isCreated());
+    Rental rental = rentalRepository.findAll().get(0);
+    String firstPicture = rental.getPicture();
+
+    String secondKey = upload(token, jpeg(2000));
+    mockMvc
+      .perform(
+        multipart(HttpMethod.PUT, "/api/rentals/" + rental.getId())
+          .param("name", "Cottage")
+          .param("surface", "80")
+          .param("price", "200")
+          .param("picture_key", secondKey)
+          .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+      )
+      .andExpect(status().isOk());
+
+    rental = rentalRepository.findById(rental.getId()).orElseThrow();
+    assertNotEquals(firstPicture, rental.getPicture());
+    // The first picture was released
+    assertEquals(1, pictureRepository.count());
+  }
+
+  @Test
+  void rejectsTamperedUploadUrl() throws Exception {
+    // Signature of another user's URL on this payload
+    String uploadUrl = uploadUrl(token);
+    String otherUrl = uploadUrl(otherToken);
+    String tampered =
+      uploadUrl.substring(0, uploadUrl.lastIndexOf('.')) +
+      otherUrl.substring(otherUrl.lastIndexOf('.'));
+    mockMvc
+      .perform(
+        put(tampered)
+          .contentType(MediaType.IMAGE_JPEG)
+          .content(jpeg(1000))
+      )
+      .andExpect(status().isForbidden());
+  }
+
+  @Test
+  void rejectsNonImageUpload() throws Exception {
+    mockMvc
+      .perform(
+        put(uploadUrl(token))
+          .contentType(MediaType.IMAGE_JPEG)
+          .content("<svg onload=alert(1)>".getBytes(StandardCharsets.UTF_8))
+      )
+      .andExpect(status().isBadRequest())
+      .andExpect(jsonPath("$.code").value("400 - INVALID_FILE"));
+  }
+
+  @Test
+  void rejectsPictureKeyOfAnotherUser() throws Exception {
+    String pictureKey = upload(otherToken, jpeg(1000));
+    mockMvc
+      .perform(
+        post("/api/rentals")
+          .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+          .contentType("multipart/form-data; boundary=" + BOUNDARY)
+          .content(
+            form(
+              "name",
+              "Cottage",
+              "surface",
+              "80",
+              "price",
+              "200",
+              "picture_key",
+              pictureKey
+            )
+          )
+      )
+      .andExpect(status().isBadRequest());
+
+    assertEquals(0, rentalRepository.count());
+    assertEquals(0, pictureRepository.findAll().get(0).getRefCount());
+  }
+
+  @Test
+  void expiresUploadNeverAttached() throws Exception {
+    upload(token, jpeg(1000));
+    String pending = pictureRepository.findAll().get(0).getFileName();
+    String attachedKey = upload(token, jpeg(2000));
+    mockMvc
+      .perform(
+        post("/api/rentals")
+          .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+          .contentType("multipart/form-data; boundary=" + BOUNDARY)
+          .content(
+            form(
+              "name",
+              "Cottage",
+              "surface",
+              "80",
+              "price",
+              "200",
+              "picture_key",
+              attachedKey
+            )
+          )
+      )
+      .andExpect(status().isCreated());
+
+    // Both older than the lifetime of a picture key
+    for (Picture picture : pictureRepository.findAll()) {
+      picture.setCreatedAt(LocalDateTime.now().minusDays(1));
+      pictureRepository.save(picture);
+    }
+    imageStorageService.expirePendingUploads();
+
+    assertFalse(pictureRepository.existsById(pending));
+    assertFalse(Files.exists(Paths.get(DIRECTORY, pending)));
+    // The attached upload is kept
+    Picture attached = pictureRepository.findAll().get(0);
+    assertEquals(1, attached.getRefCount());
+    assertTrue(Files.exists(Paths.get(DIRECTORY, attached.getFileName())));
+  }
+
+  private String uploadUrl(String bearer) throws Exception {
+    String response = mockMvc
+      .perform(
+        post("/api/rentals/uploads")
+          .header(HttpHeaders.AUTHORIZATION, "Bearer " + bearer)
+      )
+      .andExpect(status().isCreated())
+      .andReturn()
+      .getResponse()
+      .getContentAsString();
+    return objectMapper.readTree(response).get("upload_url").asText();
+  }
+
+  private String upload(String bearer, byte[] picture) throws Exception {
+    String response = mockMvc
+      .perform(
+        put(uploadUrl(bearer))
+          .contentType(MediaType.IMAGE_JPEG)
+          .content(picture)
+      )
+      .andExpect(status().isCreated())
+      .andReturn()
+      .getResponse()
+      .getContentAsString();
+    JsonNode body = objectMapper.readTree(response);
+    return body.get("picture_key").asText();
+  }
+
+  private static byte[] form(String... fields) {
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < fields.length; i += 2) {
+      body
+        .append("--")
+        .append(BOUNDARY)
+        .append("\r\nContent-Disposition: form-data; name=\"")
+        .append(fields[i])
+        .append("\"\r\n\r\n")
+        .append(fields[i + 1])
+        .append("\r\n");
+    }
+    body.append("--").append(BOUNDARY).append("--\r\n");
+    return body.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  // JPEG magic bytes followed by arbitrary content
+  private static byte[] jpeg(int length) {
+    byte[] jpeg = new byte[length];
+    for (int i = 3; i < length; i++) {
+      jpeg[i] = (byte) (i * 31);
+    }
+    jpeg[0] = (byte) 0xFF;
+    jpeg[1] = (byte) 0xD8;
+    jpeg[2] = (byte) 0xFF;
+    return jpeg;
+  }
+}
@@ -0,0 +1,87 @@
+package com.chatop.rental_api;
+
+import java.time.LocalDateTime;
+
+import org.springframework.stereotype.Component;
+
+import com.chatop.model.User;
+import com.chatop.repository.MessageRepository;
+import com.chatop.repository.PictureRepository;
+import com.chatop.repository.RentalPictureRepository;
+import com.chatop.repository.RentalRepository;
+import com.chatop.repository.RentalTombstoneRepository;
+import com.chatop.repository.UserRepository;
+import com.chatop.util.JwtUtil;
+
+/**
+ * Shared fixtures of the integration tests : users with their bearer token,
+ * and the cleanup of the tables they fill, in foreign key order.
+ */
+@Component
+public class TestFixtures {
+
+  private final UserRepository userRepository;
+  private final RentalRepository rentalRepository;
+  private final RentalPictureRepository rentalPictureRepository;
+  private final RentalTombstoneRepository rentalTombstoneRepository;
+  private final PictureRepository pictureRepository;
+  private final MessageRepository messageRepository;
+  private final JwtUtil jwtUtil;
+
+  public TestFixtures(
+    UserRepository userRepository,
+    RentalRepository rentalRepository,
+    RentalPictureRepository rentalPictureRepository,
+    RentalTombstoneRepository rentalTombstoneRepository,
+    PictureRepository pictureRepository,
+    MessageRepository messageRepository,
+    JwtUtil jwtUtil
+  ) {
+    this.userRepository = userRepository;
+    this.rentalRepository = rentalRepository;
+    this.rentalPictureRepository = rentalPictureRepository;
+    this.rentalTombstoneRepository = rentalTombstoneRepository;
+    this.pictureRepository = pictureRepository;
+    this.messageRepository = messageRepository;
+    this.jwtUtil = jwtUtil;
+  }
+
+  /**
+   * Deletes the messages, rentals, pictures and users : the in-memory
+   * database is shared by every test context.
+   */
+  public void cleanUp() {
+    messageRepository.deleteAll();
+    rentalPictureRepository.deleteAll();
+    rentalRepository.deleteAll();
+    rentalTombstoneRepository.deleteAll();
+    pictureRepository.deleteAll();
+    userRepository.deleteAll();
+  }
+
+  /**
+   * Saves a user with the USER role.
+   *
+   * @param email The email of the user, also used as its name.
+   * @return The saved user.
+   */
+  public User createUser(String email) {
+    User user = new User();
+    user.setEmail(email);
+    user.setName(email);
+    user.setPassword("hash");
+    user.setRole("ROLE_USER");
+    user.setCreatedAt(LocalDateTime.now());
+    return userRepository.save(user);
+  }
+
+  /**
+   * Generates a token for a user, as returned by the login.
+   *
+   * @param user The saved user.
+   * @return The token, to send after "Bearer ".
+   */
+  public String tokenOf(User user) {
+    return jwtUtil.generateToken(user.getId(), user.getEmail(), user.getRole());
+  }
+}
@@ -16,6 +16,6 @@ public class GenerateJwtKey {
 
     // Affiche la clé encodée en Base64
     System.out.println("Generated Base64 Encoded Key: " + base64Key);
-    // Note: Copiez cette clé dans votre fichier application.properties sous jwt.secret
+    // Note: Copiez cette clé dans un fichier <kid>.key du répertoire jwt.keys.directory
   }
 }
@@ -0,0 +1,109 @@
+package com.chatop.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import com.chatop.service.ImageCacheService;
+import com.chatop.storage.LocalShardedImageStore;
+import com.chatop.storage.StoredImage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Byte budget, least recently used eviction, invalidation and metrics of
+ * the off-heap image cache.
+ */
+class ImageCacheServiceTests {
+
+  @TempDir
+  Path root;
+
+  private LocalShardedImageStore store;
+  private SimpleMeterRegistry meterRegistry;
+  private ImageCacheService cache;
+
+  @BeforeEach
+  void setUp() {
+    store = new LocalShardedImageStore(root);
+    meterRegistry = new SimpleMeterRegistry();
+    cache =
+      new ImageCacheService(
+        store,
+        DataSize.ofBytes(25),
+        DataSize.ofBytes(10),
+        meterRegistry
+      );
+  }
+
+  @Test
+  void evictsLeastRecentlyUsedBeyondBudget() throws Exception {
+    load("a.jpg", "aaaaaaaaaa");
+    load("b.jpg", "bbbbbbbbbb");
+    cache.get("a.jpg");
+    load("c.jpg", "cccccccccc");
+
+    assertTrue(cache.get("a.jpg").isPresent());
+    assertFalse(cache.get("b.jpg").isPresent());
+    assertTrue(cache.get("c.jpg").isPresent());
+    assertEquals(1, meterRegistry.counter("image.cache.evictions").count());
+    assertEquals(20, meterRegistry.get("image.cache.size").gauge().value());
+    assertEquals(
+      3,
+      meterRegistry.counter("image.cache.requests", "result", "hit").count()
+    );
+    assertEquals(
+      1,
+      meterRegistry.counter("image.cache.requests", "result", "miss").count()
+    );
+  }
+
+  @Test
+  void servesSlicesOfTheCachedBytes() throws Exception {
+    load("a.jpg", "0123456789");
+
+    ByteBuffer slice = cache.get("a.jpg").get().slice(2, 5);
+    byte[] bytes = new byte[slice.remaining()];
+    slice.get(bytes);
+    assertEquals("23456", new String(bytes, StandardCharsets.US_ASCII));
+    // Each slice has its own position
+    assertEquals(5, cache.get("a.jpg").get().slice(2, 5).remaining());
+  }
+
+  @Test
+  void invalidationRemovesImageAndVariants() throws Exception {
+    load("a.jpg", "aaaa");
+    load("w320/a.jpg", "aa");
+    load("b.jpg", "bbbb");
+
+    cache.invalidate("a.jpg");
+
+    assertFalse(cache.get("a.jpg").isPresent());
+    assertFalse(cache.get("w320/a.jpg").isPresent());
+    assertTrue(cache.get("b.jpg").isPresent());
+    assertEquals(4, meterRegistry.get("image.cache.size").gauge().value());
+  }
+
+  @Test
+  void admitsOnlySmallImages() {
+    assertTrue(cache.isCacheable(new StoredImage(10, 0)));
+    assertFalse(cache.isCacheable(new StoredImage(11, 0)));
+  }
+
+  private void load(String key, String content) throws Exception {
+    Path tmp = store.createTempFile();
+    Files.writeString(tmp, content);
+    store.put(key, tmp);
+    cache.load(key, store.stat(key).get());
+  }
+}
@@ -0,0 +1,109 @@
+package com.chatop.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.chatop.util.InvertedIndex;
+import com.chatop.util.SearchTokenizer;
+
+/**
+ * Tokenization, BM25 ranking, versioned updates and compaction of the
+ * search index.
+ */
+class InvertedIndexTests {
+
+  @Test
+  void foldsCaseAccentsAndElisions() {
+    assertEquals(
+      List.of("appartement", "ete", "coeur", "village", "t3"),
+      SearchTokenizer.tokenize("L'Appartement d'Été, au cœur du VILLAGE (T3)")
+    );
+  }
+
+  @Test
+  void ranksRarerAndMoreFrequentTermsFirst() {
+    InvertedIndex index = new InvertedIndex();
+    put(index, 1, 0, "maison calme avec jardin");
+    put(index, 2, 0, "maison vue mer, plage a pied, vue mer");
+    put(index, 3, 0, "maison de village");
+    put(index, 4, 0, "studio vue mer");
+
+    InvertedIndex.Hits hits = search(index, "Vue mer", 10);
+
+    assertArrayEquals(new int[] { 2, 4 }, hits.getIds());
+    assertEquals(2, hits.getTotal());
+    assertTrue(hits.getScores()[0] > hits.getScores()[1]);
+    // In every document but one : the rare word decides
+    assertEquals(3, search(index, "maison village", 10).getIds()[0]);
+  }
+
+  @Test
+  void keepsOnlyTheBestHits() {
+    InvertedIndex index = new InvertedIndex();
+    for (int id = 1; id <= 50; id++) {
+      put(index, id, 0, id % 10 == 0 ? "piscine piscine" : "piscine");
+    }
+
+    InvertedIndex.Hits hits = search(index, "piscine", 5);
+
+    assertArrayEquals(new int[] { 10, 20, 30, 40, 50 }, hits.getIds());
+    assertEquals(50, hits.getTotal());
+  }
+
+  @Test
+  void replacesDocumentByHigherVersionOnly() {
+    InvertedIndex index = new InvertedIndex();
+    put(index, 1, 1, "chalet montagne");
+
+    assertFalse(put(index, 1, 0, "loft paris"));
+    assertTrue(put(index, 1, 2, "loft paris"));
+
+    assertEquals(0, search(index, "chalet", 10).getTotal());
+    assertArrayEquals(new int[] { 1 }, search(index, "paris", 10).getIds());
+    assertEquals(1, index.size());
+  }
+
+  @Test
+  void compactsRemovedDocuments() {
+    InvertedIndex index = new InvertedIndex();
+    for (int id = 1; id <= 2000; id++) {
+      put(index, id, 0, "cabane " + (id % 2 == 0 ? "foret" : "lac"));
+    }
+    // Enough replaced documents to trigger compactions
+    for (int version = 1; version <= 3; version++) {
+      for (int id = 1; id <= 2000; id++) {
+        put(index, id, version, "cabane " + (id % 2 == 0 ? "lac" : "foret"));
+      }
+    }
+
+    assertEquals(2000, index.size());
+    InvertedIndex.Hits hits = search(index, "lac", 2000);
+    assertEquals(1000, hits.getTotal());
+    for (int id : hits.getIds()) {
+      assertEquals(0, id % 2);
+    }
+  }
+
+  private static boolean put(
+    InvertedIndex index,
+    int id,
+    long version,
+    String text
+  ) {
+    return index.put(id, version, SearchTokenizer.tokenize(text));
+  }
+
+  private static InvertedIndex.Hits search(
+    InvertedIndex index,
+    String query,
+    int count
+  ) {
+    return index.search(SearchTokenizer.tokenize(query), count);
+  }
+}
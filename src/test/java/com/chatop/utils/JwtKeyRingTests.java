@@ -0,0 +1,145 @@
+package com.chatop.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.chatop.exception.JwtValidationException;
+import com.chatop.util.JwtKeyRing;
+import com.chatop.util.JwtUtil;
+
+/**
+ * Two instances sharing a key directory accept each other's tokens,
+ * before and after a key rotation.
+ */
+class JwtKeyRingTests {
+
+  private static final long HOUR = 3600000;
+
+  @TempDir
+  Path keyDirectory;
+
+  @Test
+  void tokensAreVerifiedByEveryInstance() {
+    JwtKeyRing rotatingRing = new JwtKeyRing(
+      keyDirectory.toString(),
+      HOUR,
+      24 * HOUR,
+      HOUR
+    );
+    JwtKeyRing otherRing = new JwtKeyRing(
+      keyDirectory.toString(),
+      HOUR,
+      0,
+      HOUR
+    );
+    JwtUtil nodeA = new JwtUtil(rotatingRing, HOUR, 100);
+    JwtUtil nodeB = new JwtUtil(otherRing, HOUR, 100);
+
+    String token = nodeA.generateToken(1, "test@test.com", "ROLE_USER");
+
+    assertEquals("test@test.com", nodeB.verify(token).getEmail());
+    assertEquals(1, nodeB.verify(token).getUserId());
+  }
+
+  @Test
+  void rotationKeepsPreviousKeyForVerification() throws Exception {
+    JwtKeyRing rotatingRing = new JwtKeyRing(
+      keyDirectory.toString(),
+      HOUR,
+      24 * HOUR,
+      HOUR
+    );
+    JwtUtil nodeA = new JwtUtil(rotatingRing, HOUR, 100);
+    String oldKeyId = rotatingRing.getSigningKey().getKey();
+    String oldToken = nodeA.generateToken(1, "test@test.com", "ROLE_USER");
+
+    // The first key is now older than the rotation period
+    age(25 * HOUR);
+    rotatingRing.refresh();
+
+    JwtKeyRing otherRing = new JwtKeyRing(
+      keyDirectory.toString(),
+      HOUR,
+      0,
+      HOUR
+    );
+    JwtUtil nodeB = new JwtUtil(otherRing, HOUR, 100);
+    assertEquals(2, listKeys().size());
+    assertEquals("test@test.com", nodeB.verify(oldToken).getEmail());
+
+    // Once published for a reload interval, the new key signs new tokens
+    age(2 * HOUR);
+    rotatingRing.refresh();
+    assertNotEquals(oldKeyId, rotatingRing.getSigningKey().getKey());
+  }
+
+  @Test
+  void rotationAfterDowntimeKeepsTwoNewestKeys() throws Exception {
+    JwtKeyRing rotatingRing = new JwtKeyRing(
+      keyDirectory.toString(),
+      HOUR,
+      24 * HOUR,
+      HOUR
+    );
+    JwtUtil nodeA = new JwtUtil(rotatingRing, HOUR, 100);
+    age(25 * HOUR);
+    rotatingRing.refresh();
+    String token = nodeA.generateToken(1, "test@test.com", "ROLE_USER");
+
+    // Down far longer than the retention : every key is too old
+    age(100 * HOUR);
+    rotatingRing.refresh();
+    assertEquals(3, listKeys().size());
+    assertEquals("test@test.com", nodeA.verify(token).getEmail());
+
+    // The oldest key is no longer one of the two newest
+    age(100 * HOUR);
+    rotatingRing.refresh();
+    assertEquals(3, listKeys().size());
+    assertThrows(JwtValidationException.class, () -> nodeA.verify(token));
+  }
+
+  @Test
+  void tokenSignedByUnknownKeyIsRejected() {
+    JwtUtil nodeA = new JwtUtil(
+      new JwtKeyRing(keyDirectory.toString(), HOUR, 24 * HOUR, HOUR),
+      HOUR,
+      100
+    );
+    JwtUtil ephemeral = new JwtUtil(
+      new JwtKeyRing("", HOUR, 0, HOUR),
+      HOUR,
+      100
+    );
+
+    String token = ephemeral.generateToken(1, "test@test.com", "ROLE_USER");
+
+    assertThrows(JwtValidationException.class, () -> nodeA.verify(token));
+  }
+
+  // Moves the modification time of every key file back in time
+  private void age(long millis) throws Exception {
+    for (Path key : listKeys()) {
+      FileTime modified = Files.getLastModifiedTime(key);
+      Files.setLastModifiedTime(
+        key,
+        FileTime.fromMillis(modified.toMillis() - millis)
+      );
+    }
+  }
+
+  private List<Path> listKeys() throws Exception {
+    try (var files = Files.list(keyDirectory)) {
+      return files.filter(file -> file.toString().endsWith(".key")).toList();
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package com.chatop.utils;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.chatop.util.JwtKeyRing;
+import com.chatop.util.JwtUtil;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+
+/**
+ * Per-request cost of the JWT check done by JwtAuthenticationFilter.
+ * legacy : former validateToken + extractEmail, each building its own parser.
+ * Run the main method (from the IDE, or java with the test classpath).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtVerifyBenchmark {
+
+  private SecretKey legacyKey;
+  private String legacyToken;
+
+  private JwtUtil uncachedJwtUtil;
+  private String uncachedToken;
+
+  private JwtUtil cachedJwtUtil;
+  private String cachedToken;
+
+  @Setup
+  public void setUp() {
+    legacyKey = Keys.secretKeyFor(SignatureAlgorithm.HS256);
+    legacyToken =
+      Jwts
+        .builder()
+        .setSubject("test@test.com")
+        .claim("role", "ROLE_USER")
+        .setIssuedAt(new Date())
+        .setExpiration(new Date(System.currentTimeMillis() + 3600000))
+        .signWith(legacyKey)
+        .compact();
+
+    JwtKeyRing keyRing = new JwtKeyRing("", 60000, 0, 3600000);
+
+    uncachedJwtUtil = new JwtUtil(keyRing, 3600000, 0);
+    uncachedToken =
+      uncachedJwtUtil.generateToken(1, "test@test.com", "ROLE_USER");
+
+    cachedJwtUtil = new JwtUtil(keyRing, 3600000, 10000);
+    cachedToken = cachedJwtUtil.generateToken(1, "test@test.com", "ROLE_USER");
+  }
+
+  @Benchmark
+  public String legacy() {
+    Jwts
+      .parserBuilder()
+      .setSigningKey(legacyKey)
+      .build()
+      .parseClaimsJws(legacyToken);
+    return Jwts
+      .parserBuilder()
+      .setSigningKey(legacyKey)
+      .build()
+      .parseClaimsJws(legacyToken)
+      .getBody()
+      .getSubject();
+  }
+
+  @Benchmark
+  public String verifyUncached() {
+    return uncachedJwtUtil.verify(uncachedToken).getEmail();
+  }
+
+  @Benchmark
+  public String verifyCached() {
+    return cachedJwtUtil.verify(cachedToken).getEmail();
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(
+      new OptionsBuilder()
+        .include(JwtVerifyBenchmark.class.getSimpleName())
+        .build()
+    )
+      .run();
+  }
+}
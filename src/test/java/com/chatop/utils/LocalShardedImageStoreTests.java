@@ -0,0 +1,108 @@
+package com.chatop.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.chatop.storage.LocalShardedImageStore;
+
+/**
+ * Two-level sharded layout, ranges, listing, and migration of the flat
+ * layout.
+ */
+class LocalShardedImageStoreTests {
+
+  @TempDir
+  Path root;
+
+  @Test
+  void storesImagesInTwoLevelShards() throws Exception {
+    LocalShardedImageStore store = new LocalShardedImageStore(root);
+    Path tmp = store.createTempFile();
+    Files.writeString(tmp, "0123456789");
+
+    store.put("w320/photo.jpg", tmp);
+
+    Path stored = store.localPath("w320/photo.jpg").orElseThrow();
+    assertEquals(
+      root.resolve("w320"),
+      stored.getParent().getParent().getParent()
+    );
+    assertEquals(2, stored.getParent().getFileName().toString().length());
+    assertFalse(Files.exists(tmp));
+    assertEquals(10, store.stat("w320/photo.jpg").orElseThrow().getLength());
+    try (InputStream input = store.open("w320/photo.jpg", 2, 3)) {
+      assertArrayEquals("234".getBytes(), input.readAllBytes());
+    }
+
+    assertTrue(store.delete("w320/photo.jpg"));
+    assertTrue(store.stat("w320/photo.jpg").isEmpty());
+  }
+
+  @Test
+  void migratesFlatFilesIntoShards() throws Exception {
+    Files.writeString(root.resolve("rental_01.jpg"), "original");
+    Files.createDirectories(root.resolve("w800"));
+    Files.writeString(
+      root.resolve("w800").resolve("rental_01.jpg"),
+      "variant"
+    );
+    Files.writeString(root.resolve(".gitkeep"), "");
+    LocalShardedImageStore store = new LocalShardedImageStore(root);
+
+    // Found in the flat layout before the migration
+    assertTrue(store.stat("rental_01.jpg").isPresent());
+
+    assertEquals(2, store.migrateFlatFiles());
+    assertEquals(0, store.migrateFlatFiles());
+
+    assertFalse(Files.exists(root.resolve("rental_01.jpg")));
+    assertTrue(Files.exists(root.resolve(".gitkeep")));
+    Path original = store.localPath("rental_01.jpg").orElseThrow();
+    assertEquals("original", Files.readString(original));
+    Path variant = store.localPath("w800/rental_01.jpg").orElseThrow();
+    assertEquals("variant", Files.readString(variant));
+  }
+
+  @Test
+  void listsShardedAndFlatKeysButNotUploadsInProgress() throws Exception {
+    LocalShardedImageStore store = new LocalShardedImageStore(root);
+    Path tmp = store.createTempFile();
+    Files.writeString(tmp, "sharded");
+    store.put("photo.jpg", tmp);
+    tmp = store.createTempFile();
+    Files.writeString(tmp, "variant");
+    store.put("w320/photo.jpg", tmp);
+    Files.writeString(root.resolve("rental_01.jpg"), "flat");
+    Files.writeString(root.resolve(".gitkeep"), "");
+    // Upload in progress
+    Files.writeString(store.createTempFile(), "partial");
+
+    try (Stream<String> keys = store.list()) {
+      assertEquals(
+        Set.of("photo.jpg", "w320/photo.jpg", "rental_01.jpg"),
+        keys.collect(Collectors.toSet())
+      );
+    }
+  }
+
+  @Test
+  void rejectsKeysEscapingTheRoot() {
+    LocalShardedImageStore store = new LocalShardedImageStore(root);
+
+    assertThrows(IllegalArgumentException.class, () -> store.stat("../x.jpg"));
+    assertThrows(IllegalArgumentException.class, () -> store.stat("a/b/c.jpg"));
+  }
+}
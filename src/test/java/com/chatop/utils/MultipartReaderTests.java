@@ -0,0 +1,121 @@
+package com.chatop.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.chatop.util.MultipartReader;
+
+/**
+ * Streaming multipart parsing, whatever the size of the reads.
+ */
+class MultipartReaderTests {
+
+  private static final String BODY =
+    "preamble\r\n" +
+    "--xyz\r\n" +
+    "Content-Disposition: form-data; name=\"name\"\r\n" +
+    "\r\n" +
+    "Cottage\r\n" +
+    "--xyz\r\n" +
+    "Content-Disposition: form-data; name=\"picture\"; filename=\"a.jpg\"\r\n" +
+    "Content-Type: image/jpeg\r\n" +
+    "\r\n" +
+    "\r\n--xy\r\n-xyz\r\n" +
+    "--xyz\r\n" +
+    "Content-Disposition: form-data; name=\"empty\"\r\n" +
+    "\r\n" +
+    "\r\n" +
+    "--xyz--\r\n";
+
+  @Test
+  void readsPartsWithBoundaryLookalikesInContent() throws Exception {
+    // One byte per read : the delimiter is split across every buffer fill
+    assertParts(new OneByteInputStream(bytes(BODY)));
+    assertParts(new ByteArrayInputStream(bytes(BODY)));
+  }
+
+  @Test
+  void skipsUnreadParts() throws Exception {
+    MultipartReader reader = new MultipartReader(
+      new ByteArrayInputStream(bytes(BODY)),
+      "xyz"
+    );
+    assertEquals("name", reader.nextPart().getName());
+    assertEquals("picture", reader.nextPart().getName());
+    assertEquals("empty", reader.nextPart().getName());
+    assertNull(reader.nextPart());
+  }
+
+  @Test
+  void rejectsTruncatedBody() throws Exception {
+    MultipartReader reader = new MultipartReader(
+      new ByteArrayInputStream(bytes(BODY.substring(0, 120))),
+      "xyz"
+    );
+    reader.nextPart();
+    assertThrows(IOException.class, reader::nextPart);
+  }
+
+  @Test
+  void extractsBoundary() {
+    assertEquals(
+      "xyz",
+      MultipartReader.boundary("multipart/form-data; boundary=xyz")
+    );
+    assertEquals(
+      "a b",
+      MultipartReader.boundary("multipart/form-data; boundary=\"a b\"")
+    );
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> MultipartReader.boundary("application/json")
+    );
+  }
+
+  private static void assertParts(InputStream body) throws IOException {
+    MultipartReader reader = new MultipartReader(body, "xyz");
+
+    MultipartReader.Part name = reader.nextPart();
+    assertEquals("name", name.getName());
+    assertNull(name.getFilename());
+    assertEquals("Cottage", name.readString(100));
+
+    MultipartReader.Part picture = reader.nextPart();
+    assertEquals("picture", picture.getName());
+    assertEquals("a.jpg", picture.getFilename());
+    assertEquals("image/jpeg", picture.getContentType());
+    assertArrayEquals(
+      bytes("\r\n--xy\r\n-xyz"),
+      picture.getInputStream().readAllBytes()
+    );
+
+    assertEquals("", reader.nextPart().readString(100));
+    assertNull(reader.nextPart());
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static final class OneByteInputStream extends FilterInputStream {
+
+    private OneByteInputStream(byte[] bytes) {
+      super(new ByteArrayInputStream(bytes));
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      return super.read(buffer, offset, Math.min(1, length));
+    }
+  }
+}
@@ -0,0 +1,207 @@
+package com.chatop.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import com.chatop.dto.RentalDTO;
+import com.chatop.exception.ResourceNotFoundException;
+import com.chatop.service.RentalCacheService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Expiry, size budget, invalidation, coalesced misses and metrics of the
+ * rental cache.
+ */
+class RentalCacheServiceTests {
+
+  private static final DataSize LARGE = DataSize.ofKilobytes(16);
+
+  private SimpleMeterRegistry meterRegistry;
+  private AtomicInteger loads;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    loads = new AtomicInteger();
+  }
+
+  @Test
+  void servesRentalUntilInvalidated() {
+    RentalCacheService cache = cache(LARGE, Duration.ofMinutes(5));
+
+    RentalDTO first = cache.get(1, () -> load(1));
+    assertSame(first, cache.get(1, () -> load(1)));
+    assertEquals(1, loads.get());
+
+    cache.invalidate(1);
+    cache.get(1, () -> load(1));
+    assertEquals(2, loads.get());
+    assertEquals(
+      1,
+      meterRegistry.counter("rental.cache.requests", "result", "hit").count()
+    );
+    assertEquals(
+      2,
+      meterRegistry.counter("rental.cache.requests", "result", "miss").count()
+    );
+  }
+
+  @Test
+  void expiresAfterTimeToLive() throws Exception {
+    RentalCacheService cache = cache(LARGE, Duration.ofMillis(20));
+
+    cache.get(1, () -> load(1));
+    Thread.sleep(50);
+    cache.get(1, () -> load(1));
+
+    assertEquals(2, loads.get());
+    assertEquals(
+      1,
+      meterRegistry
+        .counter("rental.cache.evictions", "cause", "expired")
+        .count()
+    );
+  }
+
+  @Test
+  void evictsLeastRecentlyUsedBeyondBudget() {
+    // Room for two rentals of about 350 bytes
+    RentalCacheService cache = cache(
+      DataSize.ofBytes(800),
+      Duration.ofMinutes(5)
+    );
+
+    cache.get(1, () -> load(1));
+    cache.get(2, () -> load(2));
+    cache.get(1, () -> load(1));
+    cache.get(3, () -> load(3));
+    cache.get(1, () -> load(1));
+    cache.get(2, () -> load(2));
+
+    assertEquals(4, loads.get());
+    assertEquals(
+      2,
+      meterRegistry.counter("rental.cache.evictions", "cause", "size").count()
+    );
+  }
+
+  @Test
+  void doesNotCacheRentalReadBeforeInvalidation() {
+    RentalCacheService cache = cache(LARGE, Duration.ofMinutes(5));
+
+    cache.get(
+      1,
+      () -> {
+        // Updated while being read
+        cache.invalidate(1);
+        return load(1);
+      }
+    );
+    cache.get(1, () -> load(1));
+
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  void coalescesConcurrentMisses() throws Exception {
+    RentalCacheService cache = cache(LARGE, Duration.ofMinutes(5));
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<RentalDTO>> reads = new ArrayList<>();
+      reads.add(
+        executor.submit(() ->
+          cache.get(
+            1,
+            () -> {
+              loading.countDown();
+              await(release);
+              return load(1);
+            }
+          )
+        )
+      );
+      loading.await(5, TimeUnit.SECONDS);
+      for (int i = 0; i < 7; i++) {
+        reads.add(executor.submit(() -> cache.get(1, () -> load(1))));
+      }
+      // Lets the other reads reach the cache before the load ends
+      Thread.sleep(100);
+      release.countDown();
+
+      RentalDTO rental = reads.get(0).get(5, TimeUnit.SECONDS);
+      for (Future<RentalDTO> read : reads) {
+        assertSame(rental, read.get(5, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(1, loads.get());
+    assertEquals(7, meterRegistry.counter("rental.cache.coalesced").count());
+  }
+
+  @Test
+  void doesNotCacheMissingRental() {
+    RentalCacheService cache = cache(LARGE, Duration.ofMinutes(5));
+
+    for (int i = 0; i < 2; i++) {
+      assertThrows(
+        ResourceNotFoundException.class,
+        () ->
+          cache.get(
+            1,
+            () -> {
+              loads.incrementAndGet();
+              throw new ResourceNotFoundException("Rental not found");
+            }
+          )
+      );
+    }
+    assertEquals(2, loads.get());
+  }
+
+  private RentalCacheService cache(DataSize maxSize, Duration ttl) {
+    return new RentalCacheService(maxSize, ttl, meterRegistry);
+  }
+
+  private RentalDTO load(Integer id) {
+    loads.incrementAndGet();
+    return new RentalDTO(
+      id,
+      "Cottage",
+      80,
+      200,
+      "http://localhost/images/a.jpg",
+      "Near the sea",
+      1,
+      LocalDateTime.now(),
+      LocalDateTime.now()
+    );
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,218 @@
+package com.chatop.utils;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.chatop.util.InvertedIndex;
+import com.chatop.util.SearchTokenizer;
+
+/**
+ * Cost of a rental search : the LIKE '%x%' queries (findByNameContaining,
+ * and the same on the description), which read every row, against the 20
+ * best rentals of the InvertedIndex behind GET /api/rentals/search, on
+ * generated French listings. The table is in an in-memory H2 database : the
+ * LIKE figures do not even include the network and disk of MySQL.
+ * Run the main method (from the IDE, or java with the test classpath).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RentalSearchBenchmark {
+
+  private static final String[] NAME_WORDS = {
+    "Appartement",
+    "Maison",
+    "Studio",
+    "Loft",
+    "Chalet",
+    "Villa",
+    "Péniche",
+    "Cabane",
+    "Duplex",
+    "Gîte",
+  };
+
+  // Ordered from the most to the least common in the descriptions
+  private static final String[] DESCRIPTION_WORDS = {
+    "lumineux",
+    "calme",
+    "proche",
+    "centre",
+    "commerces",
+    "cuisine",
+    "équipée",
+    "chambre",
+    "salon",
+    "balcon",
+    "terrasse",
+    "jardin",
+    "parking",
+    "gare",
+    "métro",
+    "école",
+    "rénové",
+    "spacieux",
+    "séjour",
+    "étage",
+    "ascenseur",
+    "cave",
+    "vue",
+    "mer",
+    "montagne",
+    "forêt",
+    "rivière",
+    "plage",
+    "piscine",
+    "cheminée",
+    "poutres",
+    "parquet",
+    "véranda",
+    "sauna",
+    "hammam",
+    "cœur",
+    "historique",
+    "vignes",
+    "château",
+    "phare",
+  };
+
+  @Param({ "100000", "1000000" })
+  private int rentals;
+
+  private Connection connection;
+  private PreparedStatement likeNameQuery;
+  private PreparedStatement likeNameOrDescriptionQuery;
+  private InvertedIndex index;
+
+  @Setup
+  public void setUp() throws SQLException {
+    connection =
+      DriverManager.getConnection("jdbc:h2:mem:search;MODE=MySQL", "sa", "");
+    try (Statement statement = connection.createStatement()) {
+      statement.execute(
+        "CREATE TABLE RENTALS (id integer PRIMARY KEY, " +
+        "name varchar(255), description varchar(2000))"
+      );
+    }
+
+    index = new InvertedIndex();
+    Random random = new Random(42);
+    try (
+      PreparedStatement insert = connection.prepareStatement(
+        "INSERT INTO RENTALS (id, name, description) VALUES (?, ?, ?)"
+      )
+    ) {
+      for (int id = 1; id <= rentals; id++) {
+        String name =
+          NAME_WORDS[random.nextInt(NAME_WORDS.length)] +
+          " " +
+          DESCRIPTION_WORDS[skewed(random)];
+        StringBuilder description = new StringBuilder();
+        int length = 15 + random.nextInt(30);
+        for (int i = 0; i < length; i++) {
+          description.append(DESCRIPTION_WORDS[skewed(random)]).append(' ');
+        }
+        insert.setInt(1, id);
+        insert.setString(2, name);
+        insert.setString(3, description.toString());
+        insert.addBatch();
+        if (id % 1000 == 0) {
+          insert.executeBatch();
+        }
+
+        List<String> terms = SearchTokenizer.tokenize(name);
+        terms.addAll(SearchTokenizer.tokenize(name));
+        terms.addAll(SearchTokenizer.tokenize(description.toString()));
+        index.put(id, 0, terms);
+      }
+      insert.executeBatch();
+    }
+
+    likeNameQuery =
+      connection.prepareStatement("SELECT id FROM RENTALS WHERE name LIKE ?");
+    likeNameOrDescriptionQuery =
+      connection.prepareStatement(
+        "SELECT id FROM RENTALS WHERE name LIKE ? OR description LIKE ?"
+      );
+  }
+
+  @TearDown
+  public void tearDown() throws SQLException {
+    connection.close();
+  }
+
+  @Benchmark
+  public int likeName() throws SQLException {
+    likeNameQuery.setString(1, "%Chalet%");
+    return count(likeNameQuery);
+  }
+
+  @Benchmark
+  public int likeNameOrDescription() throws SQLException {
+    likeNameOrDescriptionQuery.setString(1, "%sauna%");
+    likeNameOrDescriptionQuery.setString(2, "%sauna%");
+    return count(likeNameOrDescriptionQuery);
+  }
+
+  @Benchmark
+  public int invertedIndexRareTerm() {
+    return index.search(SearchTokenizer.tokenize("sauna"), 20).getIds().length;
+  }
+
+  @Benchmark
+  public int invertedIndexCommonTerms() {
+    return index
+      .search(SearchTokenizer.tokenize("chalet calme lumineux"), 20)
+      .getIds()
+      .length;
+  }
+
+  // Low indexes are drawn more often, like the common words of a language
+  private static int skewed(Random random) {
+    return random.nextInt(random.nextInt(DESCRIPTION_WORDS.length) + 1);
+  }
+
+  private static int count(PreparedStatement query) throws SQLException {
+    int count = 0;
+    try (ResultSet result = query.executeQuery()) {
+      while (result.next()) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(
+      new OptionsBuilder()
+        .include(RentalSearchBenchmark.class.getSimpleName())
+        .build()
+    )
+      .run();
+  }
+}
@@ -0,0 +1,204 @@
+package com.chatop.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.chatop.storage.S3ImageStore;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * S3ImageStore against a local stand-in of the S3 object API
+ * (PUT, HEAD, GET with Range, DELETE on path-style URLs, ListObjectsV2).
+ */
+class S3ImageStoreTests {
+
+  private HttpServer server;
+  private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+  private S3ImageStore store;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", this::handle);
+    server.start();
+    store =
+      new S3ImageStore(
+        "http://127.0.0.1:" + server.getAddress().getPort(),
+        "pictures",
+        "eu-west-3",
+        "access",
+        "secret"
+      );
+  }
+
+  @AfterEach
+  void tearDown() {
+    server.stop(0);
+  }
+
+  @Test
+  void storesReadsAndDeletesObjects() throws Exception {
+    Path tmp = store.createTempFile();
+    Files.writeString(tmp, "0123456789");
+
+    store.put("w320/photo.jpg", tmp);
+
+    assertFalse(Files.exists(tmp));
+    assertTrue(objects.containsKey("/pictures/w320/photo.jpg"));
+    assertEquals(10, store.stat("w320/photo.jpg").orElseThrow().getLength());
+    try (InputStream input = store.open("w320/photo.jpg")) {
+      assertArrayEquals("0123456789".getBytes(), input.readAllBytes());
+    }
+    try (InputStream input = store.open("w320/photo.jpg", 2, 3)) {
+      assertArrayEquals("234".getBytes(), input.readAllBytes());
+    }
+    assertTrue(store.localPath("w320/photo.jpg").isEmpty());
+
+    assertTrue(store.delete("w320/photo.jpg"));
+    assertTrue(store.stat("w320/photo.jpg").isEmpty());
+    assertFalse(store.delete("w320/photo.jpg"));
+  }
+
+  @Test
+  void listsKeysPageByPage() throws Exception {
+    for (String key : List.of("a.jpg", "b.jpg", "w320/a.jpg", "c.jpg")) {
+      objects.put("/pictures/" + key, new byte[] { 1 });
+    }
+    objects.put("/pictures/notes.txt~", new byte[] { 1 });
+
+    try (Stream<String> keys = store.list()) {
+      assertEquals(
+        Set.of("a.jpg", "b.jpg", "w320/a.jpg", "c.jpg"),
+        keys.collect(Collectors.toSet())
+      );
+    }
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    String authorization = exchange
+      .getRequestHeaders()
+      .getFirst("Authorization");
+    if (
+      authorization == null ||
+      !authorization.startsWith("AWS4-HMAC-SHA256 Credential=access/")
+    ) {
+      respond(exchange, 403, new byte[0]);
+      return;
+    }
+
+    String key = exchange.getRequestURI().getPath();
+    if ("/pictures".equals(key)) {
+      respond(exchange, 200, listPage(exchange.getRequestURI().getQuery()));
+      return;
+    }
+    byte[] object = objects.get(key);
+    switch (exchange.getRequestMethod()) {
+      case "PUT" -> {
+        objects.put(key, exchange.getRequestBody().readAllBytes());
+        respond(exchange, 200, new byte[0]);
+      }
+      case "DELETE" -> {
+        objects.remove(key);
+        respond(exchange, 204, null);
+      }
+      case "HEAD" -> {
+        if (object == null) {
+          exchange.sendResponseHeaders(404, -1);
+        } else {
+          exchange
+            .getResponseHeaders()
+            .add("Last-Modified", "Mon, 01 Jan 2024 00:00:00 GMT");
+          exchange
+            .getResponseHeaders()
+            .add("Content-Length", String.valueOf(object.length));
+          exchange.sendResponseHeaders(200, -1);
+        }
+        exchange.close();
+      }
+      default -> {
+        if (object == null) {
+          respond(exchange, 404, new byte[0]);
+          return;
+        }
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range == null) {
+          respond(exchange, 200, object);
+          return;
+        }
+        String[] bounds = range.substring("bytes=".length()).split("-");
+        int start = Integer.parseInt(bounds[0]);
+        int end = bounds.length > 1
+          ? Integer.parseInt(bounds[1])
+          : object.length - 1;
+        byte[] part = new byte[end - start + 1];
+        System.arraycopy(object, start, part, 0, part.length);
+        respond(exchange, 206, part);
+      }
+    }
+  }
+
+  // ListObjectsV2, two keys per page : the continuation token is the index
+  private byte[] listPage(String query) {
+    List<String> keys = objects
+      .keySet()
+      .stream()
+      .map(path -> path.substring("/pictures/".length()))
+      .sorted()
+      .toList();
+    int start = 0;
+    for (String parameter : query.split("&")) {
+      if (parameter.startsWith("continuation-token=")) {
+        start = Integer.parseInt(parameter.substring(19));
+      }
+    }
+    int end = Math.min(start + 2, keys.size());
+    StringBuilder xml = new StringBuilder("<ListBucketResult>");
+    for (String key : keys.subList(start, end)) {
+      xml.append("<Contents><Key>").append(key).append("</Key></Contents>");
+    }
+    xml
+      .append("<IsTruncated>")
+      .append(end < keys.size())
+      .append("</IsTruncated>");
+    if (end < keys.size()) {
+      xml
+        .append("<NextContinuationToken>")
+        .append(end)
+        .append("</NextContinuationToken>");
+    }
+    return xml.append("</ListBucketResult>").toString().getBytes();
+  }
+
+  private static void respond(HttpExchange exchange, int status, byte[] body)
+    throws IOException {
+    if (body == null) {
+      exchange.sendResponseHeaders(status, -1);
+    } else {
+      exchange.sendResponseHeaders(
+        status,
+        body.length == 0 ? -1 : body.length
+      );
+      exchange.getResponseBody().write(body);
+    }
+    exchange.close();
+  }
+}